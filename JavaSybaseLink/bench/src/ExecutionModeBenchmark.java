@@ -0,0 +1,96 @@
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares the throughput and latency of the platform and virtual execution modes of ExecutionEngine under
+ * a mix of short and long queries. The connection pool is simulated with a semaphore that blocks like
+ * HikariDataSource.getConnection, and the queries sleep for their duration like a thread waiting on ASE.
+ * Requests arrive at a fixed rate; the latency is measured from arrival to completion.
+ * Run it with: ant bench -Dbench.class=ExecutionModeBenchmark (the virtual mode needs Java 21+).
+ * @author DarkJ24
+ */
+public class ExecutionModeBenchmark {
+
+    private static final int REQUESTS = 6000;
+    private static final int REQUESTS_PER_MS = 3;
+    private static final int SHORT_QUERY_MS = 2;
+    private static final int LONG_QUERY_MS = 50;
+    private static final int LONG_QUERY_PERCENT = 10;
+
+    /**
+     * Runs the benchmark for both modes with a large and a small connection pool
+     * @param args Not used
+     * @throws Exception Thrown if the benchmark is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%d requests, %d/ms, %d%% of %dms and the rest of %dms%n",
+            REQUESTS, REQUESTS_PER_MS, LONG_QUERY_PERCENT, LONG_QUERY_MS, SHORT_QUERY_MS);
+        for (int maxConnections : new int[] { 50, 4 }) {
+            run(ExecutionEngine.MODE_PLATFORM, maxConnections);
+            try {
+                run(ExecutionEngine.MODE_VIRTUAL, maxConnections);
+            } catch (IllegalArgumentException ex) {
+                System.out.println(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs the requests in one mode and prints the results
+     * @param mode The execution mode
+     * @param maxConnections The size of the simulated connection pool
+     * @throws Exception Thrown if the benchmark is interrupted
+     */
+    private static void run(String mode, int maxConnections) throws Exception {
+        ExecutionEngine engine = new ExecutionEngine(mode, SybaseDB.NUMBER_OF_THREADS, maxConnections, maxConnections);
+        final Semaphore pool = new Semaphore(maxConnections, true);
+        final long[] latencies = new long[REQUESTS];
+        final CountDownLatch done = new CountDownLatch(REQUESTS);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            final int index = i;
+            final long arrival = System.nanoTime();
+            final int queryMs = ThreadLocalRandom.current().nextInt(100) < LONG_QUERY_PERCENT ? LONG_QUERY_MS : SHORT_QUERY_MS;
+            engine.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    pool.acquire(); // HikariDataSource.getConnection
+                    try {
+                        Thread.sleep(queryMs);
+                    } finally {
+                        pool.release();
+                    }
+                    latencies[index] = System.nanoTime() - arrival;
+                    done.countDown();
+                    return null;
+                }
+            });
+            if (i % REQUESTS_PER_MS == REQUESTS_PER_MS - 1)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        engine.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-8s maxConnections=%-3d %,8.0f req/s  p50 %7.1fms  p99 %7.1fms%n",
+            mode, maxConnections, REQUESTS / seconds, percentile(latencies, 50), percentile(latencies, 99));
+    }
+
+    /**
+     * Gets a percentile of the sorted latencies
+     * @param sorted The sorted latencies in nanoseconds
+     * @param percent The percentile
+     * @return The latency in milliseconds
+     */
+    private static double percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
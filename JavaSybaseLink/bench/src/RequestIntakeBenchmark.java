@@ -0,0 +1,107 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+/**
+ * Measures how many SQLRequest messages per second the intake thread can read and decode, comparing
+ * the previous readLine + replaceAll + JSONValue.parse path with StdInputReader and SQLRequestParser.
+ * Run it with the bench target of build.xml.
+ * @author DarkJ24
+ */
+public class RequestIntakeBenchmark {
+
+    private static final int MESSAGES = 200000;
+    private static final int ROUNDS = 5;
+
+    private static int received;
+
+    /**
+     * Runs the benchmark
+     * @param args The number of messages per round (optional)
+     * @throws IOException Thrown if there is an error reading the messages
+     */
+    public static void main(String[] args) throws IOException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : MESSAGES;
+        byte[] input = buildInput(messages);
+        System.out.println("Messages per round: " + messages + ", input size: " + input.length + " bytes");
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            int parsed = readLineJsonSmart(input);
+            double lineRate = parsed / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            parsed = streamingParser(input);
+            double streamingRate = parsed / ((System.nanoTime() - start) / 1e9);
+
+            System.out.printf("round %d: readLine+JSONValue %,.0f req/s, StdInputReader %,.0f req/s (%.1fx)%n",
+                round, lineRate, streamingRate, streamingRate / lineRate);
+        }
+    }
+
+    /**
+     * Builds the input with small queries like the ones Node.js sends
+     * @param messages The number of messages
+     * @return The input bytes
+     */
+    private static byte[] buildInput(int messages) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            sb.append("{\"msgId\":").append(i)
+                .append(",\"transId\":").append(i % 10 == 0 ? i : -1)
+                .append(",\"finishTrans\":false,\"sql\":\"SELECT id, name, created FROM customers WHERE id = ")
+                .append(i).append("\",\"sentTime\":1700000000000}\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The intake path used before StdInputReader read chunks: one line at a time, regex replace and a full json parse
+     * @param input The input bytes
+     * @return The number of parsed requests
+     * @throws IOException Thrown if there is an error reading the input
+     */
+    private static int readLineJsonSmart(byte[] input) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input)));
+        int count = 0;
+        String nextLine;
+        while ((nextLine = reader.readLine()) != null) {
+            nextLine = nextLine.replaceAll("\\n", "\n");
+            JSONObject val = (JSONObject) JSONValue.parse(nextLine);
+            SQLRequest request = new SQLRequest();
+            request.msgId = (Integer)val.get("msgId");
+            request.transId = (Integer)val.get("transId");
+            request.finishTrans = (boolean)val.get("finishTrans");
+            request.sql = (String)val.get("sql");
+            request.javaStartTime = System.currentTimeMillis();
+            if (request.sql != null)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * The StdInputReader path, the requests are counted by a listener
+     * @param input The input bytes
+     * @return The number of parsed requests
+     */
+    private static int streamingParser(byte[] input) {
+        received = 0;
+        StdInputReader reader = new StdInputReader(new ByteArrayInputStream(input));
+        reader.addListener(new SQLRequestListener() {
+            public void sqlRequest(SQLRequest request) {
+                received++;
+            }
+
+            public void sqlRequests(List<SQLRequest> requests) {
+                received += requests.size();
+            }
+        });
+        reader.startReadLoop();
+        return received;
+    }
+}
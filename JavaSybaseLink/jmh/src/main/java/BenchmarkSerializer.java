@@ -0,0 +1,98 @@
+import benchmarks.RowSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Runs the ResultSetSerializer and the response code of ExecSQLCallable and ExecSQLTransactionCallable, for the JMH
+ * benchmarks in the benchmarks package (which can not see the default package of the bridge).
+ * @author DarkJ24
+ */
+public class BenchmarkSerializer implements RowSerializer {
+
+    private final BridgeStats stats = new BridgeStats();
+    private final ResponseWriter writer;
+    private final ResultSetSerializer serializer;
+    private int msgId = 0;
+
+    /**
+     * Constructor for BenchmarkSerializer, the streamed frames are encoded by a ResponseWriter and discarded
+     */
+    public BenchmarkSerializer() {
+        this.writer = new ResponseWriter(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int bytes = src.remaining();
+                src.position(src.limit());
+                return bytes;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, stats.write);
+        this.writer.start();
+        this.serializer = new ResultSetSerializer(writer, stats);
+    }
+
+    @Override
+    public String response(ResultSet rs, String format) throws SQLException {
+        SQLRequest request = new SQLRequest();
+        request.msgId = ++msgId;
+        request.transId = -1;
+        request.resultFormat = format;
+        request.javaStartTime = System.currentTimeMillis();
+        JSONObject response = new JSONObject();
+        response.put("msgId", request.msgId);
+        SpillBuffer result = new SpillBuffer(null);
+        try {
+            result.append('[');
+            serializer.write(rs, format, result);
+            result.append(']');
+            result.finish();
+        } catch (IOException ex) {
+            throw new SQLException(ex);
+        }
+        return ExecSQLCallable.response(response, request, result);
+    }
+
+    @Override
+    public String transactionResponse(ResultSet rs, String format) throws SQLException {
+        SQLRequest request = new SQLRequest();
+        request.msgId = ++msgId;
+        request.transId = request.clientTransId = 1;
+        request.resultFormat = format;
+        request.javaStartTime = System.currentTimeMillis();
+        JSONObject response = new JSONObject();
+        response.put("msgId", request.msgId);
+        response.put("transId", request.clientTransId);
+        JSONArray rss = new JSONArray();
+        response.put("result", rss);
+        rss.add(serializer.toJSON(rs, format));
+        return ExecSQLTransactionCallable.response(response, request);
+    }
+
+    @Override
+    public int stream(ResultSet rs, String format, int streamRows) throws SQLException {
+        SQLRequest request = new SQLRequest();
+        request.msgId = ++msgId;
+        request.transId = -1;
+        request.resultFormat = format;
+        request.streamRows = streamRows;
+        return serializer.stream(rs, request, 0);
+    }
+
+    @Override
+    public void close() {
+        writer.close(1000);
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The serialization of the bridge seen from the benchmarks. The bridge classes are in the default package,
+ * which a named package can not import, so BenchmarkSerializer (default package) implements this interface
+ * and the benchmarks load it once by name.
+ * @author DarkJ24
+ */
+public interface RowSerializer {
+
+    /**
+     * Serializes a result set into a whole response with ResultSetSerializer.write and the response code of ExecSQLCallable
+     * @param rs The result set, positioned before the first row
+     * @param format The result format, "objects", "compact" or "columnar"
+     * @return The json response
+     * @throws SQLException Thrown if there is an error reading the result set
+     */
+    String response(ResultSet rs, String format) throws SQLException;
+
+    /**
+     * Serializes a result set into a whole transaction response with ResultSetSerializer.toJSON and the json-smart
+     * tree, and the response code of ExecSQLTransactionCallable
+     * @param rs The result set, positioned before the first row
+     * @param format The result format, "objects", "compact" or "columnar"
+     * @return The json response
+     * @throws SQLException Thrown if there is an error reading the result set
+     */
+    String transactionResponse(ResultSet rs, String format) throws SQLException;
+
+    /**
+     * Streams a result set in "rows" frames to a ResponseWriter writing to a discarding channel
+     * @param rs The result set, positioned before the first row
+     * @param format The result format
+     * @param streamRows The rows per frame
+     * @return The number of rows sent
+     * @throws SQLException Thrown if there is an error reading the result set
+     */
+    int stream(ResultSet rs, String format, int streamRows) throws SQLException;
+
+    /**
+     * Stops the writer of the streamed frames
+     */
+    void close();
+
+    /**
+     * Creates the serializer of the bridge
+     * @return The serializer
+     */
+    static RowSerializer load() {
+        try {
+            return (RowSerializer) Class.forName("BenchmarkSerializer").newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("BenchmarkSerializer is not on the classpath", ex);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the row to json serialization of the bridge, the per cell loop that takes most of the CPU of a
+ * query: a whole response as ExecSQLCallable and ExecSQLTransactionCallable build it, and a streamed
+ * response in "rows" frames. One operation serializes one result set of `rows` rows, run with -prof gc
+ * and divide gc.alloc.rate.norm by `rows` for the allocation per row.
+ * @author DarkJ24
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"1000"})
+    public int rows;
+
+    @Param({"8"})
+    public int columns;
+
+    @Param({SyntheticResultSet.TYPES_MIXED, SyntheticResultSet.TYPES_NUMERIC, SyntheticResultSet.TYPES_VARCHAR, SyntheticResultSet.TYPES_TEMPORAL})
+    public String types;
+
+    @Param({"0.1"})
+    public double nullRate;
+
+    @Param({"objects", "compact", "columnar"})
+    public String format;
+
+    private SyntheticResultSet resultSet;
+    private RowSerializer serializer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        resultSet = new SyntheticResultSet(rows, columns, types, nullRate, 42);
+        serializer = RowSerializer.load();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        serializer.close();
+    }
+
+    /**
+     * A whole response outside a transaction, like ExecSQLCallable
+     * @return The json response
+     * @throws SQLException Thrown if there is an error reading the result set
+     */
+    @Benchmark
+    public String response() throws SQLException {
+        resultSet.beforeFirst();
+        return serializer.response(resultSet, format);
+    }
+
+    /**
+     * A whole response in a transaction, like ExecSQLTransactionCallable, through toJSON and the json-smart tree
+     * @return The json response
+     * @throws SQLException Thrown if there is an error reading the result set
+     */
+    @Benchmark
+    public String transactionResponse() throws SQLException {
+        resultSet.beforeFirst();
+        return serializer.transactionResponse(resultSet, format);
+    }
+
+    /**
+     * A streamed response in frames of 500 rows, the frames are encoded by the ResponseWriter thread
+     * @return The number of rows sent
+     * @throws SQLException Thrown if there is an error reading the result set
+     */
+    @Benchmark
+    public int stream() throws SQLException {
+        resultSet.beforeFirst();
+        return serializer.stream(resultSet, format, 500);
+    }
+}
@@ -0,0 +1,354 @@
+package benchmarks;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * An in-memory ResultSet with generated rows, so the serialization can be measured without a database or a
+ * driver in the way. The values are generated once from a fixed seed and reused every time the result set is
+ * rewound with beforeFirst. Only the getters of the ColumnCodecs and what ResultSetSerializer uses are
+ * implemented, the rest throws.
+ * @author DarkJ24
+ */
+public class SyntheticResultSet implements ResultSet {
+
+    public static final String TYPES_MIXED = "mixed"; // int, numeric, varchar and timestamp columns
+    public static final String TYPES_NUMERIC = "numeric"; // int, numeric and double columns
+    public static final String TYPES_VARCHAR = "varchar"; // varchar columns only
+    public static final String TYPES_TEMPORAL = "temporal"; // timestamp, date and time columns
+
+    private final int[] types;
+    private final String[] labels;
+    private final Object[][] rows;
+    private final Meta meta = new Meta();
+    private int row = -1;
+    private boolean lastNull;
+
+    /**
+     * Constructor for SyntheticResultSet
+     * @param rowCount The number of rows
+     * @param columnCount The number of columns
+     * @param typeMix The column types, one of the TYPES_* mixes
+     * @param nullRate The share of the values that are null, between 0 and 1
+     * @param seed The seed of the values
+     */
+    public SyntheticResultSet(int rowCount, int columnCount, String typeMix, double nullRate, long seed) {
+        int[] mix = typeMix(typeMix);
+        Random random = new Random(seed);
+        types = new int[columnCount];
+        labels = new String[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            types[c] = mix[c % mix.length];
+            labels[c] = "column_" + (c + 1);
+        }
+        rows = new Object[rowCount][columnCount];
+        for (int r = 0; r < rowCount; r++) {
+            for (int c = 0; c < columnCount; c++)
+                rows[r][c] = random.nextDouble() < nullRate ? null : value(types[c], random);
+        }
+    }
+
+    /**
+     * Gets the JDBC types of a type mix
+     * @param typeMix The name of the mix
+     * @return The types the columns cycle through
+     */
+    private static int[] typeMix(String typeMix) {
+        switch (typeMix) {
+            case TYPES_MIXED: return new int[] { Types.INTEGER, Types.NUMERIC, Types.VARCHAR, Types.TIMESTAMP };
+            case TYPES_NUMERIC: return new int[] { Types.INTEGER, Types.NUMERIC, Types.DOUBLE };
+            case TYPES_VARCHAR: return new int[] { Types.VARCHAR };
+            case TYPES_TEMPORAL: return new int[] { Types.TIMESTAMP, Types.DATE, Types.TIME };
+            default: throw new IllegalArgumentException("Unknown type mix: " + typeMix);
+        }
+    }
+
+    /**
+     * Generates a value of a type like the ones jConnect returns
+     * @param type The JDBC type
+     * @param random The generator
+     * @return The value
+     */
+    private static Object value(int type, Random random) {
+        long millis = 1500000000000L + (long) (random.nextDouble() * 300000000000L);
+        switch (type) {
+            case Types.INTEGER: return random.nextInt(1000000);
+            case Types.NUMERIC: return BigDecimal.valueOf(random.nextInt(100000000), 2);
+            case Types.DOUBLE: return random.nextDouble() * 1000;
+            case Types.TIMESTAMP: return new Timestamp(millis);
+            case Types.DATE: return new Timestamp(millis - millis % 86400000L); // Read with getTimestamp like SybaseDB.TYPE_DATE
+            case Types.TIME: return new Time(millis % 86400000L);
+            default:
+                StringBuilder sb = new StringBuilder();
+                int length = 8 + random.nextInt(24);
+                for (int i = 0; i < length; i++)
+                    sb.append((char) ('a' + random.nextInt(26)));
+                return sb.toString();
+        }
+    }
+
+    /**
+     * Gets the value of a column of the current row
+     * @param columnIndex The column, starting at 1
+     * @return The value
+     * @throws SQLException Thrown if there is no current row or the column does not exist
+     */
+    private Object get(int columnIndex) throws SQLException {
+        if (row < 0 || row >= rows.length)
+            throw new SQLException("The result set is not positioned on a row");
+        if (columnIndex < 1 || columnIndex > types.length)
+            throw new SQLException("Invalid column index: " + columnIndex);
+        Object value = rows[row][columnIndex - 1];
+        lastNull = value == null;
+        return value;
+    }
+
+    private static SQLException unsupported() {
+        return new SQLFeatureNotSupportedException("Not supported by SyntheticResultSet");
+    }
+
+    public boolean next() throws SQLException { return ++row < rows.length; }
+    public void beforeFirst() throws SQLException { row = -1; }
+    public void close() throws SQLException { }
+    public boolean isClosed() throws SQLException { return false; }
+    public boolean wasNull() throws SQLException { return lastNull; }
+    public ResultSetMetaData getMetaData() throws SQLException { return meta; }
+    public Object getObject(int columnIndex) throws SQLException { return get(columnIndex); }
+    public Timestamp getTimestamp(int columnIndex) throws SQLException { return (Timestamp) get(columnIndex); }
+    public Time getTime(int columnIndex) throws SQLException { return (Time) get(columnIndex); }
+    public <T> T unwrap(Class<T> iface) throws SQLException { throw unsupported(); }
+    public boolean isWrapperFor(Class<?> iface) throws SQLException { return false; }
+
+    public boolean absolute(int row) throws SQLException { throw unsupported(); }
+    public void afterLast() throws SQLException { throw unsupported(); }
+    public void cancelRowUpdates() throws SQLException { throw unsupported(); }
+    public void clearWarnings() throws SQLException { throw unsupported(); }
+    public void deleteRow() throws SQLException { throw unsupported(); }
+    public int findColumn(String columnLabel) throws SQLException { throw unsupported(); }
+    public boolean first() throws SQLException { throw unsupported(); }
+    public Array getArray(String columnLabel) throws SQLException { throw unsupported(); }
+    public Array getArray(int columnIndex) throws SQLException { throw unsupported(); }
+    public InputStream getAsciiStream(String columnLabel) throws SQLException { throw unsupported(); }
+    public InputStream getAsciiStream(int columnIndex) throws SQLException { throw unsupported(); }
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException { throw unsupported(); }
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException { throw unsupported(); }
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException { return (BigDecimal) get(columnIndex); }
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException { throw unsupported(); }
+    public InputStream getBinaryStream(String columnLabel) throws SQLException { throw unsupported(); }
+    public InputStream getBinaryStream(int columnIndex) throws SQLException { throw unsupported(); }
+    public Blob getBlob(String columnLabel) throws SQLException { throw unsupported(); }
+    public Blob getBlob(int columnIndex) throws SQLException { throw unsupported(); }
+    public boolean getBoolean(String columnLabel) throws SQLException { throw unsupported(); }
+    public boolean getBoolean(int columnIndex) throws SQLException { Object value = get(columnIndex); return value != null && (Boolean) value; }
+    public byte getByte(String columnLabel) throws SQLException { throw unsupported(); }
+    public byte getByte(int columnIndex) throws SQLException { throw unsupported(); }
+    public byte[] getBytes(String columnLabel) throws SQLException { throw unsupported(); }
+    public byte[] getBytes(int columnIndex) throws SQLException { return (byte[]) get(columnIndex); }
+    public Reader getCharacterStream(String columnLabel) throws SQLException { throw unsupported(); }
+    public Reader getCharacterStream(int columnIndex) throws SQLException { throw unsupported(); }
+    public Clob getClob(String columnLabel) throws SQLException { throw unsupported(); }
+    public Clob getClob(int columnIndex) throws SQLException { throw unsupported(); }
+    public int getConcurrency() throws SQLException { throw unsupported(); }
+    public String getCursorName() throws SQLException { throw unsupported(); }
+    public Date getDate(String columnLabel) throws SQLException { throw unsupported(); }
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException { throw unsupported(); }
+    public Date getDate(int columnIndex) throws SQLException { throw unsupported(); }
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException { throw unsupported(); }
+    public double getDouble(String columnLabel) throws SQLException { throw unsupported(); }
+    public double getDouble(int columnIndex) throws SQLException { Object value = get(columnIndex); return value == null ? 0 : ((Number) value).doubleValue(); }
+    public int getFetchDirection() throws SQLException { throw unsupported(); }
+    public int getFetchSize() throws SQLException { throw unsupported(); }
+    public float getFloat(String columnLabel) throws SQLException { throw unsupported(); }
+    public float getFloat(int columnIndex) throws SQLException { Object value = get(columnIndex); return value == null ? 0 : ((Number) value).floatValue(); }
+    public int getHoldability() throws SQLException { throw unsupported(); }
+    public int getInt(String columnLabel) throws SQLException { throw unsupported(); }
+    public int getInt(int columnIndex) throws SQLException { Object value = get(columnIndex); return value == null ? 0 : ((Number) value).intValue(); }
+    public long getLong(String columnLabel) throws SQLException { throw unsupported(); }
+    public long getLong(int columnIndex) throws SQLException { Object value = get(columnIndex); return value == null ? 0 : ((Number) value).longValue(); }
+    public Reader getNCharacterStream(String columnLabel) throws SQLException { throw unsupported(); }
+    public Reader getNCharacterStream(int columnIndex) throws SQLException { throw unsupported(); }
+    public NClob getNClob(String columnLabel) throws SQLException { throw unsupported(); }
+    public NClob getNClob(int columnIndex) throws SQLException { throw unsupported(); }
+    public String getNString(String columnLabel) throws SQLException { throw unsupported(); }
+    public String getNString(int columnIndex) throws SQLException { throw unsupported(); }
+    public Object getObject(String columnLabel) throws SQLException { throw unsupported(); }
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException { throw unsupported(); }
+    public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException { throw unsupported(); }
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException { throw unsupported(); }
+    public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException { throw unsupported(); }
+    public Ref getRef(String columnLabel) throws SQLException { throw unsupported(); }
+    public Ref getRef(int columnIndex) throws SQLException { throw unsupported(); }
+    public int getRow() throws SQLException { throw unsupported(); }
+    public RowId getRowId(String columnLabel) throws SQLException { throw unsupported(); }
+    public RowId getRowId(int columnIndex) throws SQLException { throw unsupported(); }
+    public SQLXML getSQLXML(String columnLabel) throws SQLException { throw unsupported(); }
+    public SQLXML getSQLXML(int columnIndex) throws SQLException { throw unsupported(); }
+    public short getShort(String columnLabel) throws SQLException { throw unsupported(); }
+    public short getShort(int columnIndex) throws SQLException { throw unsupported(); }
+    public Statement getStatement() throws SQLException { throw unsupported(); }
+    public String getString(String columnLabel) throws SQLException { throw unsupported(); }
+    public String getString(int columnIndex) throws SQLException { Object value = get(columnIndex); return value == null ? null : value.toString(); }
+    public Time getTime(String columnLabel) throws SQLException { throw unsupported(); }
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException { throw unsupported(); }
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException { throw unsupported(); }
+    public Timestamp getTimestamp(String columnLabel) throws SQLException { throw unsupported(); }
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException { throw unsupported(); }
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException { throw unsupported(); }
+    public int getType() throws SQLException { throw unsupported(); }
+    public URL getURL(String columnLabel) throws SQLException { throw unsupported(); }
+    public URL getURL(int columnIndex) throws SQLException { throw unsupported(); }
+    public InputStream getUnicodeStream(String columnLabel) throws SQLException { throw unsupported(); }
+    public InputStream getUnicodeStream(int columnIndex) throws SQLException { throw unsupported(); }
+    public SQLWarning getWarnings() throws SQLException { throw unsupported(); }
+    public void insertRow() throws SQLException { throw unsupported(); }
+    public boolean isAfterLast() throws SQLException { throw unsupported(); }
+    public boolean isBeforeFirst() throws SQLException { throw unsupported(); }
+    public boolean isFirst() throws SQLException { throw unsupported(); }
+    public boolean isLast() throws SQLException { throw unsupported(); }
+    public boolean last() throws SQLException { throw unsupported(); }
+    public void moveToCurrentRow() throws SQLException { throw unsupported(); }
+    public void moveToInsertRow() throws SQLException { throw unsupported(); }
+    public boolean previous() throws SQLException { throw unsupported(); }
+    public void refreshRow() throws SQLException { throw unsupported(); }
+    public boolean relative(int rows) throws SQLException { throw unsupported(); }
+    public boolean rowDeleted() throws SQLException { throw unsupported(); }
+    public boolean rowInserted() throws SQLException { throw unsupported(); }
+    public boolean rowUpdated() throws SQLException { throw unsupported(); }
+    public void setFetchDirection(int direction) throws SQLException { throw unsupported(); }
+    public void setFetchSize(int rows) throws SQLException { throw unsupported(); }
+    public void updateArray(String columnLabel, Array x) throws SQLException { throw unsupported(); }
+    public void updateArray(int columnIndex, Array x) throws SQLException { throw unsupported(); }
+    public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException { throw unsupported(); }
+    public void updateAsciiStream(String columnLabel, InputStream x, int length) throws SQLException { throw unsupported(); }
+    public void updateAsciiStream(String columnLabel, InputStream x, long length) throws SQLException { throw unsupported(); }
+    public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException { throw unsupported(); }
+    public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException { throw unsupported(); }
+    public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException { throw unsupported(); }
+    public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException { throw unsupported(); }
+    public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException { throw unsupported(); }
+    public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException { throw unsupported(); }
+    public void updateBinaryStream(String columnLabel, InputStream x, int length) throws SQLException { throw unsupported(); }
+    public void updateBinaryStream(String columnLabel, InputStream x, long length) throws SQLException { throw unsupported(); }
+    public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException { throw unsupported(); }
+    public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException { throw unsupported(); }
+    public void updateBinaryStream(int columnIndex, InputStream x, long length) throws SQLException { throw unsupported(); }
+    public void updateBlob(String columnLabel, Blob x) throws SQLException { throw unsupported(); }
+    public void updateBlob(String columnLabel, InputStream x) throws SQLException { throw unsupported(); }
+    public void updateBlob(String columnLabel, InputStream x, long length) throws SQLException { throw unsupported(); }
+    public void updateBlob(int columnIndex, Blob x) throws SQLException { throw unsupported(); }
+    public void updateBlob(int columnIndex, InputStream x) throws SQLException { throw unsupported(); }
+    public void updateBlob(int columnIndex, InputStream x, long length) throws SQLException { throw unsupported(); }
+    public void updateBoolean(String columnLabel, boolean x) throws SQLException { throw unsupported(); }
+    public void updateBoolean(int columnIndex, boolean x) throws SQLException { throw unsupported(); }
+    public void updateByte(String columnLabel, byte x) throws SQLException { throw unsupported(); }
+    public void updateByte(int columnIndex, byte x) throws SQLException { throw unsupported(); }
+    public void updateBytes(String columnLabel, byte[] x) throws SQLException { throw unsupported(); }
+    public void updateBytes(int columnIndex, byte[] x) throws SQLException { throw unsupported(); }
+    public void updateCharacterStream(String columnLabel, Reader x) throws SQLException { throw unsupported(); }
+    public void updateCharacterStream(String columnLabel, Reader x, int length) throws SQLException { throw unsupported(); }
+    public void updateCharacterStream(String columnLabel, Reader x, long length) throws SQLException { throw unsupported(); }
+    public void updateCharacterStream(int columnIndex, Reader x) throws SQLException { throw unsupported(); }
+    public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException { throw unsupported(); }
+    public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException { throw unsupported(); }
+    public void updateClob(String columnLabel, Clob x) throws SQLException { throw unsupported(); }
+    public void updateClob(String columnLabel, Reader x) throws SQLException { throw unsupported(); }
+    public void updateClob(String columnLabel, Reader x, long length) throws SQLException { throw unsupported(); }
+    public void updateClob(int columnIndex, Clob x) throws SQLException { throw unsupported(); }
+    public void updateClob(int columnIndex, Reader x) throws SQLException { throw unsupported(); }
+    public void updateClob(int columnIndex, Reader x, long length) throws SQLException { throw unsupported(); }
+    public void updateDate(String columnLabel, Date x) throws SQLException { throw unsupported(); }
+    public void updateDate(int columnIndex, Date x) throws SQLException { throw unsupported(); }
+    public void updateDouble(String columnLabel, double x) throws SQLException { throw unsupported(); }
+    public void updateDouble(int columnIndex, double x) throws SQLException { throw unsupported(); }
+    public void updateFloat(String columnLabel, float x) throws SQLException { throw unsupported(); }
+    public void updateFloat(int columnIndex, float x) throws SQLException { throw unsupported(); }
+    public void updateInt(String columnLabel, int x) throws SQLException { throw unsupported(); }
+    public void updateInt(int columnIndex, int x) throws SQLException { throw unsupported(); }
+    public void updateLong(String columnLabel, long x) throws SQLException { throw unsupported(); }
+    public void updateLong(int columnIndex, long x) throws SQLException { throw unsupported(); }
+    public void updateNCharacterStream(String columnLabel, Reader x) throws SQLException { throw unsupported(); }
+    public void updateNCharacterStream(String columnLabel, Reader x, long length) throws SQLException { throw unsupported(); }
+    public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException { throw unsupported(); }
+    public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException { throw unsupported(); }
+    public void updateNClob(String columnLabel, NClob x) throws SQLException { throw unsupported(); }
+    public void updateNClob(String columnLabel, Reader x) throws SQLException { throw unsupported(); }
+    public void updateNClob(String columnLabel, Reader x, long length) throws SQLException { throw unsupported(); }
+    public void updateNClob(int columnIndex, NClob x) throws SQLException { throw unsupported(); }
+    public void updateNClob(int columnIndex, Reader x) throws SQLException { throw unsupported(); }
+    public void updateNClob(int columnIndex, Reader x, long length) throws SQLException { throw unsupported(); }
+    public void updateNString(String columnLabel, String x) throws SQLException { throw unsupported(); }
+    public void updateNString(int columnIndex, String x) throws SQLException { throw unsupported(); }
+    public void updateNull(String columnLabel) throws SQLException { throw unsupported(); }
+    public void updateNull(int columnIndex) throws SQLException { throw unsupported(); }
+    public void updateObject(String columnLabel, Object x) throws SQLException { throw unsupported(); }
+    public void updateObject(String columnLabel, Object x, int length) throws SQLException { throw unsupported(); }
+    public void updateObject(int columnIndex, Object x) throws SQLException { throw unsupported(); }
+    public void updateObject(int columnIndex, Object x, int length) throws SQLException { throw unsupported(); }
+    public void updateRef(String columnLabel, Ref x) throws SQLException { throw unsupported(); }
+    public void updateRef(int columnIndex, Ref x) throws SQLException { throw unsupported(); }
+    public void updateRow() throws SQLException { throw unsupported(); }
+    public void updateRowId(String columnLabel, RowId x) throws SQLException { throw unsupported(); }
+    public void updateRowId(int columnIndex, RowId x) throws SQLException { throw unsupported(); }
+    public void updateSQLXML(String columnLabel, SQLXML x) throws SQLException { throw unsupported(); }
+    public void updateSQLXML(int columnIndex, SQLXML x) throws SQLException { throw unsupported(); }
+    public void updateShort(String columnLabel, short x) throws SQLException { throw unsupported(); }
+    public void updateShort(int columnIndex, short x) throws SQLException { throw unsupported(); }
+    public void updateString(String columnLabel, String x) throws SQLException { throw unsupported(); }
+    public void updateString(int columnIndex, String x) throws SQLException { throw unsupported(); }
+    public void updateTime(String columnLabel, Time x) throws SQLException { throw unsupported(); }
+    public void updateTime(int columnIndex, Time x) throws SQLException { throw unsupported(); }
+    public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException { throw unsupported(); }
+    public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException { throw unsupported(); }
+
+    /**
+     * The metadata of the columns
+     */
+    private class Meta implements ResultSetMetaData {
+        public int getColumnCount() throws SQLException { return types.length; }
+        public String getColumnLabel(int columnIndex) throws SQLException { return labels[columnIndex - 1]; }
+        public String getColumnName(int columnIndex) throws SQLException { return labels[columnIndex - 1]; }
+        public int getColumnType(int columnIndex) throws SQLException { return types[columnIndex - 1]; }
+        public <T> T unwrap(Class<T> iface) throws SQLException { throw unsupported(); }
+        public boolean isWrapperFor(Class<?> iface) throws SQLException { return false; }
+
+        public String getCatalogName(int columnIndex) throws SQLException { throw unsupported(); }
+        public String getColumnClassName(int columnIndex) throws SQLException { throw unsupported(); }
+        public int getColumnDisplaySize(int columnIndex) throws SQLException { throw unsupported(); }
+        public String getColumnTypeName(int columnIndex) throws SQLException { throw unsupported(); }
+        public int getPrecision(int columnIndex) throws SQLException { throw unsupported(); }
+        public int getScale(int columnIndex) throws SQLException { throw unsupported(); }
+        public String getSchemaName(int columnIndex) throws SQLException { throw unsupported(); }
+        public String getTableName(int columnIndex) throws SQLException { throw unsupported(); }
+        public boolean isAutoIncrement(int columnIndex) throws SQLException { throw unsupported(); }
+        public boolean isCaseSensitive(int columnIndex) throws SQLException { throw unsupported(); }
+        public boolean isCurrency(int columnIndex) throws SQLException { throw unsupported(); }
+        public boolean isDefinitelyWritable(int columnIndex) throws SQLException { throw unsupported(); }
+        public int isNullable(int columnIndex) throws SQLException { throw unsupported(); }
+        public boolean isReadOnly(int columnIndex) throws SQLException { throw unsupported(); }
+        public boolean isSearchable(int columnIndex) throws SQLException { throw unsupported(); }
+        public boolean isSigned(int columnIndex) throws SQLException { throw unsupported(); }
+        public boolean isWritable(int columnIndex) throws SQLException { throw unsupported(); }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * End-to-end load harness of the bridge: runs the real JavaSybaseLink.jar with StandInDataSource (an
+ * in-process stand-in for jConnect, see src/StandInDataSource.java) and drives it through the stdin/stdout
+ * protocol from many concurrent clients of src/index.js. Needs only java, javac and node, no ASE server.
+ *
+ *   ant -f JavaSybaseLink/build.xml jar
+ *   node JavaSybaseLink/loadtest/harness.js --scenario all --duration 10
+ *
+ * Options:
+ *   --scenario   tiny, large, transactions or all (default all)
+ *   --duration   seconds per scenario (default 10)
+ *   --clients    concurrent clients, overrides the default of the scenario
+ *   --latencyMs  server time of every statement (default 0)
+ *   --jitterMs   random extra server time between 0 and jitterMs (default 0)
+ *   --jar        the bridge jar (default JavaSybaseLink/dist/JavaSybaseLink.jar)
+ *   --startupMode  standard or fast (default standard)
+ *   --cdsArchive   an AppCDS archive of the jar, built with ant cds
+ *   --json       print the reports as json lines instead of text
+ *
+ * Every scenario starts its own bridge and reports the time from starting it until it is connected and
+ * until the first operation completed, the operations per second, the p50/p99/p999 latency seen by the
+ * clients, the peak and final RSS of the bridge process and the p99 of the bridge stages.
+ */
+const { execFileSync } = require("child_process");
+const fs = require("fs");
+const os = require("os");
+const path = require("path");
+const Sybase = require("../../src/index.js");
+
+const SCENARIOS = {
+  // Many small queries, the cost of the protocol and the scheduling per query
+  tiny: {
+    clients: 64,
+    maxConnections: 16,
+    run: (sybase) => sybase.querySync("SELECT id FROM standin /* rows=1 cols=3 */"),
+  },
+  // Few large results, the cost of the serialization and the writer
+  large: {
+    clients: 4,
+    maxConnections: 4,
+    run: (sybase) => sybase.querySync("SELECT * FROM standin /* rows=10000 cols=10 */"),
+  },
+  // Transactions of a few statements interleaved with each other and with tiny queries
+  transactions: {
+    clients: 32,
+    maxConnections: 16,
+    run: (sybase, client) => {
+      if (client % 2 === 1) return sybase.querySync("SELECT id FROM standin /* rows=1 cols=3 */");
+      return sybase.transaction(async (connection, transactionId) => {
+        await connection.querySync("SELECT * FROM standin WHERE id = 1 /* rows=5 cols=6 */", transactionId);
+        await connection.querySync("UPDATE standin SET value = 1 WHERE id = 1", transactionId);
+        await connection.querySync("INSERT INTO standin_log (id) VALUES (1)", transactionId);
+      });
+    },
+  },
+};
+
+function parseArguments(argv) {
+  const args = { scenario: "all", duration: 10, latencyMs: 0, jitterMs: 0, json: false };
+  for (let i = 0; i < argv.length; i++) {
+    const name = argv[i].replace(/^--/, "");
+    if (name === "json") args.json = true;
+    else args[name] = argv[++i];
+  }
+  args.duration = Number(args.duration);
+  if (args.clients !== undefined) args.clients = Number(args.clients);
+  args.jar = path.resolve(args.jar || path.resolve(__dirname, "..", "dist", "JavaSybaseLink.jar"));
+  return args;
+}
+
+/**
+ * Compiles StandInDataSource into a temporary directory, unless the classes there are up to date.
+ *
+ * @returns {string} The directory of the compiled classes.
+ */
+function compileStandIn() {
+  const source = path.resolve(__dirname, "src", "StandInDataSource.java");
+  const classesDir = path.join(os.tmpdir(), "sybase-standin");
+  const compiled = path.join(classesDir, "StandInDataSource.class");
+  if (!fs.existsSync(compiled) || fs.statSync(compiled).mtimeMs < fs.statSync(source).mtimeMs) {
+    fs.mkdirSync(classesDir, { recursive: true });
+    execFileSync("javac", ["-nowarn", "-d", classesDir, source], { stdio: "inherit" });
+  }
+  return classesDir;
+}
+
+/**
+ * Reads the resident set size of a process, from /proc (Linux only).
+ *
+ * @param {number} pid The process.
+ * @returns {number|null} The RSS in bytes, null when it can not be read.
+ */
+function readRss(pid) {
+  try {
+    const status = fs.readFileSync(`/proc/${pid}/status`, "utf8");
+    const match = /VmRSS:\s+(\d+) kB/.exec(status);
+    return match ? Number(match[1]) * 1024 : null;
+  } catch (err) {
+    return null;
+  }
+}
+
+function percentile(sorted, p) {
+  if (sorted.length === 0) return 0;
+  return sorted[Math.min(sorted.length - 1, Math.ceil((p / 100) * sorted.length) - 1)];
+}
+
+async function runScenario(name, args, classesDir) {
+  const scenario = SCENARIOS[name];
+  const clients = args.clients || scenario.clients;
+  const sybase = new Sybase({
+    host: "standin",
+    port: 5000,
+    database: "standin",
+    username: "standin",
+    password: "standin",
+    pathToJavaBridge: args.jar,
+    minConnections: scenario.maxConnections,
+    maxConnections: scenario.maxConnections,
+    transactionConnections: scenario.maxConnections,
+    threads: scenario.maxConnections,
+    dataSourceClass: "StandInDataSource",
+    classPath: classesDir,
+    startupMode: args.startupMode,
+    cdsArchive: args.cdsArchive,
+  });
+  const starting = process.hrtime.bigint();
+  await sybase.connectAsync();
+  const connectedMs = Number(process.hrtime.bigint() - starting) / 1e6;
+  let firstResultMs = null;
+
+  const pid = sybase.javaDB.pid;
+  let peakRss = readRss(pid) || 0;
+  const sampler = setInterval(() => {
+    peakRss = Math.max(peakRss, readRss(pid) || 0);
+  }, 250);
+
+  const latencies = [];
+  let errors = 0;
+  const start = process.hrtime.bigint();
+  const end = start + BigInt(Math.round(args.duration * 1e9));
+  const client = async (id) => {
+    while (process.hrtime.bigint() < end) {
+      const sent = process.hrtime.bigint();
+      try {
+        await scenario.run(sybase, id);
+        if (firstResultMs === null) firstResultMs = Number(process.hrtime.bigint() - starting) / 1e6;
+        latencies.push(Number(process.hrtime.bigint() - sent) / 1e6);
+      } catch (err) {
+        errors++;
+      }
+    }
+  };
+  await Promise.all(Array.from({ length: clients }, (_, id) => client(id)));
+  const elapsed = Number(process.hrtime.bigint() - start) / 1e9;
+
+  clearInterval(sampler);
+  const finalRss = readRss(pid);
+  const stats = await sybase.getStats();
+  await sybase.disconnectSync();
+
+  latencies.sort((a, b) => a - b);
+  const stages = {};
+  Object.keys(stats.stages).forEach((stage) => {
+    stages[stage] = stats.stages[stage].p99;
+  });
+  return {
+    scenario: name,
+    clients,
+    startupMs: { connected: connectedMs, firstResult: firstResultMs },
+    operations: latencies.length,
+    errors,
+    opsPerSecond: Math.round(latencies.length / elapsed),
+    latencyMs: {
+      p50: percentile(latencies, 50),
+      p99: percentile(latencies, 99),
+      p999: percentile(latencies, 99.9),
+      max: latencies.length ? latencies[latencies.length - 1] : 0,
+    },
+    rssBytes: { peak: Math.max(peakRss, finalRss || 0), final: finalRss },
+    stageP99Micros: stages,
+  };
+}
+
+function printReport(report) {
+  const mb = (bytes) => (bytes ? `${(bytes / 1048576).toFixed(1)}MB` : "n/a");
+  const ms = (value) => `${value.toFixed(2)}ms`;
+  console.log(`${report.scenario}: ${report.clients} clients, ${report.operations} operations, ${report.errors} errors`);
+  console.log(`  startup connected ${ms(report.startupMs.connected)} first result ${ms(report.startupMs.firstResult || 0)}`);
+  console.log(`  throughput ${report.opsPerSecond} ops/s`);
+  console.log(
+    `  latency p50 ${ms(report.latencyMs.p50)} p99 ${ms(report.latencyMs.p99)} p999 ${ms(report.latencyMs.p999)} max ${ms(report.latencyMs.max)}`
+  );
+  console.log(`  bridge RSS peak ${mb(report.rssBytes.peak)} final ${mb(report.rssBytes.final)}`);
+  console.log(
+    `  bridge stage p99 (us) ${Object.keys(report.stageP99Micros)
+      .map((stage) => `${stage} ${report.stageP99Micros[stage]}`)
+      .join(", ")}`
+  );
+}
+
+async function main() {
+  const args = parseArguments(process.argv.slice(2));
+  const names = args.scenario === "all" ? Object.keys(SCENARIOS) : [args.scenario];
+  names.forEach((name) => {
+    if (!SCENARIOS[name]) throw new Error(`Unknown scenario ${name}, expected ${Object.keys(SCENARIOS).join(", ")} or all`);
+  });
+  if (!fs.existsSync(args.jar)) throw new Error(`${args.jar} not found, build it with ant jar or pass --jar`);
+
+  // Defaults of the stand-in, read by the bridge process it inherits the environment of
+  process.env.STANDIN_LATENCY_MS = String(args.latencyMs);
+  process.env.STANDIN_JITTER_MS = String(args.jitterMs);
+  const classesDir = compileStandIn();
+
+  for (const name of names) {
+    const report = await runScenario(name, args, classesDir);
+    if (args.json) console.log(JSON.stringify(report));
+    else printReport(report);
+  }
+}
+
+main().catch((err) => {
+  console.error(err.message);
+  process.exit(1);
+});
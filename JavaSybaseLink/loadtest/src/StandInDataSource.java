@@ -0,0 +1,367 @@
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * An in-process stand-in for com.sybase.jdbc4.jdbc.SybDataSource, so the real bridge can be load tested
+ * without an ASE server (dataSourceClass=StandInDataSource). It has the bean properties the bridge sets on
+ * jConnect and answers every statement from memory. The shape and latency of a result are read from
+ * name=value tokens anywhere in the sql, with defaults from environment variables:
+ *   rows=N (STANDIN_ROWS, 1) rows of a SELECT
+ *   cols=N (STANDIN_COLS, 4) columns, cycling through int, varchar, numeric and timestamp
+ *   latencyMs=N (STANDIN_LATENCY_MS, 0) time the statement takes on the "server"
+ *   jitterMs=N (STANDIN_JITTER_MS, 0) random extra time between 0 and N
+ *   fail=1 makes the statement throw
+ * Statements that do not start with SELECT return an update count of 1. Statement.cancel() ends the latency
+ * of a running statement with an error, and STANDIN_CONNECT_MS delays every new connection, like the login
+ * of a real server.
+ * @author DarkJ24
+ */
+public class StandInDataSource implements DataSource {
+
+    private static final int DEFAULT_ROWS = intEnv("STANDIN_ROWS", 1);
+    private static final int DEFAULT_COLS = intEnv("STANDIN_COLS", 4);
+    private static final int DEFAULT_LATENCY_MS = intEnv("STANDIN_LATENCY_MS", 0);
+    private static final int DEFAULT_JITTER_MS = intEnv("STANDIN_JITTER_MS", 0);
+    private static final int CONNECT_MS = intEnv("STANDIN_CONNECT_MS", 0);
+    private static final int[] TYPES = { Types.INTEGER, Types.VARCHAR, Types.NUMERIC, Types.TIMESTAMP };
+    private static final ConcurrentHashMap<String, Shape> SHAPES = new ConcurrentHashMap<String, Shape>();
+
+    private int loginTimeout;
+
+    // The jConnect properties set by the bridge, accepted and ignored
+    public void setServerName(String serverName) { }
+    public void setPortNumber(int portNumber) { }
+    public void setUser(String user) { }
+    public void setPassword(String password) { }
+    public void setDatabaseName(String databaseName) { }
+    public void setDYNAMIC_PREPARE(String dynamicPrepare) { }
+    public void setENABLE_BULK_LOAD(String enableBulkLoad) { }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        sleep(CONNECT_MS);
+        return (Connection) proxy(Connection.class, new ConnectionHandler());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException("Not a wrapper");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return false;
+    }
+
+    /**
+     * The shape and latency of the results of a sql, parsed once per distinct sql
+     */
+    private static final class Shape {
+        final boolean query;
+        final int rows;
+        final int cols;
+        final int latencyMs;
+        final int jitterMs;
+        final boolean fail;
+
+        Shape(String sql) {
+            query = sql.trim().regionMatches(true, 0, "select", 0, 6);
+            rows = token(sql, "rows=", DEFAULT_ROWS);
+            cols = Math.max(1, token(sql, "cols=", DEFAULT_COLS));
+            latencyMs = token(sql, "latencyMs=", DEFAULT_LATENCY_MS);
+            jitterMs = token(sql, "jitterMs=", DEFAULT_JITTER_MS);
+            fail = token(sql, "fail=", 0) != 0;
+        }
+
+        static Shape of(String sql) {
+            Shape shape = SHAPES.get(sql);
+            if (shape == null) {
+                shape = new Shape(sql);
+                if (SHAPES.size() < 10000)
+                    SHAPES.put(sql, shape);
+            }
+            return shape;
+        }
+
+        /**
+         * Waits the latency of the statement, then fails if the sql asks for it
+         * @param cancel Counted down when the statement is cancelled
+         * @throws SQLException Thrown if the sql has fail=1 or the statement was cancelled
+         */
+        void execute(CountDownLatch cancel) throws SQLException {
+            int millis = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextInt(jitterMs + 1) : 0);
+            try {
+                if (millis > 0 && cancel.await(millis, TimeUnit.MILLISECONDS))
+                    throw new SQLException("Stand-in statement cancelled");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted", ex);
+            }
+            if (fail)
+                throw new SQLException("Stand-in failure");
+        }
+    }
+
+    /**
+     * A connection, autoCommit, commit and rollback are accepted and do nothing
+     */
+    private static final class ConnectionHandler implements InvocationHandler {
+        private boolean closed;
+        private boolean autoCommit = true;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "createStatement": return proxy(Statement.class, new StatementHandler(null));
+                case "prepareStatement": return proxy(PreparedStatement.class, new StatementHandler((String) args[0]));
+                case "isValid": return !closed;
+                case "isClosed": return closed;
+                case "close": closed = true; return null;
+                case "setAutoCommit": autoCommit = (Boolean) args[0]; return null;
+                case "getAutoCommit": return autoCommit;
+                case "getTransactionIsolation": return Connection.TRANSACTION_READ_COMMITTED;
+                case "unwrap": return proxy;
+                case "isWrapperFor": return ((Class<?>) args[0]).isInstance(proxy);
+                default: return defaultValue(proxy, method, args);
+            }
+        }
+    }
+
+    /**
+     * A statement or prepared statement, the parameters are accepted and ignored
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private String sql;
+        private int batched;
+        private String batchSql; // The first statement of a batch of statements, for its shape
+        private ResultSet resultSet;
+        private int updateCount = -1;
+        private volatile CountDownLatch cancel = new CountDownLatch(1);
+
+        StatementHandler(String sql) {
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "execute":
+                    if (args != null && args.length > 0)
+                        sql = (String) args[0];
+                    Shape shape = Shape.of(sql);
+                    cancel = new CountDownLatch(1);
+                    shape.execute(cancel);
+                    resultSet = shape.query ? (ResultSet) proxy(ResultSet.class, new ResultSetHandler(shape, cancel)) : null;
+                    updateCount = shape.query ? -1 : 1;
+                    return shape.query;
+                case "executeQuery":
+                    invoke(proxy, method.getDeclaringClass().getMethod("execute", String.class), args);
+                    return resultSet;
+                case "executeUpdate":
+                    cancel = new CountDownLatch(1);
+                    Shape.of(args != null && args.length > 0 ? (String) args[0] : sql).execute(cancel);
+                    return 1;
+                case "getResultSet": return resultSet;
+                case "getUpdateCount":
+                    int count = updateCount;
+                    updateCount = -1;
+                    return count;
+                case "getMoreResults":
+                    resultSet = null;
+                    return false;
+                case "addBatch":
+                    if (args != null && args.length > 0 && batchSql == null)
+                        batchSql = (String) args[0];
+                    batched++;
+                    return null;
+                case "clearBatch":
+                    batched = 0;
+                    batchSql = null;
+                    return null;
+                case "executeBatch":
+                    int[] counts = new int[batched];
+                    Shape batch = Shape.of(sql != null ? sql : batchSql != null ? batchSql : "");
+                    batched = 0;
+                    batchSql = null;
+                    if (batch.fail)
+                        throw new BatchUpdateException("Stand-in batch failure", new int[0]);
+                    cancel = new CountDownLatch(1);
+                    batch.execute(cancel);
+                    Arrays.fill(counts, 1);
+                    return counts;
+                case "cancel":
+                    cancel.countDown();
+                    return null;
+                case "unwrap": return proxy;
+                case "isWrapperFor": return ((Class<?>) args[0]).isInstance(proxy);
+                default: return defaultValue(proxy, method, args);
+            }
+        }
+    }
+
+    /**
+     * The rows of a SELECT, generated from the row and column numbers
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final Shape shape;
+        private final CountDownLatch cancel;
+        private final ResultSetMetaData meta;
+        private int row;
+
+        ResultSetHandler(Shape shape, CountDownLatch cancel) {
+            this.shape = shape;
+            this.cancel = cancel;
+            this.meta = (ResultSetMetaData) proxy(ResultSetMetaData.class, new MetaDataHandler(shape));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    if (cancel.getCount() == 0)
+                        throw new SQLException("Stand-in statement cancelled");
+                    return ++row <= shape.rows;
+                case "getMetaData": return meta;
+                case "wasNull": return false;
+                case "getObject":
+                case "getInt":
+                case "getString":
+                case "getBigDecimal":
+                case "getTimestamp": return value((Integer) args[0]);
+                case "close": return null;
+                default: return defaultValue(proxy, method, args);
+            }
+        }
+
+        private Object value(int column) {
+            switch (TYPES[(column - 1) % TYPES.length]) {
+                case Types.INTEGER: return row;
+                case Types.VARCHAR: return "value " + row + "-" + column;
+                case Types.NUMERIC: return BigDecimal.valueOf(row * 100L + column, 2);
+                default: return new Timestamp(1700000000000L + row * 1000L);
+            }
+        }
+    }
+
+    /**
+     * The columns of a SELECT
+     */
+    private static final class MetaDataHandler implements InvocationHandler {
+        private final Shape shape;
+
+        MetaDataHandler(Shape shape) {
+            this.shape = shape;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getColumnCount": return shape.cols;
+                case "getColumnLabel":
+                case "getColumnName": return "col" + args[0];
+                case "getColumnType": return TYPES[((Integer) args[0] - 1) % TYPES.length];
+                default: return defaultValue(proxy, method, args);
+            }
+        }
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(StandInDataSource.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * Answers the methods a handler does not implement: identity for equals and hashCode, zero, false or null otherwise
+     */
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals": return proxy == args[0];
+            case "hashCode": return System.identityHashCode(proxy);
+            case "toString": return "StandIn" + method.getDeclaringClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            default: break;
+        }
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        return null;
+    }
+
+    private static int token(String sql, String name, int defaultValue) {
+        int start = sql.indexOf(name);
+        if (start < 0)
+            return defaultValue;
+        int end = start + name.length();
+        while (end < sql.length() && Character.isDigit(sql.charAt(end)))
+            end++;
+        return end > start + name.length() ? Integer.parseInt(sql.substring(start + name.length(), end)) : defaultValue;
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static void sleep(int millis) throws SQLException {
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted", ex);
+        }
+    }
+}
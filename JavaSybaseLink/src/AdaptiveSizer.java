@@ -0,0 +1,423 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Sizes the connection pools and the worker concurrency at runtime from what the bridge observes, instead of
+ * keeping them at the configured maximums. Every interval it samples the requests waiting for a connection
+ * of each pool (the Hikari pending threads, plus the requests waiting for a permit in MODE_VIRTUAL), the
+ * connections in use, and the p90 of the pool acquire and execute latencies over the interval. Within the
+ * bounds of each pool (minConnections up to maxConnections, and up to transactionConnections for the
+ * transaction pool) it then:
+ * - backs off, lowering the limits by a quarter, when the execute p90 rises above BACKOFF_FACTOR times its
+ *   baseline (and by more than BACKOFF_MIN_MS), as more connections would only queue more work on a slow ASE;
+ * - grows a pool by the requests waiting for it, or by one when it is full and the acquire p90 is above
+ *   ACQUIRE_TARGET_MS;
+ * - shrinks a pool to one above its busiest moment once it used at most half of its limit for
+ *   SHRINK_AFTER_TICKS intervals.
+ * The engine and the admission controller follow the sum of the limits. Every decision is kept for the
+ * stats and appended as one json line to the sizing log, if there is one; nothing goes to stdout or
+ * stderr, they belong to Node.js.
+ * @author DarkJ24
+ */
+public class AdaptiveSizer {
+
+    public static final long DEFAULT_INTERVAL_MS = 1000;
+    public static final double BACKOFF_FACTOR = 2.0; // The rise of the execute p90 over its baseline that lowers the limits
+    public static final long BACKOFF_MIN_MS = 5; // The smallest rise of the execute p90 that lowers the limits, below it is noise
+    public static final long ACQUIRE_TARGET_MS = 10; // The acquire p90 above which a full pool grows
+    public static final int SHRINK_AFTER_TICKS = 30; // The intervals a pool stays half used before it shrinks
+    public static final int MIN_SAMPLES = 20; // The executions an interval needs for its p90 to count
+    public static final int RECENT_DECISIONS = 20; // The decisions kept for the stats
+
+    /**
+     * A connection pool whose maximum size can change at runtime
+     */
+    public interface SizablePool {
+
+        /**
+         * Gets the gauges of the pool
+         * @return The active, idle, pending and total connections and the maximum size of the pool
+         */
+        JSONObject getPoolStats();
+
+        /**
+         * Changes the maximum size of the pool
+         * @param size The new maximum size
+         * @return true if the pool can be resized and was, false if its size is fixed
+         */
+        boolean setMaximumPoolSize(int size);
+    }
+
+    private final ExecutionEngine engine;
+    private final AdmissionController admission;
+    private final BridgeStats stats;
+    private final Target main;
+    private final Target transaction;
+    private final int fixedConnections; // The connections of the replica pool, not sized here
+    private final int maxThreads;
+    private final long intervalMs;
+    private final String logPath;
+    private final ScheduledThreadPoolExecutor timer;
+    private final ArrayDeque<JSONObject> recent = new ArrayDeque<JSONObject>();
+    private Writer log;
+    private long decisions = 0;
+    private long backoffs = 0;
+    private double baselineNanos = 0; // The execute p90 of a healthy interval, 0 until an interval has MIN_SAMPLES
+    private long[] acquireSnapshot;
+    private long[] executeSnapshot;
+    private int concurrency;
+
+    /**
+     * Constructor for AdaptiveSizer, the pools start at their lower bounds once start() is called
+     * @param engine The engine running the requests
+     * @param admission The admission controller dispatching the requests
+     * @param stats The stage latencies of the bridge
+     * @param pool The connection pool and its bounds
+     * @param minConnections The lower bound of the connection pool
+     * @param maxConnections The upper bound of the connection pool
+     * @param transactionPool The transaction pool
+     * @param minTransactionConnections The lower bound of the transaction pool
+     * @param transactionConnections The upper bound of the transaction pool
+     * @param fixedConnections The connections of other pools sharing the engine (the replica pool)
+     * @param maxThreads The most platform threads in MODE_PLATFORM
+     * @param intervalMs The time between two samples
+     * @param logPath The file the decisions are appended to, null to keep them in the stats only
+     */
+    public AdaptiveSizer(ExecutionEngine engine, AdmissionController admission, BridgeStats stats,
+            SizablePool pool, int minConnections, int maxConnections,
+            SizablePool transactionPool, int minTransactionConnections, int transactionConnections,
+            int fixedConnections, int maxThreads, long intervalMs, String logPath) {
+        this.engine = engine;
+        this.admission = admission;
+        this.stats = stats;
+        this.main = new Target("main", pool, Math.max(1, minConnections), maxConnections, false);
+        this.transaction = new Target("transaction", transactionPool, Math.max(1, minTransactionConnections), transactionConnections, true);
+        this.fixedConnections = fixedConnections;
+        this.maxThreads = maxThreads;
+        this.intervalMs = intervalMs;
+        this.logPath = logPath;
+        this.concurrency = engine.getConcurrency();
+        this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "adaptive-sizer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Lowers the pools to their lower bounds and starts sampling
+     */
+    public synchronized void start() {
+        if (logPath != null) {
+            try {
+                log = new FileWriter(logPath, true);
+            } catch (IOException ex) {
+                log = null; // The decisions stay in the stats
+            }
+        }
+        acquireSnapshot = stats.poolAcquire.snapshot();
+        executeSnapshot = stats.execute.snapshot();
+        main.resize(main.lower, "start at the lower bound", null);
+        transaction.resize(transaction.lower, "start at the lower bound", null);
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (RuntimeException ex) {
+                    //Ignore, the next interval samples again
+                }
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Samples the pools and the latencies of the last interval and resizes the pools that need it
+     */
+    synchronized void tick() {
+        long[] acquire = stats.poolAcquire.snapshot();
+        long[] execute = stats.execute.snapshot();
+        long acquireP90 = LatencyHistogram.percentile(acquireSnapshot, acquire, 90);
+        long executeP90 = LatencyHistogram.percentile(executeSnapshot, execute, 90);
+        boolean sampled = LatencyHistogram.count(executeSnapshot, execute) >= MIN_SAMPLES;
+        acquireSnapshot = acquire;
+        executeSnapshot = execute;
+        Sample sample = new Sample(acquireP90, executeP90);
+        if (sampled && baselineNanos > 0 && executeP90 > baselineNanos * BACKOFF_FACTOR
+                && executeP90 - baselineNanos > TimeUnit.MILLISECONDS.toNanos(BACKOFF_MIN_MS)) {
+            backoffs++;
+            String reason = "execute p90 " + millis(executeP90) + "ms is above " + BACKOFF_FACTOR + "x its baseline of " + millis(baselineNanos) + "ms";
+            main.backOff(reason, sample);
+            transaction.backOff(reason, sample);
+        } else {
+            main.adjust(sample);
+            transaction.adjust(sample);
+        }
+        if (sampled) {
+            // A lower p90 is the new baseline at once, a higher one only drifts it up, so a slower ASE
+            // becomes the new normal after a while instead of holding the pools down forever
+            if (baselineNanos == 0 || executeP90 < baselineNanos)
+                baselineNanos = executeP90;
+            else
+                baselineNanos += (executeP90 - baselineNanos) / MIN_SAMPLES;
+        }
+    }
+
+    /**
+     * Makes the engine and the admission controller follow the limits of the pools
+     * @return The number of requests that can run at once now
+     */
+    private int resizeEngine() {
+        concurrency = engine.resize(main.limit + fixedConnections, transaction.limit, maxThreads);
+        admission.setConcurrency(concurrency);
+        return concurrency;
+    }
+
+    /**
+     * Keeps a decision for the stats and appends it to the sizing log
+     * @param decision The json decision
+     */
+    private void record(JSONObject decision) {
+        decisions++;
+        recent.addLast(decision);
+        if (recent.size() > RECENT_DECISIONS)
+            recent.removeFirst();
+        if (log == null)
+            return;
+        try {
+            log.write(decision.toJSONString());
+            log.write('\n');
+            log.flush();
+        } catch (IOException ex) {
+            closeLog(); // The decisions stay in the stats
+        }
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds with one decimal
+     * @param nanos The nanoseconds
+     * @return The milliseconds
+     */
+    private static double millis(double nanos) {
+        return Math.round(nanos / 100000) / 10.0;
+    }
+
+    /**
+     * Gets the state of the sizing as json
+     * @return The interval, the limits and bounds of the pools, the concurrency, the execute baseline in
+     * milliseconds, the number of decisions and back-offs, and the last RECENT_DECISIONS decisions
+     */
+    public synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("intervalMs", intervalMs);
+        JSONObject pools = new JSONObject();
+        pools.put(main.name, main.toJSON());
+        pools.put(transaction.name, transaction.toJSON());
+        json.put("pools", pools);
+        json.put("concurrency", concurrency);
+        json.put("baselineExecuteMs", millis(baselineNanos));
+        json.put("decisions", decisions);
+        json.put("backoffs", backoffs);
+        JSONArray last = new JSONArray();
+        last.addAll(recent);
+        json.put("recent", last);
+        if (logPath != null)
+            json.put("log", logPath);
+        return json;
+    }
+
+    /**
+     * Stops sampling and closes the sizing log
+     */
+    public synchronized void shutdown() {
+        timer.shutdownNow();
+        closeLog();
+    }
+
+    /**
+     * Closes the sizing log, later decisions stay in the stats only
+     */
+    private void closeLog() {
+        if (log == null)
+            return;
+        try {
+            log.close();
+        } catch (IOException ex) {
+            //Ignore
+        }
+        log = null;
+    }
+
+    /**
+     * The latencies of an interval, in nanoseconds
+     */
+    private static final class Sample {
+
+        final long acquireP90;
+        final long executeP90;
+
+        Sample(long acquireP90, long executeP90) {
+            this.acquireP90 = acquireP90;
+            this.executeP90 = executeP90;
+        }
+    }
+
+    /**
+     * A pool, its bounds and its current limit
+     */
+    private final class Target {
+
+        final String name;
+        final SizablePool pool;
+        final int lower;
+        final int upper;
+        final boolean transactional;
+        int limit;
+        boolean fixed = false; // The pool can not be resized, see SizablePool.setMaximumPoolSize
+        int peakActive = 0; // The most connections in use during the quiet intervals
+        int quietTicks = 0; // The intervals the pool used at most half of its limit
+
+        Target(String name, SizablePool pool, int lower, int upper, boolean transactional) {
+            this.name = name;
+            this.pool = pool;
+            this.upper = Math.max(1, upper);
+            this.lower = Math.min(lower, this.upper);
+            this.transactional = transactional;
+            this.limit = this.upper;
+        }
+
+        /**
+         * Grows or shrinks the pool from what it did during the interval
+         * @param sample The latencies of the interval
+         */
+        void adjust(Sample sample) {
+            if (fixed)
+                return;
+            JSONObject gauges = pool.getPoolStats();
+            int active = ((Number) gauges.get("active")).intValue();
+            int waiting = waiting(gauges);
+            if (limit < upper) {
+                if (waiting > 0) {
+                    resize(Math.min(upper, limit + waiting), "waiting for a connection: " + waiting, sample, active, waiting);
+                    return;
+                }
+                if (active >= limit && sample.acquireP90 > TimeUnit.MILLISECONDS.toNanos(ACQUIRE_TARGET_MS)) {
+                    resize(limit + 1, "pool full with acquire p90 " + millis(sample.acquireP90) + "ms", sample, active, waiting);
+                    return;
+                }
+            }
+            if (active * 2 > limit) {
+                quietTicks = 0;
+                peakActive = 0;
+                return;
+            }
+            peakActive = Math.max(peakActive, active);
+            if (++quietTicks < SHRINK_AFTER_TICKS)
+                return;
+            int target = Math.max(lower, peakActive + 1);
+            if (target < limit)
+                resize(target, "at most " + peakActive + " connections used for " + quietTicks + " intervals", sample, active, waiting);
+            quietTicks = 0;
+            peakActive = 0;
+        }
+
+        /**
+         * Counts the requests waiting for a connection of the pool: the threads waiting in the pool, the requests
+         * waiting for a permit and, for the main pool, the requests queued by the admission controller, which
+         * holds back the requests the engine has no room for (the queued transaction requests are counted
+         * there too, they are few next to the queries)
+         * @param gauges The gauges of the pool
+         * @return The number of waiting requests
+         */
+        int waiting(JSONObject gauges) {
+            int waiting = ((Number) gauges.get("pending")).intValue() + engine.getWaiting(transactional);
+            return transactional ? waiting : waiting + admission.getQueued();
+        }
+
+        /**
+         * Lowers the limit by a quarter (at least one), down to the lower bound
+         * @param reason The reason of the back-off
+         * @param sample The latencies of the interval
+         */
+        void backOff(String reason, Sample sample) {
+            if (fixed || limit <= lower)
+                return;
+            JSONObject gauges = pool.getPoolStats();
+            int active = ((Number) gauges.get("active")).intValue();
+            int waiting = waiting(gauges);
+            resize(Math.max(lower, limit - Math.max(1, limit / 4)), reason, sample, active, waiting);
+        }
+
+        /**
+         * Resizes the pool when the bridge starts
+         * @param size The new limit
+         * @param reason The reason of the decision
+         * @param sample Null, nothing was sampled yet
+         */
+        void resize(int size, String reason, Sample sample) {
+            JSONObject gauges = pool.getPoolStats();
+            resize(size, reason, sample, ((Number) gauges.get("active")).intValue(), ((Number) gauges.get("pending")).intValue());
+        }
+
+        /**
+         * Resizes the pool and the engine and records the decision
+         * @param size The new limit
+         * @param reason The reason of the decision
+         * @param sample The latencies of the interval, null when the bridge starts
+         * @param active The connections in use
+         * @param waiting The requests waiting for a connection
+         */
+        void resize(int size, String reason, Sample sample, int active, int waiting) {
+            if (size == limit)
+                return;
+            if (!pool.setMaximumPoolSize(size)) {
+                fixed = true;
+                return;
+            }
+            int from = limit;
+            limit = size;
+            quietTicks = 0;
+            peakActive = 0;
+            JSONObject decision = new JSONObject();
+            decision.put("time", Instant.now().toString());
+            decision.put("pool", name);
+            decision.put("from", from);
+            decision.put("to", size);
+            decision.put("reason", reason);
+            decision.put("active", active);
+            decision.put("waiting", waiting);
+            if (sample != null) {
+                decision.put("acquireP90Ms", millis(sample.acquireP90));
+                decision.put("executeP90Ms", millis(sample.executeP90));
+                decision.put("baselineExecuteMs", millis(baselineNanos));
+            }
+            decision.put("concurrency", resizeEngine());
+            record(decision);
+        }
+
+        /**
+         * Gets the limit and bounds of the pool as json
+         * @return The json
+         */
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("limit", limit);
+            json.put("lower", lower);
+            json.put("upper", upper);
+            if (fixed)
+                json.put("fixed", true);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Admission control in front of the execution engine. At most `concurrency` requests are dispatched at once,
+ * the others wait in a bounded priority queue: requests of transactions that already started are served first
+ * so open transactions finish and release their connections, then interactive requests, then batch requests,
+ * each in arrival order. When the queue is full new work is refused at once with an "overloaded" error for its
+ * msgId. Requests of open transactions and requests finishing a transaction are never refused.
+ * @author DarkJ24
+ */
+public class AdmissionController {
+
+    public static final String PRIORITY_INTERACTIVE = "interactive";
+    public static final String PRIORITY_BATCH = "batch";
+    public static final String ERROR_OVERLOADED = "OVERLOADED";
+
+    private static final int CLASS_TRANSACTION = 0;
+    private static final int CLASS_INTERACTIVE = 1;
+    private static final int CLASS_BATCH = 2;
+
+    /**
+     * Runs an admitted request, done() must be called when it finishes
+     */
+    public interface Dispatcher {
+        void dispatch(SQLRequest request);
+    }
+
+    private int concurrency;
+    private final int maxQueued;
+    private final Dispatcher dispatcher;
+    private final PriorityQueue<Queued> queue = new PriorityQueue<Queued>();
+    private final HashMap<Integer, TransactionState> transactions = new HashMap<Integer, TransactionState>();
+    private int inFlight = 0;
+    private long sequence = 0;
+    private long admitted = 0;
+    private long rejected = 0;
+
+    /**
+     * Constructor for AdmissionController
+     * @param concurrency The number of requests dispatched at once
+     * @param maxQueued The maximum number of requests waiting to be dispatched
+     * @param dispatcher Runs the admitted requests
+     */
+    public AdmissionController(int concurrency, int maxQueued, Dispatcher dispatcher) {
+        this.concurrency = concurrency;
+        this.maxQueued = maxQueued;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Dispatches the request, queues it or refuses it if the queue is full
+     * @param request The request to admit
+     * @return false if the request was refused, its overloaded error is already sent
+     */
+    public boolean admit(SQLRequest request) {
+        boolean dispatchNow = false;
+        synchronized (this) {
+            TransactionState transaction = null;
+            int priorityClass = PRIORITY_BATCH.equals(request.priority) ? CLASS_BATCH : CLASS_INTERACTIVE;
+            if (request.transId != -1) {
+                transaction = transactions.get(request.transId);
+                if (transaction != null) {
+                    // Keep the order of the transaction: while earlier requests of it are queued, use their class
+                    priorityClass = transaction.queued > 0 ? transaction.priorityClass : CLASS_TRANSACTION;
+                }
+            }
+            boolean mayReject = transaction == null && !request.finishTrans;
+            if (inFlight < concurrency && queue.isEmpty()) {
+                inFlight++;
+                dispatchNow = true;
+            } else if (mayReject && queue.size() >= maxQueued) {
+                rejected++;
+                sendOverloaded(request);
+                return false;
+            } else {
+                queue.add(new Queued(request, priorityClass, sequence++));
+            }
+            admitted++;
+            if (request.transId != -1) {
+                if (transaction == null) {
+                    transaction = new TransactionState();
+                    transactions.put(request.transId, transaction);
+                }
+                transaction.priorityClass = priorityClass;
+                if (!dispatchNow)
+                    transaction.queued++;
+                else if (request.finishTrans)
+                    transactions.remove(request.transId);
+            }
+        }
+        if (dispatchNow)
+            dispatcher.dispatch(request);
+        return true;
+    }
+
+    /**
+     * Called when a dispatched request finishes, dispatches the next queued request unless the concurrency
+     * was lowered below the requests in flight
+     */
+    public void done() {
+        SQLRequest next;
+        synchronized (this) {
+            next = inFlight > concurrency ? null : pollNext();
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+        }
+        dispatcher.dispatch(next);
+    }
+
+    /**
+     * Changes the number of requests dispatched at once at runtime (see AdaptiveSizer), dispatching the queued
+     * requests a higher concurrency lets in. A lower concurrency takes effect as the requests in flight finish.
+     * @param concurrency The number of requests dispatched at once
+     */
+    public void setConcurrency(int concurrency) {
+        List<SQLRequest> dispatch = new ArrayList<SQLRequest>();
+        synchronized (this) {
+            this.concurrency = concurrency;
+            while (inFlight < concurrency) {
+                SQLRequest next = pollNext();
+                if (next == null)
+                    break;
+                inFlight++;
+                dispatch.add(next);
+            }
+        }
+        for (SQLRequest request : dispatch)
+            dispatcher.dispatch(request);
+    }
+
+    /**
+     * Forgets the admission state of a transaction that ended without a request finishing it (reaped, or
+     * rolled back for a client that disconnected), its later requests are admitted like new work again
+     * @param transId The bridge-wide transaction id
+     */
+    public synchronized void forget(int transId) {
+        transactions.remove(transId);
+    }
+
+    /**
+     * Takes the next queued request, called holding the lock
+     * @return The request, null if none is queued
+     */
+    private SQLRequest pollNext() {
+        Queued next = queue.poll();
+        if (next == null)
+            return null;
+        SQLRequest request = next.request;
+        if (request.transId != -1) {
+            TransactionState transaction = transactions.get(request.transId);
+            if (transaction != null) {
+                transaction.queued--;
+                if (request.finishTrans)
+                    transactions.remove(request.transId);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Gets the number of requests waiting to be dispatched
+     * @return The number of queued requests
+     */
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of dispatched requests that have not finished
+     * @return The number of requests in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Gets the number of admitted requests
+     * @return The number of admitted requests
+     */
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * Gets the number of requests refused because the queue was full
+     * @return The number of refused requests
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Sends the overloaded error for a refused request
+     * @param request The refused request
+     */
+    private void sendOverloaded(SQLRequest request) {
+        JSONObject response = new JSONObject();
+        response.put("msgId", request.msgId);
+        if (request.transId != -1)
+            response.put("transId", request.clientTransId);
+        response.put("result", new JSONArray());
+        response.put("error", "The bridge is overloaded, " + queue.size() + " requests are already waiting");
+        response.put("errorCode", ERROR_OVERLOADED);
+        response.put("javaStartTime", request.javaStartTime);
+        response.put("javaEndTime", System.currentTimeMillis());
+        request.writer.write(response.toJSONString());
+    }
+
+    /**
+     * The admission state of a transaction with requests queued or dispatched
+     */
+    private static class TransactionState {
+        int priorityClass;
+        int queued;
+    }
+
+    /**
+     * A request waiting in the queue, ordered by priority class and then by arrival
+     */
+    private static class Queued implements Comparable<Queued> {
+        final SQLRequest request;
+        final int priorityClass;
+        final long sequence;
+
+        Queued(SQLRequest request, int priorityClass, long sequence) {
+            this.request = request;
+            this.priorityClass = priorityClass;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Queued other) {
+            if (priorityClass != other.priorityClass)
+                return priorityClass < other.priorityClass ? -1 : 1;
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The optional settings of the bridge, received after the required arguments as name=value pairs
+ * (for example executionMode=virtual). Settings that are not given keep their default values.
+ * @author DarkJ24
+ */
+public class BridgeOptions {
+
+    private final Map<String, String> values = new HashMap<String, String>();
+
+    /**
+     * Creates the options from the name=value arguments
+     * @param args The arguments
+     * @param offset The position of the first option in the arguments
+     * @return The options
+     * @throws IllegalArgumentException Thrown if an argument is not a name=value pair
+     */
+    public static BridgeOptions parse(String[] args, int offset) {
+        BridgeOptions options = new BridgeOptions();
+        for (int i = offset; i < args.length; i++) {
+            int equals = args[i].indexOf('=');
+            if (equals <= 0)
+                throw new IllegalArgumentException("Expecting an option as name=value: " + args[i]);
+            options.values.put(args[i].substring(0, equals), args[i].substring(equals + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Gets a string option
+     * @param name The name of the option
+     * @param defaultValue The value if the option was not given
+     * @return The value of the option
+     */
+    public String getString(String name, String defaultValue) {
+        String value = values.get(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    /**
+     * Gets an integer option
+     * @param name The name of the option
+     * @param defaultValue The value if the option was not given
+     * @return The value of the option
+     */
+    public int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Gets a long option
+     * @param name The name of the option
+     * @param defaultValue The value if the option was not given
+     * @return The value of the option
+     */
+    public long getLong(String name, long defaultValue) {
+        String value = values.get(name);
+        return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value);
+    }
+
+    /**
+     * Gets a boolean option
+     * @param name The name of the option
+     * @param defaultValue The value if the option was not given
+     * @return The value of the option
+     */
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = values.get(name);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minidev.json.JSONObject;
+
+/**
+ * Serves the bridge to other processes on a Unix domain socket (Java 16+) or a TCP port, besides the
+ * stdin/stdout of the parent process, so many Node.js processes share one JVM and its pools. Every
+ * client speaks the same protocol as stdin/stdout: after a "connected" line it sends one json request
+ * per line and receives the json frames of the responses, one per line. The address is given with the
+ * listen option: "unix:/path/to/socket" (or just the path), "tcp:port" (loopback) or "tcp:host:port".
+ * Once the parent process closes stdin the bridge exits when its last client disconnects, so a bridge
+ * left behind by a crashed parent does not hold its connections forever, unless it runs detached.
+ * @author DarkJ24
+ */
+public class BridgeServer {
+
+    public static final String UNIX_PREFIX = "unix:";
+    public static final String TCP_PREFIX = "tcp:";
+
+    private final ServerSocketChannel channel;
+    private final String address;
+    private final String socketPath; // The socket file to delete on shutdown, null for TCP
+    private final SybaseDB db;
+    private final boolean detached;
+    private final ConcurrentHashMap<Integer, ClientSession> sessions = new ConcurrentHashMap<Integer, ClientSession>();
+    private final AtomicInteger sessionIds = new AtomicInteger();
+    private final AtomicInteger bridgeIds = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean parentClosed = false;
+
+    /**
+     * Opens the server socket
+     * @param address The listen address, see the class comment
+     * @param db The database the requests of the clients run on
+     * @param detached Indicates if the bridge keeps running after stdin closes and the last client leaves
+     * @return The server, the clients are accepted once it is started
+     * @throws IOException Thrown if the address is invalid or can not be bound
+     */
+    public static BridgeServer open(String address, SybaseDB db, boolean detached) throws IOException {
+        if (address.startsWith(TCP_PREFIX)) {
+            String hostPort = address.substring(TCP_PREFIX.length());
+            int colon = hostPort.lastIndexOf(':');
+            InetSocketAddress socketAddress;
+            try {
+                socketAddress = colon < 0
+                    ? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(hostPort))
+                    : new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Expecting the listen address as tcp:port or tcp:host:port: " + address);
+            }
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.bind(socketAddress);
+            return new BridgeServer(channel, address, null, db, detached);
+        }
+        String path = address.startsWith(UNIX_PREFIX) ? address.substring(UNIX_PREFIX.length()) : address;
+        return new BridgeServer(openUnix(path), address, path, db, detached);
+    }
+
+    /**
+     * Opens a Unix domain server socket through reflection, the bridge is still built for Java 8
+     * @param path The path of the socket file, a file left by a bridge that was killed is replaced
+     * @return The bound server socket
+     * @throws IOException Thrown if the JVM has no Unix domain sockets or the path can not be bound
+     */
+    private static ServerSocketChannel openUnix(String path) throws IOException {
+        SocketAddress socketAddress;
+        ServerSocketChannel channel;
+        try {
+            Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+            socketAddress = (SocketAddress) addressClass.getMethod("of", String.class).invoke(null, path);
+            channel = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            throw new IOException(ex.getCause());
+        } catch (ReflectiveOperationException | IllegalArgumentException ex) {
+            throw new IOException("Unix domain sockets need Java 16 or newer, running on Java " + System.getProperty("java.version") + ", use a tcp: listen address");
+        }
+        Files.deleteIfExists(Paths.get(path));
+        channel.bind(socketAddress);
+        return channel;
+    }
+
+    private BridgeServer(ServerSocketChannel channel, String address, String socketPath, SybaseDB db, boolean detached) {
+        this.channel = channel;
+        this.address = address;
+        this.socketPath = socketPath;
+        this.db = db;
+        this.detached = detached;
+        // Not a daemon, the bridge keeps serving its clients after the parent process closes stdin
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "BridgeServer");
+    }
+
+    /**
+     * Starts accepting clients
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Accepts the clients, each one is served by its ClientSession
+     */
+    private void acceptLoop() {
+        while (running) {
+            SocketChannel client;
+            try {
+                client = channel.accept();
+            } catch (ClosedChannelException ex) {
+                return; // Shut down
+            } catch (IOException ex) {
+                continue; // The client went away before it was accepted
+            }
+            accepted.incrementAndGet();
+            ClientSession session = new ClientSession(sessionIds.incrementAndGet(), client, this, db);
+            sessions.put(session.getId(), session);
+            session.start();
+        }
+    }
+
+    /**
+     * Gets a new bridge-wide transaction or bulk-load id for a client. The ids of the clients are negative
+     * (below -1) so they never collide with the ids sent by the parent process on stdin, which count up from 0.
+     * @return The id
+     */
+    int nextBridgeId() {
+        int sequence = bridgeIds.getAndIncrement() & Integer.MAX_VALUE;
+        return -2 - sequence % (Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Forgets a client once its session is closed
+     * @param session The session of the client
+     */
+    void closed(ClientSession session) {
+        sessions.remove(session.getId(), session);
+        exitIfUnused();
+    }
+
+    /**
+     * Called when the parent process closed stdin, the bridge exits once no client is connected
+     */
+    public void parentClosed() {
+        parentClosed = true;
+        exitIfUnused();
+    }
+
+    /**
+     * Exits the bridge (running the shutdown hook) if the parent is gone and no client is connected
+     */
+    private void exitIfUnused() {
+        if (parentClosed && !detached && running && sessions.isEmpty())
+            System.exit(0);
+    }
+
+    /**
+     * Gets the counters as json
+     * @return The listen address, the clients connected and the clients accepted since the bridge started
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("address", address);
+        json.put("clients", sessions.size());
+        json.put("accepted", accepted.get());
+        return json;
+    }
+
+    /**
+     * Stops accepting clients, closes the connected ones and removes the socket file
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            //Ignore
+        }
+        for (ClientSession session : sessions.values())
+            session.close();
+        if (socketPath != null) {
+            try {
+                Files.deleteIfExists(Paths.get(socketPath));
+            } catch (IOException ex) {
+                //Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import net.minidev.json.JSONObject;
+
+/**
+ * The latency histograms of the stages a request goes through in the bridge, so a slow request can be
+ * attributed to the stage that was slow: parsing the message, waiting to run (admission queue, executor
+ * and transaction lane), getting a connection from the pool, executing the statement on the server,
+ * fetching the rows, serializing them to json and waiting in the ResponseWriter until the response is
+ * encoded for stdout. The stages are recorded by the classes that run them, a "stats" request returns them.
+ * @author DarkJ24
+ */
+public class BridgeStats {
+
+    final LatencyHistogram parse = new LatencyHistogram(); // Parsing the request message, see StdInputReader
+    final LatencyHistogram queueWait = new LatencyHistogram(); // From parsed until a thread starts the request
+    final LatencyHistogram poolAcquire = new LatencyHistogram(); // Getting the connection from the pool
+    final LatencyHistogram execute = new LatencyHistogram(); // Executing the statement or batch until its first result
+    final LatencyHistogram fetch = new LatencyHistogram(); // Time in ResultSet.next per result set
+    final LatencyHistogram serialize = new LatencyHistogram(); // Converting the rows of a result set to json
+    final LatencyHistogram write = new LatencyHistogram(); // From queued in the ResponseWriter until encoded
+    private final long started = System.currentTimeMillis();
+
+    /**
+     * Gets the histograms of the stages as json, the latencies are in microseconds
+     * @return The json object with one entry per stage
+     */
+    public JSONObject toJSON() {
+        JSONObject stages = new JSONObject();
+        stages.put("parse", parse.toJSON());
+        stages.put("queueWait", queueWait.toJSON());
+        stages.put("poolAcquire", poolAcquire.toJSON());
+        stages.put("execute", execute.toJSON());
+        stages.put("fetch", fetch.toJSON());
+        stages.put("serialize", serialize.toJSON());
+        stages.put("write", write.toJSON());
+        return stages;
+    }
+
+    /**
+     * Gets the time the bridge has been collecting stats
+     * @return The uptime in milliseconds
+     */
+    public long getUptime() {
+        return System.currentTimeMillis() - started;
+    }
+
+    /**
+     * Records the time since a start time in a histogram
+     * @param histogram The histogram of the stage
+     * @param startNanos The System.nanoTime when the stage started
+     * @return The current System.nanoTime, the start of the next stage
+     */
+    public static long since(LatencyHistogram histogram, long startNanos) {
+        long now = System.nanoTime();
+        histogram.record(now - startNanos);
+        return now;
+    }
+}
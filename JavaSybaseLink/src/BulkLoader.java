@@ -0,0 +1,334 @@
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import net.minidev.json.JSONObject;
+
+/**
+ * Bulk-load sessions. Node.js opens a session for a table (bulkOpen), streams frames of rows (bulkRows)
+ * and closes it (bulkClose). Each session has a dedicated connection from a small pool created with
+ * jConnect's ENABLE_BULK_LOAD, so the batched inserts of the session are sent as bulk copies. The rows
+ * are added to the batch as they arrive and sent every batchSize rows, and the session commits every
+ * checkpointRows rows, so neither the bridge nor the server hold more than a batch whatever the size
+ * of the load. The frames of a session run in order in its lane, every frame is acknowledged with
+ * the rows received, the rows committed and the rows per second, which Node.js uses for flow control.
+ * @author DarkJ24
+ */
+public class BulkLoader {
+
+    public static final String TYPE_OPEN = "bulkOpen";
+    public static final String TYPE_ROWS = "bulkRows";
+    public static final String TYPE_CLOSE = "bulkClose";
+    public static final String DEFAULT_MODE = "BCP"; // The ENABLE_BULK_LOAD mode of the connections
+    public static final int DEFAULT_SESSIONS = 2; // The maximum number of sessions loading at once
+    public static final long DEFAULT_CHECKPOINT_ROWS = 100000;
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_#@][A-Za-z0-9_#@$.]*");
+
+    private final String host;
+    private final int port;
+    private final String dbName;
+    private final String username;
+    private final String password;
+    private final int maxSessions;
+    private final int connectionTimeout;
+    private final String mode;
+    private final String dataSourceClass;
+    private final TransactionLanes lanes;
+    private final ConcurrentHashMap<Integer, Session> sessions = new ConcurrentHashMap<Integer, Session>();
+    private final AtomicLong rows = new AtomicLong();
+    private HikariDataSource dataSource;
+
+    /**
+     * Constructor for BulkLoader, the connections are only created when the first session opens
+     * @param host The host of the database
+     * @param port The port of the database
+     * @param dbName The name of the database
+     * @param username The username to connect to the database
+     * @param password The password to connect to the database
+     * @param maxSessions The maximum number of sessions loading at once
+     * @param connectionTimeout The timeout to wait for a connection
+     * @param mode The ENABLE_BULK_LOAD mode (BCP, LOG_BCP, ARRAYINSERT or ARRAYINSERT_WITH_MINIMAL_LOG)
+     * @param dataSourceClass The JDBC DataSource class of the connections, see SybaseDB.DEFAULT_DATA_SOURCE
+     * @param executor The executor to run the frames on
+     */
+    public BulkLoader(String host, int port, String dbName, String username, String password, int maxSessions, int connectionTimeout, String mode, String dataSourceClass, Executor executor) {
+        this.host = host;
+        this.port = port;
+        this.dbName = dbName;
+        this.username = username;
+        this.password = password;
+        this.maxSessions = maxSessions;
+        this.connectionTimeout = connectionTimeout;
+        this.mode = mode;
+        this.dataSourceClass = dataSourceClass;
+        this.lanes = new TransactionLanes(executor);
+    }
+
+    /**
+     * Indicates if a request type is a bulk-load request
+     * @param type The request type
+     * @return true for bulkOpen, bulkRows and bulkClose
+     */
+    public static boolean isBulkType(String type) {
+        return TYPE_OPEN.equals(type) || TYPE_ROWS.equals(type) || TYPE_CLOSE.equals(type);
+    }
+
+    /**
+     * Runs a bulk-load request after the previous requests of its session
+     * @param request The bulkOpen, bulkRows or bulkClose request
+     */
+    public void submit(final SQLRequest request) {
+        lanes.submit(request.bulkId, new Callable<Object>() {
+            @Override
+            public Object call() {
+                request.writer.write(execute(request));
+                return null;
+            }
+        }, TYPE_CLOSE.equals(request.type));
+    }
+
+    /**
+     * Gets the number of open sessions
+     * @return The number of sessions
+     */
+    public int getSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Gets the number of rows received by every session since the bridge started
+     * @return The number of rows
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    /**
+     * Rolls back the open sessions and closes the connections
+     */
+    public synchronized void shutdown() {
+        for (Session session : sessions.values())
+            session.abort();
+        sessions.clear();
+        if (dataSource != null)
+            dataSource.close();
+    }
+
+    /**
+     * Executes a bulk-load request
+     * @param request The request
+     * @return The json response
+     */
+    private String execute(SQLRequest request) {
+        JSONObject response = new JSONObject();
+        response.put("msgId", request.msgId);
+        JSONObject result = new JSONObject();
+        result.put("bulkId", request.clientBulkId);
+        Session session = sessions.get(request.bulkId);
+        try {
+            if (TYPE_OPEN.equals(request.type)) {
+                if (session != null)
+                    throw new SQLException("Bulk load session " + request.clientBulkId + " is already open");
+                session = open(request);
+                sessions.put(request.bulkId, session);
+            } else if (session == null) {
+                throw new SQLException("Bulk load session " + request.clientBulkId + " is not open");
+            } else if (session.error != null) {
+                throw new SQLException("Bulk load session " + request.clientBulkId + " failed: " + session.error);
+            } else if (TYPE_ROWS.equals(request.type)) {
+                long before = session.rows;
+                try {
+                    session.add(request.batchParams);
+                } finally {
+                    rows.addAndGet(session.rows - before);
+                }
+            } else if (request.abort) {
+                session.abort();
+            } else {
+                session.finish();
+            }
+        } catch (Exception ex) {
+            response.put("error", ex.getMessage());
+            if (session != null && session.error == null) {
+                session.error = ex.getMessage();
+                session.abort();
+            }
+        }
+        if (TYPE_CLOSE.equals(request.type))
+            sessions.remove(request.bulkId);
+        if (session != null)
+            session.progress(result);
+        response.put("result", result);
+        response.put("javaStartTime", request.javaStartTime);
+        response.put("javaEndTime", System.currentTimeMillis());
+        return response.toJSONString();
+    }
+
+    /**
+     * Opens a session, the insert of the columns of the table is prepared on a bulk-load connection
+     * @param request The bulkOpen request with the table and its columns
+     * @return The session
+     * @throws SQLException Thrown if the table or columns are not valid or there is an error preparing the insert
+     */
+    private Session open(SQLRequest request) throws SQLException {
+        if (request.table == null || !IDENTIFIER.matcher(request.table).matches())
+            throw new SQLException("Invalid bulk load table: " + request.table);
+        if (request.columns == null || request.columns.length == 0)
+            throw new SQLException("A bulk load needs the columns of the rows");
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(request.table).append(" (");
+        for (int c = 0; c < request.columns.length; c++) {
+            if (!IDENTIFIER.matcher(request.columns[c]).matches())
+                throw new SQLException("Invalid bulk load column: " + request.columns[c]);
+            sql.append(c > 0 ? ", " : "").append(request.columns[c]);
+        }
+        sql.append(") VALUES (");
+        for (int c = 0; c < request.columns.length; c++)
+            sql.append(c > 0 ? ", ?" : "?");
+        sql.append(')');
+        Connection conn = getDataSource().getConnection();
+        try {
+            PreparedStatement stmt = conn.prepareStatement(sql.toString());
+            return new Session(conn, stmt,
+                request.checkpointRows > 0 ? request.checkpointRows : DEFAULT_CHECKPOINT_ROWS,
+                request.batchSize > 0 ? request.batchSize : DEFAULT_BATCH_SIZE);
+        } catch (SQLException ex) {
+            conn.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the pool of bulk-load connections, creating it the first time
+     * @return The data source
+     */
+    private synchronized HikariDataSource getDataSource() {
+        if (dataSource == null) {
+            HikariConfig config = new HikariConfig();
+            config.setDataSourceClassName(dataSourceClass);
+            config.addDataSourceProperty("serverName", host);
+            config.addDataSourceProperty("portNumber", port);
+            config.addDataSourceProperty("user", username);
+            config.addDataSourceProperty("password", password);
+            config.addDataSourceProperty("databaseName", dbName);
+            config.addDataSourceProperty("ENABLE_BULK_LOAD", mode);
+            config.setConnectionTimeout(connectionTimeout);
+            config.setMaximumPoolSize(maxSessions);
+            config.setMinimumIdle(0);
+            config.setAutoCommit(false);
+            config.setPoolName("BulkLoad");
+            dataSource = new HikariDataSource(config);
+        }
+        return dataSource;
+    }
+
+    /**
+     * A bulk-load session with its connection and prepared insert
+     */
+    private static class Session {
+        final Connection conn;
+        final PreparedStatement stmt;
+        final long checkpointRows;
+        final int batchSize;
+        final long started = System.nanoTime();
+        long rows = 0; // Rows received
+        long committed = 0; // Rows committed
+        int batched = 0; // Rows added to the batch and not yet sent
+        boolean checkpoint = false; // Indicates if the last frame committed a checkpoint
+        String error;
+
+        Session(Connection conn, PreparedStatement stmt, long checkpointRows, int batchSize) {
+            this.conn = conn;
+            this.stmt = stmt;
+            this.checkpointRows = checkpointRows;
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Adds the rows of a frame, sending the batch every batchSize rows and committing every checkpointRows rows
+         * @param frame The rows of the frame
+         * @throws SQLException Thrown if a row can not be bound or the server refuses a batch
+         */
+        void add(Object[][] frame) throws SQLException {
+            checkpoint = false;
+            if (frame == null)
+                return;
+            for (Object[] row : frame) {
+                SQLParam.bind(stmt, row);
+                stmt.addBatch();
+                rows++;
+                if (++batched >= batchSize)
+                    sendBatch();
+                if (rows - committed >= checkpointRows) {
+                    sendBatch();
+                    conn.commit();
+                    committed = rows;
+                    checkpoint = true;
+                }
+            }
+        }
+
+        /**
+         * Sends the rest of the batch, commits and closes the connection
+         * @throws SQLException Thrown if the server refuses the batch or the commit
+         */
+        void finish() throws SQLException {
+            sendBatch();
+            conn.commit();
+            committed = rows;
+            checkpoint = true;
+            close();
+        }
+
+        /**
+         * Rolls back the rows after the last checkpoint and closes the connection
+         */
+        void abort() {
+            try {
+                conn.rollback();
+            } catch (Exception ex) {
+                //Ignore
+            }
+            close();
+        }
+
+        /**
+         * Adds the progress of the session to a response
+         * @param result The result of the response
+         */
+        void progress(JSONObject result) {
+            double seconds = (System.nanoTime() - started) / 1e9;
+            result.put("rows", rows);
+            result.put("committed", committed);
+            result.put("checkpoint", checkpoint);
+            result.put("rowsPerSecond", seconds > 0 ? Math.round(rows / seconds) : 0);
+        }
+
+        private void sendBatch() throws SQLException {
+            if (batched == 0)
+                return;
+            stmt.executeBatch();
+            batched = 0;
+        }
+
+        private void close() {
+            try {
+                stmt.close();
+            } catch (Exception ex) {
+                //Ignore
+            }
+            try {
+                conn.close();
+            } catch (Exception ex) {
+                //Ignore
+            }
+        }
+    }
+}
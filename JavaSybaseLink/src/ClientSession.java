@@ -0,0 +1,224 @@
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A client of the BridgeServer. Its requests are read on its own thread with a StdInputReader and its
+ * responses are written by its own ResponseWriter, while they run on the shared pools and executor of
+ * the SybaseDB. The msgIds of the client stay as they are (InFlightRequests tracks them per client), but
+ * its transIds, bulkIds and cursorIds are replaced with bridge-wide ids, kept in clientTransId, clientBulkId
+ * and clientCursorId for the responses. When the client disconnects its requests are cancelled, its open
+ * transactions are rolled back, its bulk loads are aborted and its cursors are closed, so a crashed Node.js
+ * process leaves no connection behind.
+ * @author DarkJ24
+ */
+public class ClientSession implements SQLRequestListener {
+
+    public static final String CONNECTED = "connected";
+    public static final long CLOSE_TIMEOUT_MS = 1000; // The time to write the queued responses when closing
+
+    private final int id;
+    private final SocketChannel channel;
+    private final BridgeServer server;
+    private final SybaseDB db;
+    private final ResponseWriter writer;
+    private final StdInputReader input;
+    private final Thread thread;
+    // Guarded by the session: the reader thread maps the ids, close() may run on the thread of the shutdown hook
+    private final Map<Integer, Integer> transactions = new HashMap<Integer, Integer>(); // The open transactions, client id to bridge-wide id
+    private final Map<Integer, Integer> bulkLoads = new HashMap<Integer, Integer>(); // The open bulk loads, client id to bridge-wide id
+    private final Map<Integer, Integer> cursors = new HashMap<Integer, Integer>(); // The open cursors, client id to bridge-wide id
+    private int closeMsgId = 0; // The msgIds of the requests sent when closing, negative so they never collide with the client
+    private boolean closed = false;
+
+    /**
+     * Constructor for ClientSession
+     * @param id The id of the client, unique for the life of the bridge
+     * @param channel The connected channel of the client
+     * @param server The server that accepted the client
+     * @param db The database the requests run on
+     */
+    public ClientSession(int id, SocketChannel channel, BridgeServer server, SybaseDB db) {
+        this.id = id;
+        this.channel = channel;
+        this.server = server;
+        this.db = db;
+        this.writer = new ResponseWriter(channel, db.getStats().write, "ResponseWriter-client-" + id, false, db.getWriterQueueBytes());
+        this.input = new StdInputReader(Channels.newInputStream(channel));
+        this.input.setParseTimes(db.getStats().parse);
+        this.input.addListener(this);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "ClientSession-" + id);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Gets the id of the client
+     * @return The id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Starts serving the client on its own thread
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Sends the connected line and runs the requests of the client until it disconnects
+     */
+    private void serve() {
+        writer.start();
+        writer.write(CONNECTED);
+        try {
+            input.readLoop();
+        } catch (IOException ex) {
+            //Ignore, the client went away
+        }
+        close();
+    }
+
+    /**
+     * Called with a request of the client
+     * @param request The request
+     */
+    public void sqlRequest(SQLRequest request) {
+        synchronized (this) {
+            if (closed)
+                return; // The cleanup of the session already ran
+            accept(request);
+        }
+        db.execSQL(request);
+    }
+
+    /**
+     * Called with all the requests read together from the client
+     * @param requests The requests, in the order they were received
+     */
+    public void sqlRequests(List<SQLRequest> requests) {
+        synchronized (this) {
+            if (closed)
+                return; // The cleanup of the session already ran
+            for (SQLRequest request : requests)
+                accept(request);
+        }
+        db.execSQL(requests);
+    }
+
+    /**
+     * Marks a request as coming from this client and replaces its transId, bulkId and cursorId with bridge-wide ids,
+     * called holding the lock of the session
+     * @param request The request
+     */
+    private void accept(SQLRequest request) {
+        request.session = this;
+        request.writer = writer;
+        if (request.transId != -1) {
+            request.transId = bridgeId(transactions, request.clientTransId);
+            if (request.finishTrans)
+                transactions.remove(request.clientTransId);
+        }
+        if (BulkLoader.isBulkType(request.type)) {
+            request.bulkId = bridgeId(bulkLoads, request.clientBulkId);
+            if (BulkLoader.TYPE_CLOSE.equals(request.type))
+                bulkLoads.remove(request.clientBulkId);
+        }
+        if (CursorManager.isCursorType(request.type)) {
+            request.cursorId = bridgeId(cursors, request.clientCursorId);
+            if (CursorManager.TYPE_CLOSE.equals(request.type))
+                cursors.remove(request.clientCursorId);
+        }
+    }
+
+    /**
+     * Gets the bridge-wide id of a transaction, bulk load or cursor of the client, a new one the first time
+     * @param ids The ids of the open transactions, bulk loads or cursors
+     * @param clientId The id sent by the client
+     * @return The bridge-wide id
+     */
+    private int bridgeId(Map<Integer, Integer> ids, int clientId) {
+        Integer bridgeId = ids.get(clientId);
+        if (bridgeId == null) {
+            bridgeId = server.nextBridgeId();
+            ids.put(clientId, bridgeId);
+        }
+        return bridgeId;
+    }
+
+    /**
+     * Closes the session: cancels the requests of the client, rolls back its open transactions, aborts
+     * its bulk loads and closes its cursors (after their queued requests), then closes the connection
+     */
+    synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        db.inFlight.cancelAll(this);
+        List<SQLRequest> cleanup = new ArrayList<SQLRequest>();
+        for (Map.Entry<Integer, Integer> transaction : transactions.entrySet()) {
+            SQLRequest rollback = closeRequest();
+            rollback.sql = "ROLLBACK TRANSACTION";
+            rollback.clientTransId = transaction.getKey();
+            rollback.transId = transaction.getValue();
+            rollback.finishTrans = true;
+            cleanup.add(rollback);
+        }
+        for (Map.Entry<Integer, Integer> bulkLoad : bulkLoads.entrySet()) {
+            SQLRequest abort = closeRequest();
+            abort.type = BulkLoader.TYPE_CLOSE;
+            abort.clientBulkId = bulkLoad.getKey();
+            abort.bulkId = bulkLoad.getValue();
+            abort.abort = true;
+            cleanup.add(abort);
+        }
+        for (Map.Entry<Integer, Integer> cursor : cursors.entrySet()) {
+            SQLRequest close = closeRequest();
+            close.type = CursorManager.TYPE_CLOSE;
+            close.clientCursorId = cursor.getKey();
+            close.cursorId = cursor.getValue();
+            cleanup.add(close);
+        }
+        transactions.clear();
+        bulkLoads.clear();
+        cursors.clear();
+        writer.close(CLOSE_TIMEOUT_MS); // The responses of the cleanup requests are dropped
+        db.execSQL(cleanup);
+        for (SQLRequest request : cleanup) {
+            if (request.transId != -1)
+                db.admission.forget(request.transId); // The rollback is the last request of the transaction
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            //Ignore
+        }
+        server.closed(this);
+    }
+
+    /**
+     * Creates a request sent on behalf of the client when it disconnects
+     * @return The request
+     */
+    private SQLRequest closeRequest() {
+        SQLRequest request = new SQLRequest();
+        request.msgId = --closeMsgId;
+        request.transId = -1;
+        request.clientTransId = -1;
+        request.session = this;
+        request.writer = writer;
+        request.javaStartTime = System.currentTimeMillis();
+        request.receivedNanos = System.nanoTime();
+        return request;
+    }
+}
@@ -0,0 +1,168 @@
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * Reads the values of one column into json values. The codec of every column is chosen once per result set
+ * from its JDBC type, so the row loop reads each cell once with the typed getter of the column instead of
+ * looking up the type and calling getObject for every cell.
+ * @author DarkJ24
+ */
+public abstract class ColumnCodec {
+
+    public static final ColumnCodec INT = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            int val = rs.getInt(c);
+            return val == 0 && rs.wasNull() ? null : Integer.valueOf(val);
+        }
+    };
+
+    public static final ColumnCodec LONG = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            long val = rs.getLong(c);
+            return val == 0 && rs.wasNull() ? null : Long.valueOf(val);
+        }
+    };
+
+    public static final ColumnCodec DOUBLE = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            double val = rs.getDouble(c);
+            return val == 0 && rs.wasNull() ? null : Double.valueOf(val);
+        }
+    };
+
+    public static final ColumnCodec FLOAT = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            float val = rs.getFloat(c);
+            return val == 0 && rs.wasNull() ? null : Float.valueOf(val);
+        }
+    };
+
+    public static final ColumnCodec DECIMAL = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            return rs.getBigDecimal(c);
+        }
+    };
+
+    public static final ColumnCodec STRING = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            return rs.getString(c);
+        }
+    };
+
+    public static final ColumnCodec BIT = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            boolean val = rs.getBoolean(c);
+            return !val && rs.wasNull() ? null : Boolean.valueOf(val);
+        }
+    };
+
+    public static final ColumnCodec BINARY = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            return rs.getBytes(c);
+        }
+    };
+
+    public static final ColumnCodec TIMESTAMP = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            Timestamp val = rs.getTimestamp(c);
+            return val == null ? null : dates.timestamp(val.getTime());
+        }
+    };
+
+    public static final ColumnCodec TIME = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            Time val = rs.getTime(c);
+            return val == null ? null : dates.time(val.getTime());
+        }
+    };
+
+    public static final ColumnCodec OBJECT = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException {
+            return rs.getObject(c);
+        }
+    };
+
+    /**
+     * Reads the value of the column in the current row
+     * @param rs The result set positioned on the row
+     * @param c The column to read, starting at 1
+     * @param dates The encoder of the dates, timestamps and times
+     * @return The json value, null if the column is null
+     * @throws SQLException Thrown if there is an error reading the value
+     */
+    public abstract Object read(ResultSet rs, int c, IsoDateEncoder dates) throws SQLException;
+
+    /**
+     * Gets the codec of a JDBC type, getObject for the types without a specialized codec
+     * @param type The JDBC type of the column
+     * @return The codec
+     */
+    public static ColumnCodec forType(int type) {
+        switch (type) {
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return INT;
+            case Types.BIGINT:
+                return LONG;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                return DOUBLE;
+            case Types.REAL:
+                return FLOAT;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return DECIMAL;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return STRING;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BIT;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return BINARY;
+            case SybaseDB.TYPE_TIME_STAMP:
+            case SybaseDB.TYPE_DATE:
+                return TIMESTAMP;
+            case SybaseDB.TYPE_TIME:
+                return TIME;
+            default:
+                return OBJECT;
+        }
+    }
+
+    /**
+     * Gets the codecs of the columns of a result set, indexed from 1 like the JDBC columns
+     * @param meta The metadata of the result set
+     * @return The codecs
+     * @throws SQLException Thrown if there is an error reading the metadata
+     */
+    public static ColumnCodec[] forColumns(ResultSetMetaData meta) throws SQLException {
+        int colCount = meta.getColumnCount();
+        ColumnCodec[] codecs = new ColumnCodec[colCount+1];
+        for (int c = 1; c<colCount+1; c++)
+            codecs[c] = forType(meta.getColumnType(c));
+        return codecs;
+    }
+}
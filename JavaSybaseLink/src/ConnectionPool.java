@@ -2,16 +2,19 @@
 import com.sybase.jdbc4.jdbc.SybDataSource;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import java.sql.Connection;
 import java.sql.SQLException;
+import net.minidev.json.JSONObject;
 
 /**
  *
  * @author DarkJ24
  */
-public class ConnectionPool {
+public class ConnectionPool implements AdaptiveSizer.SizablePool {
     
     private final HikariDataSource dataSource;
+    private final StatementCache statementCache;
     
     /**
      * Creates a new ConnectionPool with the given parameters
@@ -27,17 +30,49 @@ public class ConnectionPool {
      * @param keepaliveTime The time to keep a connection alive
      * @param maxLifetime The maximum time a connection can be alive
      * @param autoCommit Indicates if autoCommit is on or not
+     * @param statementCacheSize The number of prepared statements kept open per connection
+     * @param dataSourceClass The JDBC DataSource class of the connections, see SybaseDB.DEFAULT_DATA_SOURCE
      * @return
      * @throws SQLException
      */
     public static ConnectionPool create(
       String host, int port, String dbName, String username, String password,
       int minConnections, int maxConnections,
-      int connectionTimeout, int idleTimeout, int keepaliveTime, int maxLifetime, boolean autoCommit
+      int connectionTimeout, int idleTimeout, int keepaliveTime, int maxLifetime, boolean autoCommit,
+      int statementCacheSize, String dataSourceClass
+      ) throws SQLException {
+        return create(host, port, dbName, username, password, minConnections, maxConnections, connectionTimeout, idleTimeout, keepaliveTime, maxLifetime, autoCommit, statementCacheSize, dataSourceClass, false);
+    }
+
+    /**
+     * Creates a new ConnectionPool with the given parameters
+     * @param host The host of the database
+     * @param port The port of the database
+     * @param dbName The name of the database
+     * @param username The username to connect to the database
+     * @param password The password to connect to the database
+     * @param minConnections The minimum number of connections in the pool
+     * @param maxConnections The maximum number of connections in the pool
+     * @param connectionTimeout The timeout to wait for a connection
+     * @param idleTimeout The timeout for an idle connection
+     * @param keepaliveTime The time to keep a connection alive
+     * @param maxLifetime The maximum time a connection can be alive
+     * @param autoCommit Indicates if autoCommit is on or not
+     * @param statementCacheSize The number of prepared statements kept open per connection
+     * @param dataSourceClass The JDBC DataSource class of the connections, see SybaseDB.DEFAULT_DATA_SOURCE
+     * @param readOnly Indicates if the connections are read-only, the pool then starts even if the server is down
+     * @return
+     * @throws SQLException
+     */
+    public static ConnectionPool create(
+      String host, int port, String dbName, String username, String password,
+      int minConnections, int maxConnections,
+      int connectionTimeout, int idleTimeout, int keepaliveTime, int maxLifetime, boolean autoCommit,
+      int statementCacheSize, String dataSourceClass, boolean readOnly
       ) throws SQLException {
  
         HikariConfig config = new HikariConfig();
-        config.setDataSourceClassName("com.sybase.jdbc4.jdbc.SybDataSource");
+        config.setDataSourceClassName(dataSourceClass);
         config.addDataSourceProperty("serverName", host);
         config.addDataSourceProperty("portNumber", port);
         config.addDataSourceProperty("user", username);
@@ -50,14 +85,21 @@ public class ConnectionPool {
         config.setKeepaliveTime(keepaliveTime);
         config.setMaxLifetime(maxLifetime);
         config.setAutoCommit(autoCommit);
+        if (readOnly) {
+            config.setReadOnly(true);
+            config.setInitializationFailTimeout(-1); // A replica that is down is only marked down, see ReadReplica
+        }
+        if (statementCacheSize > 0)
+            config.addDataSourceProperty("DYNAMIC_PREPARE", "true"); // Prepare the cached statements on the server
         HikariDataSource ds = new HikariDataSource(config);
 
         // Return the ConnectionPool
-        return new ConnectionPool(ds);
+        return new ConnectionPool(ds, new StatementCache(statementCacheSize));
     }
     
-    private ConnectionPool(HikariDataSource ds) {
+    private ConnectionPool(HikariDataSource ds, StatementCache statementCache) {
         this.dataSource = ds;
+        this.statementCache = statementCache;
     }
     
     /**
@@ -68,6 +110,82 @@ public class ConnectionPool {
     public Connection getConnection() throws SQLException {
         return this.dataSource.getConnection();
     }
+
+    /**
+     * Gets the prepared statement for the sql from the statement cache of the connection, or prepares it
+     * @param connection The connection of the request
+     * @param sql The sql with ? parameters
+     * @return The cached statement, it must be given back with releaseStatement before the connection is closed
+     * @throws SQLException Thrown if there is an error preparing the statement
+     */
+    public StatementCache.Entry prepareStatement(Connection connection, String sql) throws SQLException {
+        return this.statementCache.prepare(connection, sql);
+    }
+
+    /**
+     * Gives a prepared statement back to the statement cache
+     * @param entry The cached statement
+     * @param failed Indicates if the request failed, the statement is then closed
+     */
+    public void releaseStatement(StatementCache.Entry entry, boolean failed) {
+        this.statementCache.release(entry, failed);
+    }
+
+    /**
+     * Gets the statement cache of the pool
+     * @return The statement cache
+     */
+    public StatementCache getStatementCache() {
+        return this.statementCache;
+    }
+    
+    /**
+     * Gets the gauges of the pool from its Hikari MXBean
+     * @return The active, idle, pending and total connections and the maximum size of the pool
+     */
+    public JSONObject getPoolStats() {
+        return poolStats(this.dataSource);
+    }
+
+    /**
+     * Gets the gauges of a Hikari pool
+     * @param dataSource The pool
+     * @return The active, idle, pending and total connections and the maximum size of the pool
+     */
+    static JSONObject poolStats(HikariDataSource dataSource) {
+        HikariPoolMXBean bean = dataSource.getHikariPoolMXBean();
+        if (bean == null)
+            return poolStats(0, 0, 0, dataSource.getMaximumPoolSize());
+        return poolStats(bean.getActiveConnections(), bean.getIdleConnections(), bean.getThreadsAwaitingConnection(), dataSource.getMaximumPoolSize());
+    }
+
+    /**
+     * Builds the gauges of a pool
+     * @param active The connections in use
+     * @param idle The connections waiting in the pool
+     * @param pending The threads waiting for a connection
+     * @param max The maximum size of the pool
+     * @return The json gauges
+     */
+    static JSONObject poolStats(int active, int idle, int pending, int max) {
+        JSONObject stats = new JSONObject();
+        stats.put("active", active);
+        stats.put("idle", idle);
+        stats.put("pending", pending);
+        stats.put("total", active + idle);
+        stats.put("max", max);
+        return stats;
+    }
+
+    /**
+     * Changes the maximum size of the pool at runtime through its Hikari config MXBean, see AdaptiveSizer
+     * @param size The new maximum size, connections above it are retired as they become idle
+     * @return true, the size was changed
+     */
+    public boolean setMaximumPoolSize(int size) {
+        this.dataSource.getHikariConfigMXBean().setMaximumPoolSize(size);
+        return true;
+    }
     
     /**
      * Shuts down the connection pool and closes all connections
@@ -10,12 +10,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import net.minidev.json.JSONObject;
 
 /**
  *
  * @author DarkJ24
  */
-public interface ConnectionPoolTransaction {
+public interface ConnectionPoolTransaction extends AdaptiveSizer.SizablePool {
     
     /**
      * Gets a connection from the pool or creates a new one if the pool is empty
@@ -31,6 +32,51 @@ public interface ConnectionPoolTransaction {
      * @throws SQLException Thrown if there is an error releasing the connection
      */
     public void releaseConnection(int transactionId) throws SQLException;
+
+    /**
+     * Rolls back a transaction left idle and releases its connection, its later requests fail with the reason
+     * until Node.js finishes it (see TransactionReaper)
+     * @param transactionId The transaction id to reap
+     * @param reason The error of the later requests of the transaction
+     * @return true if the transaction had a connection, a transaction without one has nothing to roll back
+     * @throws SQLException Thrown if there is an error rolling back or releasing the connection
+     */
+    public boolean reap(int transactionId, String reason) throws SQLException;
+
+    /**
+     * Gets the prepared statement for the sql from the statement cache of the connection, or prepares it
+     * @param connection The connection of the transaction
+     * @param sql The sql with ? parameters
+     * @return The cached statement, it must be given back with releaseStatement
+     * @throws SQLException Thrown if there is an error preparing the statement
+     */
+    public StatementCache.Entry prepareStatement(Connection connection, String sql) throws SQLException;
+
+    /**
+     * Gives a prepared statement back to the statement cache
+     * @param entry The cached statement
+     * @param failed Indicates if the request failed, the statement is then closed
+     */
+    public void releaseStatement(StatementCache.Entry entry, boolean failed);
+
+    /**
+     * Gets the statement cache of the pool
+     * @return The statement cache
+     */
+    public StatementCache getStatementCache();
+
+    /**
+     * Gets the gauges of the pool
+     * @return The active, idle, pending and total connections and the maximum size of the pool
+     */
+    public JSONObject getPoolStats();
+
+    /**
+     * Changes the maximum size of the pool at runtime, see AdaptiveSizer
+     * @param size The new maximum size
+     * @return true if the pool can be resized and was, false if its size is fixed
+     */
+    public boolean setMaximumPoolSize(int size);
     
     /**
      * Shuts down the connection pool and closes all connections
@@ -6,10 +6,11 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import net.minidev.json.JSONObject;
 
 /**
  *
@@ -21,7 +22,9 @@ public class ConnectionPoolTransaction1 implements ConnectionPoolTransaction {
     Properties props;
     private int transactionConnections;
     private List<Connection> availableConnections;
-    private HashMap<Integer, Connection> transactions = new HashMap<Integer, Connection>();
+    private final StatementCache statementCache;
+    private final ConcurrentHashMap<Integer, Connection> transactions = new ConcurrentHashMap<Integer, Connection>();
+    private final TransactionReaper.Tombstones reaped = new TransactionReaper.Tombstones();
     
     /**
      * Creates a new ConnectionPoolTransaction with the given parameters
@@ -31,11 +34,13 @@ public class ConnectionPoolTransaction1 implements ConnectionPoolTransaction {
      * @param username The username to connect to the database
      * @param password The password to connect to the database
      * @param transactionConnections The number of connections for transactions in the pool
+     * @param statementCacheSize The number of prepared statements kept open per connection
      * @return
      * @throws SQLException
      */
     public static ConnectionPoolTransaction1 create(
-      String host, int port, String dbName, String username, String password, int transactionConnections
+      String host, int port, String dbName, String username, String password, int transactionConnections,
+      int statementCacheSize
       ) throws SQLException, ClassNotFoundException, InstantiationException, IllegalAccessException {
  
         // Register the driver
@@ -48,6 +53,8 @@ public class ConnectionPoolTransaction1 implements ConnectionPoolTransaction {
         props.put("user", username);
 		props.put("password", password);
                 props.put("autoCommit", false);
+                if (statementCacheSize > 0)
+                        props.put("DYNAMIC_PREPARE", "true"); // Prepare the cached statements on the server
                 
         // Create the conections and add them to the pool
         List<Connection> pool = new ArrayList<>(transactionConnections);
@@ -56,7 +63,7 @@ public class ConnectionPoolTransaction1 implements ConnectionPoolTransaction {
         }
 
         // Return the ConnectionPool
-        return new ConnectionPoolTransaction1(url, props, pool, transactionConnections);
+        return new ConnectionPoolTransaction1(url, props, pool, transactionConnections, new StatementCache(statementCacheSize));
     }
     
     /**
@@ -65,13 +72,15 @@ public class ConnectionPoolTransaction1 implements ConnectionPoolTransaction {
      * @param props The properties of the connection (username and password)
      * @param pool The connection pool to use at the beginning
      * @param transactionConnections The number of connections for transactions in the pool
+     * @param statementCache The cache of prepared statements of the connections
      */
     private ConnectionPoolTransaction1(String url, Properties props, List<Connection> pool,
-      int transactionConnections) {
+      int transactionConnections, StatementCache statementCache) {
         this.url = url;
         this.props = props;
         this.availableConnections = pool;
         this.transactionConnections = transactionConnections;
+        this.statementCache = statementCache;
     }
 
     /**
@@ -99,6 +108,7 @@ public class ConnectionPoolTransaction1 implements ConnectionPoolTransaction {
 
         Connection connection = this.transactions.get(transactionId);
         if (connection == null) {
+            this.reaped.check(transactionId);
             try {
                 connection = this.availableConnections.remove(0);
             } catch (NoSuchElementException e) {
@@ -127,6 +137,7 @@ public class ConnectionPoolTransaction1 implements ConnectionPoolTransaction {
      * @throws SQLException Thrown if there is an error releasing the connection
      */
     public void releaseConnection(int transactionId) throws SQLException {
+        this.reaped.remove(transactionId);
         Connection connection = this.transactions.get(transactionId);
         this.transactions.remove(transactionId);
         
@@ -156,6 +167,72 @@ public class ConnectionPoolTransaction1 implements ConnectionPoolTransaction {
 
         connection.close();
     }
+
+    /**
+     * Rolls back a transaction left idle and releases its connection, its later requests fail with the reason
+     * until Node.js finishes it (see TransactionReaper)
+     * @param transactionId The transaction id to reap
+     * @param reason The error of the later requests of the transaction
+     * @return true if the transaction had a connection, a transaction without one has nothing to roll back
+     * @throws SQLException Thrown if there is an error rolling back or releasing the connection
+     */
+    public boolean reap(int transactionId, String reason) throws SQLException {
+        Connection connection = this.transactions.remove(transactionId);
+        if (connection == null)
+            return false;
+        this.reaped.add(transactionId, reason);
+        try {
+            connection.rollback();
+        } finally {
+            connection.close();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the prepared statement for the sql from the statement cache of the connection, or prepares it
+     * @param connection The connection of the request
+     * @param sql The sql with ? parameters
+     * @return The cached statement, it must be given back with releaseStatement before the connection is closed
+     * @throws SQLException Thrown if there is an error preparing the statement
+     */
+    public StatementCache.Entry prepareStatement(Connection connection, String sql) throws SQLException {
+        return this.statementCache.prepare(connection, sql);
+    }
+
+    /**
+     * Gives a prepared statement back to the statement cache
+     * @param entry The cached statement
+     * @param failed Indicates if the request failed, the statement is then closed
+     */
+    public void releaseStatement(StatementCache.Entry entry, boolean failed) {
+        this.statementCache.release(entry, failed);
+    }
+
+    /**
+     * Gets the statement cache of the pool
+     * @return The statement cache
+     */
+    public StatementCache getStatementCache() {
+        return this.statementCache;
+    }
+
+    /**
+     * Gets the gauges of the pool
+     * @return The active, idle, pending and total connections and the maximum size of the pool
+     */
+    public JSONObject getPoolStats() {
+        return ConnectionPool.poolStats(this.transactions.size(), this.availableConnections.size(), 0, this.transactionConnections);
+    }
+
+    /**
+     * Keeps the size of the pool, it is fixed to the transaction connections
+     * @param size The new maximum size
+     * @return false, the size was not changed
+     */
+    public boolean setMaximumPoolSize(int size) {
+        return false;
+    }
     
     /**
      * Shuts down the connection pool and closes all connections
@@ -3,7 +3,8 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import net.minidev.json.JSONObject;
 
 /**
  *
@@ -12,7 +13,9 @@ import java.util.HashMap;
 public class ConnectionPoolTransaction2 implements ConnectionPoolTransaction {
     
     private final HikariDataSource dataSource;
-    private HashMap<Integer, Connection> transactions = new HashMap<Integer, Connection>();
+    private final StatementCache statementCache;
+    private final ConcurrentHashMap<Integer, Connection> transactions = new ConcurrentHashMap<Integer, Connection>();
+    private final TransactionReaper.Tombstones reaped = new TransactionReaper.Tombstones();
     
     /**
      * Creates a new ConnectionPoolTransaction2 with the given parameters
@@ -28,17 +31,20 @@ public class ConnectionPoolTransaction2 implements ConnectionPoolTransaction {
      * @param keepaliveTime The time to keep a connection alive
      * @param maxLifetime The maximum time a connection can be alive
      * @param autoCommit Indicates if autoCommit is on or not
+     * @param statementCacheSize The number of prepared statements kept open per connection
+     * @param dataSourceClass The JDBC DataSource class of the connections, see SybaseDB.DEFAULT_DATA_SOURCE
      * @return
      * @throws SQLException
      */
     public static ConnectionPoolTransaction2 create(
       String host, int port, String dbName, String username, String password,
       int minConnections, int maxConnections,
-      int connectionTimeout, int idleTimeout, int keepaliveTime, int maxLifetime, boolean autoCommit
+      int connectionTimeout, int idleTimeout, int keepaliveTime, int maxLifetime, boolean autoCommit,
+      int statementCacheSize, String dataSourceClass
       ) throws SQLException {
  
         HikariConfig config = new HikariConfig();
-        config.setDataSourceClassName("com.sybase.jdbc4.jdbc.SybDataSource");
+        config.setDataSourceClassName(dataSourceClass);
         config.addDataSourceProperty("serverName", host);
         config.addDataSourceProperty("portNumber", port);
         config.addDataSourceProperty("user", username);
@@ -51,18 +57,22 @@ public class ConnectionPoolTransaction2 implements ConnectionPoolTransaction {
         config.setKeepaliveTime(keepaliveTime);
         config.setMaxLifetime(maxLifetime);
         config.setAutoCommit(autoCommit);
+        if (statementCacheSize > 0)
+            config.addDataSourceProperty("DYNAMIC_PREPARE", "true"); // Prepare the cached statements on the server
         HikariDataSource ds = new HikariDataSource(config);
 
         // Return the ConnectionPoolTransaction2
-        return new ConnectionPoolTransaction2(ds);
+        return new ConnectionPoolTransaction2(ds, new StatementCache(statementCacheSize));
     }
     
-    private ConnectionPoolTransaction2(HikariDataSource ds) {
+    private ConnectionPoolTransaction2(HikariDataSource ds, StatementCache statementCache) {
         this.dataSource = ds;
+        this.statementCache = statementCache;
     }
 
     /**
-     * Gets a connection from the pool or creates a new one if the pool is empty
+     * Gets a connection from the pool or creates a new one if the pool is empty.
+     * The requests of a transaction run one at a time (see TransactionLanes), so only one thread uses each entry.
      * @param transactionId The id of the transaction to associate the connection to
      * @return The connection from the pool
      * @throws SQLException Thrown if there is an error getting or creating a new connection
@@ -70,6 +80,7 @@ public class ConnectionPoolTransaction2 implements ConnectionPoolTransaction {
     public Connection getConnection(int transactionId) throws SQLException {
         Connection connection = this.transactions.get(transactionId);
         if (connection == null) {
+            this.reaped.check(transactionId);
             connection = this.dataSource.getConnection();
             this.transactions.put(transactionId, connection);
         }
@@ -82,9 +93,77 @@ public class ConnectionPoolTransaction2 implements ConnectionPoolTransaction {
      * @throws SQLException Thrown if there is an error releasing the connection
      */
     public void releaseConnection(int transactionId) throws SQLException {
-        Connection connection = this.transactions.get(transactionId);
-        this.transactions.remove(transactionId);
-        connection.close();
+        this.reaped.remove(transactionId);
+        Connection connection = this.transactions.remove(transactionId);
+        if (connection != null)
+            connection.close();
+    }
+
+    /**
+     * Rolls back a transaction left idle and releases its connection, its later requests fail with the reason
+     * until Node.js finishes it (see TransactionReaper)
+     * @param transactionId The transaction id to reap
+     * @param reason The error of the later requests of the transaction
+     * @return true if the transaction had a connection, a transaction without one has nothing to roll back
+     * @throws SQLException Thrown if there is an error rolling back or releasing the connection
+     */
+    public boolean reap(int transactionId, String reason) throws SQLException {
+        Connection connection = this.transactions.remove(transactionId);
+        if (connection == null)
+            return false;
+        this.reaped.add(transactionId, reason);
+        try {
+            connection.rollback();
+        } finally {
+            connection.close();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the prepared statement for the sql from the statement cache of the connection, or prepares it
+     * @param connection The connection of the request
+     * @param sql The sql with ? parameters
+     * @return The cached statement, it must be given back with releaseStatement before the connection is closed
+     * @throws SQLException Thrown if there is an error preparing the statement
+     */
+    public StatementCache.Entry prepareStatement(Connection connection, String sql) throws SQLException {
+        return this.statementCache.prepare(connection, sql);
+    }
+
+    /**
+     * Gives a prepared statement back to the statement cache
+     * @param entry The cached statement
+     * @param failed Indicates if the request failed, the statement is then closed
+     */
+    public void releaseStatement(StatementCache.Entry entry, boolean failed) {
+        this.statementCache.release(entry, failed);
+    }
+
+    /**
+     * Gets the statement cache of the pool
+     * @return The statement cache
+     */
+    public StatementCache getStatementCache() {
+        return this.statementCache;
+    }
+
+    /**
+     * Gets the gauges of the pool
+     * @return The active, idle, pending and total connections and the maximum size of the pool
+     */
+    public JSONObject getPoolStats() {
+        return ConnectionPool.poolStats(this.dataSource);
+    }
+
+    /**
+     * Changes the maximum size of the pool at runtime through its Hikari config MXBean, see AdaptiveSizer
+     * @param size The new maximum size, connections above it are retired as they become idle
+     * @return true, the size was changed
+     */
+    public boolean setMaximumPoolSize(int size) {
+        this.dataSource.getHikariConfigMXBean().setMaximumPoolSize(size);
+        return true;
     }
     
     /**
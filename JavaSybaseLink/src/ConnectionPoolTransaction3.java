@@ -6,10 +6,11 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import net.minidev.json.JSONObject;
 
 /**
  *
@@ -20,7 +21,9 @@ public class ConnectionPoolTransaction3 implements ConnectionPoolTransaction {
     private String url;
     Properties props;
     private int transactionConnections;
-    private HashMap<Integer, Connection> transactions = new HashMap<Integer, Connection>();
+    private final StatementCache statementCache;
+    private final ConcurrentHashMap<Integer, Connection> transactions = new ConcurrentHashMap<Integer, Connection>();
+    private final TransactionReaper.Tombstones reaped = new TransactionReaper.Tombstones();
     
     /**
      * Creates a new ConnectionPoolTransaction with the given parameters
@@ -30,11 +33,13 @@ public class ConnectionPoolTransaction3 implements ConnectionPoolTransaction {
      * @param username The username to connect to the database
      * @param password The password to connect to the database
      * @param transactionConnections The number of connections for transactions in the pool
+     * @param statementCacheSize The number of prepared statements kept open per connection
      * @return
      * @throws SQLException
      */
     public static ConnectionPoolTransaction3 create(
-      String host, int port, String dbName, String username, String password, int transactionConnections
+      String host, int port, String dbName, String username, String password, int transactionConnections,
+      int statementCacheSize
       ) throws SQLException, ClassNotFoundException, InstantiationException, IllegalAccessException {
  
         // Register the driver
@@ -47,9 +52,11 @@ public class ConnectionPoolTransaction3 implements ConnectionPoolTransaction {
         props.put("user", username);
 		props.put("password", password);
                 props.put("autoCommit", false);
+                if (statementCacheSize > 0)
+                        props.put("DYNAMIC_PREPARE", "true"); // Prepare the cached statements on the server
 
         // Return the ConnectionPool
-        return new ConnectionPoolTransaction3(url, props, transactionConnections);
+        return new ConnectionPoolTransaction3(url, props, transactionConnections, new StatementCache(statementCacheSize));
     }
     
     /**
@@ -57,12 +64,14 @@ public class ConnectionPoolTransaction3 implements ConnectionPoolTransaction {
      * @param url The URL of the database
      * @param props The properties of the connection (username and password)
      * @param transactionConnections The number of connections for transactions in the pool
+     * @param statementCache The cache of prepared statements of the connections
      */
     private ConnectionPoolTransaction3(String url, Properties props,
-      int transactionConnections) {
+      int transactionConnections, StatementCache statementCache) {
         this.url = url;
         this.props = props;
         this.transactionConnections = transactionConnections;
+        this.statementCache = statementCache;
     }
 
     /**
@@ -90,6 +99,7 @@ public class ConnectionPoolTransaction3 implements ConnectionPoolTransaction {
 
         Connection connection = this.transactions.get(transactionId);
         if (connection == null) {
+            this.reaped.check(transactionId);
             connection = createConnection(this.url, this.props);
             this.transactions.put(transactionId, connection);
         }
@@ -103,10 +113,77 @@ public class ConnectionPoolTransaction3 implements ConnectionPoolTransaction {
      * @throws SQLException Thrown if there is an error releasing the connection
      */
     public void releaseConnection(int transactionId) throws SQLException {
+        this.reaped.remove(transactionId);
         Connection connection = this.transactions.get(transactionId);
         this.transactions.remove(transactionId);
         connection.close();
     }
+
+    /**
+     * Rolls back a transaction left idle and releases its connection, its later requests fail with the reason
+     * until Node.js finishes it (see TransactionReaper)
+     * @param transactionId The transaction id to reap
+     * @param reason The error of the later requests of the transaction
+     * @return true if the transaction had a connection, a transaction without one has nothing to roll back
+     * @throws SQLException Thrown if there is an error rolling back or releasing the connection
+     */
+    public boolean reap(int transactionId, String reason) throws SQLException {
+        Connection connection = this.transactions.remove(transactionId);
+        if (connection == null)
+            return false;
+        this.reaped.add(transactionId, reason);
+        try {
+            connection.rollback();
+        } finally {
+            connection.close();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the prepared statement for the sql from the statement cache of the connection, or prepares it
+     * @param connection The connection of the request
+     * @param sql The sql with ? parameters
+     * @return The cached statement, it must be given back with releaseStatement before the connection is closed
+     * @throws SQLException Thrown if there is an error preparing the statement
+     */
+    public StatementCache.Entry prepareStatement(Connection connection, String sql) throws SQLException {
+        return this.statementCache.prepare(connection, sql);
+    }
+
+    /**
+     * Gives a prepared statement back to the statement cache
+     * @param entry The cached statement
+     * @param failed Indicates if the request failed, the statement is then closed
+     */
+    public void releaseStatement(StatementCache.Entry entry, boolean failed) {
+        this.statementCache.release(entry, failed);
+    }
+
+    /**
+     * Gets the statement cache of the pool
+     * @return The statement cache
+     */
+    public StatementCache getStatementCache() {
+        return this.statementCache;
+    }
+
+    /**
+     * Gets the gauges of the pool
+     * @return The active, idle, pending and total connections and the maximum size of the pool
+     */
+    public JSONObject getPoolStats() {
+        return ConnectionPool.poolStats(this.transactions.size(), 0, 0, this.transactionConnections);
+    }
+
+    /**
+     * Keeps the size of the pool, it is fixed to the transaction connections
+     * @param size The new maximum size
+     * @return false, the size was not changed
+     */
+    public boolean setMaximumPoolSize(int size) {
+        return false;
+    }
     
     /**
      * Shuts down the connection pool and closes all connections
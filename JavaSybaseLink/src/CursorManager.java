@@ -0,0 +1,404 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minidev.json.JSONObject;
+
+/**
+ * Server-side cursors. Node.js opens a cursor for a query (openCursor), reads its rows a page at a time
+ * (fetch) and closes it (closeCursor). The query runs on a connection of the main pool that the cursor
+ * keeps, with the fetch size of the request, and its ResultSet stays open between fetches, so a client
+ * can walk a result of any size while the bridge only holds the rows of one page. The requests of a
+ * cursor run in order in its lane. Every cursor pins a connection, so at most maxCursors are open at
+ * once, and a cursor left idle longer than the idle timeout is closed; its later fetches fail with the
+ * reason.
+ * @author DarkJ24
+ */
+public class CursorManager {
+
+    public static final String TYPE_OPEN = "openCursor";
+    public static final String TYPE_FETCH = "fetch";
+    public static final String TYPE_CLOSE = "closeCursor";
+    public static final int DEFAULT_FETCH_SIZE = 1000; // The rows the driver reads from the server at a time
+    public static final int DEFAULT_PAGE_ROWS = 1000; // The rows of a fetch that does not ask for a number
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 60000; // 0 never closes idle cursors
+    public static final long MAX_SWEEP_MS = 1000; // The longest time between two sweeps
+    public static final int MAX_EXPIRED = 1024; // The expired cursors remembered to explain their later fetches
+
+    private final ConnectionPool pool;
+    private final InFlightRequests inFlight;
+    private final BridgeStats stats;
+    private final int maxCursors;
+    private final long idleTimeoutMs;
+    private final TransactionLanes lanes;
+    private final ScheduledThreadPoolExecutor timer;
+    private final ConcurrentHashMap<Integer, Cursor> cursors = new ConcurrentHashMap<Integer, Cursor>();
+    private final Map<Integer, String> expired = new LinkedHashMap<Integer, String>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+            return size() > MAX_EXPIRED;
+        }
+    };
+    private int reserved = 0; // The cursors open or opening, guarded by this
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    /**
+     * Constructor for CursorManager, the idle cursors are closed once start() is called
+     * @param pool The pool the connections of the cursors are taken from
+     * @param inFlight The tracker of the requests, an openCursor or fetch can be cancelled or time out
+     * @param stats The stats to record the fetch and serialize times of the pages in
+     * @param maxCursors The maximum number of cursors open at once
+     * @param idleTimeoutMs The time after which a cursor without requests is closed, 0 to keep it open
+     * @param executor The executor to run the requests on
+     */
+    public CursorManager(ConnectionPool pool, InFlightRequests inFlight, BridgeStats stats, int maxCursors, long idleTimeoutMs, Executor executor) {
+        this.pool = pool;
+        this.inFlight = inFlight;
+        this.stats = stats;
+        this.maxCursors = maxCursors;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.lanes = new TransactionLanes(executor);
+        this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "cursor-reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Indicates if a request type is a cursor request
+     * @param type The request type
+     * @return true for openCursor, fetch and closeCursor
+     */
+    public static boolean isCursorType(String type) {
+        return TYPE_OPEN.equals(type) || TYPE_FETCH.equals(type) || TYPE_CLOSE.equals(type);
+    }
+
+    /**
+     * Starts closing the idle cursors, four times per idle timeout (at most MAX_SWEEP_MS apart)
+     */
+    public void start() {
+        if (idleTimeoutMs <= 0)
+            return;
+        long period = Math.max(1, Math.min(MAX_SWEEP_MS, idleTimeoutMs / 4));
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                closeIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a cursor request after the previous requests of its cursor
+     * @param request The openCursor, fetch or closeCursor request
+     */
+    public void submit(final SQLRequest request) {
+        lanes.submit(request.cursorId, new Callable<Object>() {
+            @Override
+            public Object call() {
+                request.writer.write(execute(request));
+                return null;
+            }
+        }, TYPE_CLOSE.equals(request.type));
+    }
+
+    /**
+     * Closes the idle cursors, a cursor with a request running is never closed
+     * @return The number of cursors closed
+     */
+    int closeIdle() {
+        int count = 0;
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        for (Cursor cursor : cursors.values()) {
+            if (cursor.busy || System.nanoTime() - cursor.lastActiveNanos < idleNanos)
+                continue;
+            synchronized (cursor) {
+                long idle = System.nanoTime() - cursor.lastActiveNanos;
+                if (cursor.busy || cursor.closed || idle < idleNanos)
+                    continue; // Used while the sweep waited for it
+                cursor.close();
+            }
+            if (cursors.remove(cursor.id, cursor)) {
+                release();
+                synchronized (expired) {
+                    expired.put(cursor.id, "Cursor " + cursor.clientId + " was closed after being idle for " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cursor.lastActiveNanos) + "ms");
+                }
+                expiredCount.incrementAndGet();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Closes the open cursors and stops the sweeps
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        for (Cursor cursor : cursors.values()) {
+            synchronized (cursor) {
+                cursor.close();
+            }
+        }
+        cursors.clear();
+    }
+
+    /**
+     * Executes a cursor request
+     * @param request The request
+     * @return The json response
+     */
+    private String execute(SQLRequest request) {
+        JSONObject response = new JSONObject();
+        response.put("msgId", request.msgId);
+        JSONObject result = new JSONObject();
+        result.put("cursorId", request.clientCursorId);
+        Cursor cursor = cursors.get(request.cursorId);
+        inFlight.register(request);
+        try {
+            if (TYPE_OPEN.equals(request.type)) {
+                if (cursor != null)
+                    throw new SQLException("Cursor " + request.clientCursorId + " is already open");
+                cursor = open(request);
+                result.put("fetchSize", cursor.fetchSize);
+            } else if (cursor == null) {
+                String reason;
+                synchronized (expired) {
+                    reason = expired.remove(request.cursorId);
+                }
+                if (TYPE_CLOSE.equals(request.type))
+                    result.put("closed", reason != null ? "idle" : "unknown"); // Closing a cursor that is gone is not an error
+                else
+                    throw new SQLException(reason != null ? reason : "Cursor " + request.clientCursorId + " is not open");
+            } else if (TYPE_FETCH.equals(request.type)) {
+                fetch(cursor, request, result);
+            } else {
+                close(cursor);
+            }
+        } catch (Exception ex) {
+            inFlight.putError(response, request, ex);
+            if (cursor != null && !TYPE_OPEN.equals(request.type))
+                close(cursor); // The ResultSet of a failed or cancelled fetch can not be trusted
+        } finally {
+            inFlight.finished(request);
+        }
+        if (cursor != null)
+            result.put("fetched", cursor.fetched);
+        response.put("result", result);
+        response.put("javaStartTime", request.javaStartTime);
+        response.put("javaEndTime", System.currentTimeMillis());
+        return response.toJSONString();
+    }
+
+    /**
+     * Opens a cursor: executes its query on a connection of the pool and keeps the ResultSet
+     * @param request The openCursor request with the sql, its parameters and the fetch size
+     * @return The cursor
+     * @throws SQLException Thrown if too many cursors are open or the query fails or returns no ResultSet
+     */
+    private Cursor open(SQLRequest request) throws SQLException {
+        if (request.sql == null)
+            throw new SQLException("A cursor needs the sql of its query");
+        reserve();
+        Connection conn = null;
+        Statement stmt = null;
+        try {
+            inFlight.check(request); // Cancelled or timed out while queued
+            conn = pool.getConnection();
+            int fetchSize = request.fetchSize > 0 ? request.fetchSize : DEFAULT_FETCH_SIZE;
+            boolean isRS;
+            if (request.params != null) {
+                // Not from the StatementCache, the statement stays open with the cursor
+                PreparedStatement prepared = conn.prepareStatement(request.sql);
+                stmt = prepared;
+                SQLParam.bind(prepared, request.params);
+                prepared.setFetchSize(fetchSize);
+                inFlight.attach(request, stmt);
+                isRS = prepared.execute();
+            } else {
+                stmt = conn.createStatement();
+                stmt.setFetchSize(fetchSize);
+                inFlight.attach(request, stmt);
+                isRS = stmt.execute(request.sql);
+            }
+            while (!isRS && stmt.getUpdateCount() != -1)
+                isRS = stmt.getMoreResults(); // Skip the update counts before the first ResultSet
+            inFlight.detach(request);
+            if (!isRS)
+                throw new SQLException("The query of cursor " + request.clientCursorId + " returned no rows");
+            ResultSet rs = stmt.getResultSet();
+            rs.setFetchSize(fetchSize);
+            Cursor cursor = new Cursor(request.cursorId, request.clientCursorId, conn, stmt, rs, request.resultFormat, fetchSize);
+            cursors.put(request.cursorId, cursor);
+            opened.incrementAndGet();
+            return cursor;
+        } catch (SQLException ex) {
+            inFlight.detach(request);
+            release();
+            try {
+                if (stmt != null)
+                    stmt.close();
+            } catch (Exception ex2) {
+                //Ignore
+            }
+            try {
+                if (conn != null)
+                    conn.close();
+            } catch (Exception ex2) {
+                //Ignore
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the next page of a cursor into a response
+     * @param cursor The cursor
+     * @param request The fetch request with the number of rows
+     * @param result The result of the response, gets the page and whether the rows are all read
+     * @throws SQLException Thrown if the rows can not be read
+     */
+    private void fetch(Cursor cursor, SQLRequest request, JSONObject result) throws SQLException {
+        int pageRows = request.fetchRows > 0 ? request.fetchRows : DEFAULT_PAGE_ROWS;
+        synchronized (cursor) {
+            cursor.busy = true;
+            try {
+                if (cursor.done) {
+                    result.put("page", cursor.serializer.toJSON(cursor.rs, cursor.format, 0));
+                    result.put("done", true);
+                    return;
+                }
+                inFlight.attach(request, cursor.stmt);
+                Object page;
+                try {
+                    page = cursor.serializer.toJSON(cursor.rs, cursor.format, pageRows);
+                } finally {
+                    inFlight.detach(request);
+                }
+                int count = ResultSetSerializer.rowCount(page);
+                cursor.fetched += count;
+                cursor.done = count < pageRows;
+                rows.addAndGet(count);
+                result.put("page", page);
+                result.put("done", cursor.done);
+            } finally {
+                cursor.busy = false;
+                cursor.lastActiveNanos = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Closes a cursor and gives its connection back to the pool
+     * @param cursor The cursor
+     */
+    private void close(Cursor cursor) {
+        synchronized (cursor) {
+            cursor.close();
+        }
+        if (cursors.remove(cursor.id, cursor))
+            release();
+    }
+
+    /**
+     * Counts a cursor being opened
+     * @throws SQLException Thrown if maxCursors are already open
+     */
+    private synchronized void reserve() throws SQLException {
+        if (reserved >= maxCursors)
+            throw new SQLException("Too many open cursors (" + maxCursors + "), close a cursor before opening another one");
+        reserved++;
+    }
+
+    /**
+     * Counts a cursor closed, or that failed to open
+     */
+    private synchronized void release() {
+        reserved--;
+    }
+
+    /**
+     * Gets the counters as json
+     * @return The open cursors and their maximum, the cursors opened, the rows fetched, the cursors closed
+     * because they were idle and the idle timeout
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("open", cursors.size());
+        json.put("max", maxCursors);
+        json.put("opened", opened.get());
+        json.put("rows", rows.get());
+        json.put("expired", expiredCount.get());
+        json.put("idleTimeoutMs", idleTimeoutMs);
+        return json;
+    }
+
+    /**
+     * An open cursor with its connection, statement and ResultSet
+     */
+    private class Cursor {
+        final int id;
+        final int clientId;
+        final Connection conn;
+        final Statement stmt;
+        final ResultSet rs;
+        final String format;
+        final int fetchSize;
+        final ResultSetSerializer serializer = new ResultSetSerializer(null, stats);
+        volatile boolean busy = false; // Indicates if a fetch is running, the sweeps skip the cursor
+        volatile long lastActiveNanos = System.nanoTime();
+        long fetched = 0; // Rows read by the fetches
+        boolean done = false; // Indicates if every row was read
+        boolean closed = false;
+
+        Cursor(int id, int clientId, Connection conn, Statement stmt, ResultSet rs, String format, int fetchSize) {
+            this.id = id;
+            this.clientId = clientId;
+            this.conn = conn;
+            this.stmt = stmt;
+            this.rs = rs;
+            this.format = format;
+            this.fetchSize = fetchSize;
+        }
+
+        /**
+         * Closes the ResultSet, the statement and the connection, called with the cursor locked
+         */
+        void close() {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                rs.close();
+            } catch (Exception ex) {
+                //Ignore
+            }
+            try {
+                stmt.close();
+            } catch (Exception ex) {
+                //Ignore
+            }
+            try {
+                conn.close();
+            } catch (Exception ex) {
+                //Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Executes a "batch" request on a single connection with addBatch/executeBatch, in chunks of batchSize rows:
+ * either one parameterized statement with many parameter rows (batchParams) or a list of statements.
+ * Outside a transaction a failed chunk is reported and the next chunks still run; inside a transaction
+ * (transId != -1) the first failure rolls the transaction back like ExecSQLTransactionCallable does.
+ * The response has one update count per row and the failures, {"updateCounts": [...], "failures": [{"index", "error"}]}.
+ * @author DarkJ24
+ */
+public class ExecBatchCallable implements Callable<String> {
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private ConnectionPool pool;
+	private ConnectionPoolTransaction transactionPool;
+	private ResponseWriter writer;
+	private SQLRequest request;
+	private BridgeStats stats;
+	private InFlightRequests inFlight;
+
+	/**
+	 * Constructor for ExecBatchCallable
+	 * @param pool The connection pool to use outside a transaction
+	 * @param transactionPool The connection pool to use when the request has a transId
+	 * @param writer The writer to send the response to
+	 * @param request The batch request to execute
+	 * @param stats The stats to record the stages of the request in
+	 * @param inFlight The tracker to attach the statement to while it executes, so it can be cancelled
+	 */
+	public ExecBatchCallable(ConnectionPool pool, ConnectionPoolTransaction transactionPool, ResponseWriter writer, SQLRequest request, BridgeStats stats, InFlightRequests inFlight) {
+		this.pool = pool;
+		this.transactionPool = transactionPool;
+		this.writer = writer;
+		this.request = request;
+		this.stats = stats;
+		this.inFlight = inFlight;
+	}
+
+	/**
+	 * Call method to execute the batch request
+	 * @return The response of the batch request
+	 * @throws Exception
+	 */
+	public String call() throws Exception {
+		String result = execBatch();
+		writer.write(result); // Send the result to stdout (Node.js receives this result from stdout)
+		return result;
+	}
+
+	/**
+	 * Execute the batch request
+	 * @return The json response
+	 */
+	public String execBatch()
+	{
+		boolean inTransaction = request.transId != -1;
+		JSONObject response = new JSONObject();
+		response.put("msgId", request.msgId);
+		if (inTransaction)
+			response.put("transId", request.clientTransId);
+		int rowCount = request.batchParams != null ? request.batchParams.length : (request.statements != null ? request.statements.length : 0);
+		int[] updateCounts = new int[rowCount];
+		Arrays.fill(updateCounts, Statement.EXECUTE_FAILED); // Until the row runs
+		JSONArray failures = new JSONArray();
+		Connection conn = null;
+		StatementCache.Entry cached = null;
+		Statement stmt = null;
+		long stage = BridgeStats.since(stats.queueWait, request.receivedNanos);
+
+		try {
+			if (request.batchParams != null && request.sql == null)
+				throw new SQLException("A batch with batchParams needs the sql to execute");
+			inFlight.check(request); // Cancelled or timed out while queued
+			conn = inTransaction ? transactionPool.getConnection(request.transId) : pool.getConnection();
+			stage = BridgeStats.since(stats.poolAcquire, stage);
+			if (conn.isClosed())
+				throw new Exception("Connection for query in transaction is closed!");
+			if (request.batchParams != null) {
+				cached = inTransaction ? transactionPool.prepareStatement(conn, request.sql) : pool.prepareStatement(conn, request.sql);
+				stmt = cached.getStatement();
+			} else {
+				stmt = conn.createStatement();
+			}
+			inFlight.attach(request, stmt);
+			int batchSize = request.batchSize > 0 ? request.batchSize : DEFAULT_BATCH_SIZE;
+			boolean failed = false;
+			for (int start = 0; start < rowCount && !failed; start += batchSize) {
+				int end = Math.min(start + batchSize, rowCount);
+				inFlight.check(request); // Stop at the next chunk once cancelled
+				failed = execChunk(stmt, start, end, updateCounts, failures) && inTransaction;
+			}
+			BridgeStats.since(stats.execute, stage);
+			inFlight.detach(request);
+			if (cached != null)
+				release(cached, false);
+			else
+				stmt.close();
+			cached = null;
+			stmt = null;
+			if (failed) {
+				// Roll the transaction back like a failed statement of the transaction
+				response.put("error", "Batch failed at row " + ((JSONObject) failures.get(0)).get("index") + ": " + ((JSONObject) failures.get(0)).get("error"));
+				rollbackAndClose(conn);
+			} else if (!inTransaction) {
+				conn.close(); // Close the connection
+			}
+		} catch (Exception ex) {
+			inFlight.detach(request);
+			inFlight.putError(response, request, ex);
+			if (cached != null) {
+				release(cached, true);
+				stmt = null;
+			}
+			if (inTransaction) {
+				rollbackAndClose(conn);
+			} else {
+				try {
+					if (conn != null) conn.close();
+				} catch (Exception ex2) {
+					//Ignore
+				}
+			}
+		} finally {
+			// Release the transaction connection back to the pool
+			try {
+				if (inTransaction && request.finishTrans == true) {
+					this.transactionPool.releaseConnection(request.transId);
+				}
+			} catch (Exception ex) {
+				//Ignore
+			}
+			// Close the statement if it is not already closed
+			try {
+				if (stmt != null) stmt.close();
+			} catch (Exception ex) {
+				//Ignore
+			}
+		}
+
+		JSONArray counts = new JSONArray();
+		for (int count : updateCounts)
+			counts.add(count);
+		JSONObject result = new JSONObject();
+		result.put("updateCounts", counts);
+		result.put("failures", failures);
+		response.put("result", result);
+		response.put("javaStartTime", request.javaStartTime);
+		response.put("javaEndTime", System.currentTimeMillis());
+		return response.toJSONString();
+	}
+
+	/**
+	 * Adds the rows from start to end to the batch and executes it
+	 * @param stmt The prepared statement for batchParams, or a plain statement for a list of statements
+	 * @param start The first row of the chunk
+	 * @param end The row after the last row of the chunk
+	 * @param updateCounts The update count of every row, filled for the rows of the chunk
+	 * @param failures The failures, the failures of the chunk are added
+	 * @return true if a row of the chunk failed
+	 * @throws SQLException Thrown if there is an error with the connection
+	 */
+	private boolean execChunk(Statement stmt, int start, int end, int[] updateCounts, JSONArray failures) throws SQLException {
+		int[] rows = new int[end - start]; // The row of each batch entry, rows that can not be bound are not added
+		int added = 0;
+		boolean failed = false;
+		for (int i = start; i < end; i++) {
+			try {
+				if (request.batchParams != null) {
+					SQLParam.bind((PreparedStatement) stmt, request.batchParams[i]);
+					((PreparedStatement) stmt).addBatch();
+				} else {
+					stmt.addBatch(request.statements[i]);
+				}
+				rows[added++] = i;
+			} catch (SQLException ex) {
+				updateCounts[i] = Statement.EXECUTE_FAILED;
+				addFailure(failures, i, ex.getMessage());
+				failed = true;
+			}
+		}
+		if (added == 0)
+			return failed;
+		int[] counts;
+		try {
+			counts = stmt.executeBatch();
+		} catch (BatchUpdateException ex) {
+			// The counts of the entries that ran before the failure (all of them if the driver kept going)
+			counts = ex.getUpdateCounts() != null ? ex.getUpdateCounts() : new int[0];
+			if (counts.length < added) {
+				addFailure(failures, rows[counts.length], ex.getMessage()); // The entry that stopped the batch
+			} else {
+				// The driver kept going, every failed entry is reported with the error of the batch
+				boolean reported = false;
+				for (int e = 0; e < added; e++) {
+					if (counts[e] == Statement.EXECUTE_FAILED) {
+						addFailure(failures, rows[e], ex.getMessage());
+						reported = true;
+					}
+				}
+				if (!reported)
+					addFailure(failures, rows[0], ex.getMessage());
+			}
+			failed = true;
+		} finally {
+			stmt.clearBatch();
+		}
+		for (int e = 0; e < added; e++)
+			updateCounts[rows[e]] = e < counts.length ? counts[e] : Statement.EXECUTE_FAILED;
+		return failed;
+	}
+
+	/**
+	 * Adds a failure to the response
+	 * @param failures The failures of the response
+	 * @param index The row that failed
+	 * @param error The error message
+	 */
+	private static void addFailure(JSONArray failures, int index, String error) {
+		JSONObject failure = new JSONObject();
+		failure.put("index", index);
+		failure.put("error", error);
+		failures.add(failure);
+	}
+
+	/**
+	 * Gives a prepared statement back to the statement cache of its pool
+	 * @param cached The cached statement
+	 * @param failed Indicates if the request failed
+	 */
+	private void release(StatementCache.Entry cached, boolean failed) {
+		if (request.transId != -1)
+			transactionPool.releaseStatement(cached, failed);
+		else
+			pool.releaseStatement(cached, failed);
+	}
+
+	/**
+	 * Rolls back the transaction and closes its connection, like a failed statement of the transaction
+	 * @param conn The connection of the transaction
+	 */
+	private static void rollbackAndClose(Connection conn) {
+		try {
+			conn.rollback();
+		} catch (Exception ex) {
+			//Ignore
+		}
+		try {
+			if (conn != null) conn.close();
+		} catch (Exception ex) {
+			//Ignore
+		}
+	}
+}
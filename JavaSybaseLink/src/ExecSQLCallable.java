@@ -1,11 +1,9 @@
 
 import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Date;
 import java.util.concurrent.Callable;
-import java.text.DateFormat;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 
@@ -16,32 +14,75 @@ import net.minidev.json.JSONObject;
 public class ExecSQLCallable implements Callable<String> {
 
 	private ConnectionPool pool;
-	private DateFormat df;
+	private ResultSetSerializer serializer;
+	private ResponseWriter writer;
 	private SQLRequest request;
+	private ResultCache resultCache;
+	private BridgeStats stats;
+	private InFlightRequests inFlight;
+	private ReadReplica replica;
+	private SpillDirectory spill;
+	private boolean onReplica; // Indicates if the request got its connection from the replica
 
 	/**
 	 * Constructor for ExecSQLCallable 
 	 * @param pool The connection pool to use for the sql request
-	 * @param df The date format to use for the sql request
+	 * @param writer The writer to send the response to
 	 * @param request The SQLRequest to execute
+	 * @param resultCache The cache to store the result in when the request has a cacheKey
+	 * @param stats The stats to record the stages of the request in
+	 * @param inFlight The tracker to attach the statement to while it executes, so it can be cancelled
+	 * @param replica The read replica the request may run on instead of the pool, null if the bridge has none
+	 * @param spill The directory to spill a result larger than its threshold into, null to keep every result in memory
 	 */
-	public ExecSQLCallable(ConnectionPool pool, DateFormat df, SQLRequest request) {
+	public ExecSQLCallable(ConnectionPool pool, ResponseWriter writer, SQLRequest request, ResultCache resultCache, BridgeStats stats, InFlightRequests inFlight, ReadReplica replica, SpillDirectory spill) {
 		this.pool = pool;
-		this.df = df;
+		this.serializer = new ResultSetSerializer(writer, stats);
+		this.writer = writer;
 		this.request = request;
+		this.resultCache = resultCache;
+		this.stats = stats;
+		this.inFlight = inFlight;
+		this.replica = replica;
+		this.spill = spill;
 	}
 
 	/**
 	 * Call method to execute the transaction sql request
-	 * @return The result of the transaction sql request
+	 * @return The result of the transaction sql request, null if it was spilled and is written from its spill file
 	 * @throws Exception 
 	 */
 	public String call() throws Exception {
+		long started = System.nanoTime();
 		String result = execSQLJsonSimple();
-		System.out.println(result);
+		if (replica != null)
+			replica.record(onReplica, started);
+		if (result != null)
+			writer.write(result);
 		return result;
 	}
 
+	/**
+	 * Gets the connection of the request, from the replica if it routes the request there. If the replica
+	 * can not give one it is marked down and the request runs on the pool of the primary instead
+	 * @return The connection
+	 * @throws SQLException Thrown if there is an error getting the connection from the primary
+	 */
+	private Connection getConnection() throws SQLException {
+		if (replica != null && replica.routes(request)) {
+			try {
+				Connection conn = replica.getPool().getConnection();
+				replica.succeeded();
+				pool = replica.getPool();
+				onReplica = true;
+				return conn;
+			} catch (SQLException ex) {
+				replica.failed(ex);
+			}
+		}
+		return pool.getConnection();
+	}
+
 	/**
 	 * Execute the transaction sql request
 	 * @return The result of the transaction sql request
@@ -50,16 +91,39 @@ public class ExecSQLCallable implements Callable<String> {
 	{
 		JSONObject response = new JSONObject();
 		response.put("msgId", request.msgId);
-		JSONArray rss = new JSONArray();
-		response.put("result", rss);
+		SpillBuffer result = null; // The json of the result sets, appended as the rows are read
+		int resultSets = 0;
+		if (request.streamRows > 0)
+			response.put("type", "end"); // The rows were already sent in "rows" frames
+		else
+			result = new SpillBuffer(spill);
 		Statement stmt = null;
+		StatementCache.Entry cached = null;
 		ResultSet rs = null;
 		Connection conn = null;
+		long stage = BridgeStats.since(stats.queueWait, request.receivedNanos);
 
 		try {
-			conn = pool.getConnection();
-			stmt = conn.createStatement();
-			boolean isRS = stmt.execute(request.sql);
+			inFlight.check(request); // Cancelled or timed out while queued
+			conn = getConnection();
+			stage = BridgeStats.since(stats.poolAcquire, stage);
+			boolean isRS;
+			if (request.params != null) {
+				// Execute the request with its parameters on the cached prepared statement of the connection
+				cached = pool.prepareStatement(conn, request.sql);
+				stmt = cached.getStatement();
+				SQLParam.bind(cached.getStatement(), request.params);
+				response.put("statementCached", cached.isHit());
+				inFlight.attach(request, stmt);
+				isRS = cached.getStatement().execute();
+			} else {
+				stmt = conn.createStatement();
+				inFlight.attach(request, stmt);
+				isRS = stmt.execute(request.sql);
+			}
+			BridgeStats.since(stats.execute, stage);
+			if (result != null)
+				result.append('[');
 			while (isRS || (stmt.getUpdateCount() != -1))
 			{
 				if (!isRS)
@@ -68,50 +132,37 @@ public class ExecSQLCallable implements Callable<String> {
 					continue;
 				}
 				rs = stmt.getResultSet();
-				ResultSetMetaData meta = rs.getMetaData();
-
-				// get column names;
-				int colCount = meta.getColumnCount();
-				String[] columns = new String[colCount+1];
-				for (int c = 1; c<colCount+1; c++)
-					columns[c] = meta.getColumnLabel(c);
-
-				JSONArray jsonRS = new JSONArray();
-				rss.add(jsonRS);
-				while (rs.next())
-				{
-					JSONObject row = new JSONObject();
-					jsonRS.add(row);
-					for (int c = 1; c< colCount+1; c++)
-					{
-						Object val = rs.getObject(c);
-						if (val == null) continue;
-						
-						int dataType = meta.getColumnType(c);
-						switch (dataType)
-						{
-							case SybaseDB.TYPE_TIME_STAMP:
-							case SybaseDB.TYPE_DATE:
-								String my8601formattedDate = df.format(new Date(rs.getTimestamp(c).getTime()));
-								row.put(columns[c], my8601formattedDate);
-								break;
-							case SybaseDB.TYPE_TIME:
-								String timeFromRS = rs.getTime(c).toString();
-								String my8601formattedTime = "1970-01-01T" + timeFromRS + ".000Z";
-								row.put(columns[c], my8601formattedTime);
-								break;
-							default:
-								row.put(columns[c], rs.getObject(c));
-						}
-					}
+				if (request.streamRows > 0) {
+					serializer.stream(rs, request, resultSets);
+				} else {
+					if (resultSets > 0)
+						result.append(',');
+					serializer.write(rs, request.resultFormat, result);
 				}
+				resultSets++;
 				rs.close(); // Close the result set
 				isRS = stmt.getMoreResults();
 			}
-			stmt.close(); // Close the statement
+			if (result != null) {
+				result.append(']');
+				result.finish();
+			}
+			inFlight.detach(request);
+			if (cached != null)
+				pool.releaseStatement(cached, false); // Keep the prepared statement open for the next request
+			else
+				stmt.close(); // Close the statement
+			cached = null;
+			stmt = null;
                         conn.close(); // Close the connection
 		} catch (Exception ex) {
-			response.put("error", ex.getMessage());
+			inFlight.detach(request);
+			inFlight.putError(response, request, ex);
+			// Close the prepared statement in case of an error, before the connection goes back to the pool
+			if (cached != null) {
+				pool.releaseStatement(cached, true);
+				stmt = null;
+			}
 			// Close the connection in case of an error
                         try {
 				if (conn != null) conn.close();
@@ -136,6 +187,44 @@ public class ExecSQLCallable implements Callable<String> {
 			}
 		}
 
+		boolean failed = response.containsKey("error");
+		if (failed && result != null) {
+			result.release(); // The rows read before the error are dropped
+			result = null;
+			response.put("result", new JSONArray());
+		}
+		if (result != null && result.isSpilled()) {
+			// Too large for the heap and the cache, the writers send the result from its spill file
+			if (request.flight != null)
+				request.flight.complete(result);
+			response.put("javaStartTime", request.javaStartTime);
+			response.put("javaEndTime", System.currentTimeMillis());
+			writer.write(prefix(response), result, "}");
+			result.release();
+			return null;
+		}
+		if (result != null && (request.cacheKey != null || request.flight != null)) {
+			// The result was serialized once, for the cache, the coalesced requests and the response
+			String serialized = result.toString();
+			if (request.cacheKey != null)
+				resultCache.put(request.cacheKey, serialized, request.cacheTtlMs, request.cacheTags, request.cacheEpoch);
+			if (request.flight != null)
+				request.flight.complete(serialized);
+			// The leader keeps its own fields, like statementCached, the cached and coalesced responses have none
+			response.put("javaStartTime", request.javaStartTime);
+			response.put("javaEndTime", System.currentTimeMillis());
+			return new StringBuilder(prefix(response)).append(serialized).append('}').toString();
+		}
+		if (request.flight != null) {
+			if (inFlight.isCancelled(request))
+				request.flight.abandon(); // The error is the leader's own, the coalesced requests run again
+			else
+				request.flight.fail((String) response.get("error"));
+		}
+		if (request.streamRows > 0)
+			response.put("resultSets", resultSets);
+		if (result != null)
+			return response(response, request, result);
 		response.put("javaStartTime", request.javaStartTime);
 		long beforeParse = System.currentTimeMillis();
 		response.put("javaEndTime", beforeParse);
@@ -144,12 +233,25 @@ public class ExecSQLCallable implements Callable<String> {
 	}
 
 	/**
-	 * Print the given string to stdout
-	 * @param s The string to print
+	 * Completes a response with its times and its result kept in memory, the JMH benchmarks measure it too
+	 * @param response The response without its times and result
+	 * @param request The request
+	 * @param result The json of the result sets, finished and not spilled
+	 * @return The json response
 	 */
-	public void safePrintln(String s) {
-		synchronized (System.out) {
-			System.out.println(s);
-		}
+	static String response(JSONObject response, SQLRequest request, SpillBuffer result) {
+		response.put("javaStartTime", request.javaStartTime);
+		response.put("javaEndTime", System.currentTimeMillis());
+		return result.appendTo(new StringBuilder(prefix(response))).append('}').toString();
+	}
+
+	/**
+	 * Gets the json of a response up to its result, the result and a closing brace complete it
+	 * @param response The response without its result
+	 * @return The json before the result
+	 */
+	private static String prefix(JSONObject response) {
+		String json = response.toJSONString();
+		return json.substring(0, json.length() - 1) + ",\"result\":";
 	}
 }
@@ -1,11 +1,8 @@
 
 import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.Statement;
-import java.util.Date;
 import java.util.concurrent.Callable;
-import java.text.DateFormat;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 
@@ -16,19 +13,27 @@ import net.minidev.json.JSONObject;
 public class ExecSQLTransactionCallable implements Callable<String> {
 
 	private ConnectionPoolTransaction pool;
-	private DateFormat df;
+	private ResultSetSerializer serializer;
+	private ResponseWriter writer;
 	private SQLRequest request;
+	private BridgeStats stats;
+	private InFlightRequests inFlight;
 
         /**
          * Constructor for ExecSQLTransactionCallable
          * @param pool The connection pool to use for the transaction sql request
-         * @param df The date format to use for the transaction sql request
+         * @param writer The writer to send the response to
          * @param request The SQLRequest to execute
+         * @param stats The stats to record the stages of the request in
+         * @param inFlight The tracker to attach the statement to while it executes, so it can be cancelled
          */
-	public ExecSQLTransactionCallable(ConnectionPoolTransaction pool, DateFormat df, SQLRequest request) {
+	public ExecSQLTransactionCallable(ConnectionPoolTransaction pool, ResponseWriter writer, SQLRequest request, BridgeStats stats, InFlightRequests inFlight) {
             this.pool = pool;
-            this.df = df;
+            this.serializer = new ResultSetSerializer(writer, stats);
+            this.writer = writer;
             this.request = request;
+            this.stats = stats;
+            this.inFlight = inFlight;
 	}
 
         /**
@@ -38,7 +43,7 @@ public class ExecSQLTransactionCallable implements Callable<String> {
          */
 	public String call() throws Exception {
             String result = execSQLJsonSimple();
-            System.out.println(result); // Print the result to stdout (Node.js receives this result from stdout)
+            writer.write(result); // Send the result to stdout (Node.js receives this result from stdout)
             return result;
 	}
 
@@ -50,21 +55,42 @@ public class ExecSQLTransactionCallable implements Callable<String> {
 	{
 		JSONObject response = new JSONObject();
 		response.put("msgId", request.msgId);
-                response.put("transId", request.transId);
+                response.put("transId", request.clientTransId);
 		JSONArray rss = new JSONArray();
-		response.put("result", rss);
+		int resultSets = 0;
+		if (request.streamRows > 0)
+			response.put("type", "end"); // The rows were already sent in "rows" frames
+		else
+			response.put("result", rss);
 		Statement stmt = null;
+		StatementCache.Entry cached = null;
 		ResultSet rs = null;
 		Connection conn = null;
+		long stage = BridgeStats.since(stats.queueWait, request.receivedNanos);
                 
 		try {
+			inFlight.check(request); // Cancelled or timed out while queued
 			conn = this.pool.getConnection(request.transId);
+			stage = BridgeStats.since(stats.poolAcquire, stage);
                         if (conn.isClosed()) {
                                 // The connection is closed or null, return an error message to stdout (Node.js receives this error message from stdout)
                                 throw new Exception("Connection for query in transaction is closed!");
                         }
-                        stmt = conn.createStatement();
-                        boolean isRS = stmt.execute(request.sql);
+                        boolean isRS;
+                        if (request.params != null) {
+                                // Execute the request with its parameters on the cached prepared statement of the connection
+                                cached = this.pool.prepareStatement(conn, request.sql);
+                                stmt = cached.getStatement();
+                                SQLParam.bind(cached.getStatement(), request.params);
+                                response.put("statementCached", cached.isHit());
+                                inFlight.attach(request, stmt);
+                                isRS = cached.getStatement().execute();
+                        } else {
+                                stmt = conn.createStatement();
+                                inFlight.attach(request, stmt);
+                                isRS = stmt.execute(request.sql);
+                        }
+                        BridgeStats.since(stats.execute, stage);
                         while (isRS || (stmt.getUpdateCount() != -1))
                         {
                                 if (!isRS)
@@ -73,50 +99,30 @@ public class ExecSQLTransactionCallable implements Callable<String> {
                                         continue;
                                 }
                                 rs = stmt.getResultSet();
-                                ResultSetMetaData meta = rs.getMetaData();
-
-                                // get column names;
-                                int colCount = meta.getColumnCount();
-                                String[] columns = new String[colCount+1];
-                                for (int c = 1; c<colCount+1; c++)
-                                        columns[c] = meta.getColumnLabel(c);
-
-                                JSONArray jsonRS = new JSONArray();
-                                rss.add(jsonRS);
-                                while (rs.next())
-                                {
-                                        JSONObject row = new JSONObject();
-                                        jsonRS.add(row);
-                                        for (int c = 1; c< colCount+1; c++)
-                                        {
-                                                Object val = rs.getObject(c);
-                                                if (val == null) continue;
-
-                                                int dataType = meta.getColumnType(c);
-                                                switch (dataType)
-                                                {
-                                                        case SybaseDB.TYPE_TIME_STAMP:
-                                                        case SybaseDB.TYPE_DATE:
-                                                                String my8601formattedDate = df.format(new Date(rs.getTimestamp(c).getTime()));
-                                                                row.put(columns[c], my8601formattedDate);
-                                                                break;
-                                                        case SybaseDB.TYPE_TIME:
-                                                                String timeFromRS = rs.getTime(c).toString();
-                                                                String my8601formattedTime = "1970-01-01T" + timeFromRS + ".000Z";
-                                                                row.put(columns[c], my8601formattedTime);
-                                                                break;
-                                                        default:
-                                                                row.put(columns[c], rs.getObject(c));
-                                                }
-                                        }
-                                }
+                                if (request.streamRows > 0)
+                                        serializer.stream(rs, request, resultSets);
+                                else
+                                        rss.add(serializer.toJSON(rs, request.resultFormat));
+                                resultSets++;
                                 rs.close(); // Close the result set
                                 isRS = stmt.getMoreResults();
                         }
-                        stmt.close(); // Close the statement
+                        inFlight.detach(request);
+                        if (cached != null)
+                                this.pool.releaseStatement(cached, false); // Keep the prepared statement open for the next request
+                        else
+                                stmt.close(); // Close the statement
+                        cached = null;
+                        stmt = null;
 		} catch (Exception ex) {
                         // Print the error message to stdout (Node.js receives this error message from stdout)
-			response.put("error", ex.getMessage());
+                        inFlight.detach(request);
+			inFlight.putError(response, request, ex);
+                        // Close the prepared statement if there is an error, before the connection goes back to the pool
+                        if (cached != null) {
+                                this.pool.releaseStatement(cached, true);
+                                stmt = null;
+                        }
                         // Rollback the transaction if there is an error
                         try {
                                 conn.rollback();
@@ -156,20 +162,20 @@ public class ExecSQLTransactionCallable implements Callable<String> {
                             //response.put("error", ex.getMessage());
 			}
 		}
-		response.put("javaStartTime", request.javaStartTime);
-		long beforeParse = System.currentTimeMillis();
-		response.put("javaEndTime", beforeParse);
-		String jsonResult = response.toJSONString();
-		return jsonResult;
+		if (request.streamRows > 0)
+			response.put("resultSets", resultSets);
+		return response(response, request);
 	}
 
-        /**
-         * Print the given string to stdout
-         * @param s The string to print
-         */
-	public void safePrintln(String s) {
-		synchronized (System.out) {
-			System.out.println(s);
-		}
+	/**
+	 * Completes a response with its times and serializes it with its json result sets, the JMH benchmarks measure it too
+	 * @param response The response without its times
+	 * @param request The request
+	 * @return The json response
+	 */
+	static String response(JSONObject response, SQLRequest request) {
+		response.put("javaStartTime", request.javaStartTime);
+		response.put("javaEndTime", System.currentTimeMillis());
+		return response.toJSONString();
 	}
 }
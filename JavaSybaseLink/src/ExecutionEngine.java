@@ -0,0 +1,202 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs the SQL requests, either on the classic fixed pool of platform threads or on one virtual thread
+ * per request (Java 21+). Virtual threads are not limited by a thread count, so in that mode a semaphore
+ * per connection pool, sized to the pool, limits how many requests run at once and the others wait for
+ * a permit in order instead of blocking inside HikariDataSource.getConnection.
+ * @author DarkJ24
+ */
+public class ExecutionEngine {
+
+    public static final String MODE_PLATFORM = "platform";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private final String mode;
+    private volatile int concurrency;
+    private final ExecutorService executor;
+    private final Permits poolPermits;
+    private final Permits transactionPermits;
+
+    /**
+     * Creates the execution engine
+     * @param mode MODE_PLATFORM or MODE_VIRTUAL
+     * @param threads The number of platform threads, used in MODE_PLATFORM
+     * @param maxConnections The size of the connection pool, limits the requests running at once in MODE_VIRTUAL
+     * @param transactionConnections The size of the transaction pool, limits the transaction requests running at once in MODE_VIRTUAL
+     * @throws IllegalArgumentException Thrown if the mode is unknown or virtual threads are not available
+     */
+    public ExecutionEngine(String mode, int threads, int maxConnections, int transactionConnections) {
+        this.mode = mode;
+        if (MODE_VIRTUAL.equals(mode)) {
+            this.executor = newVirtualThreadPerTaskExecutor();
+            this.concurrency = maxConnections + transactionConnections;
+            this.poolPermits = new Permits(maxConnections);
+            this.transactionPermits = new Permits(transactionConnections);
+        } else if (MODE_PLATFORM.equals(mode)) {
+            this.executor = Executors.newFixedThreadPool(threads);
+            this.concurrency = threads;
+            this.poolPermits = null;
+            this.transactionPermits = null;
+        } else {
+            throw new IllegalArgumentException("Unknown execution mode: " + mode);
+        }
+    }
+
+    /**
+     * Creates the virtual thread executor through reflection, the bridge is still built for Java 8
+     * @return The executor starting a new virtual thread for each task
+     * @throws IllegalArgumentException Thrown if the JVM has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("The virtual execution mode needs Java 21 or newer, running on Java " + System.getProperty("java.version"));
+        }
+    }
+
+    /**
+     * Gets the execution mode
+     * @return MODE_PLATFORM or MODE_VIRTUAL
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the number of requests that can run at once, the threads in MODE_PLATFORM or the size of both pools in MODE_VIRTUAL
+     * @return The number of requests that can run at once
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Gets the executor running the tasks
+     * @return The executor
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Runs a request on the connection pool
+     * @param task The task executing the request
+     * @return The future of the task
+     */
+    public Future<?> submit(Callable<?> task) {
+        return executor.submit(limit(task, false));
+    }
+
+    /**
+     * Wraps a task so it waits for a permit of its pool before running, in MODE_PLATFORM the task is returned as it is
+     * @param task The task executing the request
+     * @param transaction Indicates if the task uses the transaction pool
+     * @return The limited task
+     */
+    public <T> Callable<T> limit(final Callable<T> task, boolean transaction) {
+        final Semaphore permits = transaction ? transactionPermits : poolPermits;
+        if (permits == null)
+            return task;
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                permits.acquire();
+                try {
+                    return task.call();
+                } finally {
+                    permits.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Gets the number of requests waiting for a permit, 0 in MODE_PLATFORM
+     * @return The number of waiting requests
+     */
+    public int getWaiting() {
+        if (poolPermits == null)
+            return 0;
+        return poolPermits.getQueueLength() + transactionPermits.getQueueLength();
+    }
+
+    /**
+     * Gets the number of requests waiting for a permit of one pool, 0 in MODE_PLATFORM
+     * @param transaction Indicates if it is the transaction pool
+     * @return The number of waiting requests
+     */
+    public int getWaiting(boolean transaction) {
+        Semaphore permits = transaction ? transactionPermits : poolPermits;
+        return permits == null ? 0 : permits.getQueueLength();
+    }
+
+    /**
+     * Resizes the engine to the sizes of the pools at runtime, see AdaptiveSizer: the permits of each pool in
+     * MODE_VIRTUAL, or the platform threads in MODE_PLATFORM (one per connection of both pools, up to maxThreads)
+     * @param poolSize The size of the connection pool
+     * @param transactionSize The size of the transaction pool
+     * @param maxThreads The most platform threads
+     * @return The number of requests that can run at once now
+     */
+    public synchronized int resize(int poolSize, int transactionSize, int maxThreads) {
+        if (poolPermits != null) {
+            poolPermits.resize(poolSize);
+            transactionPermits.resize(transactionSize);
+            concurrency = poolSize + transactionSize;
+            return concurrency;
+        }
+        ThreadPoolExecutor threads = (ThreadPoolExecutor) executor;
+        int size = Math.max(1, Math.min(maxThreads, poolSize + transactionSize));
+        // The core size may never be above the maximum size
+        if (size > threads.getMaximumPoolSize()) {
+            threads.setMaximumPoolSize(size);
+            threads.setCorePoolSize(size);
+        } else {
+            threads.setCorePoolSize(size);
+            threads.setMaximumPoolSize(size);
+        }
+        concurrency = size;
+        return concurrency;
+    }
+
+    /**
+     * Stops accepting requests
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A fair semaphore whose number of permits can change while permits are taken
+     */
+    private static final class Permits extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        private int size;
+
+        Permits(int size) {
+            super(size, true);
+            this.size = size;
+        }
+
+        /**
+         * Changes the number of permits, the permits taken above a smaller size are given back without waking anyone
+         * @param newSize The new number of permits
+         */
+        synchronized void resize(int newSize) {
+            if (newSize > size)
+                release(newSize - size);
+            else if (newSize < size)
+                reducePermits(size - newSize);
+            size = newSize;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minidev.json.JSONObject;
+
+/**
+ * Tracks the sql requests from when they are received until their response is written, so they can be
+ * cancelled by msgId ("cancel" requests from Node.js) or when their timeoutMs runs out. A request that is
+ * still queued fails as soon as it starts, a request that is executing has its statement cancelled with
+ * Statement.cancel(), which makes the driver give the worker thread and the connection back at once.
+ * The callables attach their statement before executing it and detach it before it is closed or goes
+ * back to the statement cache, so a cancel never reaches the statement of another request.
+ * The msgIds are only unique per client, the requests are tracked by the ClientSession and the msgId.
+ * A request that has no callable of its own (a read coalesced with another one, see RequestCoalescer) is
+ * registered with a CancelListener, which answers it when it is cancelled.
+ * @author DarkJ24
+ */
+public class InFlightRequests {
+
+    public static final String ERROR_CANCELLED = "CANCELLED";
+    public static final String ERROR_TIMEOUT = "TIMEOUT";
+
+    private final ConcurrentHashMap<Long, Entry> requests = new ConcurrentHashMap<Long, Entry>();
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Answers a request that is cancelled or times out while no callable runs it
+     */
+    public interface CancelListener {
+
+        /**
+         * Called once when the request is cancelled or times out, outside the locks of InFlightRequests
+         * @param request The request
+         * @param reason The error of the response
+         * @param errorCode The errorCode of the response
+         */
+        void cancelled(SQLRequest request, String reason, String errorCode);
+    }
+
+    /**
+     * Constructor for InFlightRequests
+     */
+    public InFlightRequests() {
+        this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "request-timeouts");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Starts tracking a request, its timeoutMs starts counting now
+     * @param request The request
+     */
+    public void register(SQLRequest request) {
+        register(request, null);
+    }
+
+    /**
+     * Starts tracking a request, its timeoutMs starts counting now
+     * @param request The request
+     * @param listener Called when the request is cancelled or times out, null if its callable answers it
+     */
+    public void register(final SQLRequest request, CancelListener listener) {
+        final Entry entry = new Entry(request, listener);
+        if (request.timeoutMs > 0) {
+            entry.timeout = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (cancel(entry, "Query timed out after " + request.timeoutMs + "ms", ERROR_TIMEOUT))
+                        timedOut.incrementAndGet();
+                }
+            }, request.timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        requests.put(key(request.session, request.msgId), entry);
+    }
+
+    /**
+     * Stops tracking a request, once its response is written
+     * @param request The request
+     */
+    public void finished(SQLRequest request) {
+        Entry entry = requests.remove(key(request.session, request.msgId));
+        if (entry != null && entry.timeout != null)
+            entry.timeout.cancel(false);
+    }
+
+    /**
+     * Cancels a request, a request that is not tracked (already answered) is ignored
+     * @param session The client of the request, null for stdin
+     * @param msgId The msgId of the request
+     * @return true if the request was cancelled
+     */
+    public boolean cancel(ClientSession session, int msgId) {
+        Entry entry = requests.get(key(session, msgId));
+        if (entry == null || !cancel(entry, "Query cancelled", ERROR_CANCELLED))
+            return false;
+        cancelled.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Cancels every request of a client, once it disconnected
+     * @param session The client
+     * @return The number of requests cancelled
+     */
+    public int cancelAll(ClientSession session) {
+        int count = 0;
+        for (Map.Entry<Long, Entry> request : requests.entrySet()) {
+            if ((int) (request.getKey() >>> 32) == session.getId() && cancel(request.getValue(), "Query cancelled, the client disconnected", ERROR_CANCELLED))
+                count++;
+        }
+        cancelled.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * Fails if the request was cancelled, called before waiting for a connection and between the steps of a request
+     * @param request The request
+     * @throws SQLException Thrown if the request was cancelled or timed out
+     */
+    public void check(SQLRequest request) throws SQLException {
+        Entry entry = requests.get(key(request.session, request.msgId));
+        if (entry != null && entry.reason != null)
+            throw new SQLException(entry.reason);
+    }
+
+    /**
+     * Checks if a request was cancelled or timed out
+     * @param request The request
+     * @return true if the request is tracked and was cancelled
+     */
+    public boolean isCancelled(SQLRequest request) {
+        Entry entry = requests.get(key(request.session, request.msgId));
+        return entry != null && entry.reason != null;
+    }
+
+    /**
+     * Attaches the statement of a request before it is executed, with a query timeout of the time the
+     * request has left (rounded up to seconds) as a second limit enforced by the driver
+     * @param request The request
+     * @param stmt The statement about to be executed
+     * @throws SQLException Thrown if the request was cancelled or timed out
+     */
+    public void attach(SQLRequest request, Statement stmt) throws SQLException {
+        Entry entry = requests.get(key(request.session, request.msgId));
+        int seconds = 0;
+        if (request.timeoutMs > 0) {
+            long leftMs = request.timeoutMs - (System.nanoTime() - request.receivedNanos) / 1000000;
+            seconds = (int) Math.max(1, (leftMs + 999) / 1000);
+        }
+        stmt.setQueryTimeout(seconds); // Also resets the timeout of a cached statement
+        if (entry != null)
+            entry.attach(stmt);
+    }
+
+    /**
+     * Detaches the statement of a request, before it is closed or goes back to the statement cache
+     * @param request The request
+     */
+    public void detach(SQLRequest request) {
+        Entry entry = requests.get(key(request.session, request.msgId));
+        if (entry != null)
+            entry.detach();
+    }
+
+    /**
+     * Puts the error of a failed request in its response, the reason of the cancel if it was cancelled
+     * @param response The response
+     * @param request The request
+     * @param ex The exception the request failed with
+     */
+    public void putError(JSONObject response, SQLRequest request, Exception ex) {
+        Entry entry = requests.get(key(request.session, request.msgId));
+        String reason = entry != null ? entry.reason : null;
+        if (reason == null) {
+            response.put("error", ex.getMessage());
+            return;
+        }
+        response.put("error", reason);
+        response.put("errorCode", entry.errorCode);
+    }
+
+    /**
+     * Gets the number of requests tracked, queued or executing
+     * @return The number of requests
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * Gets the counters as json
+     * @return The requests tracked and the requests cancelled and timed out so far
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("inFlight", requests.size());
+        json.put("cancelled", cancelled.get());
+        json.put("timedOut", timedOut.get());
+        return json;
+    }
+
+    /**
+     * Stops the timer of the timeouts
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Cancels a tracked request, then calls its listener
+     * @param entry The request
+     * @param reason The error of the response
+     * @param errorCode The errorCode of the response
+     * @return true if the request was not already cancelled
+     */
+    private static boolean cancel(Entry entry, String reason, String errorCode) {
+        if (!entry.cancel(reason, errorCode))
+            return false;
+        if (entry.listener != null)
+            entry.listener.cancelled(entry.request, reason, errorCode);
+        return true;
+    }
+
+    /**
+     * Gets the key of a request, the id of its client in the high bits and its msgId in the low bits
+     * @param session The client of the request, null for stdin
+     * @param msgId The msgId of the request
+     * @return The key
+     */
+    private static long key(ClientSession session, int msgId) {
+        return ((long) (session == null ? 0 : session.getId()) << 32) | (msgId & 0xffffffffL);
+    }
+
+    /**
+     * A tracked request, the statement is only set while it executes
+     */
+    private static final class Entry {
+        final SQLRequest request;
+        final CancelListener listener;
+        ScheduledFuture<?> timeout;
+        private Statement statement;
+        private volatile String reason; // Set once the request is cancelled
+        private String errorCode;
+
+        Entry(SQLRequest request, CancelListener listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+
+        /**
+         * Cancels the request and its statement if it is executing
+         * @param reason The error of the response
+         * @param errorCode The errorCode of the response
+         * @return true if the request was not already cancelled
+         */
+        synchronized boolean cancel(String reason, String errorCode) {
+            if (this.reason != null)
+                return false;
+            this.errorCode = errorCode;
+            this.reason = reason;
+            if (statement != null) {
+                try {
+                    statement.cancel();
+                } catch (SQLException ex) {
+                    //Ignore, the request fails when its statement finishes
+                }
+            }
+            return true;
+        }
+
+        synchronized void attach(Statement stmt) throws SQLException {
+            if (reason != null)
+                throw new SQLException(reason);
+            statement = stmt;
+        }
+
+        synchronized void detach() {
+            statement = null;
+        }
+    }
+}
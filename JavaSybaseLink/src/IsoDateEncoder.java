@@ -0,0 +1,95 @@
+import java.time.Instant;
+import java.util.TimeZone;
+
+/**
+ * Formats dates, timestamps and times as ISO 8601 strings (yyyy-MM-ddTHH:mm:ss.SSSZ, in UTC) by writing the
+ * digits into a reusable buffer, without the Date, Calendar and StringBuffer of a SimpleDateFormat. An encoder
+ * is not thread-safe, every ResultSetSerializer has its own.
+ * @author DarkJ24
+ */
+public class IsoDateEncoder {
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final String EPOCH_DATE = "1970-01-01";
+
+    private final char[] buffer = new char[24];
+    private final TimeZone timeZone = TimeZone.getDefault(); // The zone java.sql.Time values are read in
+
+    /**
+     * Formats an instant in UTC, with the milliseconds padded to 3 digits
+     * @param epochMillis The milliseconds since 1970-01-01T00:00:00Z
+     * @return The ISO 8601 string
+     */
+    public String timestamp(long epochMillis) {
+        long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+        // Civil date of a day number, see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999)
+            return Instant.ofEpochMilli(epochMillis).toString(); // Outside the 4 digit years of the fast path
+
+        int y = (int) year;
+        buffer[0] = digit(y / 1000);
+        buffer[1] = digit(y / 100 % 10);
+        buffer[2] = digit(y / 10 % 10);
+        buffer[3] = digit(y % 10);
+        buffer[4] = '-';
+        pad2(5, month);
+        buffer[7] = '-';
+        pad2(8, day);
+        writeTime(10, millisOfDay);
+        return new String(buffer, 0, 24);
+    }
+
+    /**
+     * Formats a time of day as a time on 1970-01-01, the fields are the ones of the time in the default time
+     * zone (like java.sql.Time.toString) and the milliseconds are always 000
+     * @param epochMillis The milliseconds of the java.sql.Time
+     * @return The ISO 8601 string
+     */
+    public String time(long epochMillis) {
+        long local = epochMillis + timeZone.getOffset(epochMillis);
+        int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+        EPOCH_DATE.getChars(0, 10, buffer, 0);
+        writeTime(10, millisOfDay - millisOfDay % 1000);
+        return new String(buffer, 0, 24);
+    }
+
+    /**
+     * Writes THH:mm:ss.SSSZ
+     * @param offset The position in the buffer
+     * @param millisOfDay The milliseconds since midnight
+     */
+    private void writeTime(int offset, int millisOfDay) {
+        int seconds = millisOfDay / 1000;
+        int millis = millisOfDay % 1000;
+        buffer[offset] = 'T';
+        pad2(offset + 1, seconds / 3600);
+        buffer[offset + 3] = ':';
+        pad2(offset + 4, seconds / 60 % 60);
+        buffer[offset + 6] = ':';
+        pad2(offset + 7, seconds % 60);
+        buffer[offset + 9] = '.';
+        buffer[offset + 10] = digit(millis / 100);
+        buffer[offset + 11] = digit(millis / 10 % 10);
+        buffer[offset + 12] = digit(millis % 10);
+        buffer[offset + 13] = 'Z';
+    }
+
+    private void pad2(int offset, int value) {
+        buffer[offset] = digit(value / 10);
+        buffer[offset + 1] = digit(value % 10);
+    }
+
+    private static char digit(int value) {
+        return (char) ('0' + value);
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds with log-linear buckets, in the style of HdrHistogram:
+ * every power of two is split in SUB_BUCKETS linear buckets, so any value is counted with a relative error
+ * below 1/SUB_BUCKETS (about 3%) from 1 nanosecond to hours, in a fixed array of counters. Recording is a
+ * few shifts and an atomic increment, so the worker threads never wait for each other or for a reader.
+ * @author DarkJ24
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency
+     * @param nanos The latency in nanoseconds, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : nanos;
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until the max is at least the value
+        }
+    }
+
+    /**
+     * Gets the number of recorded latencies
+     * @return The count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the latency below which the given share of the recorded latencies fall
+     * @param percentile The percentile between 0 and 100
+     * @return The latency in nanoseconds (the upper bound of its bucket), 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Gets a copy of the bucket counters, the latencies recorded between two copies give the percentiles of
+     * an interval with percentile(long[], long[], double)
+     * @return The counters
+     */
+    public long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            snapshot[i] = counts.get(i);
+        return snapshot;
+    }
+
+    /**
+     * Gets the number of latencies recorded between two snapshots
+     * @param from The earlier snapshot
+     * @param to The later snapshot
+     * @return The count
+     */
+    public static long count(long[] from, long[] to) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += to[i] - from[i];
+        return total;
+    }
+
+    /**
+     * Gets the latency below which the given share of the latencies recorded between two snapshots fall
+     * @param from The earlier snapshot
+     * @param to The later snapshot
+     * @param percentile The percentile between 0 and 100
+     * @return The latency in nanoseconds (the upper bound of its bucket), 0 if nothing was recorded in between
+     */
+    public static long percentile(long[] from, long[] to, double percentile) {
+        long total = count(from, to);
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += to[i] - from[i];
+            if (seen >= rank)
+                return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Gets the count, mean, percentiles and max as json, in microseconds
+     * @return The json object
+     */
+    public JSONObject toJSON() {
+        long n = count.get();
+        JSONObject json = new JSONObject();
+        json.put("count", n);
+        json.put("mean", n == 0 ? 0 : micros(sum.get() / n));
+        json.put("p50", micros(getPercentile(50)));
+        json.put("p90", micros(getPercentile(90)));
+        json.put("p99", micros(getPercentile(99)));
+        json.put("p999", micros(getPercentile(99.9)));
+        json.put("max", micros(max.get()));
+        return json;
+    }
+
+    /**
+     * Gets the bucket of a value, the values below SUB_BUCKETS have their own bucket
+     * @param value The value
+     * @return The index of the bucket
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Gets the largest value counted in a bucket
+     * @param index The index of the bucket
+     * @return The upper bound of the bucket
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * Converts nanoseconds to microseconds with one decimal
+     * @param nanos The nanoseconds
+     * @return The microseconds
+     */
+    private static double micros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+}
@@ -0,0 +1,174 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import net.minidev.json.JSONObject;
+
+/**
+ * A transaction pool that is only created by the first transaction, for startupMode=fast: the bridge reports
+ * "connected" without opening the connections of the transaction pool, and a bridge that never runs a
+ * transaction never opens them. Until then the pool reports no connections, and a size set by the
+ * AdaptiveSizer is kept for when it is created.
+ * @author DarkJ24
+ */
+public class LazyTransactionPool implements ConnectionPoolTransaction {
+
+    /**
+     * Creates the real transaction pool
+     */
+    public interface Factory {
+
+        /**
+         * Creates the pool, called once by the first transaction
+         * @return The pool
+         * @throws SQLException Thrown if the pool can not be created, the next transaction tries again
+         */
+        ConnectionPoolTransaction create() throws SQLException;
+    }
+
+    private final Factory factory;
+    private final int transactionConnections;
+    private final StatementCache emptyCache; // Reported until the pool is created
+    private volatile ConnectionPoolTransaction pool;
+    private int maximumPoolSize = 0; // The size set before the pool was created, 0 if none
+    private long createdNanos = 0; // The time the first transaction waited for the pool
+    private boolean shutdown = false;
+
+    /**
+     * Constructor for LazyTransactionPool
+     * @param factory Creates the pool on the first transaction
+     * @param transactionConnections The maximum number of transaction connections, for the stats until then
+     * @param statementCacheSize The size of the statement cache, for the stats until then
+     */
+    public LazyTransactionPool(Factory factory, int transactionConnections, int statementCacheSize) {
+        this.factory = factory;
+        this.transactionConnections = transactionConnections;
+        this.emptyCache = new StatementCache(statementCacheSize);
+    }
+
+    /**
+     * Gets the pool, creating it the first time
+     * @return The pool
+     * @throws SQLException Thrown if the pool can not be created or the bridge is shutting down
+     */
+    private ConnectionPoolTransaction pool() throws SQLException {
+        ConnectionPoolTransaction current = pool;
+        if (current != null)
+            return current;
+        synchronized (this) {
+            if (pool == null) {
+                if (shutdown)
+                    throw new SQLException("The bridge is shutting down");
+                long start = System.nanoTime();
+                ConnectionPoolTransaction created = factory.create();
+                if (maximumPoolSize > 0)
+                    created.setMaximumPoolSize(maximumPoolSize);
+                createdNanos = System.nanoTime() - start;
+                pool = created;
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Gets the time the first transaction waited for the pool to be created
+     * @return The time in milliseconds, -1 if the pool was not created yet
+     */
+    public synchronized long getCreatedMs() {
+        return pool == null ? -1 : createdNanos / 1000000;
+    }
+
+    /**
+     * Gets a connection for the transaction, creating the pool the first time
+     * @param transactionId The transaction id to get the connection for
+     * @return The connection from the pool
+     * @throws SQLException Thrown if there is an error creating the pool or getting the connection
+     */
+    public Connection getConnection(int transactionId) throws SQLException {
+        return pool().getConnection(transactionId);
+    }
+
+    /**
+     * Releases the connection of the transaction, there is none before the pool is created
+     * @param transactionId The transaction id to release the connection for
+     * @throws SQLException Thrown if there is an error releasing the connection
+     */
+    public void releaseConnection(int transactionId) throws SQLException {
+        ConnectionPoolTransaction current = pool;
+        if (current != null)
+            current.releaseConnection(transactionId);
+    }
+
+    /**
+     * Rolls back a transaction left idle, there is none before the pool is created
+     * @param transactionId The transaction id to reap
+     * @param reason The error of the later requests of the transaction
+     * @return true if the transaction had a connection
+     * @throws SQLException Thrown if there is an error rolling back or releasing the connection
+     */
+    public boolean reap(int transactionId, String reason) throws SQLException {
+        ConnectionPoolTransaction current = pool;
+        return current != null && current.reap(transactionId, reason);
+    }
+
+    /**
+     * Gets the prepared statement for the sql from the statement cache of the connection, or prepares it
+     * @param connection The connection of the transaction
+     * @param sql The sql with ? parameters
+     * @return The cached statement, it must be given back with releaseStatement
+     * @throws SQLException Thrown if there is an error preparing the statement
+     */
+    public StatementCache.Entry prepareStatement(Connection connection, String sql) throws SQLException {
+        return pool().prepareStatement(connection, sql);
+    }
+
+    /**
+     * Gives a prepared statement back to the statement cache
+     * @param entry The cached statement
+     * @param failed Indicates if the request failed, the statement is then closed
+     */
+    public void releaseStatement(StatementCache.Entry entry, boolean failed) {
+        pool.releaseStatement(entry, failed); // The statement came from the pool, it exists
+    }
+
+    /**
+     * Gets the statement cache of the pool, an empty one before the pool is created
+     * @return The statement cache
+     */
+    public StatementCache getStatementCache() {
+        ConnectionPoolTransaction current = pool;
+        return current == null ? emptyCache : current.getStatementCache();
+    }
+
+    /**
+     * Gets the gauges of the pool, no connections before the pool is created
+     * @return The active, idle, pending and total connections and the maximum size of the pool
+     */
+    public JSONObject getPoolStats() {
+        ConnectionPoolTransaction current = pool;
+        if (current == null)
+            return ConnectionPool.poolStats(0, 0, 0, maximumPoolSize > 0 ? maximumPoolSize : transactionConnections);
+        return current.getPoolStats();
+    }
+
+    /**
+     * Changes the maximum size of the pool, or keeps it for when the pool is created
+     * @param size The new maximum size
+     * @return true if the pool can be resized and was
+     */
+    public synchronized boolean setMaximumPoolSize(int size) {
+        if (pool == null) {
+            maximumPoolSize = size;
+            return true;
+        }
+        return pool.setMaximumPoolSize(size);
+    }
+
+    /**
+     * Shuts down the pool if it was created, and keeps it from being created later
+     * @throws SQLException Thrown if there is an error closing the connections
+     */
+    public synchronized void shutdown() throws SQLException {
+        shutdown = true;
+        if (pool != null)
+            pool.shutdown();
+    }
+}
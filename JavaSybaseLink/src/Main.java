@@ -1,4 +1,6 @@
 
+import java.util.List;
+
 /*
  * The idea is to recive json messages in containing
  * { "msgId" : 1, "sql" : "select * from blar"}   on standard in.
@@ -24,9 +26,17 @@ public class Main implements SQLRequestListener {
     public static void main(String[] args) {
 
 		Main m;
-		if (args.length != 12)
+		if (args.length < 12)
 		{
-			System.err.println("Expecting the arguments: host, port, dbname, username, password, minConnections, maxConnections, connectionTimeout, idleTimeout,  keepaliveTime, maxLifetime, transactionConnections");
+			System.err.println("Expecting the arguments: host, port, dbname, username, password, minConnections, maxConnections, connectionTimeout, idleTimeout,  keepaliveTime, maxLifetime, transactionConnections [, name=value options, documented with the Sybase options in README.md: executionMode=platform|virtual, threads, maxQueued, statementCacheSize, resultCacheBytes, bulkSessions, bulkLoadMode, dataSourceClass, transactionIdleTimeoutMs, listen, detached, replicaHost, replicaPort, replicaMinConnections, replicaMaxConnections, replicaConnectionTimeout, readRouting, replicaRetryMs, adaptiveSizing, sizingIntervalMs, sizingLog, startupMode=standard|fast, warmupQueries, warmupSql, coalesceReads, spillThresholdBytes, spillDir, maxCursors, cursorIdleTimeoutMs, writerQueueBytes]");
+			System.exit(1);
+		}
+
+		BridgeOptions options = null;
+		try {
+			options = BridgeOptions.parse(args, 12);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
 			System.exit(1);
 		}
 
@@ -42,7 +52,8 @@ public class Main implements SQLRequestListener {
 			Integer.parseInt(args[8]), // idleTimeout
 			Integer.parseInt(args[9]), // keepaliveTime
 			Integer.parseInt(args[10]), // maxLifetime
-			Integer.parseInt(args[11]) // transactionConnections
+			Integer.parseInt(args[11]), // transactionConnections
+			options // optional settings
 		);
     }
 
@@ -60,8 +71,9 @@ public class Main implements SQLRequestListener {
      * @param keepaliveTime The time to keep a connection alive
      * @param maxLifetime The maximum time a connection can be alive
 	 * @param transactionConnections The number of connections for transactions pool
+	 * @param options The optional settings of the bridge
 	 */
-	public Main(String host, Integer port, String dbname, String username, String password, Integer minConnections, Integer maxConnections, Integer connectionTimeout, Integer idleTimeout, Integer keepaliveTime, Integer maxLifetime, Integer transactionConnections) {
+	public Main(String host, Integer port, String dbname, String username, String password, Integer minConnections, Integer maxConnections, Integer connectionTimeout, Integer idleTimeout, Integer keepaliveTime, Integer maxLifetime, Integer transactionConnections, BridgeOptions options) {
 		this.host = host;
 		this.port = port;
 		this.dbname = dbname;
@@ -71,15 +83,22 @@ public class Main implements SQLRequestListener {
 		input = new StdInputReader();
 		input.addListener(this);
                 
-		db = new SybaseDB(host, port, dbname, username, password, minConnections, maxConnections, connectionTimeout, idleTimeout, keepaliveTime, maxLifetime, transactionConnections);
+		try {
+			db = new SybaseDB(host, port, dbname, username, password, minConnections, maxConnections, connectionTimeout, idleTimeout, keepaliveTime, maxLifetime, transactionConnections, options);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.exit(1);
+		}
 		if (!db.connect())
 			System.exit(1);
+		input.setParseTimes(db.getStats().parse);
 
 		// send the connected message.
 		System.out.println("connected");
 
 		// blocking call don't do anything under here.
 		input.startReadLoop();
+		db.parentClosed();
 	}
 
 	/**
@@ -91,5 +110,13 @@ public class Main implements SQLRequestListener {
 		//System.out.println(result);
 	}
 
+	/**
+	 * Called with all the requests read together from the input, they are handed to the db class at once.
+	 */
+	public void sqlRequests(List<SQLRequest> requests)
+	{
+		db.execSQL(requests);
+	}
+
 
 }
\ No newline at end of file
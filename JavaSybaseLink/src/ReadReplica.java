@@ -0,0 +1,205 @@
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minidev.json.JSONObject;
+
+/**
+ * Sends the reads to a replicated server with its own read-only connection pool, so the primary only runs
+ * the writes, the transactions and the reads that must see them. A query outside a transaction goes to the
+ * replica when Node.js marks it readOnly, or, in ROUTING_AUTO, when it is a plain SELECT (see isPlainSelect);
+ * readOnly false keeps it on the primary. Transactions, batches and bulk loads always run on the primary.
+ * When the replica can not give a connection it is marked down and the query runs on the primary, then
+ * a single query probes the replica again every retry interval until it answers.
+ * @author DarkJ24
+ */
+public class ReadReplica {
+
+    public static final String ROUTING_AUTO = "auto"; // Marked reads and plain SELECTs go to the replica
+    public static final String ROUTING_MARKED = "marked"; // Only the queries marked readOnly go to the replica
+    public static final long DEFAULT_CONNECTION_TIMEOUT_MS = 5000; // Waiting longer for a replica connection than for the primary is not worth it
+    public static final long DEFAULT_RETRY_MS = 5000; // The time a replica that failed stays down before it is probed again
+    // Words that make a SELECT write, lock, or depend on the session, so it stays on the primary
+    private static final String[] PRIMARY_WORDS = {
+        "into", "insert", "update", "delete", "merge", "truncate", "create", "alter", "drop", "exec", "execute",
+        "holdlock", "set", "declare", "begin", "commit", "rollback", "save", "waitfor", "writetext", "readtext",
+        "grant", "revoke", "dump", "load", "lock", "print", "raiserror", "return"
+    };
+
+    private final ConnectionPool pool;
+    private final String address;
+    private final boolean auto;
+    private final long retryNanos;
+    private volatile boolean healthy = true;
+    private final AtomicLong probeAt = new AtomicLong(); // The System.nanoTime when a replica that is down is probed next
+    private volatile String lastError;
+    private final AtomicLong routed = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyHistogram replicaLatency = new LatencyHistogram();
+    private final LatencyHistogram primaryLatency = new LatencyHistogram();
+
+    /**
+     * Constructor for ReadReplica
+     * @param pool The read-only pool of the replica
+     * @param address The host:port of the replica, for the stats
+     * @param routing ROUTING_AUTO or ROUTING_MARKED
+     * @param retryMs The time the replica stays down after it fails to give a connection
+     * @throws IllegalArgumentException Thrown if the routing is unknown
+     */
+    public ReadReplica(ConnectionPool pool, String address, String routing, long retryMs) {
+        if (!ROUTING_AUTO.equals(routing) && !ROUTING_MARKED.equals(routing))
+            throw new IllegalArgumentException("Unknown read routing: " + routing);
+        this.pool = pool;
+        this.address = address;
+        this.auto = ROUTING_AUTO.equals(routing);
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMs);
+    }
+
+    /**
+     * Gets the pool of the replica
+     * @return The read-only pool
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Decides if a query runs on the replica, called when it starts. A read that can not go to the replica
+     * because it is down counts as a fallback, unless it is the one probing the replica again.
+     * @param request The query, outside a transaction
+     * @return True to run it on the replica
+     */
+    public boolean routes(SQLRequest request) {
+        if (request.transId != -1 || request.type != null)
+            return false; // Transactions and batches stay on the primary
+        boolean read = request.readOnly != null ? request.readOnly.booleanValue() : auto && isPlainSelect(request.sql);
+        if (!read)
+            return false;
+        if (!healthy) {
+            long next = probeAt.get();
+            if (System.nanoTime() - next < 0 || !probeAt.compareAndSet(next, System.nanoTime() + retryNanos)) {
+                fallbacks.incrementAndGet();
+                return false;
+            }
+        }
+        routed.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Marks the replica up again, called when it gave a connection
+     */
+    public void succeeded() {
+        healthy = true;
+    }
+
+    /**
+     * Marks the replica down, called when it failed to give a connection, the query then runs on the primary
+     * @param ex The error of the replica
+     */
+    public void failed(SQLException ex) {
+        probeAt.set(System.nanoTime() + retryNanos);
+        healthy = false;
+        lastError = ex.getMessage();
+        failures.incrementAndGet();
+        fallbacks.incrementAndGet();
+    }
+
+    /**
+     * Records the time a query took on its route, from when it started until its response was built
+     * @param onReplica Indicates if the query ran on the replica
+     * @param startNanos The System.nanoTime when the query started
+     */
+    public void record(boolean onReplica, long startNanos) {
+        BridgeStats.since(onReplica ? replicaLatency : primaryLatency, startNanos);
+    }
+
+    /**
+     * Classifies a query as a plain SELECT: its first word is SELECT and no word outside the string literals,
+     * quoted names and comments writes, locks, runs a procedure or reads a temporary table of the session
+     * @param sql The sql of the query
+     * @return True if it can run on the replica
+     */
+    public static boolean isPlainSelect(String sql) {
+        if (sql == null)
+            return false;
+        boolean first = true; // No word read yet
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int newline = sql.indexOf('\n', i);
+                i = newline < 0 ? length : newline + 1;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int close = sql.indexOf("*/", i + 2);
+                i = close < 0 ? length : close + 2;
+            } else if (c == '\'' || c == '"' || c == '[') {
+                if (first)
+                    return false;
+                char quote = c == '[' ? ']' : c;
+                int close = sql.indexOf(quote, i + 1);
+                i = close < 0 ? length : close + 1; // A doubled quote is read as two literals, they are skipped all the same
+            } else if (c == '#') {
+                return false; // A temporary table only exists on the connection of the session
+            } else if (Character.isLetter(c) || c == '_' || c == '@') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '@' || sql.charAt(i) == '$' || sql.charAt(i) == '#'))
+                    i++;
+                String word = sql.substring(start, i);
+                if (first) {
+                    if (!word.equalsIgnoreCase("select"))
+                        return false;
+                    first = false;
+                } else if (word.indexOf('#') >= 0 || isPrimaryWord(word)) {
+                    return false;
+                }
+            } else {
+                i++;
+            }
+        }
+        return !first; // The first word was SELECT
+    }
+
+    /**
+     * Checks if a word keeps a query on the primary
+     * @param word The word
+     * @return True if it is one of PRIMARY_WORDS
+     */
+    private static boolean isPrimaryWord(String word) {
+        for (String primaryWord : PRIMARY_WORDS) {
+            if (primaryWord.equalsIgnoreCase(word))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the counters as json
+     * @return The address and health of the replica, the reads routed to it, the reads that fell back to the
+     * primary, its connection failures and the latencies of the queries on each route in microseconds
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("address", address);
+        json.put("healthy", healthy);
+        json.put("routed", routed.get());
+        json.put("fallbacks", fallbacks.get());
+        json.put("failures", failures.get());
+        if (lastError != null)
+            json.put("lastError", lastError);
+        JSONObject latency = new JSONObject();
+        latency.put("replica", replicaLatency.toJSON());
+        latency.put("primary", primaryLatency.toJSON());
+        json.put("latency", latency);
+        return json;
+    }
+
+    /**
+     * Closes the connections of the replica
+     * @throws SQLException Thrown if there is an error closing the connections
+     */
+    public void shutdown() throws SQLException {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Runs identical reads that are in flight at the same time once: the first one (the leader) runs as usual,
+ * the ones that arrive with the same sql, parameters, result format and route before its response is
+ * built join its flight instead of taking a worker and a connection. The leader serializes the result once
+ * and every request of the flight is answered with it under its own msgId. Unlike the ResultCache nothing
+ * is kept once the flight lands, a read never gets a result from before it was sent, only one that was
+ * being read when it was sent, like a read that runs on a replica; a read that must see a write made just
+ * before is sent readOnly false, which also keeps it on the primary.
+ * Only the reads outside transactions whose whole response is sent at once are coalesced: the ones marked
+ * readOnly, or unmarked plain SELECTs (see ReadReplica.isPlainSelect).
+ * A request of the flight that is cancelled or times out leaves it and is answered at once with its error,
+ * a leader that is cancelled or times out sends the other requests of its flight back to run on their own.
+ * @author DarkJ24
+ */
+public class RequestCoalescer {
+
+    /**
+     * Runs the requests of a flight whose leader was cancelled
+     */
+    public interface Dispatcher {
+
+        /**
+         * Runs a request again as if it was just received, it may lead or join another flight
+         * @param request The request, no longer tracked by InFlightRequests
+         */
+        void dispatch(SQLRequest request);
+    }
+
+    private final HashMap<String, Flight> flights = new HashMap<String, Flight>();
+    private final InFlightRequests inFlight;
+    private final Dispatcher dispatcher;
+    private final InFlightRequests.CancelListener leave = new InFlightRequests.CancelListener() {
+        @Override
+        public void cancelled(SQLRequest request, String reason, String errorCode) {
+            leave(request, reason, errorCode);
+        }
+    };
+    private long led = 0; // The flights started, one execution each
+    private long coalesced = 0; // The requests that joined a flight instead of executing
+    private long left = 0; // The requests that left their flight, cancelled or timed out
+    private long rerun = 0; // The requests sent back to run on their own, their leader was cancelled
+
+    /**
+     * Constructor for RequestCoalescer
+     * @param inFlight The requests of the bridge, the requests that join a flight are tracked in it
+     * @param dispatcher Runs the requests of a flight whose leader was cancelled
+     */
+    public RequestCoalescer(InFlightRequests inFlight, Dispatcher dispatcher) {
+        this.inFlight = inFlight;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Checks if a request can share the execution of another one
+     * @param request The request
+     * @return true if it is a read outside a transaction whose whole response is sent at once
+     */
+    public static boolean isCoalescable(SQLRequest request) {
+        if (request.transId != -1 || request.type != null || request.streamRows > 0 || request.sql == null)
+            return false;
+        return request.readOnly != null ? request.readOnly.booleanValue() : ReadReplica.isPlainSelect(request.sql);
+    }
+
+    /**
+     * Makes a request join the flight of an identical request, or lead a new flight
+     * @param request The request, not tracked yet
+     * @return true if it joined a flight and will be answered by its leader, false if it runs as usual,
+     * as the leader of a new flight when it is coalescable
+     */
+    public boolean join(SQLRequest request) {
+        if (!isCoalescable(request))
+            return false;
+        String key = ResultCache.key(request) + '\u0000' + request.readOnly; // A marked read may run on another route
+        synchronized (this) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight(key);
+                flights.put(key, flight);
+                request.flight = flight;
+                led++;
+                return false;
+            }
+            inFlight.register(request, leave); // Before the leader can land, it finishes the request
+            request.flight = flight;
+            flight.followers.add(request);
+            coalesced++;
+            return true;
+        }
+    }
+
+    /**
+     * Removes a cancelled request from its flight and answers it with its error
+     * @param request The request that joined a flight
+     * @param reason The error of the response
+     * @param errorCode The errorCode of the response
+     */
+    private void leave(SQLRequest request, String reason, String errorCode) {
+        synchronized (this) {
+            List<SQLRequest> followers = request.flight.followers;
+            if (followers == null || !followers.remove(request))
+                return; // The flight landed, the request is answered with its result
+            left++;
+        }
+        request.writer.write(error(request, reason, errorCode));
+        inFlight.finished(request);
+    }
+
+    /**
+     * Ends a flight, new identical requests start another one
+     * @param flight The flight
+     * @return The requests that joined it, null if it already landed
+     */
+    private synchronized List<SQLRequest> land(Flight flight) {
+        List<SQLRequest> followers = flight.followers;
+        if (followers == null)
+            return null;
+        flight.followers = null;
+        flights.remove(flight.key);
+        return followers;
+    }
+
+    /**
+     * Builds the error response of a request that joined a flight
+     * @param request The request
+     * @param error The error
+     * @param errorCode The errorCode, null if the error is the one of the sql
+     * @return The json response
+     */
+    private static String error(SQLRequest request, String error, String errorCode) {
+        JSONObject response = new JSONObject();
+        response.put("msgId", request.msgId);
+        response.put("result", new JSONArray());
+        response.put("error", error);
+        if (errorCode != null)
+            response.put("errorCode", errorCode);
+        response.put("javaStartTime", request.javaStartTime);
+        response.put("javaEndTime", System.currentTimeMillis());
+        return response.toJSONString();
+    }
+
+    /**
+     * Gets the counters as json
+     * @return The flights in the air, the flights started, the requests that joined one, left one and ran again
+     */
+    public synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("inFlight", flights.size());
+        json.put("flights", led);
+        json.put("coalesced", coalesced);
+        json.put("left", left);
+        json.put("rerun", rerun);
+        return json;
+    }
+
+    /**
+     * The execution of a leader and the requests waiting for its result
+     */
+    public final class Flight {
+        private final String key;
+        private List<SQLRequest> followers = new ArrayList<SQLRequest>(); // null once the flight landed
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Answers the requests of the flight with the result of the leader, called before the leader's response is written
+         * @param result The serialized "result" json
+         */
+        public void complete(String result) {
+            List<SQLRequest> followers = land(this);
+            if (followers == null)
+                return;
+            for (SQLRequest request : followers) {
+                request.writer.write(ResultCache.response(request, result, false));
+                inFlight.finished(request);
+            }
+        }
+
+        /**
+         * Answers the requests of the flight with the spilled result of the leader, each response holds a reference to its file
+         * @param result The spilled "result" json, finished
+         */
+        public void complete(SpillBuffer result) {
+            List<SQLRequest> followers = land(this);
+            if (followers == null)
+                return;
+            for (SQLRequest request : followers) {
+                request.writer.write(ResultCache.prefix(request, false), result, "}");
+                inFlight.finished(request);
+            }
+        }
+
+        /**
+         * Answers the requests of the flight with the sql error of the leader
+         * @param error The error
+         */
+        public void fail(String error) {
+            List<SQLRequest> followers = land(this);
+            if (followers == null)
+                return;
+            for (SQLRequest request : followers) {
+                request.writer.write(RequestCoalescer.error(request, error, null));
+                inFlight.finished(request);
+            }
+        }
+
+        /**
+         * Sends the requests of the flight back to run on their own, called when the leader was cancelled
+         * or could not run; does nothing once the flight landed
+         */
+        public void abandon() {
+            List<SQLRequest> followers = land(this);
+            if (followers == null)
+                return;
+            synchronized (RequestCoalescer.this) {
+                rerun += followers.size();
+            }
+            for (SQLRequest request : followers) {
+                inFlight.finished(request);
+                dispatcher.dispatch(request); // Leads or joins another flight
+            }
+        }
+    }
+}
@@ -0,0 +1,416 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the responses of all the worker threads to a channel (stdout for Node.js) from a single thread.
+ * The workers only add their frames to a lock-free queue, the writer thread encodes them as UTF-8 into a
+ * reusable direct buffer and writes the buffer when the queue is drained, when it is full or when
+ * MAX_FLUSH_DELAY_MS has passed since the last write. Every frame is written whole, followed by a new line,
+ * so frames from different messages never interleave. The time from queuing a frame until it is encoded
+ * is recorded in the write histogram of the BridgeStats.
+ * The queue is bounded by the size of its frames: a worker that queues a frame while maxQueuedBytes are
+ * waiting parks until the writer caught up, so a slow reader (Node.js or a socket client) slows down the
+ * queries that produce its frames instead of filling the heap. A frame is always queued when the queue is
+ * empty, however large it is.
+ * A frame whose result was spilled to a file (see SpillBuffer) is written from the mapping of the file
+ * between the encoded json before and after the result, and its reference to the file is then released.
+ * @author DarkJ24
+ */
+public class ResponseWriter {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    public static final long MAX_FLUSH_DELAY_MS = 5;
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 64L * 1024 * 1024; // The frames waiting to be written before the workers park
+    public static final int HEAP_FRACTION = 8; // The default bound is at most this fraction of the heap
+    public static final long PARK_CHECK_MS = 100; // The longest a parked worker waits before checking the queue again
+
+    private final WritableByteChannel channel;
+    private final ConcurrentLinkedQueue<Frame> queue = new ConcurrentLinkedQueue<Frame>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong queuedBytes = new AtomicLong(); // The json chars of the queued frames, the spilled results are not in the heap
+    private final long maxQueuedBytes;
+    private final Object space = new Object(); // The parked workers wait on it for the writer to take frames
+    private volatile int parked = 0; // Changed with the lock of space
+    private final AtomicLong parks = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final LatencyHistogram writeTimes;
+    private final boolean reportErrors;
+    private final Thread thread;
+    private volatile boolean sleeping = false;
+    private volatile boolean running = true;
+    private long lastFlush;
+    private long lastRateTime;
+    private long lastRateBytes;
+
+    /**
+     * Constructor for ResponseWriter
+     * @param channel The channel to write the responses to
+     * @param writeTimes The histogram of the time from queuing a frame until it is encoded
+     */
+    public ResponseWriter(WritableByteChannel channel, LatencyHistogram writeTimes) {
+        this(channel, writeTimes, "ResponseWriter", true, defaultMaxQueuedBytes());
+    }
+
+    /**
+     * Constructor for ResponseWriter
+     * @param channel The channel to write the responses to
+     * @param writeTimes The histogram of the time from queuing a frame until it is encoded
+     * @param name The name of the writer thread
+     * @param reportErrors Indicates if a failed write is printed to stderr, a socket client going away is not reported
+     */
+    public ResponseWriter(WritableByteChannel channel, LatencyHistogram writeTimes, String name, boolean reportErrors) {
+        this(channel, writeTimes, name, reportErrors, defaultMaxQueuedBytes());
+    }
+
+    /**
+     * Constructor for ResponseWriter
+     * @param channel The channel to write the responses to
+     * @param writeTimes The histogram of the time from queuing a frame until it is encoded
+     * @param name The name of the writer thread
+     * @param reportErrors Indicates if a failed write is printed to stderr, a socket client going away is not reported
+     * @param maxQueuedBytes The size of the frames waiting to be written before the workers park
+     */
+    public ResponseWriter(WritableByteChannel channel, LatencyHistogram writeTimes, String name, boolean reportErrors, long maxQueuedBytes) {
+        this.channel = channel;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.writeTimes = writeTimes;
+        this.reportErrors = reportErrors;
+        this.encoder.onMalformedInput(CodingErrorAction.REPLACE);
+        this.encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Gets the default bound of the queue, DEFAULT_MAX_QUEUED_BYTES or less with a small heap
+     * @return The bound in bytes
+     */
+    public static long defaultMaxQueuedBytes() {
+        return Math.min(DEFAULT_MAX_QUEUED_BYTES, Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+    }
+
+    /**
+     * Starts the writer thread
+     */
+    public void start() {
+        this.lastFlush = System.nanoTime();
+        this.lastRateTime = this.lastFlush;
+        this.thread.start();
+    }
+
+    /**
+     * Queues a frame to be written, it is written whole on its own line. Frames written once the writer
+     * is closed, or after its channel failed, are dropped.
+     * @param frame The json frame to write
+     */
+    public void write(String frame) {
+        if (!reserve(frame.length()))
+            return;
+        queue.offer(new Frame(frame, System.nanoTime()));
+        queueDepth.incrementAndGet();
+        if (sleeping)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Queues a frame whose result was spilled, it is written whole on its own line like the other frames
+     * @param prefix The json before the result
+     * @param result The spilled result, finished, a reference is held until the frame is written or dropped
+     * @param suffix The json after the result
+     */
+    public void write(String prefix, SpillBuffer result, String suffix) {
+        if (!reserve(prefix.length() + suffix.length()))
+            return;
+        result.retain();
+        queue.offer(new Frame(prefix, result, suffix, System.nanoTime()));
+        queueDepth.incrementAndGet();
+        if (sleeping)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Counts a frame in the queue, parking while the queue is full
+     * @param bytes The size of the frame
+     * @return false if the writer is closed or failed, the frame is dropped
+     */
+    private boolean reserve(long bytes) {
+        if (!running)
+            return false;
+        long queued = queuedBytes.get();
+        if (queued > 0 && queued + bytes > maxQueuedBytes) {
+            parks.incrementAndGet();
+            synchronized (space) {
+                parked++; // Before checking again, so the writer taking a frame sees it
+                try {
+                    while (running) {
+                        queued = queuedBytes.get();
+                        if (queued == 0 || queued + bytes <= maxQueuedBytes)
+                            break;
+                        space.wait(PARK_CHECK_MS);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    parked--;
+                }
+            }
+            if (!running)
+                return false;
+        }
+        queuedBytes.addAndGet(bytes);
+        return true;
+    }
+
+    /**
+     * Uncounts a frame taken from the queue, waking the parked workers
+     * @param frame The frame
+     */
+    private void dequeued(Frame frame) {
+        queueDepth.decrementAndGet();
+        queuedBytes.addAndGet(-frame.bytes());
+        if (parked > 0) {
+            synchronized (space) {
+                space.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of frames waiting to be written
+     * @return The number of queued frames
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Gets the size of the frames waiting to be written
+     * @return The json chars of the queued frames
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * Gets the number of times a worker parked because the queue was full
+     * @return The number of parks
+     */
+    public long getParks() {
+        return parks.get();
+    }
+
+    /**
+     * Gets the total number of bytes written
+     * @return The number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Gets the bytes written per second since the previous call (or since the writer started)
+     * @return The bytes written per second
+     */
+    public synchronized double getBytesPerSecond() {
+        long now = System.nanoTime();
+        long bytes = bytesWritten.get();
+        double seconds = (now - lastRateTime) / 1e9;
+        double rate = seconds > 0 ? (bytes - lastRateBytes) / seconds : 0;
+        lastRateTime = now;
+        lastRateBytes = bytes;
+        return rate;
+    }
+
+    /**
+     * Stops the writer thread after writing the queued frames
+     * @param timeoutMs The maximum time to wait for the queue to drain
+     */
+    public void close(long timeoutMs) {
+        running = false;
+        LockSupport.unpark(thread);
+        synchronized (space) {
+            space.notifyAll(); // The parked workers drop their frames
+        }
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes the frames from the queue and writes them until the writer is closed and the queue is empty
+     */
+    private void writeLoop() {
+        while (true) {
+            Frame frame = queue.poll();
+            if (frame == null) {
+                try {
+                    flush();
+                } catch (IOException ex) {
+                    failed(ex);
+                    return;
+                }
+                if (!running)
+                    return;
+                sleeping = true;
+                if (queue.isEmpty() && running)
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                sleeping = false;
+                continue;
+            }
+            dequeued(frame);
+            try {
+                if (frame.spilled != null)
+                    writeSpilled(frame);
+                else
+                    encode(frame.json);
+                writeTimes.record(System.nanoTime() - frame.queued);
+                if (System.nanoTime() - lastFlush > TimeUnit.MILLISECONDS.toNanos(MAX_FLUSH_DELAY_MS))
+                    flush();
+            } catch (IOException ex) {
+                failed(ex);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the writer after its channel failed, the queued frames are dropped
+     * @param ex The error writing to the channel
+     */
+    private void failed(IOException ex) {
+        running = false;
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            if (frame.spilled != null)
+                frame.spilled.release();
+        }
+        queueDepth.set(0);
+        queuedBytes.set(0);
+        synchronized (space) {
+            space.notifyAll();
+        }
+        if (reportErrors)
+            System.err.println("Error writing response: " + ex);
+    }
+
+    /**
+     * Writes a frame whose result was spilled: its prefix, the result from the mapping of the spill file, and
+     * its suffix and a new line, then releases the file
+     * @param frame The frame
+     * @throws IOException Thrown if there is an error writing to the channel
+     */
+    private void writeSpilled(Frame frame) throws IOException {
+        try {
+            encodeChars(frame.json);
+            flush();
+            for (ByteBuffer segment : frame.spilled.getSegments()) {
+                int bytes = segment.remaining();
+                while (segment.hasRemaining())
+                    channel.write(segment);
+                bytesWritten.addAndGet(bytes);
+            }
+            encode(frame.suffix);
+        } finally {
+            frame.spilled.release();
+        }
+    }
+
+    /**
+     * Encodes the frame and a new line into the buffer, writing the buffer every time it fills up
+     * @param frame The frame to encode
+     * @throws IOException Thrown if there is an error writing to the channel
+     */
+    private void encode(String frame) throws IOException {
+        encodeChars(frame);
+        if (!buffer.hasRemaining())
+            flush();
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Encodes json into the buffer, writing the buffer every time it fills up
+     * @param frame The json to encode
+     * @throws IOException Thrown if there is an error writing to the channel
+     */
+    private void encodeChars(String frame) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(frame);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                flush();
+                continue;
+            }
+            if (result.isError())
+                result.throwException();
+            break;
+        }
+        while (encoder.flush(buffer).isOverflow())
+            flush();
+    }
+
+    /**
+     * Writes the content of the buffer to the channel
+     * @throws IOException Thrown if there is an error writing to the channel
+     */
+    private void flush() throws IOException {
+        lastFlush = System.nanoTime();
+        if (buffer.position() == 0)
+            return;
+        buffer.flip();
+        int bytes = buffer.remaining();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+        bytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * A queued frame and the time it was queued
+     */
+    private static final class Frame {
+        final String json; // The whole frame, or the json before the spilled result
+        final SpillBuffer spilled; // The spilled result, null for a frame held in memory
+        final String suffix;
+        final long queued;
+
+        Frame(String json, long queued) {
+            this(json, null, null, queued);
+        }
+
+        Frame(String json, SpillBuffer spilled, String suffix, long queued) {
+            this.json = json;
+            this.spilled = spilled;
+            this.suffix = suffix;
+            this.queued = queued;
+        }
+
+        /**
+         * Gets the size the frame counts for in the queue
+         * @return The json chars of the frame, without its spilled result
+         */
+        long bytes() {
+            return json.length() + (suffix != null ? suffix.length() : 0);
+        }
+    }
+}
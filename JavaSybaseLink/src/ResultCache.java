@@ -0,0 +1,359 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minidev.json.JSONObject;
+
+/**
+ * Read-through cache of the results of idempotent non-transactional SELECTs that opt in with a cacheTtlMs.
+ * It stores the already serialized "result" json of the response, so a hit is answered with a string
+ * concatenation, without a connection and without serializing anything. Entries expire after their ttl,
+ * the least recently used entries are evicted to stay under the byte budget and entries can be invalidated
+ * by tag (usually the table names the query reads).
+ * @author DarkJ24
+ */
+public class ResultCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final int MAX_TAG_INVALIDATIONS = 10000; // The invalidated tags remembered, see put
+    private static final int ENTRY_OVERHEAD = 96; // Approximate bytes of an entry besides its strings
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+    private final HashMap<String, HashSet<String>> keysByTag = new HashMap<String, HashSet<String>>();
+    private final LinkedHashMap<String, Long> tagInvalidations = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            if (size() <= MAX_TAG_INVALIDATIONS)
+                return false;
+            forgottenInvalidation = eldest.getValue(); // The oldest, the tags are kept in the order of their last invalidation
+            return true;
+        }
+    };
+    private long invalidationEpoch = 0; // Incremented on every invalidation
+    private long allInvalidated = 0; // The epoch of the last invalidation of every entry
+    private long forgottenInvalidation = 0; // The epoch of the last tag invalidation dropped from tagInvalidations
+    private long bytes = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructor for ResultCache
+     * @param maxBytes The approximate maximum size of the cached results, 0 disables the cache
+     */
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Indicates if the result of a request can be cached: it must be a plain sql request that opts in, runs outside
+     * a transaction and is not streamed; batches and control requests never are
+     * @param request The request
+     * @return true if the result can be cached
+     */
+    public boolean isCacheable(SQLRequest request) {
+        return maxBytes > 0 && request.type == null && request.sql != null && request.cacheTtlMs > 0 && request.transId == -1 && request.streamRows == 0;
+    }
+
+    /**
+     * Builds the key of a request from its sql, parameters and result format
+     * @param request The request
+     * @return The key
+     */
+    public static String key(SQLRequest request) {
+        StringBuilder sb = new StringBuilder(request.sql.length() + 32);
+        sb.append(request.resultFormat).append('\u0000').append(request.sql);
+        if (request.params != null) {
+            for (Object param : request.params) {
+                sb.append('\u0000');
+                if (param instanceof SQLParam)
+                    sb.append('{').append(((SQLParam) param).type).append(':').append(((SQLParam) param).value).append('}');
+                else if (param instanceof String)
+                    sb.append('"').append(param);
+                else
+                    sb.append(param);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the cached result of the request
+     * @param key The key of the request
+     * @return The serialized result, or null if it is not cached or it expired
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            remove(key);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.result;
+    }
+
+    /**
+     * Gets the current invalidation epoch, taken when a request misses so a result read before an invalidation is not cached after it
+     * @return The epoch
+     */
+    public synchronized long getEpoch() {
+        return invalidationEpoch;
+    }
+
+    /**
+     * Caches the serialized result of a request
+     * @param key The key of the request
+     * @param result The serialized "result" json
+     * @param ttlMs The time to live of the entry
+     * @param tags The tags of the entry, may be null
+     * @param epoch The epoch when the request missed, the result is dropped if one of its tags was invalidated since
+     */
+    public synchronized void put(String key, String result, long ttlMs, String[] tags, long epoch) {
+        if (allInvalidated > epoch || forgottenInvalidation > epoch)
+            return; // A result read before a forgotten tag invalidation is dropped whatever its tags
+
+        if (tags != null) {
+            for (String tag : tags) {
+                Long invalidated = tagInvalidations.get(tag.toLowerCase());
+                if (invalidated != null && invalidated > epoch)
+                    return;
+            }
+        }
+        long size = ENTRY_OVERHEAD + 2L * (key.length() + result.length());
+        if (size > maxBytes / 4)
+            return; // A single result must not flush most of the cache
+        remove(key);
+        Entry entry = new Entry(result, System.currentTimeMillis() + ttlMs, tags, size);
+        entries.put(key, entry);
+        bytes += size;
+        if (tags != null) {
+            for (String tag : tags) {
+                String t = tag.toLowerCase();
+                HashSet<String> keys = keysByTag.get(t);
+                if (keys == null) {
+                    keys = new HashSet<String>();
+                    keysByTag.put(t, keys);
+                }
+                keys.add(key);
+            }
+        }
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            it.remove();
+            unlink(eldest.getKey(), eldest.getValue());
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the entries with any of the tags, or every entry if there are no tags
+     * @param tags The tags to invalidate, null or empty for every entry
+     * @return The number of entries removed
+     */
+    public synchronized int invalidate(String[] tags) {
+        invalidationEpoch++;
+        int removed = 0;
+        if (tags == null || tags.length == 0) {
+            allInvalidated = invalidationEpoch;
+            removed = entries.size();
+            entries.clear();
+            keysByTag.clear();
+            tagInvalidations.clear();
+            bytes = 0;
+        } else {
+            for (String tag : tags) {
+                String t = tag.toLowerCase();
+                tagInvalidations.remove(t); // Moves the tag to the end of the order
+                tagInvalidations.put(t, invalidationEpoch);
+                HashSet<String> keys = keysByTag.get(t);
+                if (keys == null)
+                    continue;
+                List<String> toRemove = new ArrayList<String>(keys);
+                for (String key : toRemove) {
+                    if (remove(key))
+                        removed++;
+                }
+            }
+        }
+        invalidations.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * Gets the number of requests answered from the cache
+     * @return The number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of cacheable requests that were not in the cache
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of entries evicted to stay under the byte budget
+     * @return The number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the number of entries removed because their ttl passed
+     * @return The number of expirations
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * Gets the number of entries removed by invalidations
+     * @return The number of invalidated entries
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Gets the number of cached entries
+     * @return The number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the approximate size of the cached entries
+     * @return The size in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the size and counters of the cache as json
+     * @return The entries, bytes, hits, misses, evictions, expirations and invalidations
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        synchronized (this) {
+            json.put("entries", entries.size());
+            json.put("bytes", bytes);
+        }
+        json.put("hits", getHits());
+        json.put("misses", getMisses());
+        json.put("evictions", getEvictions());
+        json.put("expirations", getExpirations());
+        json.put("invalidations", getInvalidations());
+        return json;
+    }
+
+    /**
+     * Builds the response of a request answered with a serialized result
+     * @param request The request
+     * @param result The serialized "result" json
+     * @param cached Indicates if the result came from the cache
+     * @return The json response
+     */
+    public static String response(SQLRequest request, String result, boolean cached) {
+        StringBuilder sb = new StringBuilder(result.length() + 96);
+        appendPrefix(sb, request, cached);
+        sb.append(result).append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Builds the response of a request up to its result, for a result written from a spill file
+     * @param request The request
+     * @param cached Indicates if the result came from the cache
+     * @return The json before the result, the result and a closing brace complete it
+     */
+    public static String prefix(SQLRequest request, boolean cached) {
+        return appendPrefix(new StringBuilder(96), request, cached).toString();
+    }
+
+    /**
+     * Appends the json of a response before its result
+     * @param sb The builder
+     * @param request The request
+     * @param cached Indicates if the result came from the cache
+     * @return The builder
+     */
+    private static StringBuilder appendPrefix(StringBuilder sb, SQLRequest request, boolean cached) {
+        sb.append("{\"msgId\":").append(request.msgId);
+        if (cached)
+            sb.append(",\"cached\":true");
+        sb.append(",\"javaStartTime\":").append(request.javaStartTime);
+        sb.append(",\"javaEndTime\":").append(System.currentTimeMillis());
+        return sb.append(",\"result\":");
+    }
+
+    /**
+     * Removes an entry
+     * @param key The key of the entry
+     * @return true if the entry was cached
+     */
+    private boolean remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null)
+            return false;
+        unlink(key, entry);
+        return true;
+    }
+
+    /**
+     * Removes a removed entry from the tag index and the byte count
+     * @param key The key of the entry
+     * @param entry The entry
+     */
+    private void unlink(String key, Entry entry) {
+        bytes -= entry.size;
+        if (entry.tags == null)
+            return;
+        for (String tag : entry.tags) {
+            String t = tag.toLowerCase();
+            HashSet<String> keys = keysByTag.get(t);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty())
+                    keysByTag.remove(t);
+            }
+        }
+    }
+
+    /**
+     * A cached result
+     */
+    private static class Entry {
+        final String result;
+        final long expiresAt;
+        final String[] tags;
+        final long size;
+
+        Entry(String result, long expiresAt, String[] tags, long size) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+            this.tags = tags;
+            this.size = size;
+        }
+    }
+}
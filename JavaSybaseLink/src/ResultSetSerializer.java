@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+/**
+ * Converts the rows of a ResultSet to json, either all at once or in frames of rows
+ * that are sent to the ResponseWriter as they are read, in one of the FORMAT_* result formats, or row by row
+ * into a SpillBuffer so the rows of a whole response are never held as json objects at once.
+ * The cells are read with the ColumnCodec of their column, chosen once per result set. A serializer is used
+ * by one thread at a time.
+ * @author DarkJ24
+ */
+public class ResultSetSerializer {
+
+    public static final String FORMAT_OBJECTS = "objects"; // One json object per row, keyed by column label
+    public static final String FORMAT_COMPACT = "compact"; // Columns and types once, then one json array per row
+    public static final String FORMAT_COLUMNAR = "columnar"; // Columns and types once, then one json array per column
+
+    private final IsoDateEncoder dates = new IsoDateEncoder();
+    private ResponseWriter writer;
+    private BridgeStats stats;
+    private long fetchNanos; // Time spent in ResultSet.next for the current result set
+
+    /**
+     * Constructor for ResultSetSerializer
+     * @param writer The writer to send the "rows" frames to
+     * @param stats The stats to record the fetch and serialize times of every result set in
+     */
+    public ResultSetSerializer(ResponseWriter writer, BridgeStats stats) {
+        this.writer = writer;
+        this.stats = stats;
+    }
+
+    /**
+     * Reads every row of the result set into json in the given format
+     * @param rs The result set to read
+     * @param format The result format, FORMAT_OBJECTS (or null), FORMAT_COMPACT or FORMAT_COLUMNAR
+     * @return A json array with one json object per row, or a json object with the columns, their types and the values
+     * @throws SQLException Thrown if there is an error reading the result set
+     */
+    public Object toJSON(ResultSet rs, String format) throws SQLException {
+        return toJSON(rs, format, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads the next rows of the result set, at most maxRows, into json in the given format, a page of a cursor
+     * @param rs The result set to read, positioned before the first row of the page
+     * @param format The result format, FORMAT_OBJECTS (or null), FORMAT_COMPACT or FORMAT_COLUMNAR
+     * @param maxRows The maximum number of rows to read, the result set stays before the next one
+     * @return A json array with one json object per row, or a json object with the columns, their types and the values
+     * @throws SQLException Thrown if there is an error reading the result set
+     */
+    public Object toJSON(ResultSet rs, String format, int maxRows) throws SQLException {
+        long start = startTiming();
+        int count = 0;
+        ResultSetMetaData meta = rs.getMetaData();
+        String[] columns = getColumns(meta);
+        ColumnCodec[] codecs = ColumnCodec.forColumns(meta);
+        if (FORMAT_COMPACT.equals(format)) {
+            JSONObject jsonRS = getHeader(meta, columns);
+            JSONArray rows = new JSONArray();
+            while (count++ < maxRows && next(rs)) {
+                rows.add(readArray(rs, codecs, columns));
+            }
+            jsonRS.put("rows", rows);
+            recordTiming(start);
+            return jsonRS;
+        }
+        if (FORMAT_COLUMNAR.equals(format)) {
+            JSONObject jsonRS = getHeader(meta, columns);
+            JSONArray data = newColumnArrays(columns);
+            while (count++ < maxRows && next(rs)) {
+                readColumns(rs, codecs, columns, data);
+            }
+            jsonRS.put("data", data);
+            recordTiming(start);
+            return jsonRS;
+        }
+        JSONArray jsonRS = new JSONArray();
+        while (count++ < maxRows && next(rs)) {
+            jsonRS.add(readRow(rs, codecs, columns));
+        }
+        recordTiming(start);
+        return jsonRS;
+    }
+
+    /**
+     * Counts the rows of a result set read by toJSON
+     * @param json The json array or object returned by toJSON
+     * @return The number of rows
+     */
+    public static int rowCount(Object json) {
+        if (json instanceof JSONArray)
+            return ((JSONArray) json).size();
+        JSONObject jsonRS = (JSONObject) json;
+        if (jsonRS.containsKey("rows"))
+            return ((JSONArray) jsonRS.get("rows")).size();
+        JSONArray data = (JSONArray) jsonRS.get("data");
+        return data.isEmpty() ? 0 : ((JSONArray) data.get(0)).size();
+    }
+
+    /**
+     * Reads every row of the result set and appends its json, the same as the one of toJSON, as it is read.
+     * The columnar format needs every row to build its columns, its result set is built in memory first.
+     * @param rs The result set to read
+     * @param format The result format, FORMAT_OBJECTS (or null), FORMAT_COMPACT or FORMAT_COLUMNAR
+     * @param out The json of the response, usually a SpillBuffer
+     * @throws SQLException Thrown if there is an error reading the result set
+     * @throws IOException Thrown if there is an error appending the json
+     */
+    public void write(ResultSet rs, String format, Appendable out) throws SQLException, IOException {
+        if (FORMAT_COLUMNAR.equals(format)) {
+            JSONValue.writeJSONString(toJSON(rs, format), out);
+            return;
+        }
+        long start = startTiming();
+        ResultSetMetaData meta = rs.getMetaData();
+        String[] columns = getColumns(meta);
+        ColumnCodec[] codecs = ColumnCodec.forColumns(meta);
+        boolean compact = FORMAT_COMPACT.equals(format);
+        if (compact) {
+            JSONObject header = getHeader(meta, columns);
+            out.append("{\"columns\":");
+            JSONValue.writeJSONString(header.get("columns"), out);
+            out.append(",\"types\":");
+            JSONValue.writeJSONString(header.get("types"), out);
+            out.append(",\"rows\":");
+        }
+        out.append('[');
+        boolean first = true;
+        while (next(rs)) {
+            if (!first)
+                out.append(',');
+            first = false;
+            JSONValue.writeJSONString(compact ? readArray(rs, codecs, columns) : readRow(rs, codecs, columns), out);
+        }
+        out.append(']');
+        if (compact)
+            out.append('}');
+        recordTiming(start);
+    }
+
+    /**
+     * Reads the result set and sends a "rows" frame to the writer every time streamRows rows are read,
+     * so only one frame is held in memory at a time. A frame is always sent for an empty result set.
+     * In the compact and columnar formats the first frame of the result set also has the columns and their types.
+     * @param rs The result set to read
+     * @param request The request the rows belong to
+     * @param resultSetIndex The position of the result set in the response
+     * @return The number of rows sent
+     * @throws SQLException Thrown if there is an error reading the result set
+     */
+    public int stream(ResultSet rs, SQLRequest request, int resultSetIndex) throws SQLException {
+        long start = startTiming();
+        ResultSetMetaData meta = rs.getMetaData();
+        String[] columns = getColumns(meta);
+        ColumnCodec[] codecs = ColumnCodec.forColumns(meta);
+        boolean columnar = FORMAT_COLUMNAR.equals(request.resultFormat);
+        boolean compact = FORMAT_COMPACT.equals(request.resultFormat);
+        JSONObject header = (compact || columnar) ? getHeader(meta, columns) : null;
+        JSONArray rows = columnar ? newColumnArrays(columns) : new JSONArray();
+        int frameRows = 0;
+        int rowCount = 0;
+        while (next(rs)) {
+            if (columnar)
+                readColumns(rs, codecs, columns, rows);
+            else if (compact)
+                rows.add(readArray(rs, codecs, columns));
+            else
+                rows.add(readRow(rs, codecs, columns));
+            frameRows++;
+            rowCount++;
+            if (frameRows >= request.streamRows) {
+                sendFrame(request, resultSetIndex, header, columnar, rows);
+                rows = columnar ? newColumnArrays(columns) : new JSONArray();
+                header = null;
+                frameRows = 0;
+            }
+        }
+        if (rowCount == 0 || frameRows > 0) {
+            sendFrame(request, resultSetIndex, header, columnar, rows);
+        }
+        recordTiming(start);
+        return rowCount;
+    }
+
+    /**
+     * Moves to the next row, the time spent fetching it is added to fetchNanos
+     * @param rs The result set
+     * @return true if there is a row
+     * @throws SQLException Thrown if there is an error fetching the row
+     */
+    private boolean next(ResultSet rs) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return rs.next();
+        } finally {
+            fetchNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Starts timing a result set
+     * @return The start time
+     */
+    private long startTiming() {
+        fetchNanos = 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the fetch time of a result set and the rest of the time spent reading it as its serialize time
+     * @param start The start time returned by startTiming
+     */
+    private void recordTiming(long start) {
+        stats.fetch.record(fetchNanos);
+        stats.serialize.record(System.nanoTime() - start - fetchNanos);
+    }
+
+    /**
+     * Sends a "rows" frame to the writer (Node.js receives the frames from stdout)
+     * @param request The request the rows belong to
+     * @param resultSetIndex The position of the result set in the response
+     * @param header The columns and types to send with the frame, null if they were already sent
+     * @param columnar Indicates if the rows are per column arrays
+     * @param rows The rows of the frame
+     */
+    private void sendFrame(SQLRequest request, int resultSetIndex, JSONObject header, boolean columnar, JSONArray rows) {
+        JSONObject frame = new JSONObject();
+        frame.put("msgId", request.msgId);
+        frame.put("type", "rows");
+        frame.put("resultSet", resultSetIndex);
+        if (header != null)
+            frame.putAll(header);
+        frame.put(columnar ? "data" : "rows", rows);
+        writer.write(frame.toJSONString());
+    }
+
+    /**
+     * Gets the column labels and JDBC types of the result set, sent once per result set in the compact and columnar formats
+     * @param meta The metadata of the result set
+     * @param columns The column labels of the result set
+     * @return A json object with the "columns" and "types" arrays
+     * @throws SQLException Thrown if there is an error reading the metadata
+     */
+    private JSONObject getHeader(ResultSetMetaData meta, String[] columns) throws SQLException {
+        JSONArray names = new JSONArray();
+        JSONArray types = new JSONArray();
+        for (int c = 1; c < columns.length; c++) {
+            names.add(columns[c]);
+            types.add(meta.getColumnType(c));
+        }
+        JSONObject header = new JSONObject();
+        header.put("columns", names);
+        header.put("types", types);
+        return header;
+    }
+
+    /**
+     * Creates one empty json array per column for the columnar format
+     * @param columns The column labels of the result set
+     * @return The json array of column arrays
+     */
+    private JSONArray newColumnArrays(String[] columns) {
+        JSONArray data = new JSONArray();
+        for (int c = 1; c < columns.length; c++)
+            data.add(new JSONArray());
+        return data;
+    }
+
+    /**
+     * Gets the column labels of the result set, indexed from 1 like the JDBC columns
+     * @param meta The metadata of the result set
+     * @return The column labels
+     * @throws SQLException Thrown if there is an error reading the metadata
+     */
+    private String[] getColumns(ResultSetMetaData meta) throws SQLException {
+        int colCount = meta.getColumnCount();
+        String[] columns = new String[colCount+1];
+        for (int c = 1; c<colCount+1; c++)
+            columns[c] = meta.getColumnLabel(c);
+        return columns;
+    }
+
+    /**
+     * Reads the current row of the result set into a json object, null values are left out
+     * @param rs The result set positioned on the row
+     * @param codecs The codecs of the columns
+     * @param columns The column labels of the result set
+     * @return The json object for the row
+     * @throws SQLException Thrown if there is an error reading the row
+     */
+    private JSONObject readRow(ResultSet rs, ColumnCodec[] codecs, String[] columns) throws SQLException {
+        JSONObject row = new JSONObject();
+        for (int c = 1; c< columns.length; c++)
+        {
+            Object val = codecs[c].read(rs, c, dates);
+            if (val == null) continue;
+            row.put(columns[c], val);
+        }
+        return row;
+    }
+
+    /**
+     * Reads the current row of the result set into a json array with the values in column order
+     * @param rs The result set positioned on the row
+     * @param codecs The codecs of the columns
+     * @param columns The column labels of the result set
+     * @return The json array for the row
+     * @throws SQLException Thrown if there is an error reading the row
+     */
+    private JSONArray readArray(ResultSet rs, ColumnCodec[] codecs, String[] columns) throws SQLException {
+        JSONArray row = new JSONArray();
+        for (int c = 1; c< columns.length; c++)
+            row.add(codecs[c].read(rs, c, dates));
+        return row;
+    }
+
+    /**
+     * Appends the values of the current row of the result set to the arrays of their columns
+     * @param rs The result set positioned on the row
+     * @param codecs The codecs of the columns
+     * @param columns The column labels of the result set
+     * @param data The json array of column arrays
+     * @throws SQLException Thrown if there is an error reading the row
+     */
+    private void readColumns(ResultSet rs, ColumnCodec[] codecs, String[] columns, JSONArray data) throws SQLException {
+        for (int c = 1; c< columns.length; c++)
+            ((JSONArray) data.get(c-1)).add(codecs[c].read(rs, c, dates));
+    }
+}
@@ -0,0 +1,153 @@
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+
+/**
+ * A typed value of a ? parameter, sent by Node.js as {"type": ..., "value": ...}. Plain json values
+ * (strings, numbers, booleans and null) are bound with the type that matches them.
+ * @author DarkJ24
+ */
+public class SQLParam {
+	String type; // The sql type of the value, see bind
+	Object value; // The json value, a String, Long, BigDecimal, Boolean or null
+
+	/**
+	 * Binds the parameters of a request to a prepared statement
+	 * @param statement The prepared statement
+	 * @param params The parameter values, plain json values or SQLParam objects
+	 * @throws SQLException Thrown if a value can not be bound or its type is unknown
+	 */
+	public static void bind(PreparedStatement statement, Object[] params) throws SQLException {
+		for (int i = 0; i < params.length; i++) {
+			Object param = params[i];
+			if (param instanceof SQLParam)
+				((SQLParam) param).bind(statement, i + 1);
+			else
+				bindPlain(statement, i + 1, param);
+		}
+	}
+
+	/**
+	 * Binds a plain json value
+	 * @param statement The prepared statement
+	 * @param index The position of the parameter, starting at 1
+	 * @param value The json value
+	 * @throws SQLException Thrown if the value can not be bound
+	 */
+	private static void bindPlain(PreparedStatement statement, int index, Object value) throws SQLException {
+		if (value == null)
+			statement.setNull(index, Types.VARCHAR);
+		else if (value instanceof String)
+			statement.setString(index, (String) value);
+		else if (value instanceof Long)
+			statement.setLong(index, (Long) value);
+		else if (value instanceof BigDecimal)
+			statement.setBigDecimal(index, (BigDecimal) value);
+		else if (value instanceof Boolean)
+			statement.setBoolean(index, (Boolean) value);
+		else
+			statement.setObject(index, value);
+	}
+
+	/**
+	 * Binds the value with its declared type
+	 * @param statement The prepared statement
+	 * @param index The position of the parameter, starting at 1
+	 * @throws SQLException Thrown if the value can not be converted to the type or the type is unknown
+	 */
+	private void bind(PreparedStatement statement, int index) throws SQLException {
+		int sqlType = sqlType();
+		if (value == null) {
+			statement.setNull(index, sqlType);
+			return;
+		}
+		String text = value.toString();
+		try {
+			switch (sqlType) {
+				case Types.VARCHAR:
+					statement.setString(index, text);
+					break;
+				case Types.INTEGER:
+					statement.setInt(index, Integer.parseInt(text));
+					break;
+				case Types.SMALLINT:
+					statement.setShort(index, Short.parseShort(text));
+					break;
+				case Types.TINYINT:
+					statement.setByte(index, (byte) Short.parseShort(text));
+					break;
+				case Types.BIGINT:
+					statement.setLong(index, Long.parseLong(text));
+					break;
+				case Types.DECIMAL:
+					statement.setBigDecimal(index, new BigDecimal(text));
+					break;
+				case Types.DOUBLE:
+					statement.setDouble(index, Double.parseDouble(text));
+					break;
+				case Types.REAL:
+					statement.setFloat(index, Float.parseFloat(text));
+					break;
+				case Types.BIT:
+					statement.setBoolean(index, value instanceof Boolean ? (Boolean) value : "true".equals(text) || "1".equals(text));
+					break;
+				case Types.DATE:
+					statement.setDate(index, Date.valueOf(text.substring(0, 10)));
+					break;
+				case Types.TIME:
+					statement.setTime(index, Time.valueOf(text.indexOf('T') >= 0 ? text.substring(text.indexOf('T') + 1, text.indexOf('T') + 9) : text.substring(0, 8)));
+					break;
+				case Types.TIMESTAMP:
+					statement.setTimestamp(index, toTimestamp(text));
+					break;
+				default:
+					statement.setBytes(index, Base64.getDecoder().decode(text));
+			}
+		} catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeException ex) {
+			throw new SQLException("Invalid " + type + " value for parameter " + index + ": " + text);
+		}
+	}
+
+	/**
+	 * Gets the JDBC type of the declared type
+	 * @return The JDBC type
+	 * @throws SQLException Thrown if the type is unknown
+	 */
+	private int sqlType() throws SQLException {
+		String t = type == null ? "" : type.toLowerCase();
+		switch (t) {
+			case "varchar": case "char": case "string": case "text": return Types.VARCHAR;
+			case "int": case "integer": return Types.INTEGER;
+			case "smallint": return Types.SMALLINT;
+			case "tinyint": return Types.TINYINT;
+			case "bigint": return Types.BIGINT;
+			case "decimal": case "numeric": case "money": return Types.DECIMAL;
+			case "float": case "double": return Types.DOUBLE;
+			case "real": return Types.REAL;
+			case "bit": case "boolean": return Types.BIT;
+			case "date": return Types.DATE;
+			case "time": return Types.TIME;
+			case "datetime": case "timestamp": return Types.TIMESTAMP;
+			case "binary": case "varbinary": case "image": return Types.VARBINARY;
+			default: throw new SQLException("Unknown parameter type: " + type);
+		}
+	}
+
+	/**
+	 * Converts an ISO 8601 date time (as sent by Date.toJSON) or a JDBC timestamp string to a timestamp
+	 * @param text The date time
+	 * @return The timestamp
+	 */
+	private static Timestamp toTimestamp(String text) {
+		if (text.endsWith("Z") || text.lastIndexOf('+') > 10 || text.lastIndexOf('-') > 10)
+			return Timestamp.from(OffsetDateTime.parse(text).toInstant());
+		return Timestamp.valueOf(text.replace('T', ' '));
+	}
+}
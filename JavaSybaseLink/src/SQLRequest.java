@@ -6,8 +6,37 @@
 public class SQLRequest {
 	int msgId; // The message id of the request
     int transId; // The transaction id of the request
+	int clientTransId; // The transaction id sent by the client, a ClientSession replaces transId with a bridge-wide id
 	boolean finishTrans; // Indicates if the transaction needs to be finished
 	String sql; // The sql statement to be executed
 	long sentTime; // The time the request was sent
 	long javaStartTime; // The time the request was received
+	long receivedNanos; // The System.nanoTime when the request was parsed, the start of its queue wait
+	String resultFormat; // The format of the result sets, see ResultSetSerializer, null for one json object per row
+	int streamRows; // The number of rows per "rows" frame when streaming the response, 0 to send the whole response at once
+	Object[] params; // The values of the ? parameters, plain json values or SQLParam, null to execute the sql as a plain statement
+	String priority; // The admission priority of the request, see AdmissionController, null for interactive
+	String type; // The type of a control request (e.g. "invalidate"), null for a sql request
+	long cacheTtlMs; // The time to keep the result in the ResultCache, 0 to not cache it
+	String[] cacheTags; // The tags of the cached result, or the tags to invalidate
+	Object[][] batchParams; // The parameter rows of a "batch" request, one batch entry per row
+	String[] statements; // The statements of a "batch" request without batchParams, one batch entry per statement
+	int batchSize; // The rows sent to the server per executeBatch, 0 for ExecBatchCallable.DEFAULT_BATCH_SIZE
+	int bulkId; // The bulk-load session of a bulkOpen, bulkRows or bulkClose request, see BulkLoader
+	int clientBulkId; // The bulk-load session sent by the client, a ClientSession replaces bulkId with a bridge-wide id
+	String table; // The table loaded by a bulkOpen request
+	String[] columns; // The columns of the rows of a bulkOpen request
+	long checkpointRows; // The rows between commits of a bulk-load session, 0 for BulkLoader.DEFAULT_CHECKPOINT_ROWS
+	int cursorId; // The cursor of an openCursor, fetch or closeCursor request, see CursorManager
+	int clientCursorId; // The cursor sent by the client, a ClientSession replaces cursorId with a bridge-wide id
+	int fetchSize; // The rows the driver reads from the server at a time for an openCursor request, 0 for CursorManager.DEFAULT_FETCH_SIZE
+	int fetchRows; // The rows of the page of a fetch request, 0 for CursorManager.DEFAULT_PAGE_ROWS
+	boolean abort; // Indicates if a bulkClose request rolls back the rows after the last checkpoint
+	long timeoutMs; // The time the request may take from when it is received, 0 for no limit, see InFlightRequests
+	Boolean readOnly; // True to run the query on the read replica, false to keep it on the primary, null to classify its sql, see ReadReplica
+	String cacheKey; // The ResultCache key, set by SybaseDB when the result will be cached
+	long cacheEpoch; // The ResultCache epoch when the request missed the cache
+	RequestCoalescer.Flight flight; // The flight the read leads or joined, see RequestCoalescer, null if it is not coalesced
+	ClientSession session; // The socket client that sent the request, see BridgeServer, null for the stdin of the parent process
+	ResponseWriter writer; // The writer the responses of the request go to, stdout unless it came from a ClientSession
 }
@@ -1,3 +1,5 @@
+import java.util.List;
+
 /**
  * Interface for SQLRequestListener
  * @author rod
@@ -6,4 +8,13 @@
 interface SQLRequestListener {
 
 	void sqlRequest(SQLRequest request);
+
+	/**
+	 * Called with all the requests read together from the input
+	 * @param requests The requests, in the order they were received
+	 */
+	default void sqlRequests(List<SQLRequest> requests) {
+		for (SQLRequest request : requests)
+			sqlRequest(request);
+	}
 }
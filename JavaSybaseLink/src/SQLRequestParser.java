@@ -0,0 +1,536 @@
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Purpose-built parser for the SQLRequest json messages received from Node.js. It works directly on the
+ * bytes of the input buffer, decodes only the fields of SQLRequest and skips any other field without
+ * building objects for it. Only the strings and the parameter values are allocated.
+ * @author DarkJ24
+ */
+public class SQLRequestParser {
+
+    private static final byte[] MSG_ID = "msgId".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TRANS_ID = "transId".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FINISH_TRANS = "finishTrans".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SQL = "sql".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SENT_TIME = "sentTime".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] STREAM_ROWS = "streamRows".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESULT_FORMAT = "resultFormat".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PRIORITY = "priority".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PARAMS = "params".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TYPE = "type".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CACHE_TTL_MS = "cacheTtlMs".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CACHE_TAGS = "cacheTags".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_PARAMS = "batchParams".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] STATEMENTS = "statements".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_SIZE = "batchSize".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BULK_ID = "bulkId".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TABLE = "table".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COLUMNS = "columns".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHECKPOINT_ROWS = "checkpointRows".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ABORT = "abort".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CURSOR_ID = "cursorId".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FETCH_SIZE = "fetchSize".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ROWS = "rows".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TIMEOUT_MS = "timeoutMs".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] READ_ONLY = "readOnly".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    private byte[] buf;
+    private int pos;
+    private int end;
+    private boolean escaped; // Indicates if the last scanned string has escapes
+
+    /**
+     * Parses a json message into a SQLRequest
+     * @param buf The buffer holding the message
+     * @param offset The position of the message in the buffer
+     * @param length The length of the message in bytes
+     * @return The request, or null if the message is not a valid SQLRequest object
+     */
+    public SQLRequest parse(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.end = offset + length;
+        try {
+            return parseRequest();
+        } catch (IllegalArgumentException ex) {
+            return null;
+        } catch (IndexOutOfBoundsException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses the fields of the request object
+     * @return The request, or null if the sql field is missing in a sql request
+     */
+    private SQLRequest parseRequest() {
+        SQLRequest request = new SQLRequest();
+        request.transId = -1;
+        request.clientTransId = -1;
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}')
+            return null;
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            int nameStart = pos;
+            int nameEnd = scanString();
+            pos = nameEnd + 1;
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (nameIs(nameStart, nameEnd, MSG_ID))
+                request.msgId = (int) parseLong();
+            else if (nameIs(nameStart, nameEnd, TRANS_ID))
+                request.clientTransId = request.transId = (int) parseLong();
+            else if (nameIs(nameStart, nameEnd, FINISH_TRANS))
+                request.finishTrans = parseBoolean();
+            else if (nameIs(nameStart, nameEnd, SQL))
+                request.sql = parseString();
+            else if (nameIs(nameStart, nameEnd, SENT_TIME))
+                request.sentTime = parseLong();
+            else if (nameIs(nameStart, nameEnd, STREAM_ROWS))
+                request.streamRows = (int) parseLong();
+            else if (nameIs(nameStart, nameEnd, RESULT_FORMAT))
+                request.resultFormat = parseString();
+            else if (nameIs(nameStart, nameEnd, PRIORITY))
+                request.priority = parseString();
+            else if (nameIs(nameStart, nameEnd, PARAMS))
+                request.params = parseParams();
+            else if (nameIs(nameStart, nameEnd, TYPE))
+                request.type = parseString();
+            else if (nameIs(nameStart, nameEnd, CACHE_TTL_MS))
+                request.cacheTtlMs = parseLong();
+            else if (nameIs(nameStart, nameEnd, CACHE_TAGS))
+                request.cacheTags = parseStrings();
+            else if (nameIs(nameStart, nameEnd, BATCH_PARAMS))
+                request.batchParams = parseBatchParams();
+            else if (nameIs(nameStart, nameEnd, STATEMENTS))
+                request.statements = parseStrings();
+            else if (nameIs(nameStart, nameEnd, BATCH_SIZE))
+                request.batchSize = (int) parseLong();
+            else if (nameIs(nameStart, nameEnd, BULK_ID))
+                request.clientBulkId = request.bulkId = (int) parseLong();
+            else if (nameIs(nameStart, nameEnd, TABLE))
+                request.table = parseString();
+            else if (nameIs(nameStart, nameEnd, COLUMNS))
+                request.columns = parseStrings();
+            else if (nameIs(nameStart, nameEnd, CHECKPOINT_ROWS))
+                request.checkpointRows = parseLong();
+            else if (nameIs(nameStart, nameEnd, ABORT))
+                request.abort = parseBoolean();
+            else if (nameIs(nameStart, nameEnd, CURSOR_ID))
+                request.clientCursorId = request.cursorId = (int) parseLong();
+            else if (nameIs(nameStart, nameEnd, FETCH_SIZE))
+                request.fetchSize = (int) parseLong();
+            else if (nameIs(nameStart, nameEnd, ROWS))
+                request.fetchRows = (int) parseLong();
+            else if (nameIs(nameStart, nameEnd, TIMEOUT_MS))
+                request.timeoutMs = parseLong();
+            else if (nameIs(nameStart, nameEnd, READ_ONLY))
+                request.readOnly = parseOptionalBoolean();
+            else
+                skipValue();
+            skipWhitespace();
+            byte b = at(pos++);
+            if (b == '}')
+                break;
+            if (b != ',')
+                throw new IllegalArgumentException("Expected , or } at " + (pos - 1));
+        }
+        if (request.sql == null && request.type == null)
+            return null;
+        return request;
+    }
+
+    /**
+     * Compares a field name in the buffer with a known name
+     * @param start The start of the name in the buffer
+     * @param nameEnd The end of the name in the buffer
+     * @param name The known name
+     * @return true if they are equal
+     */
+    private boolean nameIs(int start, int nameEnd, byte[] name) {
+        if (nameEnd - start != name.length)
+            return false;
+        for (int i = 0; i < name.length; i++) {
+            if (buf[start + i] != name[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses an integer number, null is read as 0
+     * @return The number
+     */
+    private long parseLong() {
+        if (at(pos) == 'n') {
+            expectLiteral("null");
+            return 0;
+        }
+        boolean negative = false;
+        if (at(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        long value = 0;
+        int start = pos;
+        while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+            value = value * 10 + (buf[pos] - '0');
+            pos++;
+        }
+        if (pos == start)
+            throw new IllegalArgumentException("Expected a number at " + pos);
+        // Decimals and exponents are not expected in these fields, skip them
+        while (pos < end && (buf[pos] == '.' || buf[pos] == 'e' || buf[pos] == 'E' || buf[pos] == '+' || buf[pos] == '-' || (buf[pos] >= '0' && buf[pos] <= '9')))
+            pos++;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a json number, integers that fit are read as Long and the others as BigDecimal
+     * @return The number
+     */
+    private Object parseNumber() {
+        int start = pos;
+        boolean integer = true;
+        if (at(pos) == '-')
+            pos++;
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-')
+                integer = false;
+            else if (b < '0' || b > '9')
+                break;
+            pos++;
+        }
+        if (pos == start)
+            throw new IllegalArgumentException("Expected a number at " + pos);
+        String text = new String(buf, start, pos - start, StandardCharsets.US_ASCII);
+        if (integer && pos - start < 19)
+            return Long.valueOf(text);
+        return new BigDecimal(text);
+    }
+
+    /**
+     * Parses the array of parameter values
+     * @return The values, plain json values or SQLParam objects, or null for a json null
+     */
+    private Object[] parseParams() {
+        if (at(pos) == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('[');
+        ArrayList<Object> params = new ArrayList<Object>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return params.toArray();
+        }
+        while (true) {
+            skipWhitespace();
+            params.add(peek() == '{' ? parseParam() : parseValue());
+            skipWhitespace();
+            byte b = at(pos++);
+            if (b == ']')
+                break;
+            if (b != ',')
+                throw new IllegalArgumentException("Expected , or ] at " + (pos - 1));
+        }
+        return params.toArray();
+    }
+
+    /**
+     * Parses the parameter rows of a batch, an array of parameter arrays
+     * @return The parameter rows, or null for a json null
+     */
+    private Object[][] parseBatchParams() {
+        if (at(pos) == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('[');
+        ArrayList<Object[]> rows = new ArrayList<Object[]>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return new Object[0][];
+        }
+        while (true) {
+            skipWhitespace();
+            Object[] row = parseParams();
+            rows.add(row != null ? row : new Object[0]);
+            skipWhitespace();
+            byte b = at(pos++);
+            if (b == ']')
+                break;
+            if (b != ',')
+                throw new IllegalArgumentException("Expected , or ] at " + (pos - 1));
+        }
+        return rows.toArray(new Object[rows.size()][]);
+    }
+
+    /**
+     * Parses an array of strings, null elements are left out
+     * @return The strings, or null for a json null
+     */
+    private String[] parseStrings() {
+        if (at(pos) == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('[');
+        ArrayList<String> strings = new ArrayList<String>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return new String[0];
+        }
+        while (true) {
+            skipWhitespace();
+            String value = parseString();
+            if (value != null)
+                strings.add(value);
+            skipWhitespace();
+            byte b = at(pos++);
+            if (b == ']')
+                break;
+            if (b != ',')
+                throw new IllegalArgumentException("Expected , or ] at " + (pos - 1));
+        }
+        return strings.toArray(new String[strings.size()]);
+    }
+
+    /**
+     * Parses a typed parameter value, {"type": ..., "value": ...}
+     * @return The typed parameter
+     */
+    private SQLParam parseParam() {
+        SQLParam param = new SQLParam();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return param;
+        }
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            int nameStart = pos;
+            int nameEnd = scanString();
+            pos = nameEnd + 1;
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (nameIs(nameStart, nameEnd, TYPE))
+                param.type = parseString();
+            else if (nameIs(nameStart, nameEnd, VALUE))
+                param.value = parseValue();
+            else
+                skipValue();
+            skipWhitespace();
+            byte b = at(pos++);
+            if (b == '}')
+                break;
+            if (b != ',')
+                throw new IllegalArgumentException("Expected , or } at " + (pos - 1));
+        }
+        return param;
+    }
+
+    /**
+     * Parses a plain json value, objects and arrays are not valid parameter values
+     * @return A String, Long, BigDecimal, Boolean or null
+     */
+    private Object parseValue() {
+        byte b = at(pos);
+        if (b == '"' || b == 'n')
+            return parseString();
+        if (b == 't' || b == 'f')
+            return parseBoolean();
+        return parseNumber();
+    }
+
+    /**
+     * Parses a boolean, null is read as false
+     * @return The boolean
+     */
+    private boolean parseBoolean() {
+        switch (at(pos)) {
+            case 't':
+                expectLiteral("true");
+                return true;
+            case 'f':
+                expectLiteral("false");
+                return false;
+            default:
+                expectLiteral("null");
+                return false;
+        }
+    }
+
+    /**
+     * Parses a boolean that may be left unset
+     * @return The boolean, or null for a json null
+     */
+    private Boolean parseOptionalBoolean() {
+        if (at(pos) == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        return parseBoolean();
+    }
+
+    /**
+     * Parses a string, the bytes are decoded as UTF-8 and escapes are only processed if there are any
+     * @return The string, or null for a json null
+     */
+    private String parseString() {
+        if (at(pos) == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('"');
+        int start = pos;
+        int stringEnd = scanString();
+        String raw = new String(buf, start, stringEnd - start, StandardCharsets.UTF_8);
+        pos = stringEnd + 1;
+        return escaped ? unescape(raw) : raw;
+    }
+
+    /**
+     * Finds the closing quote of the string starting at the current position, without moving the position.
+     * Sets escaped if the string has any escapes.
+     * @return The position of the closing quote
+     */
+    private int scanString() {
+        byte[] b = buf;
+        int p = pos;
+        int e = end;
+        boolean esc = false;
+        while (p < e) {
+            byte c = b[p];
+            if (c == '"') {
+                escaped = esc;
+                return p;
+            }
+            if (c == '\\') {
+                esc = true;
+                p++;
+            }
+            p++;
+        }
+        throw new IllegalArgumentException("Unterminated string");
+    }
+
+    /**
+     * Processes the escapes of a json string
+     * @param raw The string with escapes
+     * @return The unescaped string
+     */
+    private static String unescape(String raw) {
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            c = raw.charAt(++i);
+            switch (c) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default: sb.append(c); // " \ and /
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Skips any json value
+     */
+    private void skipValue() {
+        byte b = at(pos);
+        if (b == '"') {
+            pos++;
+            pos = scanString() + 1;
+        } else if (b == '{' || b == '[') {
+            int depth = 0;
+            do {
+                b = at(pos);
+                if (b == '"') {
+                    skipValue();
+                    continue;
+                }
+                if (b == '{' || b == '[')
+                    depth++;
+                else if (b == '}' || b == ']')
+                    depth--;
+                pos++;
+            } while (depth > 0);
+        } else {
+            while (pos < end && buf[pos] != ',' && buf[pos] != '}' && buf[pos] != ']' && buf[pos] > ' ')
+                pos++;
+        }
+    }
+
+    /**
+     * Skips the whitespace at the current position
+     */
+    private void skipWhitespace() {
+        while (pos < end && (buf[pos] == ' ' || buf[pos] == '\t' || buf[pos] == '\r' || buf[pos] == '\n'))
+            pos++;
+    }
+
+    /**
+     * Gets the byte at the current position
+     * @return The byte
+     */
+    private byte peek() {
+        return at(pos);
+    }
+
+    /**
+     * Gets a byte of the message, failing if the message ends before it
+     * @param i The position of the byte in the buffer
+     * @return The byte
+     */
+    private byte at(int i) {
+        if (i >= end)
+            throw new IllegalArgumentException("Unexpected end of message");
+        return buf[i];
+    }
+
+    /**
+     * Consumes the expected byte
+     * @param c The expected byte
+     */
+    private void expect(char c) {
+        if (at(pos) != c)
+            throw new IllegalArgumentException("Expected " + c + " at " + pos);
+        pos++;
+    }
+
+    /**
+     * Consumes the expected literal
+     * @param literal The expected literal (true, false or null)
+     */
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++)
+            expect(literal.charAt(i));
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds a serialized result while it is built, in memory until it grows past the threshold of the
+ * SpillDirectory, then as UTF-8 in a temporary file mapped into memory one segment at a time, so a very large
+ * result does not fill the heap of the bridge. The ResponseWriter writes the segments of a spilled result to
+ * its channel straight from the mapping. A spilled result may be written in several responses (the requests
+ * of a RequestCoalescer flight): each queued response holds a reference, and the file is deleted when the
+ * builder and the last response released theirs. A buffer is built by one thread.
+ * @author DarkJ24
+ */
+public class SpillBuffer implements Appendable {
+
+    public static final int SEGMENT_BYTES = 64 * 1024 * 1024; // The part of the file mapped at a time
+    public static final int STAGING_CHARS = 8192; // The chars encoded together, json is appended a few chars at a time
+
+    private final SpillDirectory directory;
+    private StringBuilder memory = new StringBuilder();
+    private File file;
+    private RandomAccessFile output;
+    private CharsetEncoder encoder;
+    private CharBuffer staging;
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    private long length = 0; // The bytes in the file
+    private final AtomicInteger references = new AtomicInteger(1); // The builder's
+
+    /**
+     * Constructor for SpillBuffer
+     * @param directory The directory to spill into, null to always keep the result in memory
+     */
+    public SpillBuffer(SpillDirectory directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public SpillBuffer append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public SpillBuffer append(CharSequence csq, int start, int end) throws IOException {
+        if (memory != null) {
+            memory.append(csq, start, end);
+            if (directory != null && memory.length() > directory.getThresholdBytes())
+                spill();
+            return this;
+        }
+        for (int i = start; i < end; ) {
+            int count = Math.min(end - i, staging.remaining());
+            for (int c = 0; c < count; c++)
+                staging.put(csq.charAt(i + c));
+            i += count;
+            if (!staging.hasRemaining())
+                encode(false);
+        }
+        return this;
+    }
+
+    @Override
+    public SpillBuffer append(char c) throws IOException {
+        if (memory != null) {
+            memory.append(c);
+            if (directory != null && memory.length() > directory.getThresholdBytes())
+                spill();
+            return this;
+        }
+        staging.put(c);
+        if (!staging.hasRemaining())
+            encode(false);
+        return this;
+    }
+
+    /**
+     * Moves the result from memory to a new spill file
+     * @throws IOException Thrown if the file can not be created or mapped
+     */
+    private void spill() throws IOException {
+        file = directory.newFile();
+        output = new RandomAccessFile(file, "rw");
+        encoder = StandardCharsets.UTF_8.newEncoder();
+        encoder.onMalformedInput(CodingErrorAction.REPLACE);
+        encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        staging = CharBuffer.allocate(STAGING_CHARS);
+        StringBuilder spilled = memory;
+        memory = null;
+        append(spilled, 0, spilled.length());
+    }
+
+    /**
+     * Encodes the staged chars into the mapped segments, mapping the next segment when the last one is full
+     * @param endOfInput Indicates if these are the last chars of the result
+     * @throws IOException Thrown if the next segment can not be mapped
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        staging.flip();
+        if (segments.isEmpty())
+            mapSegment();
+        while (true) {
+            MappedByteBuffer segment = segments.get(segments.size() - 1);
+            int before = segment.position();
+            CoderResult result = encoder.encode(staging, segment, endOfInput);
+            length += segment.position() - before;
+            if (!result.isOverflow())
+                break;
+            mapSegment(); // The end of a full segment may be left unused, a char is never split
+        }
+        staging.compact(); // Keeps the high surrogate of a pair cut between two appends
+    }
+
+    /**
+     * Maps the next segment of the spill file, the file grows with it
+     * @throws IOException Thrown if the segment can not be mapped
+     */
+    private void mapSegment() throws IOException {
+        segments.add(output.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_BYTES, SEGMENT_BYTES));
+    }
+
+    /**
+     * Ends the result, called once everything was appended
+     * @throws IOException Thrown if the last chars can not be written
+     */
+    public void finish() throws IOException {
+        if (memory != null)
+            return;
+        encode(true);
+        while (true) {
+            MappedByteBuffer segment = segments.get(segments.size() - 1);
+            int before = segment.position();
+            CoderResult result = encoder.flush(segment);
+            length += segment.position() - before;
+            if (!result.isOverflow())
+                break;
+            mapSegment();
+        }
+    }
+
+    /**
+     * Checks if the result went to a spill file
+     * @return true if it is spilled
+     */
+    public boolean isSpilled() {
+        return memory == null;
+    }
+
+    /**
+     * Gets the size of a spilled result
+     * @return The UTF-8 bytes in the spill file
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the parts of the spill file holding the result, to write them to a channel, called after finish
+     * @return Views of the mapped segments, each one limited to the bytes written to it
+     */
+    public ByteBuffer[] getSegments() {
+        ByteBuffer[] views = new ByteBuffer[segments.size()];
+        for (int i = 0; i < views.length; i++) {
+            ByteBuffer view = segments.get(i).duplicate();
+            view.flip();
+            views[i] = view;
+        }
+        return views;
+    }
+
+    /**
+     * Adds a reference for a queued response, the file is kept until it is released
+     */
+    public void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Releases a reference, the builder's or a written response's, the spill file is deleted with the last one
+     */
+    public void release() {
+        if (references.decrementAndGet() != 0 || file == null)
+            return;
+        try {
+            if (output != null)
+                output.close();
+        } catch (IOException ex) {
+            //Ignore, the file is deleted all the same
+        }
+        segments.clear(); // The mapping goes away when the segments are collected
+        directory.deleteFile(file, length);
+    }
+
+    /**
+     * Gets the result kept in memory
+     * @return The serialized result, only while it is not spilled
+     */
+    @Override
+    public String toString() {
+        return memory.toString();
+    }
+
+    /**
+     * Appends the result kept in memory to a builder, without copying it into a String first
+     * @param sb The builder
+     * @return The builder
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append(memory);
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minidev.json.JSONObject;
+
+/**
+ * The directory of the spill files of a bridge, see SpillBuffer. Every bridge spills into a directory of its
+ * own, created in the spillDir option (the temporary directory by default) and locked with a FileLock while
+ * the bridge runs. A spill file is deleted once its response is written, the directory when the bridge
+ * shuts down, and a bridge that starts deletes the directories whose lock it can take: their bridge died
+ * without cleaning up, and the operating system released its lock.
+ * @author DarkJ24
+ */
+public class SpillDirectory {
+
+    public static final long DEFAULT_THRESHOLD_BYTES = 32L * 1024 * 1024; // A response larger than this goes to a spill file
+    public static final int HEAP_FRACTION = 16; // The default threshold is at most this fraction of the heap, several responses are built at once
+    public static final String PREFIX = "JavaSybaseLink-spill-";
+    public static final String LOCK_FILE = ".lock";
+    public static final long ORPHAN_AGE_MS = 60000; // A directory without its lock file is only deleted after this, it may be starting
+
+    private final File dir;
+    private final long thresholdBytes;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+    private final int swept;
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicInteger open = new AtomicInteger();
+
+    /**
+     * Constructor for SpillDirectory, deletes the directories of the bridges that died then creates and locks its own
+     * @param parent The directory to create the spill directory in, null for the temporary directory
+     * @param thresholdBytes The size a response may grow to in memory before it spills
+     * @throws IOException Thrown if the directory can not be created or locked
+     */
+    public SpillDirectory(String parent, long thresholdBytes) throws IOException {
+        File parentDir = new File(parent != null ? parent : System.getProperty("java.io.tmpdir"));
+        this.swept = sweep(parentDir);
+        this.dir = Files.createTempDirectory(parentDir.toPath(), PREFIX).toFile();
+        this.thresholdBytes = thresholdBytes;
+        this.lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+        this.lock = lockFile.getChannel().tryLock();
+    }
+
+    /**
+     * Gets the default threshold, DEFAULT_THRESHOLD_BYTES or less with a small heap
+     * @return The threshold in bytes
+     */
+    public static long defaultThresholdBytes() {
+        return Math.min(DEFAULT_THRESHOLD_BYTES, Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+    }
+
+    /**
+     * Deletes the spill directories whose bridge is gone
+     * @param parent The directory the spill directories are created in
+     * @return The number of directories deleted
+     */
+    static int sweep(File parent) {
+        File[] dirs = parent.listFiles();
+        if (dirs == null)
+            return 0;
+        int count = 0;
+        for (File candidate : dirs) {
+            if (!candidate.isDirectory() || !candidate.getName().startsWith(PREFIX))
+                continue;
+            File lockPath = new File(candidate, LOCK_FILE);
+            if (!lockPath.exists()) {
+                if (System.currentTimeMillis() - candidate.lastModified() > ORPHAN_AGE_MS && delete(candidate))
+                    count++;
+                continue;
+            }
+            try (RandomAccessFile file = new RandomAccessFile(lockPath, "rw"); FileChannel channel = file.getChannel()) {
+                FileLock owner = channel.tryLock();
+                if (owner == null)
+                    continue; // Its bridge is running
+                owner.release();
+            } catch (IOException | OverlappingFileLockException ex) {
+                continue; // Locked by this process, or not ours to delete
+            }
+            if (delete(candidate))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Deletes a spill directory and its files
+     * @param target The directory
+     * @return true if the directory was deleted
+     */
+    private static boolean delete(File target) {
+        File[] files = target.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        return target.delete();
+    }
+
+    /**
+     * Gets the size a response may grow to in memory before it spills
+     * @return The threshold in bytes
+     */
+    public long getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    /**
+     * Creates a spill file
+     * @return The new empty file
+     * @throws IOException Thrown if the file can not be created
+     */
+    File newFile() throws IOException {
+        File file = File.createTempFile("result-", ".json", dir);
+        open.incrementAndGet();
+        spilled.incrementAndGet();
+        return file;
+    }
+
+    /**
+     * Deletes a spill file once its responses are written, a file still mapped on Windows is deleted with the directory
+     * @param file The spill file
+     * @param bytes The size of the response it held
+     */
+    void deleteFile(File file, long bytes) {
+        file.delete();
+        open.decrementAndGet();
+        spilledBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Gets the counters as json
+     * @return The directory, the threshold, the responses spilled and their bytes, the spill files not written yet
+     * and the directories of dead bridges deleted at startup
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("dir", dir.getPath());
+        json.put("thresholdBytes", thresholdBytes);
+        json.put("spilled", spilled.get());
+        json.put("bytes", spilledBytes.get());
+        json.put("open", open.get());
+        json.put("swept", swept);
+        return json;
+    }
+
+    /**
+     * Deletes the spill files and the directory, the responses not written yet are lost
+     */
+    public void shutdown() {
+        try {
+            if (lock != null)
+                lock.release();
+            lockFile.close();
+        } catch (IOException ex) {
+            //Ignore, the directory is deleted all the same
+        }
+        delete(dir);
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import net.minidev.json.JSONObject;
+
+/**
+ * Runs probe queries through the whole path of a request before the bridge reports "connected", so the
+ * first requests of Node.js do not pay for the class loading and the interpreted first runs of the parser,
+ * the connection pool, the driver, the serializer and the writer. The probes are json request lines read by
+ * a StdInputReader, executed by an ExecSQLCallable on the connection pool, and their responses are encoded
+ * by a ResponseWriter that discards them. Their latencies go to their own BridgeStats, not the ones of the
+ * bridge, and a probe that fails is only counted.
+ * @author DarkJ24
+ */
+public class StartupWarmup implements SQLRequestListener {
+
+    public static final int DEFAULT_QUERIES = 10; // The probes of startupMode=fast, the first one loads the classes and the others add little
+    public static final String DEFAULT_SQL = "SELECT 1";
+    public static final long CLOSE_TIMEOUT_MS = 1000; // The time to encode the last responses
+
+    private final ConnectionPool pool;
+    private final ResultCache resultCache;
+    private final InFlightRequests inFlight;
+    private final BridgeStats stats = new BridgeStats();
+    private final ResponseWriter writer;
+    private int failed = 0;
+
+    /**
+     * Constructor for StartupWarmup
+     * @param pool The connection pool the probes run on
+     * @param resultCache The result cache of the bridge, the probes have no cacheKey so it is not used
+     * @param inFlight The requests of the bridge, the probes are not registered in it
+     */
+    public StartupWarmup(ConnectionPool pool, ResultCache resultCache, InFlightRequests inFlight) {
+        this.pool = pool;
+        this.resultCache = resultCache;
+        this.inFlight = inFlight;
+        this.writer = new ResponseWriter(Channels.newChannel(new OutputStream() {
+            @Override
+            public void write(int b) {
+                //Discard
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                //Discard
+            }
+        }), stats.write, "ResponseWriter-warmup", false);
+    }
+
+    /**
+     * Runs the probes one after the other on the calling thread
+     * @param sql The sql of the probes
+     * @param queries The number of probes
+     * @return The number of probes that failed
+     */
+    public int run(String sql, int queries) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < queries; i++) {
+            JSONObject request = new JSONObject();
+            request.put("msgId", -1 - i); // Never seen by Node.js, negative like the other internal requests
+            request.put("transId", -1);
+            request.put("sql", sql);
+            lines.append(request.toJSONString()).append('\n');
+        }
+        StdInputReader input = new StdInputReader(new ByteArrayInputStream(lines.toString().getBytes(StandardCharsets.UTF_8)));
+        input.setParseTimes(stats.parse);
+        input.addListener(this);
+        writer.start();
+        try {
+            input.readLoop();
+        } catch (IOException ex) {
+            //Ignore, the input is in memory
+        }
+        writer.close(CLOSE_TIMEOUT_MS);
+        return failed;
+    }
+
+    /**
+     * Called with a probe
+     * @param request The probe
+     */
+    public void sqlRequest(SQLRequest request) {
+        try {
+            String response = new ExecSQLCallable(pool, writer, request, resultCache, stats, inFlight, null, null).call();
+            if (response != null && response.contains("\"error\""))
+                failed++;
+        } catch (Exception ex) {
+            failed++;
+        }
+    }
+
+    /**
+     * Called with the probes read together
+     * @param requests The probes, in order
+     */
+    public void sqlRequests(List<SQLRequest> requests) {
+        for (SQLRequest request : requests)
+            sqlRequest(request);
+    }
+}
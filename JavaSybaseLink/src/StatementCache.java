@@ -0,0 +1,236 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minidev.json.JSONObject;
+
+/**
+ * Keeps the prepared statements of each physical connection open between requests, in a LRU map per
+ * connection keyed by the sql text, so hot queries are parsed and optimized by the server only once per
+ * connection. The statements are prepared on the physical connection under the pool proxy, otherwise the
+ * pool would close them when the connection is returned. A connection is used by one thread at a time,
+ * so only the map of connections is synchronized.
+ * @author DarkJ24
+ */
+public class StatementCache {
+
+    public static final int DEFAULT_SIZE = 50; // Statements kept open per connection
+
+    private final int size;
+    private final IdentityHashMap<Connection, Statements> connections = new IdentityHashMap<Connection, Statements>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor for StatementCache
+     * @param size The number of statements kept open per connection, 0 to close every statement after it runs
+     */
+    public StatementCache(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Gets the cached statement for the sql on the connection, or prepares a new one
+     * @param connection The connection of the request, usually a pool proxy
+     * @param sql The sql with ? parameters
+     * @return The cached statement, its statement has no parameters set
+     * @throws SQLException Thrown if there is an error preparing the statement
+     */
+    public Entry prepare(Connection connection, String sql) throws SQLException {
+        if (size <= 0) {
+            misses.incrementAndGet();
+            return new Entry(sql, connection.prepareStatement(sql), null);
+        }
+        Connection physical = physical(connection);
+        Statements statements = getStatements(physical);
+        Entry entry = statements.get(sql);
+        if (entry != null) {
+            if (!entry.statement.isClosed()) {
+                entry.uses++;
+                hits.incrementAndGet();
+                return entry;
+            }
+            statements.remove(sql);
+        }
+        misses.incrementAndGet();
+        entry = new Entry(sql, physical.prepareStatement(sql), statements);
+        statements.put(sql, entry);
+        return entry;
+    }
+
+    /**
+     * Returns a statement to the cache after its request, it must be called before the connection is returned to the pool
+     * @param entry The entry returned by prepare
+     * @param failed Indicates if the request failed, the statement is then closed and removed from the cache
+     */
+    public void release(Entry entry, boolean failed) {
+        if (entry.statements != null && !failed) {
+            try {
+                entry.statement.clearParameters();
+                return;
+            } catch (SQLException ex) {
+                //Discard the statement below
+            }
+        }
+        if (entry.statements != null)
+            entry.statements.remove(entry.sql);
+        closeQuietly(entry.statement);
+    }
+
+    /**
+     * Gets the number of requests that found their statement in the cache
+     * @return The number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of requests that had to prepare their statement
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of statements closed to make room for others
+     * @return The number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the share of requests that found their statement in the cache
+     * @return The hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Gets the counters of the cache as json
+     * @return The hits, misses, evictions and hit rate
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("hits", getHits());
+        json.put("misses", getMisses());
+        json.put("evictions", getEvictions());
+        json.put("hitRate", getHitRate());
+        return json;
+    }
+
+    /**
+     * Gets the statements of a physical connection, connections that were closed by the pool are dropped
+     * every time a new connection is seen, as new connections replace the retired ones
+     * @param physical The physical connection
+     * @return The statements of the connection
+     * @throws SQLException Thrown if there is an error checking the connections
+     */
+    private synchronized Statements getStatements(Connection physical) throws SQLException {
+        Statements statements = connections.get(physical);
+        if (statements == null) {
+            Iterator<Map.Entry<Connection, Statements>> it = connections.entrySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().getKey().isClosed())
+                    it.remove();
+            }
+            statements = new Statements();
+            connections.put(physical, statements);
+        }
+        return statements;
+    }
+
+    /**
+     * Gets the physical connection under a pool proxy
+     * @param connection The connection of the request
+     * @return The physical connection, or the connection itself if it is not a proxy
+     */
+    private static Connection physical(Connection connection) {
+        try {
+            if (connection.isWrapperFor(Connection.class)) {
+                Connection physical = connection.unwrap(Connection.class);
+                if (physical != null)
+                    return physical;
+            }
+        } catch (SQLException ex) {
+            //Use the connection as it is
+        }
+        return connection;
+    }
+
+    /**
+     * Closes a statement ignoring any error
+     * @param statement The statement to close
+     */
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ex) {
+            //Ignore
+        }
+    }
+
+    /**
+     * A prepared statement of the cache
+     */
+    public static class Entry {
+        final String sql;
+        final PreparedStatement statement;
+        final Statements statements; // The map of the connection, null if the statement is not cached
+        long uses = 1;
+
+        Entry(String sql, PreparedStatement statement, Statements statements) {
+            this.sql = sql;
+            this.statement = statement;
+            this.statements = statements;
+        }
+
+        /**
+         * Gets the prepared statement
+         * @return The prepared statement
+         */
+        public PreparedStatement getStatement() {
+            return statement;
+        }
+
+        /**
+         * Indicates if the statement was already prepared by an earlier request
+         * @return true if the statement came from the cache
+         */
+        public boolean isHit() {
+            return uses > 1;
+        }
+    }
+
+    /**
+     * The LRU map of statements of a connection, closes the least recently used statement when it is full
+     */
+    private class Statements extends LinkedHashMap<String, StatementCache.Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        Statements() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StatementCache.Entry> eldest) {
+            // Inside the map Entry is the inherited Map.Entry, hence the qualified StatementCache.Entry
+            if (size() <= size)
+                return false;
+            evictions.incrementAndGet();
+            closeQuietly(eldest.getValue().statement);
+            return true;
+        }
+    }
+}
@@ -1,11 +1,12 @@
 
-import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import net.minidev.json.JSONObject;
-import net.minidev.json.JSONValue;
 
 /**
  *
@@ -14,59 +15,134 @@ import net.minidev.json.JSONValue;
  */
 public class StdInputReader {
 
+	public static final int BUFFER_SIZE = 64 * 1024;
+
 	private List<SQLRequestListener> listeners = new ArrayList<SQLRequestListener>();
-	private BufferedReader inputBuffer = new BufferedReader(new InputStreamReader(System.in));
+	private InputStream input;
+	private SQLRequestParser parser = new SQLRequestParser();
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private LatencyHistogram parseTimes = new LatencyHistogram();
 
 	/**
 	 * Constructor for StdInputReader
 	 */
 	public StdInputReader() {
+		this(new FileInputStream(FileDescriptor.in));
 	}
 
 	/**
-	 * Start the read loop from stdin and send the event to the listeners
+	 * Constructor for StdInputReader
+	 * @param input The stream to read the SQLRequest messages from, one per line
+	 */
+	public StdInputReader(InputStream input) {
+		this.input = input;
+	}
+
+	/**
+	 * Start the read loop from stdin and send the event to the listeners.
+	 * The input is read in large chunks into a reusable buffer and the messages are parsed where they are,
+	 * all the requests completed by a chunk are sent to the listeners together.
 	 */
 	public void startReadLoop()
 	{
-		String nextLine;
 		try {
-			while ((nextLine = inputBuffer.readLine()) != null) {
-				nextLine = nextLine.replaceAll("\\n", "\n");
-				sendEvent(nextLine);
-			}
+			readLoop();
 		} catch (IOException ex) {
 			System.err.println("IO exception: " + ex);
 		}
 	}
 
 	/**
-	 * Send the event to the listeners
-	 * @param sqlRequest The SQLRequest in json format received from stdin
+	 * Runs the read loop until the end of the input, see startReadLoop
+	 * @throws IOException Thrown if there is an error reading the input
 	 */
-	private void sendEvent(String sqlRequest)
+	public void readLoop() throws IOException
 	{
-		long startTime = System.currentTimeMillis();
-		SQLRequest request;
-		try {
-			JSONObject val = (JSONObject) JSONValue.parse(sqlRequest);
-			request = new SQLRequest();
-			request.msgId = (Integer)val.get("msgId"); // Indicates the message id
-			request.transId = (Integer)val.get("transId"); // Indicates the transaction id
-			request.finishTrans = (boolean)val.get("finishTrans"); // Indicates if the transaction is finished (commit or rollback)
-			request.sql = (String)val.get("sql"); // The SQL to execute
-			request.javaStartTime = startTime; // The start time of the request
-		} catch (Exception e)
-		{
-			request = null;
+		int start = 0; // Start of the first message not parsed yet
+		int end = 0; // End of the data in the buffer
+		int read;
+		while ((read = input.read(buffer, end, buffer.length - end)) != -1) {
+			long startTime = System.currentTimeMillis();
+			int scanFrom = end;
+			end += read;
+			List<SQLRequest> requests = new ArrayList<SQLRequest>();
+			for (int i = scanFrom; i < end; i++) {
+				if (buffer[i] == '\n') {
+					parseRequest(requests, start, i - start, startTime);
+					start = i + 1;
+				}
+			}
+			if (!requests.isEmpty())
+				sendEvent(requests);
+
+			if (start == end) {
+				// Everything was parsed, shrink the buffer back if a large message made it grow
+				start = 0;
+				end = 0;
+				if (buffer.length > BUFFER_SIZE)
+					buffer = new byte[BUFFER_SIZE];
+			} else if (end == buffer.length) {
+				// Move the incomplete message to the start of the buffer, or grow the buffer if it is already there
+				int pending = end - start;
+				if (start == 0)
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				else
+					System.arraycopy(buffer, start, buffer, 0, pending);
+				start = 0;
+				end = pending;
+			}
+		}
+		if (start < end) {
+			// Last message without a new line
+			List<SQLRequest> requests = new ArrayList<SQLRequest>();
+			parseRequest(requests, start, end - start, System.currentTimeMillis());
+			if (!requests.isEmpty())
+				sendEvent(requests);
 		}
-		if (request == null || request.sql == null)
+	}
+
+	/**
+	 * Parse a message from the buffer and add it to the requests
+	 * @param requests The requests to add the parsed request to
+	 * @param offset The position of the message in the buffer
+	 * @param length The length of the message
+	 * @param startTime The time the message was received
+	 */
+	private void parseRequest(List<SQLRequest> requests, int offset, int length, long startTime)
+	{
+		if (length == 0 || (length == 1 && buffer[offset] == '\r'))
+			return;
+		long start = System.nanoTime();
+		SQLRequest request = parser.parse(buffer, offset, length);
+		long parsed = System.nanoTime();
+		parseTimes.record(parsed - start);
+		if (request == null)
 		{
-			System.err.println("Error parsing json not a valid SQLRequest object. " + sqlRequest);
+			System.err.println("Error parsing json not a valid SQLRequest object. " + new String(buffer, offset, length, StandardCharsets.UTF_8));
 			return;
 		}
+		request.javaStartTime = startTime; // The start time of the request
+		request.receivedNanos = parsed;
+		requests.add(request);
+	}
+
+	/**
+	 * Sets the histogram to record the time to parse every message in
+	 * @param parseTimes The histogram of the parse stage
+	 */
+	public void setParseTimes(LatencyHistogram parseTimes)
+	{
+		this.parseTimes = parseTimes;
+	}
 
+	/**
+	 * Send the events to the listeners
+	 * @param requests The SQLRequests received from stdin
+	 */
+	private void sendEvent(List<SQLRequest> requests)
+	{
 		for (SQLRequestListener l : listeners)
-			l.sqlRequest(request);
+			l.sqlRequests(requests);
 	}
 
 	/**
@@ -1,13 +1,21 @@
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.TimeZone;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 import java.util.logging.Handler;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
 
 /**
  *
@@ -20,6 +28,15 @@ public class SybaseDB {
 	public static final int TYPE_DATE = 91;
 	public static final int TYPE_TIME = 92;
 	public static final int NUMBER_OF_THREADS = 10;
+	public static final String DEFAULT_DATA_SOURCE = "com.sybase.jdbc4.jdbc.SybDataSource"; // jConnect, replaced with the dataSourceClass option
+	public static final int MAX_QUEUED = 10000; // Default number of requests waiting to run before new ones are refused
+	public static final String TYPE_INVALIDATE = "invalidate"; // Control request removing cached results by tag
+	public static final String TYPE_BATCH = "batch"; // Request executed with addBatch/executeBatch, see ExecBatchCallable
+	public static final String TYPE_STATS = "stats"; // Control request returning the stage latencies, gauges and counters of the bridge
+	public static final String TYPE_CANCEL = "cancel"; // Cancels the request with the msgId, which answers with the error, see InFlightRequests
+	public static final String STARTUP_STANDARD = "standard"; // The pools are built one after the other before "connected"
+	public static final String STARTUP_FAST = "fast"; // The main and replica pools are built in parallel, the transaction pool by the first transaction, and the request path is warmed up
+	public static final long EXIT_DRAIN_MS = 5000; // The time the requests have to finish once the parent process closed stdin
 
 	private String host;
 	private Integer port;
@@ -35,8 +52,51 @@ public class SybaseDB {
 	private int keepaliveTime;
 	private int maxLifetime;
 	private int transactionConnections;
-	DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.S'Z'");
+	private int statementCacheSize;
+	private String dataSourceClass;
+	private long transactionIdleTimeoutMs;
+	private String listen;
+	private boolean detached;
+	private String replicaHost;
+	private int replicaPort;
+	private int replicaMinConnections;
+	private int replicaMaxConnections;
+	private int replicaConnectionTimeout;
+	private String readRouting;
+	private long replicaRetryMs;
+	private boolean adaptiveSizing;
+	private long sizingIntervalMs;
+	private String sizingLog;
+	private int maxThreads;
+	private String startupMode;
+	private int warmupQueries;
+	private String warmupSql;
+	private long spillThresholdBytes;
+	private String spillDir;
+	private int maxCursors;
+	private long cursorIdleTimeoutMs;
+	private long writerQueueBytes;
+	private long startupPoolsMs;
+	private long startupWarmupMs;
+	private int warmupFailed;
+	private long connectedMillis;
+	private volatile long firstResultMillis = 0;
+	ExecutionEngine engine;
 	ExecutorService executor;
+	TransactionLanes transactionLanes;
+	ResponseWriter writer;
+	AdmissionController admission;
+	ResultCache resultCache;
+	BulkLoader bulkLoader;
+	TransactionReaper transactionReaper;
+	BridgeServer server;
+	ReadReplica readReplica;
+	AdaptiveSizer sizer;
+	RequestCoalescer coalescer; // null unless the coalesceReads option is true
+	SpillDirectory spill; // null when the spillThresholdBytes option is 0
+	CursorManager cursors;
+	BridgeStats stats = new BridgeStats();
+	InFlightRequests inFlight = new InFlightRequests();
 
 	/**
 	 * Creates a new SybaseDB object with the given parameters
@@ -52,8 +112,9 @@ public class SybaseDB {
 	 * @param keepaliveTime The time to keep a connection alive
 	 * @param maxLifetime The maximum time a connection can be alive
 	 * @param transactionConnections The maximum number of transaction connections
+	 * @param options The optional settings of the bridge (executionMode, threads, maxQueued, statementCacheSize, resultCacheBytes, bulkSessions, bulkLoadMode, dataSourceClass, transactionIdleTimeoutMs, listen, detached, replicaHost, replicaPort, replicaMinConnections, replicaMaxConnections, replicaConnectionTimeout, readRouting, replicaRetryMs, adaptiveSizing, sizingIntervalMs, sizingLog, startupMode, warmupQueries, warmupSql, coalesceReads, spillThresholdBytes, spillDir, maxCursors, cursorIdleTimeoutMs, writerQueueBytes)
 	 */        
-	public SybaseDB(String host, Integer port, String dbname, String username, String password, int minConnections, int maxConnections, int connectionTimeout, int idleTimeout, int keepaliveTime, int maxLifetime, int transactionConnections)
+	public SybaseDB(String host, Integer port, String dbname, String username, String password, int minConnections, int maxConnections, int connectionTimeout, int idleTimeout, int keepaliveTime, int maxLifetime, int transactionConnections, BridgeOptions options)
 	{
 		this.host = host;
 		this.port = port;
@@ -62,13 +123,60 @@ public class SybaseDB {
 		this.password = password;
 		this.minConnections = minConnections;
 		this.maxConnections = maxConnections;
-                this.executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+		this.replicaHost = options.getString("replicaHost", null);
+		this.replicaPort = options.getInt("replicaPort", port);
+		this.replicaMinConnections = options.getInt("replicaMinConnections", minConnections);
+		this.replicaMaxConnections = this.replicaHost == null ? 0 : options.getInt("replicaMaxConnections", maxConnections);
+		this.replicaConnectionTimeout = options.getInt("replicaConnectionTimeout", (int) Math.min(connectionTimeout, ReadReplica.DEFAULT_CONNECTION_TIMEOUT_MS));
+		this.readRouting = options.getString("readRouting", ReadReplica.ROUTING_AUTO);
+		this.replicaRetryMs = options.getLong("replicaRetryMs", ReadReplica.DEFAULT_RETRY_MS);
+		// The queries outside transactions run on the primary and replica pools
+		this.engine = new ExecutionEngine(options.getString("executionMode", ExecutionEngine.MODE_PLATFORM), options.getInt("threads", NUMBER_OF_THREADS), maxConnections + this.replicaMaxConnections, transactionConnections);
+		this.executor = this.engine.getExecutor();
+		this.transactionLanes = new TransactionLanes(this.executor);
+		this.writerQueueBytes = options.getLong("writerQueueBytes", ResponseWriter.defaultMaxQueuedBytes());
+		this.writer = new ResponseWriter(new FileOutputStream(FileDescriptor.out).getChannel(), this.stats.write, "ResponseWriter", true, this.writerQueueBytes);
+		this.admission = new AdmissionController(this.engine.getConcurrency(), options.getInt("maxQueued", MAX_QUEUED), new AdmissionController.Dispatcher() {
+			@Override
+			public void dispatch(SQLRequest request) {
+				dispatchSQL(request);
+			}
+		});
 		this.connectionTimeout = connectionTimeout;
 		this.idleTimeout = idleTimeout;
 		this.keepaliveTime = keepaliveTime;
 		this.maxLifetime = maxLifetime;
 		this.transactionConnections = transactionConnections;
-		df.setTimeZone(TimeZone.getTimeZone("UTC"));
+		this.statementCacheSize = options.getInt("statementCacheSize", StatementCache.DEFAULT_SIZE);
+		this.dataSourceClass = options.getString("dataSourceClass", DEFAULT_DATA_SOURCE);
+		this.transactionIdleTimeoutMs = options.getLong("transactionIdleTimeoutMs", TransactionReaper.DEFAULT_IDLE_TIMEOUT_MS);
+		this.listen = options.getString("listen", null);
+		this.detached = options.getBoolean("detached", false);
+		this.resultCache = new ResultCache(options.getLong("resultCacheBytes", ResultCache.DEFAULT_MAX_BYTES));
+		if (options.getBoolean("coalesceReads", false)) {
+			this.coalescer = new RequestCoalescer(this.inFlight, new RequestCoalescer.Dispatcher() {
+				@Override
+				public void dispatch(SQLRequest request) {
+					execSQL(request);
+				}
+			});
+		}
+		this.adaptiveSizing = options.getBoolean("adaptiveSizing", false);
+		this.sizingIntervalMs = options.getLong("sizingIntervalMs", AdaptiveSizer.DEFAULT_INTERVAL_MS);
+		this.sizingLog = options.getString("sizingLog", null);
+		// When sizing adaptively the platform threads follow the pools, up to the threads option
+		this.maxThreads = options.getInt("threads", maxConnections + this.replicaMaxConnections + transactionConnections);
+		this.startupMode = options.getString("startupMode", STARTUP_STANDARD);
+		if (!STARTUP_STANDARD.equals(this.startupMode) && !STARTUP_FAST.equals(this.startupMode))
+			throw new IllegalArgumentException("Unknown startup mode: " + this.startupMode);
+		this.warmupQueries = options.getInt("warmupQueries", STARTUP_FAST.equals(this.startupMode) ? StartupWarmup.DEFAULT_QUERIES : 0);
+		this.warmupSql = options.getString("warmupSql", StartupWarmup.DEFAULT_SQL);
+		this.spillThresholdBytes = options.getLong("spillThresholdBytes", SpillDirectory.defaultThresholdBytes());
+		this.spillDir = options.getString("spillDir", null);
+		// Every open cursor holds a connection of the main pool, leave the other half to the queries
+		this.maxCursors = options.getInt("maxCursors", Math.max(1, maxConnections / 2));
+		this.cursorIdleTimeoutMs = options.getLong("cursorIdleTimeoutMs", CursorManager.DEFAULT_IDLE_TIMEOUT_MS);
+		this.bulkLoader = new BulkLoader(host, port, dbname, username, password, options.getInt("bulkSessions", BulkLoader.DEFAULT_SESSIONS), connectionTimeout, options.getString("bulkLoadMode", BulkLoader.DEFAULT_MODE), this.dataSourceClass, this.executor);
 	}
 
 	/**
@@ -84,15 +192,88 @@ public class SybaseDB {
                 for (Handler h : rootLogger.getHandlers()) {
                     h.setLevel(Level.SEVERE);
                 }
-                this.pool = ConnectionPool.create(this.host, this.port, this.dbname, this.username, this.password, this.minConnections, this.maxConnections, this.connectionTimeout, this.idleTimeout, this.keepaliveTime, this.maxLifetime, true);
-//                this.transactionPool = ConnectionPoolTransaction1.create(this.host, this.port, this.dbname, this.username, this.password, transactionConnections);
-                this.transactionPool = ConnectionPoolTransaction2.create(this.host, this.port, this.dbname, this.username, this.password, this.minConnections, transactionConnections, this.connectionTimeout, this.idleTimeout, this.keepaliveTime, this.maxLifetime, false);
-//                this.transactionPool = ConnectionPoolTransaction3.create(this.host, this.port, this.dbname, this.username, this.password, transactionConnections);
+                long poolsStart = System.nanoTime();
+                boolean fast = STARTUP_FAST.equals(this.startupMode);
+                FutureTask<ConnectionPool> replicaPool = null;
+                if (this.replicaHost != null) {
+                        replicaPool = new FutureTask<ConnectionPool>(new Callable<ConnectionPool>() {
+                                @Override
+                                public ConnectionPool call() throws Exception {
+                                        return ConnectionPool.create(replicaHost, replicaPort, dbname, username, password, replicaMinConnections, replicaMaxConnections, replicaConnectionTimeout, idleTimeout, keepaliveTime, maxLifetime, true, statementCacheSize, dataSourceClass, true);
+                                }
+                        });
+                        if (fast) {
+                                // Build the replica pool while the main pool opens its first connection
+                                Thread thread = new Thread(replicaPool, "startup-replica-pool");
+                                thread.setDaemon(true);
+                                thread.start();
+                        }
+                }
+                this.pool = ConnectionPool.create(this.host, this.port, this.dbname, this.username, this.password, this.minConnections, this.maxConnections, this.connectionTimeout, this.idleTimeout, this.keepaliveTime, this.maxLifetime, true, this.statementCacheSize, this.dataSourceClass);
+                if (fast) {
+                        // The first transaction creates the transaction pool, see LazyTransactionPool
+                        this.transactionPool = new LazyTransactionPool(new LazyTransactionPool.Factory() {
+                                @Override
+                                public ConnectionPoolTransaction create() throws SQLException {
+                                        return ConnectionPoolTransaction2.create(host, port, dbname, username, password, minConnections, transactionConnections, connectionTimeout, idleTimeout, keepaliveTime, maxLifetime, false, statementCacheSize, dataSourceClass);
+                                }
+                        }, this.transactionConnections, this.statementCacheSize);
+                } else {
+//                this.transactionPool = ConnectionPoolTransaction1.create(this.host, this.port, this.dbname, this.username, this.password, transactionConnections, this.statementCacheSize);
+                this.transactionPool = ConnectionPoolTransaction2.create(this.host, this.port, this.dbname, this.username, this.password, this.minConnections, transactionConnections, this.connectionTimeout, this.idleTimeout, this.keepaliveTime, this.maxLifetime, false, this.statementCacheSize, this.dataSourceClass);
+//                this.transactionPool = ConnectionPoolTransaction3.create(this.host, this.port, this.dbname, this.username, this.password, transactionConnections, this.statementCacheSize);
+                }
+                this.transactionReaper = new TransactionReaper(this.transactionLanes, this.transactionPool, this.admission, this.transactionIdleTimeoutMs);
+                this.transactionReaper.start();
+                // Keep the ResultSets of the cursors open between fetches, see CursorManager
+                this.cursors = new CursorManager(this.pool, this.inFlight, this.stats, this.maxCursors, this.cursorIdleTimeoutMs, this.executor);
+                this.cursors.start();
+                if (replicaPool != null) {
+                        // Send the reads to the replica, see ReadReplica
+                        if (!fast)
+                                replicaPool.run();
+                        this.readReplica = new ReadReplica(startupResult(replicaPool), this.replicaHost + ":" + this.replicaPort, this.readRouting, this.replicaRetryMs);
+                }
+                this.startupPoolsMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - poolsStart);
+                if (this.spillThresholdBytes > 0) {
+                        // Write the results larger than the threshold to files instead of the heap, see SpillBuffer
+                        this.spill = new SpillDirectory(this.spillDir, this.spillThresholdBytes);
+                }
+                if (this.warmupQueries > 0) {
+                        // Run the request path before Node.js sends the first requests, see StartupWarmup
+                        long warmupStart = System.nanoTime();
+                        this.warmupFailed = new StartupWarmup(this.pool, this.resultCache, this.inFlight).run(this.warmupSql, this.warmupQueries);
+                        this.startupWarmupMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - warmupStart);
+                }
+                if (this.adaptiveSizing) {
+                        // Size the pools and the workers from the observed waits and latencies, see AdaptiveSizer
+                        this.sizer = new AdaptiveSizer(this.engine, this.admission, this.stats, this.pool, this.minConnections, this.maxConnections, this.transactionPool, Math.min(this.minConnections, this.transactionConnections), this.transactionConnections, this.replicaMaxConnections, this.maxThreads, this.sizingIntervalMs, this.sizingLog);
+                        this.sizer.start();
+                }
+                if (this.listen != null) {
+                        // Serve other processes on the listen address too, see BridgeServer
+                        this.server = BridgeServer.open(this.listen, this, this.detached);
+                        this.server.start();
+                }
+
+                this.writer.start();
+                this.connectedMillis = System.currentTimeMillis();
 
                 //Atach shutdown hook to close the connection
                 Runtime.getRuntime().addShutdownHook(new Thread() {
                         @Override
                         public void run() {
+                                bulkLoader.shutdown();
+                                cursors.shutdown();
+                                transactionReaper.shutdown();
+                                if (sizer != null)
+                                        sizer.shutdown();
+                                if (server != null)
+                                        server.shutdown();
+                                inFlight.shutdown();
+                                writer.close(1000);
+                                if (spill != null)
+                                        spill.shutdown();
                                 try {
                                         pool.shutdown();
                                 } catch (Exception ex) {
@@ -105,6 +286,13 @@ public class SybaseDB {
                                         System.err.println(ex);
                                         System.err.println(ex.getMessage());
                                 }
+                                try {
+                                        if (readReplica != null)
+                                                readReplica.shutdown();
+                                } catch (Exception ex) {
+                                        System.err.println(ex);
+                                        System.err.println(ex.getMessage());
+                                }
                         }
                 });
 
@@ -117,11 +305,34 @@ public class SybaseDB {
             }
 	}
 
+	/**
+	 * Gets the result of a task of the startup, with the exception it failed with
+	 * @param task The task, done or running
+	 * @return The result of the task
+	 * @throws Exception Thrown if the task failed
+	 */
+	private static <T> T startupResult(FutureTask<T> task) throws Exception
+	{
+		try {
+			return task.get();
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof Exception)
+				throw (Exception) ex.getCause();
+			throw ex;
+		}
+	}
+
 	/**
 	 * Disconnects from the database
 	 */
 	public void disconnect()
 	{
+		if (sizer != null)
+			sizer.shutdown();
+		if (cursors != null)
+			cursors.shutdown();
+		if (spill != null)
+			spill.shutdown();
 		try {
                         pool.shutdown();
                 } catch (Exception ex) {
@@ -134,22 +345,309 @@ public class SybaseDB {
                         System.err.println(ex);
                         System.err.println(ex.getMessage());
                 }
+                try {
+                        if (readReplica != null)
+                                readReplica.shutdown();
+                } catch (Exception ex) {
+                        System.err.println(ex);
+                        System.err.println(ex.getMessage());
+                }
 	}
 
 	/**
-	 * Executes the given SQL request
+	 * Executes the given SQL request once the admission controller lets it run, a request that cannot be
+	 * handled is answered with its error instead of stopping the requests read after it
 	 * @param request The SQL request to execute
 	 */
 	public void execSQL(SQLRequest request)
+	{
+		if (request.writer == null)
+			request.writer = this.writer; // From the stdin of the parent process
+		try {
+			route(request);
+		} catch (RuntimeException ex) {
+			inFlight.finished(request);
+			sendError(request, "Invalid request: " + ex, null);
+		}
+	}
+
+	/**
+	 * Sends a request to the cursors, the bulk loads, the control requests, the result cache or the admission queue
+	 * @param request The SQL request to execute
+	 */
+	private void route(SQLRequest request)
+	{
+		if (CursorManager.isCursorType(request.type)) {
+			// Cursor requests bypass the admission queue like bulk loads, maxCursors bounds the connections they hold
+			cursors.submit(request);
+			return;
+		}
+		if (BulkLoader.isBulkType(request.type)) {
+			// Bulk-load frames bypass the admission queue, Node.js limits the frames in flight per session
+			bulkLoader.submit(request);
+			return;
+		}
+		if (TYPE_CANCEL.equals(request.type)) {
+			// No response of its own, the cancelled request answers with its error
+			inFlight.cancel(request.session, request.msgId);
+			return;
+		}
+		if (request.type != null && !TYPE_BATCH.equals(request.type)) {
+			execControl(request);
+			return;
+		}
+		if (resultCache.isCacheable(request)) {
+			// Answer from the result cache without a connection, or remember the key to cache the result
+			String key = ResultCache.key(request);
+			String result = resultCache.get(key);
+			if (result != null) {
+				request.writer.write(ResultCache.response(request, result, true));
+				return;
+			}
+			request.cacheKey = key;
+			request.cacheEpoch = resultCache.getEpoch();
+		}
+		if (coalescer != null && coalescer.join(request))
+			return; // Answered with the result of the identical read in flight
+		inFlight.register(request);
+		if (!admission.admit(request)) {
+			inFlight.finished(request);
+			if (request.flight != null)
+				request.flight.abandon(); // The reads that joined it are admitted or refused on their own
+		}
+	}
+
+	/**
+	 * Executes a control request, they are answered at once on the reader thread
+	 * @param request The control request
+	 */
+	private void execControl(SQLRequest request)
+	{
+		JSONObject response = new JSONObject();
+		response.put("msgId", request.msgId);
+		if (TYPE_INVALIDATE.equals(request.type)) {
+			response.put("result", resultCache.invalidate(request.cacheTags));
+		} else if (TYPE_STATS.equals(request.type)) {
+			response.put("result", getStatsJSON());
+		} else {
+			response.put("result", new JSONArray());
+			response.put("error", "Unknown request type: " + request.type);
+		}
+		response.put("javaStartTime", request.javaStartTime);
+		response.put("javaEndTime", System.currentTimeMillis());
+		request.writer.write(response.toJSONString());
+	}
+
+	/**
+	 * Sends the error response of a request that did not run
+	 * @param request The request
+	 * @param error The error
+	 * @param errorCode The errorCode of the response, null for none
+	 */
+	private static void sendError(SQLRequest request, String error, String errorCode)
+	{
+		JSONObject response = new JSONObject();
+		response.put("msgId", request.msgId);
+		if (request.transId != -1)
+			response.put("transId", request.clientTransId);
+		response.put("result", new JSONArray());
+		response.put("error", error);
+		if (errorCode != null)
+			response.put("errorCode", errorCode);
+		response.put("javaStartTime", request.javaStartTime);
+		response.put("javaEndTime", System.currentTimeMillis());
+		request.writer.write(response.toJSONString());
+	}
+
+	/**
+	 * Gets the stats of the bridge: the latencies of the stages in microseconds, the gauges of the pools,
+	 * the admission queue and the writer, and the counters of the caches, bulk loads and cursors
+	 * @return The json stats
+	 */
+	private JSONObject getStatsJSON()
+	{
+		JSONObject result = new JSONObject();
+		result.put("uptimeMs", stats.getUptime());
+		result.put("executionMode", engine.getMode());
+		result.put("stages", stats.toJSON());
+		JSONObject pools = new JSONObject();
+		pools.put("main", pool.getPoolStats());
+		pools.put("transaction", transactionPool.getPoolStats());
+		if (readReplica != null)
+			pools.put("replica", readReplica.getPool().getPoolStats());
+		result.put("pools", pools);
+		JSONObject queue = new JSONObject();
+		queue.put("inFlight", admission.getInFlight());
+		queue.put("queued", admission.getQueued());
+		queue.put("admitted", admission.getAdmitted());
+		queue.put("rejected", admission.getRejected());
+		queue.put("transactionLanes", transactionLanes.size());
+		result.put("admission", queue);
+		JSONObject output = new JSONObject();
+		output.put("queueDepth", writer.getQueueDepth());
+		output.put("bytesWritten", writer.getBytesWritten());
+		output.put("bytesPerSecond", Math.round(writer.getBytesPerSecond()));
+		output.put("queuedBytes", writer.getQueuedBytes());
+		output.put("parks", writer.getParks());
+		result.put("writer", output);
+		JSONObject statementCaches = new JSONObject();
+		statementCaches.put("main", pool.getStatementCache().toJSON());
+		statementCaches.put("transaction", transactionPool.getStatementCache().toJSON());
+		if (readReplica != null)
+			statementCaches.put("replica", readReplica.getPool().getStatementCache().toJSON());
+		result.put("statementCache", statementCaches);
+		result.put("resultCache", resultCache.toJSON());
+		JSONObject bulk = new JSONObject();
+		bulk.put("sessions", bulkLoader.getSessions());
+		bulk.put("rows", bulkLoader.getRows());
+		result.put("bulkLoad", bulk);
+		result.put("cursors", cursors.toJSON());
+		result.put("requests", inFlight.toJSON());
+		if (coalescer != null)
+			result.put("coalescing", coalescer.toJSON());
+		if (spill != null)
+			result.put("spill", spill.toJSON());
+		result.put("transactions", transactionReaper.toJSON());
+		if (server != null)
+			result.put("server", server.toJSON());
+		if (readReplica != null)
+			result.put("replica", readReplica.toJSON());
+		if (sizer != null)
+			result.put("sizing", sizer.toJSON());
+		result.put("startup", getStartupJSON());
+		return result;
+	}
+
+	/**
+	 * Gets the times of the startup, from the start of the JVM
+	 * @return The startup mode, the time building the pools and warming up, the time until "connected" and
+	 * until the first request was answered, and the time the first transaction waited for a lazy transaction pool
+	 */
+	private JSONObject getStartupJSON()
+	{
+		long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime(); // Read here, the management classes are not loaded at startup
+		JSONObject startup = new JSONObject();
+		startup.put("mode", startupMode);
+		startup.put("poolsMs", startupPoolsMs);
+		startup.put("warmupMs", startupWarmupMs);
+		startup.put("warmupQueries", warmupQueries);
+		startup.put("warmupFailed", warmupFailed);
+		startup.put("connectedMs", connectedMillis - jvmStart);
+		if (firstResultMillis != 0)
+			startup.put("firstResultMs", firstResultMillis - jvmStart);
+		if (transactionPool instanceof LazyTransactionPool) {
+			long createdMs = ((LazyTransactionPool) transactionPool).getCreatedMs();
+			if (createdMs >= 0)
+				startup.put("transactionPoolMs", createdMs);
+		}
+		return startup;
+	}
+
+	/**
+	 * Called when the parent process closed stdin: a bridge serving other processes exits once they are gone,
+	 * otherwise it exits once the requests it received are done (or after EXIT_DRAIN_MS)
+	 */
+	public void parentClosed()
+	{
+		if (server != null) {
+			server.parentClosed();
+			return;
+		}
+		// Nobody reads the responses any more, exit once the requests already received are done
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(EXIT_DRAIN_MS);
+		while ((admission.getInFlight() > 0 || admission.getQueued() > 0) && System.nanoTime() - deadline < 0) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException ex) {
+				break;
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Gets the size of the responses a writer queues before the workers producing them park
+	 * @return The bound in bytes, see ResponseWriter
+	 */
+	public long getWriterQueueBytes()
+	{
+		return writerQueueBytes;
+	}
+
+	/**
+	 * Gets the stage latency histograms of the bridge
+	 * @return The stats
+	 */
+	public BridgeStats getStats()
+	{
+		return stats;
+	}
+
+	/**
+	 * Runs an admitted SQL request, the admission controller is told when it finishes
+	 * @param request The SQL request to run
+	 */
+	private void dispatchSQL(SQLRequest request)
 	{
 		// Create a new thread to execute the SQL request
-            if (request.transId != -1) {
-				// If the request is a transaction request, execute it in the transaction pool
-                Future f = executor.submit(new ExecSQLTransactionCallable(this.transactionPool, df, request));
-            } else {
-				// If the request is not a transaction request, execute it in the normal pool 
-                Future f = executor.submit(new ExecSQLCallable(this.pool, df, request));
+            try {
+                if (TYPE_BATCH.equals(request.type)) {
+                    // Batches run on a single connection, after the previous requests of their transaction if they have one
+                    ExecBatchCallable batch = new ExecBatchCallable(this.pool, this.transactionPool, request.writer, request, this.stats, this.inFlight);
+                    if (request.transId != -1)
+                        transactionLanes.submit(request.transId, admitted(request, engine.limit(batch, true)), request.finishTrans);
+                    else
+                        engine.submit(admitted(request, batch));
+                } else if (request.transId != -1) {
+                    // If the request is a transaction request, execute it in the transaction pool, after the previous requests of the transaction
+                    transactionLanes.submit(request.transId, admitted(request, engine.limit(new ExecSQLTransactionCallable(this.transactionPool, request.writer, request, this.stats, this.inFlight), true)), request.finishTrans);
+                } else {
+                    // If the request is not a transaction request, execute it in the normal pool
+                    Future f = engine.submit(admitted(request, new ExecSQLCallable(this.pool, request.writer, request, this.resultCache, this.stats, this.inFlight, this.readReplica, this.spill)));
+                }
+            } catch (RejectedExecutionException ex) {
+                // The executor only refuses work once it is shut down
+                inFlight.finished(request);
+                sendError(request, "The bridge is shutting down", AdmissionController.ERROR_OVERLOADED);
+                admission.done();
+                if (request.flight != null)
+                    request.flight.abandon();
             }
 	}
 
+	/**
+	 * Wraps a task so the admission controller is told when it finishes, and the request is no longer tracked
+	 * @param request The admitted request
+	 * @param task The task executing the request
+	 * @return The wrapped task
+	 */
+	private <T> Callable<T> admitted(final SQLRequest request, final Callable<T> task)
+	{
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				try {
+					return task.call();
+				} finally {
+					if (firstResultMillis == 0)
+						firstResultMillis = System.currentTimeMillis();
+					inFlight.finished(request);
+					admission.done();
+					if (request.flight != null)
+						request.flight.abandon(); // Only if the flight did not land, when the task failed unexpectedly
+				}
+			}
+		};
+	}
+
+	/**
+	 * Executes the given SQL requests in the order they were received
+	 * @param requests The SQL requests to execute
+	 */
+	public void execSQL(List<SQLRequest> requests)
+	{
+		for (SQLRequest request : requests)
+			execSQL(request);
+	}
+
 }
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the requests of each transaction one at a time in the order they arrived, while different
+ * transactions run in parallel on the shared executor. Every transaction has a lane with a lock-free
+ * queue; a lane is scheduled on the executor only while it has requests, so a transaction never holds
+ * more than one worker thread and never runs two statements at once on its connection.
+ * Every lane also remembers when its transaction started and when its last request finished, so a
+ * TransactionReaper can find the transactions left idle.
+ * @author DarkJ24
+ */
+public class TransactionLanes {
+
+    public static final int MAX_TASKS_PER_RUN = 16; // Tasks run before giving the worker back to other lanes
+
+    private final ConcurrentHashMap<Integer, Lane> lanes = new ConcurrentHashMap<Integer, Lane>();
+    private final Executor executor;
+
+    /**
+     * Constructor for TransactionLanes
+     * @param executor The executor to run the lanes on
+     */
+    public TransactionLanes(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a request to the lane of its transaction
+     * @param transactionId The transaction id of the request
+     * @param task The task executing the request
+     * @param finishTrans Indicates if the request finishes the transaction, the lane is removed after it runs
+     */
+    public void submit(int transactionId, Callable<?> task, boolean finishTrans) {
+        Lane lane = lanes.get(transactionId);
+        if (lane == null) {
+            Lane newLane = new Lane(transactionId);
+            lane = lanes.putIfAbsent(transactionId, newLane);
+            if (lane == null)
+                lane = newLane;
+        }
+        lane.tasks.offer(new LaneTask(task, finishTrans));
+        lane.schedule();
+    }
+
+    /**
+     * Gets the number of transactions with a lane
+     * @return The number of lanes
+     */
+    public int size() {
+        return lanes.size();
+    }
+
+    /**
+     * Removes the lanes idle longer than idleNanos and hands their transactions to the handler. A lane is
+     * idle when it has no request queued or running; it is claimed like a run of the lane while the
+     * handler runs, so no request of the transaction can run at the same time. Requests that arrive
+     * while the lane is being reaped run afterwards and fail on the reaped transaction.
+     * @param idleNanos The idle time after which a lane is reaped
+     * @param handler The handler releasing the transaction of a reaped lane
+     * @return The number of lanes reaped
+     */
+    public int reapIdle(long idleNanos, IdleHandler handler) {
+        int reaped = 0;
+        long now = System.nanoTime();
+        for (Lane lane : lanes.values()) {
+            if (now - lane.lastActiveNanos < idleNanos || !lane.tasks.isEmpty())
+                continue;
+            if (!lane.scheduled.compareAndSet(false, true))
+                continue; // Running
+            try {
+                long idle = System.nanoTime() - lane.lastActiveNanos;
+                if (idle >= idleNanos && lane.tasks.isEmpty() && lanes.remove(lane.transactionId, lane)) {
+                    handler.reap(lane.transactionId, idle / 1000000);
+                    reaped++;
+                }
+            } finally {
+                lane.scheduled.set(false);
+                if (!lane.tasks.isEmpty())
+                    lane.schedule();
+            }
+        }
+        return reaped;
+    }
+
+    /**
+     * Gets the ages of the transactions with a lane
+     * @return The time since the first request of each transaction, in milliseconds
+     */
+    public long[] getAges() {
+        long now = System.nanoTime();
+        long[] ages = new long[lanes.size()];
+        int count = 0;
+        for (Lane lane : lanes.values()) {
+            if (count == ages.length)
+                break; // Lanes added since the size was read
+            ages[count++] = (now - lane.openedNanos) / 1000000;
+        }
+        return count == ages.length ? ages : Arrays.copyOf(ages, count);
+    }
+
+    /**
+     * Releases the transaction of a lane removed by reapIdle
+     */
+    public interface IdleHandler {
+
+        /**
+         * Rolls back and releases an idle transaction
+         * @param transactionId The transaction id
+         * @param idleMs The time since the last request of the transaction finished
+         */
+        void reap(int transactionId, long idleMs);
+    }
+
+    /**
+     * A request waiting in a lane
+     */
+    private static class LaneTask {
+        final Callable<?> task;
+        final boolean finishTrans;
+
+        LaneTask(Callable<?> task, boolean finishTrans) {
+            this.task = task;
+            this.finishTrans = finishTrans;
+        }
+    }
+
+    /**
+     * The queue of requests of a transaction
+     */
+    private class Lane implements Runnable {
+        final int transactionId;
+        final ConcurrentLinkedQueue<LaneTask> tasks = new ConcurrentLinkedQueue<LaneTask>();
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+        final long openedNanos = System.nanoTime();
+        volatile long lastActiveNanos = openedNanos; // When the last request finished, written by the worker running the lane
+
+        Lane(int transactionId) {
+            this.transactionId = transactionId;
+        }
+
+        /**
+         * Runs the lane on the executor unless it is already scheduled or running
+         */
+        void schedule() {
+            if (scheduled.compareAndSet(false, true))
+                executor.execute(this);
+        }
+
+        /**
+         * Runs the queued tasks in order, at most MAX_TASKS_PER_RUN before scheduling the lane again
+         */
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                LaneTask next = tasks.poll();
+                if (next == null)
+                    break;
+                try {
+                    next.task.call();
+                } catch (Exception ex) {
+                    //Ignore, the callables send their errors in the response
+                }
+                lastActiveNanos = System.nanoTime();
+                if (next.finishTrans)
+                    lanes.remove(transactionId, this);
+            }
+            scheduled.set(false);
+            // A task may have been added after the last poll, schedule again so it is not left behind
+            if (!tasks.isEmpty())
+                schedule();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minidev.json.JSONObject;
+
+/**
+ * Rolls back and releases the transactions that stay idle longer than the idle timeout, so a transaction
+ * that Node.js never finishes (a crash in the middle of transaction(), or a transactionId used without a
+ * finishTransaction query) does not pin a connection of the transaction pool forever. The idle time of a
+ * transaction is the time since its last request finished, tracked by its lane in TransactionLanes; a
+ * transaction with a request queued or running is never reaped. Later requests of a reaped transaction
+ * fail with the reason instead of silently starting a new transaction on a fresh connection.
+ * @author DarkJ24
+ */
+public class TransactionReaper {
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 600000; // 10 minutes, 0 disables the reaper
+    public static final long MAX_SWEEP_MS = 1000; // The longest time between two sweeps
+    private static final long[] AGE_BUCKETS_MS = {1000, 10000, 60000, 600000}; // Upper bounds of the age buckets of the stats
+    private static final String[] AGE_BUCKET_NAMES = {"lt1s", "lt10s", "lt1m", "lt10m", "ge10m"};
+
+    private final TransactionLanes lanes;
+    private final ConnectionPoolTransaction pool;
+    private final AdmissionController admission;
+    private final long idleTimeoutMs;
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicLong reaped = new AtomicLong();
+
+    /**
+     * Constructor for TransactionReaper, the sweeps start with start()
+     * @param lanes The lanes of the transactions
+     * @param pool The transaction pool holding the connections of the transactions
+     * @param admission The admission controller, it forgets the reaped transactions
+     * @param idleTimeoutMs The idle time after which a transaction is rolled back, 0 to never reap
+     */
+    public TransactionReaper(TransactionLanes lanes, ConnectionPoolTransaction pool, AdmissionController admission, long idleTimeoutMs) {
+        this.lanes = lanes;
+        this.pool = pool;
+        this.admission = admission;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "transaction-reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts sweeping the lanes, four times per idle timeout (at most MAX_SWEEP_MS apart)
+     */
+    public void start() {
+        if (idleTimeoutMs <= 0)
+            return;
+        long period = Math.max(1, Math.min(MAX_SWEEP_MS, idleTimeoutMs / 4));
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reaps the transactions idle longer than the idle timeout
+     * @return The number of lanes reaped
+     */
+    public int sweep() {
+        return lanes.reapIdle(TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs), new TransactionLanes.IdleHandler() {
+            @Override
+            public void reap(int transactionId, long idleMs) {
+                admission.forget(transactionId); // No finishTrans request will remove it
+                try {
+                    if (!pool.reap(transactionId, "The transaction was rolled back after being idle for " + idleMs + "ms"))
+                        return; // Only the lane was left, its requests failed before getting a connection
+                } catch (Exception ex) {
+                    //Ignore, the pool already forgot the connection
+                }
+                reaped.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Gets the counters as json
+     * @return The open transactions, the transactions reaped so far, the idle timeout and the open
+     * transactions by age since their first request
+     */
+    public JSONObject toJSON() {
+        long[] ages = lanes.getAges();
+        long[] counts = new long[AGE_BUCKET_NAMES.length];
+        for (long age : ages) {
+            int bucket = 0;
+            while (bucket < AGE_BUCKETS_MS.length && age >= AGE_BUCKETS_MS[bucket])
+                bucket++;
+            counts[bucket]++;
+        }
+        JSONObject byAge = new JSONObject();
+        for (int i = 0; i < AGE_BUCKET_NAMES.length; i++)
+            byAge.put(AGE_BUCKET_NAMES[i], counts[i]);
+        JSONObject json = new JSONObject();
+        json.put("open", ages.length);
+        json.put("reaped", reaped.get());
+        json.put("idleTimeoutMs", idleTimeoutMs);
+        json.put("ages", byAge);
+        return json;
+    }
+
+    /**
+     * Stops the sweeps
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * The transactions reaped by a pool, so their later requests fail instead of opening a new transaction.
+     * A transaction is forgotten once Node.js finishes it, and the oldest are forgotten past MAX_SIZE.
+     */
+    public static final class Tombstones {
+
+        public static final int MAX_SIZE = 10000;
+
+        private final Map<Integer, String> reasons = new LinkedHashMap<Integer, String>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > MAX_SIZE;
+            }
+        };
+
+        /**
+         * Remembers a reaped transaction
+         * @param transactionId The transaction id
+         * @param reason The error of the later requests of the transaction
+         */
+        public synchronized void add(int transactionId, String reason) {
+            reasons.put(transactionId, reason);
+        }
+
+        /**
+         * Fails if the transaction was reaped, called before a transaction gets its connection
+         * @param transactionId The transaction id
+         * @throws SQLException Thrown with the reason if the transaction was reaped
+         */
+        public synchronized void check(int transactionId) throws SQLException {
+            String reason = reasons.get(transactionId);
+            if (reason != null)
+                throw new SQLException(reason);
+        }
+
+        /**
+         * Forgets a transaction, once Node.js finishes it
+         * @param transactionId The transaction id
+         */
+        public synchronized void remove(int transactionId) {
+            reasons.remove(transactionId);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.minidev.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the dispatch order and the overload refusals of AdmissionController
+ * @author DarkJ24
+ */
+public class AdmissionControllerTest {
+
+    private final ResponseCapture responses = new ResponseCapture();
+    private final List<Integer> dispatched = new ArrayList<Integer>();
+
+    /**
+     * Creates a controller recording the msgIds it dispatches
+     * @param concurrency The number of requests dispatched at once
+     * @param maxQueued The maximum number of requests waiting
+     * @return The controller
+     */
+    private AdmissionController controller(int concurrency, int maxQueued) {
+        return new AdmissionController(concurrency, maxQueued, new AdmissionController.Dispatcher() {
+            @Override
+            public void dispatch(SQLRequest request) {
+                dispatched.add(request.msgId);
+            }
+        });
+    }
+
+    /**
+     * Creates a request of a transaction
+     * @param msgId The msgId of the request
+     * @param transId The transaction id
+     * @return The request
+     */
+    private SQLRequest transactionRequest(int msgId, int transId) {
+        SQLRequest request = responses.request(msgId, "UPDATE t SET a = 1");
+        request.transId = request.clientTransId = transId;
+        return request;
+    }
+
+    @Test
+    public void dispatchesOpenTransactionsThenInteractiveThenBatch() {
+        AdmissionController admission = controller(1, 10);
+        assertTrue(admission.admit(transactionRequest(1, 7)));
+        SQLRequest batch = responses.request(2, "SELECT 2");
+        batch.priority = AdmissionController.PRIORITY_BATCH;
+        assertTrue(admission.admit(batch));
+        assertTrue(admission.admit(responses.request(3, "SELECT 3")));
+        assertTrue(admission.admit(transactionRequest(4, 7)));
+        assertTrue(admission.admit(responses.request(5, "SELECT 5")));
+        assertEquals(4, admission.getQueued());
+        for (int i = 0; i < 4; i++)
+            admission.done();
+        assertEquals(Arrays.asList(1, 4, 3, 5, 2), dispatched);
+        admission.done();
+        assertEquals(0, admission.getInFlight());
+        responses.close();
+    }
+
+    @Test
+    public void refusesNewWorkWhenTheQueueIsFull() {
+        AdmissionController admission = controller(1, 1);
+        assertTrue(admission.admit(transactionRequest(1, 3)));
+        assertTrue(admission.admit(responses.request(2, "SELECT 2")));
+        assertFalse(admission.admit(responses.request(3, "SELECT 3")));
+        assertTrue(admission.admit(transactionRequest(4, 3))); // The transaction is open
+        SQLRequest finish = transactionRequest(5, 9);
+        finish.finishTrans = true;
+        assertTrue(admission.admit(finish)); // Finishing a transaction releases its connection
+        assertEquals(1, admission.getRejected());
+        assertEquals(3, admission.getQueued());
+        List<JSONObject> written = responses.close();
+        assertEquals(1, written.size());
+        assertEquals(3, ((Number) written.get(0).get("msgId")).intValue());
+        assertEquals(AdmissionController.ERROR_OVERLOADED, written.get(0).get("errorCode"));
+    }
+
+    @Test
+    public void refusesRequestsOfAForgottenTransaction() {
+        AdmissionController admission = controller(1, 1);
+        assertTrue(admission.admit(transactionRequest(1, 3)));
+        assertTrue(admission.admit(responses.request(2, "SELECT 2")));
+        admission.forget(3); // Reaped
+        assertFalse(admission.admit(transactionRequest(3, 3)));
+        responses.close();
+    }
+
+    @Test
+    public void dispatchesMoreWhenTheConcurrencyGrows() {
+        AdmissionController admission = controller(1, 10);
+        for (int msgId = 1; msgId <= 4; msgId++)
+            assertTrue(admission.admit(responses.request(msgId, "SELECT 1")));
+        admission.setConcurrency(3);
+        assertEquals(Arrays.asList(1, 2, 3), dispatched);
+        assertEquals(3, admission.getInFlight());
+        assertEquals(1, admission.getQueued());
+        responses.close();
+    }
+}
@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.List;
+import net.minidev.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how RequestCoalescer answers the requests of a flight, and the requests that leave or are sent back
+ * @author DarkJ24
+ */
+public class RequestCoalescerTest {
+
+    private final ResponseCapture responses = new ResponseCapture();
+    private final InFlightRequests inFlight = new InFlightRequests();
+    private final List<SQLRequest> rerun = new ArrayList<SQLRequest>();
+    private final RequestCoalescer coalescer = new RequestCoalescer(inFlight, new RequestCoalescer.Dispatcher() {
+        @Override
+        public void dispatch(SQLRequest request) {
+            rerun.add(request);
+        }
+    });
+
+    @Test
+    public void answersTheFollowersWithTheResultOfTheLeader() {
+        SQLRequest leader = responses.request(1, "SELECT * FROM t");
+        SQLRequest follower = responses.request(2, "SELECT * FROM t");
+        assertFalse(coalescer.join(leader));
+        assertNotNull(leader.flight);
+        assertTrue(coalescer.join(follower));
+        assertSame(leader.flight, follower.flight);
+        assertEquals(1, inFlight.size()); // The follower, the leader is registered by SybaseDB
+        leader.flight.complete("[[1]]");
+        assertEquals(0, inFlight.size());
+        assertFalse(coalescer.join(responses.request(3, "SELECT * FROM t"))); // The flight landed, a new one starts
+        List<JSONObject> written = responses.close();
+        assertEquals(1, written.size());
+        assertEquals(2, ((Number) written.get(0).get("msgId")).intValue());
+        assertEquals("[[1]]", written.get(0).get("result").toString());
+    }
+
+    @Test
+    public void answersACancelledFollowerWithItsError() {
+        SQLRequest leader = responses.request(1, "SELECT * FROM t");
+        SQLRequest follower = responses.request(2, "SELECT * FROM t");
+        SQLRequest other = responses.request(3, "SELECT * FROM t");
+        coalescer.join(leader);
+        coalescer.join(follower);
+        coalescer.join(other);
+        assertTrue(inFlight.cancel(null, 2));
+        leader.flight.complete("[]");
+        List<JSONObject> written = responses.close();
+        assertEquals(2, written.size());
+        assertEquals(2, ((Number) written.get(0).get("msgId")).intValue());
+        assertEquals(InFlightRequests.ERROR_CANCELLED, written.get(0).get("errorCode"));
+        assertEquals(3, ((Number) written.get(1).get("msgId")).intValue());
+        assertNull(written.get(1).get("error"));
+        assertEquals(1L, coalescer.toJSON().get("left"));
+    }
+
+    @Test
+    public void sendsTheFollowersOfAnAbandonedFlightBack() {
+        SQLRequest leader = responses.request(1, "SELECT * FROM t WHERE a = ?");
+        leader.params = new Object[] {1L};
+        SQLRequest follower = responses.request(2, "SELECT * FROM t WHERE a = ?");
+        follower.params = new Object[] {1L};
+        SQLRequest otherParams = responses.request(3, "SELECT * FROM t WHERE a = ?");
+        otherParams.params = new Object[] {2L};
+        coalescer.join(leader);
+        assertTrue(coalescer.join(follower));
+        assertFalse(coalescer.join(otherParams));
+        leader.flight.abandon();
+        assertEquals(1, rerun.size());
+        assertSame(follower, rerun.get(0));
+        assertEquals(0, inFlight.size());
+        leader.flight.complete("[]"); // Too late, the flight already landed
+        assertTrue(responses.close().isEmpty());
+        assertEquals(1L, coalescer.toJSON().get("rerun"));
+    }
+
+    @Test
+    public void coalescesOnlyPlainReadsOutsideTransactions() {
+        assertTrue(RequestCoalescer.isCoalescable(responses.request(1, "SELECT 1")));
+        assertFalse(RequestCoalescer.isCoalescable(responses.request(2, "UPDATE t SET a = 1")));
+        SQLRequest marked = responses.request(3, "EXEC read_proc");
+        marked.readOnly = Boolean.TRUE;
+        assertTrue(RequestCoalescer.isCoalescable(marked));
+        SQLRequest transaction = responses.request(4, "SELECT 1");
+        transaction.transId = 5;
+        assertFalse(RequestCoalescer.isCoalescable(transaction));
+        SQLRequest streamed = responses.request(5, "SELECT 1");
+        streamed.streamRows = 100;
+        assertFalse(RequestCoalescer.isCoalescable(streamed));
+        SQLRequest batch = responses.request(6, "SELECT 1");
+        batch.type = SybaseDB.TYPE_BATCH;
+        assertFalse(RequestCoalescer.isCoalescable(batch));
+        SQLRequest noSql = responses.request(7, null);
+        noSql.type = SybaseDB.TYPE_BATCH;
+        assertFalse(RequestCoalescer.isCoalescable(noSql));
+        responses.close();
+    }
+}
@@ -0,0 +1,53 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+/**
+ * A ResponseWriter writing to memory, for the tests that check the responses a class writes
+ * @author DarkJ24
+ */
+class ResponseCapture {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ResponseWriter writer = new ResponseWriter(Channels.newChannel(out), new LatencyHistogram(), "ResponseWriter-test", true, ResponseWriter.defaultMaxQueuedBytes());
+
+    ResponseCapture() {
+        writer.start();
+    }
+
+    /**
+     * Stops the writer and parses the responses it wrote
+     * @return The responses, in the order they were written
+     */
+    List<JSONObject> close() {
+        writer.close(1000);
+        List<JSONObject> responses = new ArrayList<JSONObject>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty())
+                responses.add((JSONObject) JSONValue.parse(line));
+        }
+        return responses;
+    }
+
+    /**
+     * Creates a sql request outside a transaction that writes its responses to this capture
+     * @param msgId The msgId of the request
+     * @param sql The sql of the request
+     * @return The request
+     */
+    SQLRequest request(int msgId, String sql) {
+        SQLRequest request = new SQLRequest();
+        request.msgId = msgId;
+        request.transId = -1;
+        request.clientTransId = -1;
+        request.sql = sql;
+        request.writer = writer;
+        request.javaStartTime = System.currentTimeMillis();
+        request.receivedNanos = System.nanoTime();
+        return request;
+    }
+}
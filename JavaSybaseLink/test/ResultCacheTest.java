@@ -0,0 +1,137 @@
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the expiration, eviction and invalidation of ResultCache and which requests it caches
+ * @author DarkJ24
+ */
+public class ResultCacheTest {
+
+    private static final String RESULT = "[[\"01234567890123456789012345678901234567890123\"]]"; // 50 chars, 200 bytes with a 2 char key
+
+    @Test
+    public void expiresEntriesAfterTheirTtl() throws InterruptedException {
+        ResultCache cache = new ResultCache(ResultCache.DEFAULT_MAX_BYTES);
+        cache.put("k1", RESULT, 1, null, cache.getEpoch());
+        cache.put("k2", RESULT, 60000, null, cache.getEpoch());
+        Thread.sleep(20);
+        assertNull(cache.get("k1"));
+        assertEquals(RESULT, cache.get("k2"));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntries() {
+        ResultCache cache = new ResultCache(1000); // Five entries
+        for (int i = 1; i <= 5; i++)
+            cache.put("k" + i, RESULT, 60000, null, cache.getEpoch());
+        assertEquals(1000, cache.getBytes());
+        assertEquals(RESULT, cache.get("k1"));
+        cache.put("k6", RESULT, 60000, null, cache.getEpoch());
+        assertNull(cache.get("k2"));
+        assertEquals(RESULT, cache.get("k1"));
+        assertEquals(RESULT, cache.get("k6"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(5, cache.size());
+    }
+
+    @Test
+    public void doesNotCacheResultsLargerThanAQuarterOfTheCache() {
+        ResultCache cache = new ResultCache(700);
+        cache.put("k1", RESULT, 60000, null, cache.getEpoch());
+        assertNull(cache.get("k1"));
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void invalidatesByTag() {
+        ResultCache cache = new ResultCache(ResultCache.DEFAULT_MAX_BYTES);
+        cache.put("orders", RESULT, 60000, new String[] {"Orders"}, cache.getEpoch());
+        cache.put("join", RESULT, 60000, new String[] {"orders", "customers"}, cache.getEpoch());
+        cache.put("customers", RESULT, 60000, new String[] {"customers"}, cache.getEpoch());
+        assertEquals(2, cache.invalidate(new String[] {"ORDERS"}));
+        assertNull(cache.get("orders"));
+        assertNull(cache.get("join"));
+        assertEquals(RESULT, cache.get("customers"));
+        assertEquals(1, cache.invalidate(null));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertEquals(3, cache.getInvalidations());
+    }
+
+    @Test
+    public void dropsResultsReadBeforeAnInvalidation() {
+        ResultCache cache = new ResultCache(ResultCache.DEFAULT_MAX_BYTES);
+        long epoch = cache.getEpoch(); // The request missed
+        cache.invalidate(new String[] {"orders"}); // A write finished while it was running
+        cache.put("orders", RESULT, 60000, new String[] {"orders"}, epoch);
+        cache.put("customers", RESULT, 60000, new String[] {"customers"}, epoch);
+        assertNull(cache.get("orders"));
+        assertEquals(RESULT, cache.get("customers"));
+        epoch = cache.getEpoch();
+        cache.invalidate(null);
+        cache.put("customers", RESULT, 60000, new String[] {"customers"}, epoch);
+        assertNull(cache.get("customers"));
+    }
+
+    @Test
+    public void dropsResultsReadBeforeAForgottenInvalidation() {
+        ResultCache cache = new ResultCache(ResultCache.DEFAULT_MAX_BYTES);
+        long epoch = cache.getEpoch();
+        cache.invalidate(new String[] {"orders"});
+        for (int i = 0; i < ResultCache.MAX_TAG_INVALIDATIONS; i++)
+            cache.invalidate(new String[] {"t" + i}); // Forgets orders
+        cache.put("orders", RESULT, 60000, new String[] {"orders"}, epoch);
+        cache.put("customers", RESULT, 60000, new String[] {"customers"}, epoch);
+        assertNull(cache.get("orders"));
+        assertNull(cache.get("customers"));
+        cache.put("orders", RESULT, 60000, new String[] {"orders"}, cache.getEpoch());
+        assertEquals(RESULT, cache.get("orders"));
+    }
+
+    @Test
+    public void cachesOnlyPlainSqlRequestsThatOptIn() {
+        ResultCache cache = new ResultCache(ResultCache.DEFAULT_MAX_BYTES);
+        ResponseCapture responses = new ResponseCapture();
+        SQLRequest request = responses.request(1, "SELECT 1");
+        assertFalse(cache.isCacheable(request));
+        request.cacheTtlMs = 1000;
+        assertTrue(cache.isCacheable(request));
+        SQLRequest batch = responses.request(2, null);
+        batch.type = SybaseDB.TYPE_BATCH;
+        batch.statements = new String[] {"DELETE FROM t"};
+        batch.cacheTtlMs = 1000;
+        assertFalse(cache.isCacheable(batch));
+        batch.sql = "SELECT 1";
+        assertFalse(cache.isCacheable(batch)); // Must not be answered with the result of the SELECT
+        SQLRequest transaction = responses.request(3, "SELECT 1");
+        transaction.cacheTtlMs = 1000;
+        transaction.transId = 4;
+        assertFalse(cache.isCacheable(transaction));
+        assertFalse(new ResultCache(0).isCacheable(request));
+        responses.close();
+    }
+
+    @Test
+    public void keysDependOnTheParametersAndTheFormat() {
+        ResponseCapture responses = new ResponseCapture();
+        SQLRequest a = responses.request(1, "SELECT * FROM t WHERE a = ?");
+        a.params = new Object[] {"1"};
+        SQLRequest b = responses.request(2, "SELECT * FROM t WHERE a = ?");
+        b.params = new Object[] {1L};
+        SQLRequest c = responses.request(3, "SELECT * FROM t WHERE a = ?");
+        c.params = new Object[] {"1"};
+        c.resultFormat = ResultSetSerializer.FORMAT_COMPACT;
+        assertFalse(ResultCache.key(a).equals(ResultCache.key(b)));
+        assertFalse(ResultCache.key(a).equals(ResultCache.key(c)));
+        b.params = new Object[] {"1"};
+        assertEquals(ResultCache.key(a), ResultCache.key(b));
+        responses.close();
+    }
+}
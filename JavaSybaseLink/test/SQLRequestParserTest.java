@@ -0,0 +1,184 @@
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that SQLRequestParser reads the request messages the way json-smart, which it replaced, reads them
+ * @author DarkJ24
+ */
+public class SQLRequestParserTest {
+
+    @Test
+    public void readsTheFieldsOfARequest() {
+        assertSameAsJsonSmart("{\"msgId\":12,\"transId\":3,\"finishTrans\":true,\"sql\":\"COMMIT\",\"sentTime\":1700000000000}");
+        assertSameAsJsonSmart("{\"msgId\":1,\"transId\":-1,\"finishTrans\":false,\"sql\":\"SELECT 1\",\"resultFormat\":\"compact\",\"priority\":\"batch\",\"streamRows\":500,\"timeoutMs\":2000,\"readOnly\":true,\"cacheTtlMs\":60000,\"cacheTags\":[\"countries\",null,\"cities\"]}");
+        assertSameAsJsonSmart("{\"msgId\":2,\"transId\":-1,\"type\":\"batch\",\"statements\":[\"DELETE FROM a\",\"DELETE FROM b\"],\"batchSize\":100}");
+    }
+
+    @Test
+    public void readsWhitespaceAndNulls() {
+        assertSameAsJsonSmart(" {\n \"msgId\" : 4 ,\t\"transId\" : null , \"sql\" : \"SELECT 1\" , \"readOnly\" : null , \"params\" : null } ");
+    }
+
+    @Test
+    public void readsEscapes() {
+        assertSameAsJsonSmart("{\"msgId\":5,\"transId\":-1,\"sql\":\"SELECT '\\\"a\\\\b\\/c\\bd\\fe\\nf\\rg\\th\\u00e9\\u4e2d'\"}");
+    }
+
+    @Test
+    public void readsSurrogatePairs() {
+        assertSameAsJsonSmart("{\"msgId\":6,\"transId\":-1,\"sql\":\"SELECT '\\ud83d\\ude00'\"}");
+        assertSameAsJsonSmart("{\"msgId\":7,\"transId\":-1,\"sql\":\"SELECT '😀 café'\"}");
+        assertEquals("SELECT '😀'", parse("{\"msgId\":6,\"transId\":-1,\"sql\":\"SELECT '\\ud83d\\ude00'\"}").sql);
+    }
+
+    @Test
+    public void skipsUnknownFields() {
+        assertSameAsJsonSmart("{\"extra\":{\"a\":[1,{\"b\":\"}]\\\"\"}],\"c\":null,\"d\":[[],{}]},\"msgId\":8,\"flag\":true,\"transId\":-1,\"n\":-1.5e3,\"sql\":\"SELECT 1\",\"tail\":\"x\"}");
+    }
+
+    @Test
+    public void readsParameters() {
+        assertSameAsJsonSmart("{\"msgId\":9,\"transId\":-1,\"sql\":\"SELECT ?,?,?,?,?,?\",\"params\":[1,-2.5,\"a\\\"b\",true,null,{\"type\":\"decimal\",\"value\":\"12.30\",\"scale\":2},123456789012345]}");
+        assertSameAsJsonSmart("{\"msgId\":10,\"transId\":-1,\"type\":\"batch\",\"sql\":\"INSERT INTO t VALUES (?,?)\",\"batchParams\":[[1,\"a\"],[2,{\"type\":\"date\",\"value\":\"2024-01-02\"}],[]]}");
+    }
+
+    @Test
+    public void refusesInvalidMessages() {
+        assertNull(parse("{\"msgId\":1,\"transId\":-1}")); // Neither sql nor type
+        assertNull(parse("{}"));
+        assertNull(parse("{\"msgId\":1,\"sql\":\"SELECT 1\""));
+        assertNull(parse("{\"msgId\":1,\"sql\":\"SELECT 1}"));
+        assertNull(parse("[1,2]"));
+    }
+
+    /**
+     * Parses a message with SQLRequestParser
+     * @param json The message
+     * @return The request, null if it is not valid
+     */
+    private static SQLRequest parse(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return new SQLRequestParser().parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses a message with SQLRequestParser and json-smart and compares every field of SQLRequest
+     * @param json The message
+     */
+    private static void assertSameAsJsonSmart(String json) {
+        SQLRequest request = parse(json);
+        JSONObject expected = (JSONObject) JSONValue.parse(json);
+        assertNotNull(json, request);
+        assertNotNull(json, expected);
+        assertEquals(number(expected, "msgId", 0), request.msgId);
+        assertEquals(number(expected, "transId", -1), request.transId);
+        assertEquals(request.transId, request.clientTransId);
+        assertEquals(Boolean.TRUE.equals(expected.get("finishTrans")), request.finishTrans);
+        assertEquals(expected.get("sql"), request.sql);
+        assertEquals(number(expected, "sentTime", 0), request.sentTime);
+        assertEquals(number(expected, "streamRows", 0), request.streamRows);
+        assertEquals(expected.get("resultFormat"), request.resultFormat);
+        assertEquals(expected.get("priority"), request.priority);
+        assertEquals(expected.get("type"), request.type);
+        assertEquals(number(expected, "cacheTtlMs", 0), request.cacheTtlMs);
+        assertEquals(number(expected, "batchSize", 0), request.batchSize);
+        assertEquals(number(expected, "timeoutMs", 0), request.timeoutMs);
+        assertEquals(expected.get("readOnly"), request.readOnly);
+        assertArrayEquals(strings(expected.get("cacheTags")), request.cacheTags);
+        assertArrayEquals(strings(expected.get("statements")), request.statements);
+        assertParams((List<?>) expected.get("params"), request.params);
+        JSONArray rows = (JSONArray) expected.get("batchParams");
+        if (rows == null) {
+            assertNull(request.batchParams);
+        } else {
+            assertEquals(rows.size(), request.batchParams.length);
+            for (int i = 0; i < rows.size(); i++)
+                assertParams((List<?>) rows.get(i), request.batchParams[i]);
+        }
+    }
+
+    /**
+     * Gets an integer field, SQLRequestParser reads a json null as 0
+     * @param json The message
+     * @param name The name of the field
+     * @param missing The value of a missing field
+     * @return The value
+     */
+    private static long number(JSONObject json, String name, long missing) {
+        Object value = json.get(name);
+        if (value == null)
+            return json.containsKey(name) ? 0 : missing;
+        return ((Number) value).longValue();
+    }
+
+    /**
+     * Gets a json array of strings without its null elements, like SQLRequestParser
+     * @param value The array, may be null
+     * @return The strings
+     */
+    private static String[] strings(Object value) {
+        if (value == null)
+            return null;
+        JSONArray array = (JSONArray) value;
+        int count = 0;
+        for (Object element : array) {
+            if (element != null)
+                count++;
+        }
+        String[] strings = new String[count];
+        int i = 0;
+        for (Object element : array) {
+            if (element != null)
+                strings[i++] = (String) element;
+        }
+        return strings;
+    }
+
+    /**
+     * Compares the parameters read by json-smart and by SQLRequestParser
+     * @param expected The json-smart values, may be null
+     * @param actual The SQLRequestParser values
+     */
+    private static void assertParams(List<?> expected, Object[] actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.size(), actual.length);
+        for (int i = 0; i < actual.length; i++) {
+            Object value = expected.get(i);
+            if (value instanceof JSONObject) {
+                assertTrue(actual[i] instanceof SQLParam);
+                assertEquals(((JSONObject) value).get("type"), ((SQLParam) actual[i]).type);
+                assertValue(((JSONObject) value).get("value"), ((SQLParam) actual[i]).value);
+            } else {
+                assertValue(value, actual[i]);
+            }
+        }
+    }
+
+    /**
+     * Compares a plain value, numbers by value: json-smart reads Integer and Double where SQLRequestParser reads Long and BigDecimal
+     * @param expected The json-smart value
+     * @param actual The SQLRequestParser value
+     */
+    private static void assertValue(Object expected, Object actual) {
+        if (expected instanceof Integer || expected instanceof Long) {
+            assertEquals(Long.class, actual.getClass());
+            assertEquals(((Number) expected).longValue(), ((Long) actual).longValue());
+        } else if (expected instanceof Number) {
+            assertEquals(((Number) expected).doubleValue(), ((Number) actual).doubleValue(), 0);
+        } else {
+            assertEquals(expected, actual);
+        }
+    }
+}
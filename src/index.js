@@ -1,9 +1,104 @@
 const spawn = require("child_process").spawn;
+const net = require("net");
 const path = require("path");
+const { Readable, Writable } = require("stream");
 const { chain } = require("stream-chain");
 const { parser } = require("stream-json");
 const { streamValues } = require("stream-json/streamers/StreamValues");
 
+const RESPAWN_DELAY_MS = 500; // The first delay before a bridge that exited is started again
+const MAX_RESPAWN_DELAY_MS = 30000; // The delay doubles with every failed start up to this
+
+/**
+ * Builds the object of a row received in the "compact" or "columnar" format,
+ * null values are left out like in the default format.
+ *
+ * @param {string[]} columns - The column labels of the result set.
+ * @param {Array} values - The values of the row in column order.
+ * @returns {Object} The row keyed by column label.
+ */
+function toRow(columns, values) {
+  const row = {};
+  for (let c = 0; c < columns.length; c++) {
+    if (values[c] !== null) row[columns[c]] = values[c];
+  }
+  return row;
+}
+
+/**
+ * Turns a result set in the "compact" format back into an array of row objects.
+ * Each object is only built the first time its row is read, so rows that are
+ * never touched cost nothing beyond their parsed value arrays.
+ *
+ * @param {Object} resultSet - The result set with its columns, types and rows arrays.
+ * @returns {Object[]} The rows keyed by column label.
+ */
+function lazyRows(resultSet) {
+  const { columns, rows } = resultSet;
+  const built = new Array(rows.length);
+  return new Proxy(rows, {
+    get(target, prop, receiver) {
+      if (typeof prop === "string") {
+        const index = Number(prop);
+        if (Number.isInteger(index) && index >= 0 && index < target.length && String(index) === prop) {
+          if (built[index] === undefined) built[index] = toRow(columns, target[index]);
+          return built[index];
+        }
+      }
+      return Reflect.get(target, prop, receiver);
+    },
+  });
+}
+
+/**
+ * Turns a page of a cursor, in any result format, into an array of row objects.
+ *
+ * @param {Array|Object} page - The rows of the page, or its columns with their rows or data arrays.
+ * @returns {Object[]} The rows keyed by column label.
+ */
+function pageToRows(page) {
+  if (Array.isArray(page)) return page;
+  if (page.rows !== undefined) return page.rows.map((values) => toRow(page.columns, values));
+  const count = page.data.length > 0 ? page.data[0].length : 0;
+  const rows = new Array(count);
+  for (let r = 0; r < count; r++) {
+    rows[r] = toRow(page.columns, page.data.map((column) => column[r]));
+  }
+  return rows;
+}
+
+/**
+ * Builds the net.connect options of a bridge address: "unix:/path/to/socket" (or just the path),
+ * "tcp:port" (loopback) or "tcp:host:port", the same forms as the listen option of the bridge.
+ *
+ * @param {string} address - The address of the bridge.
+ * @returns {Object} The options of net.connect.
+ */
+function socketOptions(address) {
+  if (address.startsWith("tcp:")) {
+    const hostPort = address.slice("tcp:".length);
+    const colon = hostPort.lastIndexOf(":");
+    if (colon < 0) return { host: "127.0.0.1", port: Number(hostPort) };
+    return { host: hostPort.slice(0, colon), port: Number(hostPort.slice(colon + 1)) };
+  }
+  return { path: address.startsWith("unix:") ? address.slice("unix:".length) : address };
+}
+
+/**
+ * Converts a query parameter to its json form. Dates, Buffers and BigInts are sent with
+ * their type, other values (strings, numbers, booleans, null and {type, value} objects) as they are.
+ *
+ * @param {*} value - The parameter value.
+ * @returns {*} The value to send to the bridge.
+ */
+function toParam(value) {
+  if (value === undefined) return null;
+  if (value instanceof Date) return { type: "timestamp", value: value.toISOString() };
+  if (Buffer.isBuffer(value)) return { type: "binary", value: value.toString("base64") };
+  if (typeof value === "bigint") return { type: "bigint", value: value.toString() };
+  return value;
+}
+
 function Sybase({
   host,
   port,
@@ -21,6 +116,40 @@ function Sybase({
   pathToJavaBridge,
   encoding = "utf8",
   logs = false,
+  streamRows = 0,
+  resultFormat = "objects",
+  executionMode,
+  threads,
+  maxQueued,
+  priority = "interactive",
+  statementCacheSize,
+  resultCacheBytes,
+  batchSize,
+  bulkSessions,
+  bulkLoadMode,
+  checkpointRows,
+  dataSourceClass,
+  classPath,
+  queryTimeoutMs,
+  transactionIdleTimeoutMs,
+  listen,
+  bridgeAddress,
+  bridges = 1,
+  replica,
+  readRouting,
+  adaptiveSizing,
+  sizingIntervalMs,
+  sizingLog,
+  startupMode,
+  warmupQueries,
+  warmupSql,
+  cdsArchive,
+  coalesceReads,
+  spillThresholdBytes,
+  spillDir,
+  maxCursors,
+  cursorIdleTimeoutMs,
+  writerQueueBytes,
 }) {
   this.connected = false;
   this.host = host;
@@ -39,6 +168,42 @@ function Sybase({
   this.logTiming = logTiming === true;
   this.encoding = encoding;
   this.logs = logs;
+  this.streamRows = streamRows;
+  this.resultFormat = resultFormat;
+  this.executionMode = executionMode;
+  this.threads = threads;
+  this.maxQueued = maxQueued;
+  this.priority = priority;
+
+  this.statementCacheSize = statementCacheSize;
+  this.statementCacheStats = { hits: 0, misses: 0 };
+  this.resultCacheBytes = resultCacheBytes;
+  this.batchSize = batchSize;
+  this.bulkSessions = bulkSessions;
+  this.bulkLoadMode = bulkLoadMode;
+  this.checkpointRows = checkpointRows;
+  this.dataSourceClass = dataSourceClass;
+  this.queryTimeoutMs = queryTimeoutMs;
+  this.transactionIdleTimeoutMs = transactionIdleTimeoutMs;
+  this.listen = listen;
+  this.bridgeAddress = bridgeAddress;
+  this.bridgeCount = bridges > 1 ? Math.floor(bridges) : 1;
+  this.replica = replica;
+  this.readRouting = readRouting;
+  this.adaptiveSizing = adaptiveSizing;
+  this.sizingIntervalMs = sizingIntervalMs;
+  this.sizingLog = sizingLog;
+  this.startupMode = startupMode;
+  this.warmupQueries = warmupQueries;
+  this.warmupSql = warmupSql;
+  this.cdsArchive = cdsArchive;
+  this.coalesceReads = coalesceReads;
+  this.spillThresholdBytes = spillThresholdBytes;
+  this.spillDir = spillDir;
+  this.maxCursors = maxCursors;
+  this.cursorIdleTimeoutMs = cursorIdleTimeoutMs;
+  this.writerQueueBytes = writerQueueBytes;
+  this.classPath = classPath === undefined ? [] : [].concat(classPath);
 
   this.pathToJavaBridge = pathToJavaBridge;
 
@@ -54,13 +219,86 @@ function Sybase({
 
   this.queryCount = 0;
   this.transactionCount = 0;
+  this.bulkCount = 0;
+  this.cursorCount = 0;
   this.currentMessages = {}; // look up msgId to message sent and call back details.
+  this.bridges = []; // The bridge processes (or connections to a shared bridge) the requests are spread over
+  this.transactionBridges = new Map(); // look up transactionId to the bridge that began the transaction
+  this.bulkBridges = new Map(); // look up bulkId to the bridge that opened the bulk load
+  this.cursorBridges = new Map(); // look up cursorId to the bridge that opened the cursor
+  this.nextBridge = 0;
+
+  /**
+   * Builds the parser of the json frames of one bridge.
+   *
+   * @returns {Duplex} The parser, emitting each frame as an object.
+   */
+  const createParser = function () {
+    return chain([
+      parser({ jsonStreaming: true }),
+      streamValues(),
+      (data) => data.value,
+    ]);
+  };
 
-  this.jsonParser = chain([
-    parser({ jsonStreaming: true }),
-    streamValues(),
-    (data) => data.value,
-  ]);
+  /**
+   * Handles a "rows" frame of a streamed response, the rows are pushed to the
+   * request stream or kept until the "end" frame arrives.
+   *
+   * @param {Object} request - The request the frame belongs to.
+   * @param {Object} jsonMsg - The JSON frame received from the database.
+   *
+   * @example
+   * onRowsFrame(request, {
+   *   msgId: 1,
+   *   type: "rows",
+   *   resultSet: 0,
+   *   rows: [...]
+   * });
+   */
+  const onRowsFrame = function (request, jsonMsg) {
+    if (request.stream) {
+      if (request.resultSetIndex !== jsonMsg.resultSet) {
+        request.resultSetIndex = jsonMsg.resultSet;
+        request.columns = jsonMsg.columns;
+        request.stream.emit("resultSet", jsonMsg.resultSet);
+      }
+      if (jsonMsg.data !== undefined) {
+        const count = jsonMsg.data.length > 0 ? jsonMsg.data[0].length : 0;
+        for (let r = 0; r < count; r++) {
+          request.stream.push(toRow(request.columns, jsonMsg.data.map((column) => column[r])));
+        }
+      } else if (request.columns !== undefined) {
+        for (const values of jsonMsg.rows) {
+          request.stream.push(toRow(request.columns, values));
+        }
+      } else {
+        for (const row of jsonMsg.rows) {
+          request.stream.push(row);
+        }
+      }
+      return;
+    }
+
+    let resultSet = request.resultSets[jsonMsg.resultSet];
+    if (resultSet === undefined) {
+      // The first frame of a result set in the compact and columnar formats has its columns and types
+      if (jsonMsg.columns === undefined) resultSet = [];
+      else if (jsonMsg.data !== undefined) resultSet = { columns: jsonMsg.columns, types: jsonMsg.types, data: jsonMsg.columns.map(() => []) };
+      else resultSet = { columns: jsonMsg.columns, types: jsonMsg.types, rows: [] };
+      request.resultSets[jsonMsg.resultSet] = resultSet;
+    }
+    if (jsonMsg.data !== undefined) {
+      jsonMsg.data.forEach((values, c) => {
+        for (const value of values) resultSet.data[c].push(value);
+      });
+      return;
+    }
+    const rows = Array.isArray(resultSet) ? resultSet : resultSet.rows;
+    for (const row of jsonMsg.rows) {
+      rows.push(row);
+    }
+  };
 
   /**
    * Handles the SQL response from the database.
@@ -80,10 +318,20 @@ function Sybase({
     let err = null;
 
     const request = this.currentMessages[jsonMsg.msgId];
-    delete this.currentMessages[jsonMsg.msgId];
+    if (request === undefined) return;
 
-    let result = jsonMsg.result;
-    if (result.length === 1) {
+    if (jsonMsg.type === "rows") {
+      onRowsFrame(request, jsonMsg);
+      return;
+    }
+    forget(request);
+
+    // A streamed response ends with an "end" frame, the rows came before it
+    let result = jsonMsg.type === "end" ? request.resultSets : jsonMsg.result;
+    if (request.resultFormat === "compact" && Array.isArray(result)) {
+      result = result.map(lazyRows);
+    }
+    if (result.length === 1 && !request.keepResultSets) {
       result = result[0]; // if there is only one just return the first RS not a set of RS's
     }
 
@@ -92,8 +340,14 @@ function Sybase({
     const hrend = process.hrtime(request.hrstart);
     const javaDuration = jsonMsg.javaEndTime - jsonMsg.javaStartTime;
 
+    if (jsonMsg.statementCached !== undefined) {
+      if (jsonMsg.statementCached) this.statementCacheStats.hits++;
+      else this.statementCacheStats.misses++;
+    }
+
     if (jsonMsg.error !== undefined) {
       err = new Error(jsonMsg.error);
+      if (jsonMsg.errorCode !== undefined) err.code = jsonMsg.errorCode;
     }
 
     if (this.logTiming) {
@@ -107,6 +361,11 @@ function Sybase({
       );
     }
 
+    if (request.stream) {
+      if (err) request.stream.destroy(err);
+      else request.stream.push(null);
+    }
+
     // Check if request.callback is a function before invoking it
     if (typeof request.callback === "function") {
       request.callback(err, result);
@@ -114,88 +373,371 @@ function Sybase({
   }.bind(this);
 
   /**
-   * Handles SQL errors from the database.
+   * Handles SQL errors from a bridge, every request waiting for a response of the bridge fails with it.
    *
    * @param {string|Object} data - The error data received from the database.
+   * @param {Object} bridge - The bridge that reported the error.
    *
    * @example
-   * this.onSQLError("Some SQL error message");
+   * this.onSQLError("Some SQL error message", bridge);
    */
-  const onSQLError = function (data) {
+  const onSQLError = function (data, bridge) {
     const error = new Error(data);
 
-    const callBackFuncitons = [];
+    const failedRequests = [];
     for (const k in this.currentMessages) {
-      if (this.currentMessages.hasOwnProperty(k)) {
-        callBackFuncitons.push(this.currentMessages[k].callback);
+      if (this.currentMessages.hasOwnProperty(k) && this.currentMessages[k].bridge === bridge) {
+        failedRequests.push(this.currentMessages[k]);
       }
     }
 
-    this.currentMessages = [];
-    callBackFuncitons.forEach(function (cb) {
-      cb(error);
+    failedRequests.forEach(function (request) {
+      forget(request);
+      if (request.stream) request.stream.destroy(error);
+      if (typeof request.callback === "function") request.callback(error);
     });
   }.bind(this);
 
-  const connectCore = function (callback) {
-    this.javaDB = spawn("java", [
-      "-jar",
-      this.pathToJavaBridge,
-      this.host,
-      this.port,
-      this.database,
-      this.username,
-      this.password,
-      this.minConnections,
-      this.maxConnections,
-      this.connectionTimeout,
-      this.idleTimeout,
-      this.keepaliveTime,
-      this.maxLifetime,
-      this.transactionConnections
-    ]);
+  /**
+   * Registers a request written to a bridge until its response arrives.
+   *
+   * @param {Object} msg - The request.
+   * @param {Object} bridge - The bridge the request is written to.
+   */
+  const track = function (msg, bridge) {
+    msg.bridge = bridge;
+    bridge.outstanding++;
+    this.currentMessages[msg.msgId] = msg;
+  }.bind(this);
+
+  /**
+   * Forgets a request once it is answered, aborted or failed.
+   *
+   * @param {Object} request - The request.
+   */
+  const forget = function (request) {
+    delete this.currentMessages[request.msgId];
+    request.bridge.outstanding--;
+    if (request.removeAbortListener) request.removeAbortListener();
+  }.bind(this);
+
+  /**
+   * Picks the bridge of a request. The requests of a transaction, a bulk load or a cursor go to the bridge that
+   * began it, the others to the connected bridge with the fewest requests waiting for a response, so a
+   * large result only holds up the responses queued behind it on its own bridge.
+   *
+   * @param {Map} [pins] - transactionBridges, bulkBridges or cursorBridges, if the request belongs to a transaction, a bulk load or a cursor.
+   * @param {number} [id] - The transactionId, bulkId or cursorId of the request.
+   * @param {boolean} [finish] - Whether the request finishes the transaction, the bulk load or the cursor.
+   * @returns {Object} The bridge.
+   * @throws {Error} If the bridge of the transaction exited, or no bridge is connected.
+   */
+  const pickBridge = function (pins, id, finish) {
+    const pinned = pins ? pins.get(id) : undefined;
+    if (pinned !== undefined) {
+      if (finish) pins.delete(id);
+      if (pinned.alive) return pinned;
+      if (pins === this.cursorBridges) throw new Error("The bridge of the cursor exited, the cursor was closed");
+      const what = pins === this.bulkBridges ? "bulk load" : "transaction";
+      throw new Error(`The bridge of the ${what} exited, the ${what} was rolled back`);
+    }
+
+    let best = null;
+    const count = this.bridges.length;
+    for (let i = 0; i < count; i++) {
+      const bridge = this.bridges[(this.nextBridge + i) % count];
+      if (bridge.alive && (best === null || bridge.outstanding < best.outstanding)) best = bridge;
+    }
+    this.nextBridge = (this.nextBridge + 1) % count; // Ties go round-robin
+    if (best === null) throw new Error("No bridge is connected, they are being restarted.");
+    if (pins && !finish) pins.set(id, best);
+    return best;
+  }.bind(this);
+
+  /**
+   * Builds the optional name=value arguments of the Java bridge, options that are not set are left out.
+   *
+   * @returns {string[]} The optional arguments.
+   */
+  const bridgeOptions = function () {
+    const options = {
+      executionMode: this.executionMode,
+      threads: this.threads,
+      maxQueued: this.maxQueued,
+      statementCacheSize: this.statementCacheSize,
+      resultCacheBytes: this.resultCacheBytes,
+      bulkSessions: this.bulkSessions,
+      bulkLoadMode: this.bulkLoadMode,
+      dataSourceClass: this.dataSourceClass,
+      transactionIdleTimeoutMs: this.transactionIdleTimeoutMs,
+      listen: this.listen,
+      adaptiveSizing: this.adaptiveSizing,
+      sizingIntervalMs: this.sizingIntervalMs,
+      sizingLog: this.sizingLog,
+      startupMode: this.startupMode,
+      warmupQueries: this.warmupQueries,
+      warmupSql: this.warmupSql,
+      coalesceReads: this.coalesceReads,
+      spillThresholdBytes: this.spillThresholdBytes,
+      spillDir: this.spillDir,
+      maxCursors: this.maxCursors,
+      cursorIdleTimeoutMs: this.cursorIdleTimeoutMs,
+      writerQueueBytes: this.writerQueueBytes,
+    };
+    if (this.replica) {
+      Object.assign(options, {
+        replicaHost: this.replica.host,
+        replicaPort: this.replica.port,
+        replicaMinConnections: this.replica.minConnections,
+        replicaMaxConnections: this.replica.maxConnections,
+        replicaConnectionTimeout: this.replica.connectionTimeout,
+        replicaRetryMs: this.replica.retryMs,
+        readRouting: this.readRouting,
+      });
+    }
+    return Object.keys(options)
+      .filter((name) => options[name] !== undefined && options[name] !== null)
+      .map((name) => `${name}=${options[name]}`);
+  }.bind(this);
+
+  /**
+   * Builds the arguments that start the Java bridge, with the classPath entries (a replacement
+   * dataSourceClass, for example) next to the jar when there are any, and the AppCDS archive of
+   * cdsArchive. The JVM logging is turned off with the archive, so a stale archive is ignored without
+   * printing a warning on stdout, which only carries the protocol.
+   *
+   * @returns {string[]} The java arguments before the connection arguments.
+   */
+  const launchArguments = function () {
+    const jvm = this.cdsArchive === undefined ? [] : [`-XX:SharedArchiveFile=${this.cdsArchive}`, "-Xshare:auto", "-Xlog:disable"];
+    if (this.classPath.length === 0) return [...jvm, "-jar", this.pathToJavaBridge];
+    return [...jvm, "-cp", [this.pathToJavaBridge, ...this.classPath].join(path.delimiter), "Main"];
+  }.bind(this);
+
+  /**
+   * Starts a bridge process, or attaches to the bridge already running at bridgeAddress with the listen
+   * option (which greets every client with the same "connected" line as on stdout).
+   *
+   * @param {number} index - The position of the bridge in this.bridges.
+   * @returns {Promise<Object>} The bridge, once it is connected.
+   */
+  const openBridge = function (index) {
+    return new Promise((resolve, reject) => {
+      const bridge = { index: index, outstanding: 0, alive: false, respawns: 0, failures: 0, startedAt: Date.now() };
+      const onConnected = (input) => {
+        bridge.alive = true;
+        bridge.startupMs = Date.now() - bridge.startedAt;
+        input.pipe(createParser()).on("data", (jsonMsg) => {
+          onSQLResponse(jsonMsg);
+        });
+        resolve(bridge);
+      };
 
-    const handleConnection = (resolve, reject) => {
-      let dataStr;
-      this.javaDB.stdout.once("data", (data) => {
-        dataStr = data.toString().trim();
+      if (this.bridgeAddress !== undefined) {
+        const socket = net.connect(socketOptions(this.bridgeAddress));
+        bridge.socket = socket;
+        bridge.output = socket;
+        const onConnectError = (err) => {
+          socket.destroy();
+          reject(new Error(`Error connecting to the bridge at ${this.bridgeAddress}: ${err.message}`));
+        };
+        socket.once("error", onConnectError);
+        socket.once("data", (data) => {
+          const dataStr = data.toString().trim();
+          socket.removeListener("error", onConnectError);
+          if (dataStr !== "connected") {
+            socket.destroy();
+            reject(new Error(`Error connecting ${dataStr}`));
+            return;
+          }
+
+          socket.on("error", (err) => {
+            onSQLError(err.message, bridge);
+          });
+          socket.on("close", () => {
+            bridgeExited(bridge, `The bridge at ${this.bridgeAddress} closed the connection`);
+          });
+          onConnected(socket);
+        });
+        return;
+      }
+
+      const javaDB = spawn("java", [
+        ...launchArguments(),
+        this.host,
+        this.port,
+        this.database,
+        this.username,
+        this.password,
+        this.minConnections,
+        this.maxConnections,
+        this.connectionTimeout,
+        this.idleTimeout,
+        this.keepaliveTime,
+        this.maxLifetime,
+        this.transactionConnections,
+        ...bridgeOptions(),
+      ]);
+      bridge.process = javaDB;
+      bridge.output = javaDB.stdin;
+      // A write racing the exit of the bridge fails with EPIPE, its request is failed by the exit handler
+      javaDB.stdin.on("error", () => {});
+
+      javaDB.stdout.once("data", (data) => {
+        const dataStr = data.toString().trim();
         if (dataStr !== "connected") {
-          const error = new Error(`Error connecting ${dataStr}`);
-          if (callback) callback(error, null);
-          else reject(error);
+          javaDB.kill();
+          reject(new Error(`Error connecting ${dataStr}`));
           return;
         }
 
-        this.javaDB.stderr.removeAllListeners("data");
-        this.connected = true;
-
-        this.javaDB.stdout
-          // .setEncoding(this.encoding)
-          .pipe(this.jsonParser)
-          .on("data", (jsonMsg) => {
-            onSQLResponse(jsonMsg);
-          });
-        this.javaDB.stderr.on("data", (err) => {
-          onSQLError(err);
+        javaDB.stderr.removeAllListeners("data");
+        javaDB.stderr.on("data", (err) => {
+          onSQLError(err, bridge);
         });
+        // .setEncoding(this.encoding)
+        onConnected(javaDB.stdout);
+      });
 
-        if (callback) callback(null, dataStr);
-        else resolve(dataStr);
+      javaDB.stderr.once("data", (data) => {
+        javaDB.stdout.removeAllListeners("data");
+        javaDB.kill();
+        reject(new Error(data.toString()));
+      });
+      javaDB.on("error", (err) => {
+        reject(err);
       });
+      javaDB.on("exit", (code, signal) => {
+        const reason = `The Java bridge exited with ${code !== null ? `code ${code}` : signal}`;
+        reject(new Error(reason));
+        bridgeExited(bridge, reason);
+      });
+    });
+  }.bind(this);
+
+  /**
+   * Handles a bridge that exited (or closed its connection): its pending requests fail, and unless the
+   * database was disconnected it is started again, after a delay that doubles with every failed start.
+   *
+   * @param {Object} bridge - The bridge.
+   * @param {string} reason - Why the bridge stopped.
+   */
+  const bridgeExited = function (bridge, reason) {
+    if (!bridge.alive) return;
+    bridge.alive = false;
+    bridge.lastExit = reason;
+    onSQLError(reason, bridge);
+    if (this.connected) respawnBridge(bridge);
+  }.bind(this);
 
-      this.javaDB.stderr.once("data", (data) => {
-        this.javaDB.stdout.removeAllListeners("data");
-        this.javaDB.kill();
-        const error = new Error(data.toString());
-        if (callback) callback(error, null);
-        else reject(error);
+  /**
+   * Starts a bridge again in place of one that exited.
+   *
+   * @param {Object} bridge - The bridge that exited.
+   */
+  const respawnBridge = function (bridge) {
+    const delay = Math.min(MAX_RESPAWN_DELAY_MS, RESPAWN_DELAY_MS * 2 ** bridge.failures);
+    this.log(`Bridge ${bridge.index} stopped (${bridge.lastExit}), restarting it in ${delay}ms`);
+    bridge.timer = setTimeout(() => {
+      bridge.timer = undefined;
+      openBridge(bridge.index).then((restarted) => {
+        if (!this.connected) {
+          stopBridge(restarted).catch(() => {});
+          return;
+        }
+        restarted.respawns = bridge.respawns + 1;
+        restarted.lastExit = bridge.lastExit;
+        this.bridges[bridge.index] = restarted;
+        if (bridge.index === 0) this.javaDB = restarted.process;
+        this.log(`Bridge ${bridge.index} restarted`);
+      }, (err) => {
+        bridge.failures++;
+        bridge.lastExit = err.message;
+        if (this.connected) respawnBridge(bridge);
       });
-    };
+    }, delay);
+    bridge.timer.unref();
+  }.bind(this);
+
+  /**
+   * Kills a bridge process, or closes the connection to the shared bridge (which then rolls back the
+   * transactions left open on it), and cancels its pending restart.
+   *
+   * @param {Object} bridge - The bridge.
+   * @returns {Promise<void>} Resolves once the process exited or the connection closed.
+   */
+  const stopBridge = function (bridge) {
+    return new Promise((resolve, reject) => {
+      if (bridge.timer !== undefined) {
+        clearTimeout(bridge.timer);
+        bridge.timer = undefined;
+      }
+
+      if (bridge.socket) {
+        if (bridge.socket.destroyed) {
+          resolve();
+          return;
+        }
+        bridge.socket.once("close", () => resolve());
+        bridge.socket.end();
+        return;
+      }
+
+      const javaDB = bridge.process;
+      if (javaDB.exitCode !== null || javaDB.signalCode !== null) {
+        resolve(); // Already exited
+        return;
+      }
+      javaDB.on("exit", (code) => {
+        if (code !== null && code !== 0 && code !== 143) {
+          reject(new Error(`Java process exited with code ${code}`));
+        } else {
+          resolve();
+        }
+      });
+
+      javaDB.on("error", (err) => {
+        reject(err); // Reject on error
+      });
+
+      javaDB.kill(); // Attempt to kill the Java process
+    });
+  };
+
+  /**
+   * Starts the bridges (or attaches to the shared bridge) and resolves once all of them are connected.
+   * If one fails to connect the others are stopped again.
+   *
+   * @param {function} [callback] - Called with the error or "connected", a promise is returned without it.
+   */
+  const connectCore = function (callback) {
+    let connecting;
+    if (this.listen !== undefined && this.bridgeCount > 1) {
+      connecting = Promise.reject(new Error("The listen option needs bridges: 1, every bridge would listen on the same address."));
+    } else {
+      const indexes = Array.from({ length: this.bridgeCount }, (_, index) => index);
+      connecting = Promise.allSettled(indexes.map(openBridge)).then((results) => {
+        const failed = results.find((result) => result.status === "rejected");
+        if (failed !== undefined) {
+          results
+            .filter((result) => result.status === "fulfilled")
+            .forEach((result) => stopBridge(result.value).catch(() => {}));
+          throw failed.reason;
+        }
+
+        this.bridges = results.map((result) => result.value);
+        this.javaDB = this.bridges[0].process;
+        this.connected = true;
+        // A bridge that exited while the others were still starting
+        this.bridges.filter((bridge) => !bridge.alive).forEach(respawnBridge);
+        return "connected";
+      });
+    }
 
     if (callback) {
-      handleConnection(null, null);
+      connecting.then((result) => callback(null, result), (error) => callback(error, null));
     } else {
-      return new Promise(handleConnection);
+      return connecting;
     }
   }.bind(this);
 
@@ -208,20 +750,88 @@ function Sybase({
   };
 
   /**
-   * Prepares a SQL query to be executed asynchronously.
+   * Sends a request that is not a query (cache invalidations, bulk-load frames and cursor requests) to the bridge.
+   *
+   * @param {Object} fields - The fields of the request besides its msgId.
+   * @param {function} callback - Called with the error or the result of the response.
+   * @param {Object} [bridge] - The bridge to send it to, by default the bridge of its bulk load or cursor, or the least busy one.
+   * @returns {boolean} False if the request could not be sent, the callback then got the error.
+   */
+  const sendControl = function (fields, callback, bridge) {
+    if (!this.isConnected()) {
+      callback(new Error("Database isn't connected."));
+      return false;
+    }
+    try {
+      if (bridge === undefined) {
+        if (fields.cursorId !== undefined) {
+          bridge = pickBridge(this.cursorBridges, fields.cursorId, fields.type === "closeCursor");
+        } else {
+          const bulk = fields.bulkId !== undefined;
+          bridge = pickBridge(bulk ? this.bulkBridges : null, fields.bulkId, fields.type === "bulkClose");
+        }
+      } else if (!bridge.alive) {
+        throw new Error(`Bridge ${bridge.index} is being restarted.`);
+      }
+    } catch (err) {
+      callback(err);
+      return false;
+    }
+    this.queryCount++;
+    const msg = Object.assign({ msgId: this.queryCount }, fields);
+    const strMsg = JSON.stringify(msg).replace(/[\n]/g, "\\n");
+    msg.callback = callback;
+    msg.hrstart = process.hrtime();
+    msg.resultSets = [];
+    track(msg, bridge);
+    bridge.output.write(strMsg + "\n");
+    this.log(`${fields.type} request written: ${strMsg.length} bytes`);
+    return true;
+  }.bind(this);
+
+  /**
+   * Sends a SQL query to be executed asynchronously, to the bridge of its transaction or the least busy one.
    * @param {string} sql - The SQL query to execute.
    * @param {number} transactionId - The transaction ID to use, defaults to -1 (no transaction).
    * @param {boolean} finishTransaction - Whether to finish the transaction after the query is done. Defaults to false.
    * @param {function} callback - The callback function to execute once the query is done.
-   * Returns a stringified message to be sent to the Java process.
+   * @param {Object} options - Options for the query.
+   * @param {number} options.streamRows - Rows per frame to stream the response in, 0 to receive it whole.
+   * @param {Readable} options.stream - The stream to push the rows to instead of collecting them.
+   * @param {boolean} options.keepResultSets - Whether to always return the array of result sets.
+   * @param {string} options.resultFormat - "objects", "compact" (row objects built lazily from positional arrays) or "columnar" (per column arrays returned as-is).
+   * @param {string} options.priority - "interactive" or "batch", batch queries wait behind interactive ones when the bridge is busy.
+   * @param {Array} options.params - Values of the ? parameters of the sql, the query then runs as a cached prepared statement.
+   * @param {string} options.type - The request type, "batch" for executeBatch.
+   * @param {Array[]} options.batchParams - The parameter rows of a batch.
+   * @param {string[]} options.statements - The statements of a batch without batchParams.
+   * @param {number} options.batchSize - The rows sent to the server per executeBatch.
+   * @param {number} options.cacheTtlMs - Keep the result in the bridge result cache for this long (only outside transactions).
+   * @param {string[]} options.cacheTags - Tags of the cached result (e.g. the tables read), see invalidateCache.
+   * @param {number} options.timeoutMs - Time the query may take in the bridge, queue time included, it is cancelled after it.
+   * @param {boolean} options.readOnly - true to run the query on the replica, false to keep it on the primary, by default plain SELECTs go to the replica.
+   * @param {AbortSignal} options.signal - Cancels the query in the bridge when aborted, the callback gets an AbortError at once.
+   * @returns {Object} The message sent to the Java process, null if it could not be sent (the callback, or the stream, then got the error).
    */
-  const prepareQuery = function (sql, transactionId, finishTransaction = false, callback) {
+  const sendQuery = function (sql, transactionId, finishTransaction = false, callback, options = {}) {
+    const fail = (err) => {
+      if (callback) callback(err);
+      else if (options.stream) process.nextTick(() => options.stream.destroy(err));
+    };
     if (!this.isConnected()) {
-      if (callback) callback(new Error("Database isn't connected."));
+      fail(new Error("Database isn't connected."));
 
       return null;
     }
 
+    let bridge;
+    try {
+      bridge = pickBridge(transactionId !== -1 ? this.transactionBridges : null, transactionId, finishTransaction);
+    } catch (err) {
+      fail(err);
+      return null;
+    }
+
     const hrstart = process.hrtime();
     this.queryCount++;
 
@@ -235,21 +845,109 @@ function Sybase({
       hrstart: hrstart,
     };
 
+    const streamRows = options.streamRows !== undefined ? options.streamRows : this.streamRows;
+    if (streamRows > 0) {
+      msg.streamRows = streamRows;
+    }
+    const resultFormat = options.resultFormat || this.resultFormat;
+    if (resultFormat !== "objects") {
+      msg.resultFormat = resultFormat;
+    }
+    if (Array.isArray(options.params)) {
+      msg.params = options.params.map(toParam);
+    }
+    if (options.type !== undefined) {
+      msg.type = options.type;
+    }
+    if (Array.isArray(options.batchParams)) {
+      msg.batchParams = options.batchParams.map((row) => row.map(toParam));
+    }
+    if (Array.isArray(options.statements)) {
+      msg.statements = options.statements;
+    }
+    if (options.batchSize > 0) {
+      msg.batchSize = options.batchSize;
+    }
+    if (options.cacheTtlMs > 0) {
+      msg.cacheTtlMs = options.cacheTtlMs;
+      if (Array.isArray(options.cacheTags)) msg.cacheTags = options.cacheTags;
+    }
+    const priority = options.priority || this.priority;
+    if (priority !== "interactive") {
+      msg.priority = priority;
+    }
+    const timeoutMs = options.timeoutMs !== undefined ? options.timeoutMs : this.queryTimeoutMs;
+    if (timeoutMs > 0) {
+      msg.timeoutMs = timeoutMs;
+    }
+    if (typeof options.readOnly === "boolean") {
+      msg.readOnly = options.readOnly;
+    }
+
     const strMsg = JSON.stringify(msg).replace(/[\n]/g, "\\n");
 
+    msg.resultSets = [];
+    msg.stream = options.stream;
+    msg.keepResultSets = options.keepResultSets === true;
+    msg.resultFormat = resultFormat;
+
     this.log(
-      `prepareQuery: msgId: ${msg.msgId} currentMessages: ${Object.keys(this.currentMessages).length} this.queryCount: ${this.queryCount}`
+      `sendQuery: msgId: ${msg.msgId} bridge: ${bridge.index} currentMessages: ${Object.keys(this.currentMessages).length} this.queryCount: ${this.queryCount}`
     );
 
-    this.currentMessages[msg.msgId] = msg;
+    track(msg, bridge);
+
+    if (options.signal) {
+      const signal = options.signal;
+      const onAbort = () => abortQuery(msg.msgId, signal);
+      if (signal.aborted) {
+        process.nextTick(onAbort); // Once the request is written, the bridge fails it before it runs
+      } else {
+        signal.addEventListener("abort", onAbort, { once: true });
+        msg.removeAbortListener = () => signal.removeEventListener("abort", onAbort);
+      }
+    }
 
-    return strMsg;
+    try {
+      bridge.output.write(strMsg + "\n");
+    } catch (err) {
+      forget(msg);
+      fail(err);
+      return null;
+    }
+    if (msg.type === "batch") this.log(`Batch request written: ${strMsg.length} bytes`);
+    else this.log(`SQL request written: ${strMsg}`);
+    return msg;
+  }.bind(this);
+
+  /**
+   * Cancels a query that is still waiting for its response: the bridge cancels its statement (or drops it
+   * if it did not start yet) and the query fails at once with an AbortError, its late response is ignored.
+   *
+   * @param {number} msgId - The msgId of the query.
+   * @param {AbortSignal} [signal] - The aborted signal, its reason becomes the cause of the error.
+   */
+  const abortQuery = function (msgId, signal) {
+    const request = this.currentMessages[msgId];
+    if (request === undefined) return;
+    forget(request);
+    if (this.isConnected() && request.bridge.alive) {
+      request.bridge.output.write(JSON.stringify({ type: "cancel", msgId: msgId }) + "\n");
+    }
+
+    const err = new Error("The query was aborted");
+    err.name = "AbortError";
+    err.code = "ABORT_ERR";
+    if (signal && signal.reason !== undefined) err.cause = signal.reason;
+    if (request.stream) request.stream.destroy(err);
+    if (typeof request.callback === "function") request.callback(err);
   }.bind(this);
 
   /**
    * Executes a SQL query asynchronously and returns the result via a callback.
    *
    * @param {string} sql - The SQL query to execute.
+   * @param {Object} [options] - Options for the query, see sendQuery.
    * @param {function} callback - The callback function to execute once the query is done.
    *
    * @example
@@ -262,12 +960,12 @@ function Sybase({
    *   console.log(result);
    * });
    */
-  this.query = function (sql, callback) {
-    const strMsg = prepareQuery(sql, -1, false, callback);
-    if (strMsg === null) return;
-
-    this.javaDB.stdin.write(strMsg + "\n");
-    this.log(`SQL request written: ${strMsg}`);
+  this.query = function (sql, options, callback) {
+    if (typeof options === "function") {
+      callback = options;
+      options = {};
+    }
+    sendQuery(sql, -1, false, callback, options);
   };
 
   /**
@@ -276,6 +974,7 @@ function Sybase({
    * @param {string} sql - The SQL query to execute.
    * @param {number} transactionId - The transaction ID to use, defaults to -1 (no transaction).
    * @param {boolean} finishTransaction - Whether to finish the transaction after the query is done. Defaults to false.
+   * @param {Object} [options] - Options for the query, see sendQuery.
    * @returns {Object} The result of the query.
    *
    * @example
@@ -287,39 +986,68 @@ function Sybase({
    *   console.error(err);
    * }
    */
-  this.querySync = function (sql, transactionId = -1, finishTransaction = false) {
+  this.querySync = function (sql, transactionId = -1, finishTransaction = false, options = {}) {
     return new Promise((resolve, reject) => {
-      const strMsg = prepareQuery(sql, transactionId, finishTransaction, null);
-
-      if (strMsg === null) {
-        reject(new Error("Database isn't connected."));
-        return;
-      }
-
-      let strMsgId = this.queryCount;
-        try {
-          const strMsgObj = JSON.parse(strMsg);
-          strMsgId = strMsgObj.msgId;
-        } catch (_) {
-      }
-
-      const onResponse = (jsonMsg) => {
-        if (jsonMsg.msgId === strMsgId) {
-          this.jsonParser.removeListener("data", onResponse);
-          if (jsonMsg.error !== undefined) reject(new Error(jsonMsg.error));
-          else resolve(jsonMsg.result);
-        }
-      };
+      sendQuery(sql, transactionId, finishTransaction, (err, result) => {
+        if (err) reject(err);
+        else resolve(result);
+      }, Object.assign({}, options, { keepResultSets: true }));
+    });
+  };
 
-      this.jsonParser.on("data", onResponse);
+  /**
+   * Executes a SQL query and returns its rows as a stream. The bridge sends the rows
+   * in frames of `streamRows` rows as they are read, so large results never have to be
+   * held in memory as a whole on either side.
+   *
+   * @param {string} sql - The SQL query to execute.
+   * @param {Object} [options] - Options for the query.
+   * @param {number} [options.streamRows] - Rows per frame, defaults to the instance streamRows or 1000.
+   * @param {number} [options.transactionId] - The transaction ID to use, defaults to -1 (no transaction).
+   * @param {boolean} [options.finishTransaction] - Whether to finish the transaction after the query is done.
+   * @param {string} [options.resultFormat] - The format sent by the bridge, "compact" and "columnar" send the column names once per result set. The stream always pushes row objects.
+   * @param {string} [options.priority] - "interactive" or "batch".
+   * @param {Array} [options.params] - Values of the ? parameters of the sql.
+   * @param {number} [options.timeoutMs] - Time the query may take in the bridge, defaults to the instance queryTimeoutMs.
+   * @param {boolean} [options.readOnly] - Whether the query runs on the replica, see sendQuery.
+   * @param {AbortSignal} [options.signal] - Cancels the query when aborted.
+   * @returns {Readable} An object mode stream of rows, emitting "resultSet" with the index of each new result set.
+   * Destroying the stream before it ends cancels the query in the bridge.
+   *
+   * @example
+   * const sybase = new Sybase(...);
+   * const stream = sybase.queryStream('SELECT * FROM big_table', { streamRows: 500 });
+   * for await (const row of stream) {
+   *   console.log(row);
+   * }
+   */
+  this.queryStream = function (sql, options = {}) {
+    let msgId;
+    const stream = new Readable({
+      objectMode: true,
+      read() {},
+      destroy: (err, callback) => {
+        // Destroyed by the consumer before the last frame, stop the query in the bridge
+        if (msgId !== undefined) abortQuery(msgId);
+        callback(err);
+      },
+    });
+    const streamRows = options.streamRows || this.streamRows || 1000;
+    const transactionId = options.transactionId !== undefined ? options.transactionId : -1;
 
-      try {
-        this.javaDB.stdin.write(strMsg + "\n");
-        this.log(`SQL request written: ${strMsg}`);
-      } catch (err) {
-        reject(err); // Reject if writing to stdin fails
-      }
+    const msg = sendQuery(sql, transactionId, options.finishTransaction === true, null, {
+      streamRows: streamRows,
+      stream: stream,
+      resultFormat: options.resultFormat,
+      priority: options.priority,
+      params: options.params,
+      timeoutMs: options.timeoutMs,
+      signal: options.signal,
+      readOnly: options.readOnly,
     });
+
+    if (msg !== null) msgId = msg.msgId;
+    return stream;
   };
 
   /**
@@ -353,12 +1081,17 @@ function Sybase({
     try {
       await this.querySync("BEGIN TRANSACTION", transactionId);
 
-      result = await queriesFunction(this);
+      result = await queriesFunction(this, transactionId);
 
       await this.querySync("COMMIT TRANSACTION", transactionId, true);
     } catch (err) {
       error = err;
-      await this.querySync("ROLLBACK TRANSACTION", transactionId, true);
+      try {
+        await this.querySync("ROLLBACK TRANSACTION", transactionId, true);
+      } catch (rollbackError) {
+        // The bridge already rolled back and closed the connection of a failed statement, keep the original error
+        this.log(`Rollback of transaction ${transactionId} failed: ${rollbackError.message}`);
+      }
     }
 
     if (error) {
@@ -402,19 +1135,20 @@ function Sybase({
   };
 
   /**
-   * Disconnects from the database and kills the Java process.
+   * Disconnects from the database and kills the Java processes, or closes the connections to a bridge
+   * attached with bridgeAddress (the bridge rolls back the transactions this instance left open).
    *
    * @example
    * const sybase = new Sybase(...);
    * sybase.disconnect();
    */
   this.disconnect = function () {
-    this.javaDB.kill();
     this.connected = false;
+    this.bridges.forEach((bridge) => stopBridge(bridge).catch(() => {}));
   };
 
   /**
-   * Disconnects synchronously from the database and kills the Java process.
+   * Disconnects synchronously from the database and kills the Java processes.
    *
    * @example
    * const sybase = new Sybase(...);
@@ -427,20 +1161,8 @@ function Sybase({
         return;
       }
 
-      this.javaDB.on("exit", (code) => {
-        this.connected = false;
-        if (code !== null && code !== 0 && code !== 143) {
-          reject(new Error(`Java process exited with code ${code}`));
-        } else {
-          resolve();
-        }
-      });
-
-      this.javaDB.on("error", (err) => {
-        reject(err); // Reject on error
-      });
-
-      this.javaDB.kill(); // Attempt to kill the Java process
+      this.connected = false;
+      Promise.all(this.bridges.map(stopBridge)).then(() => resolve(), reject);
     });
   };
 
@@ -458,6 +1180,336 @@ function Sybase({
     return this.connected;
   };
 
+  /**
+   * Executes many rows of one parameterized statement, or a list of statements, as JDBC batches on a
+   * single connection. The bridge sends them to the server in chunks of `batchSize` rows and answers
+   * with one message holding the update count of every row and the rows that failed. Inside a
+   * transaction the first failure rolls the transaction back and rejects the promise.
+   *
+   * @param {string|string[]} sql - The statement with ? parameters, or the list of statements to run.
+   * @param {Array[]} [rows] - The parameter rows, only when sql is a single statement.
+   * @param {Object} [options] - Options for the batch.
+   * @param {number} [options.batchSize] - Rows per executeBatch, defaults to the instance batchSize or 1000.
+   * @param {number} [options.transactionId] - The transaction to run the batch in, defaults to -1 (no transaction).
+   * @param {boolean} [options.finishTransaction] - Whether to finish the transaction after the batch.
+   * @param {string} [options.priority] - "interactive" or "batch", defaults to "batch".
+   * @param {number} [options.timeoutMs] - Time the batch may take in the bridge, the chunk running then is cancelled.
+   * @param {AbortSignal} [options.signal] - Cancels the batch when aborted.
+   * @returns {Promise<Object>} The updateCounts (-3 for failed rows) and the failures ({index, error}).
+   *
+   * @example
+   * const sybase = new Sybase(...);
+   * const { updateCounts, failures } = await sybase.executeBatch(
+   *   'INSERT INTO users (id, name) VALUES (?, ?)',
+   *   [[1, 'Ana'], [2, 'Luis']]
+   * );
+   */
+  this.executeBatch = function (sql, rows, options = {}) {
+    if (Array.isArray(sql)) {
+      options = rows || {};
+      rows = undefined;
+    }
+    return new Promise((resolve, reject) => {
+      const transactionId = options.transactionId !== undefined ? options.transactionId : -1;
+      sendQuery(Array.isArray(sql) ? undefined : sql, transactionId, options.finishTransaction === true, (err, result) => {
+        if (err) {
+          if (result && result.failures) err.failures = result.failures;
+          reject(err);
+        } else resolve(result);
+      }, {
+        type: "batch",
+        batchParams: Array.isArray(sql) ? undefined : rows || [],
+        statements: Array.isArray(sql) ? sql : undefined,
+        batchSize: options.batchSize || this.batchSize,
+        priority: options.priority || "batch",
+        timeoutMs: options.timeoutMs,
+        signal: options.signal,
+      });
+    });
+  };
+
+  /**
+   * Removes the cached results with any of the tags from the bridge result cache, or every result if no tags are given.
+   *
+   * @param {string[]} [tags] - The tags to invalidate.
+   * @returns {Promise<number>} The number of results removed.
+   *
+   * @example
+   * const sybase = new Sybase(...);
+   * await sybase.query('UPDATE orders SET ...', ...);
+   * await sybase.invalidateCache(['orders']);
+   */
+  this.invalidateCache = function (tags) {
+    if (!this.isConnected()) return Promise.reject(new Error("Database isn't connected."));
+
+    // Every bridge has its own result cache, a bridge being restarted starts with an empty one
+    const cacheTags = Array.isArray(tags) ? tags : [];
+    const invalidations = this.bridges.filter((bridge) => bridge.alive).map((bridge) => new Promise((resolve, reject) => {
+      sendControl({ type: "invalidate", cacheTags: cacheTags }, (err, removed) => {
+        if (err) reject(err);
+        else resolve(removed);
+      }, bridge);
+    }));
+    return Promise.all(invalidations).then((removed) => removed.reduce((total, count) => total + count, 0));
+  };
+
+  /**
+   * Loads rows into a table through a bulk-load session of the bridge. The rows written to the
+   * stream are sent in frames of `frameRows` rows, the bridge adds them to JDBC batches on a
+   * connection opened with ENABLE_BULK_LOAD and commits every `checkpointRows` rows. At most
+   * `window` frames wait for their acknowledgement, further writes wait until one arrives, so
+   * the load never runs ahead of the server. Ending the stream commits the rest of the rows,
+   * destroying it rolls back the rows after the last checkpoint.
+   *
+   * @param {string} table - The table to load.
+   * @param {string[]} columns - The columns of the rows.
+   * @param {Object} [options] - Options for the load.
+   * @param {number} [options.frameRows] - Rows per frame sent to the bridge, defaults to 1000.
+   * @param {number} [options.window] - Frames sent and not yet acknowledged, defaults to 4.
+   * @param {number} [options.batchSize] - Rows per executeBatch, defaults to the instance batchSize or 10000.
+   * @param {number} [options.checkpointRows] - Rows per commit, defaults to the instance checkpointRows or 100000.
+   * @returns {Writable} An object mode stream of rows (arrays in column order or objects keyed by column),
+   * emitting "progress" with the rows, committed rows and rowsPerSecond of every acknowledgement. Once
+   * it finishes, stream.result has the totals of the load.
+   *
+   * @example
+   * const sybase = new Sybase(...);
+   * const load = sybase.bulkLoad('users', ['id', 'name']);
+   * load.on('progress', ({ committed, rowsPerSecond }) => console.log(committed, rowsPerSecond));
+   * await pipeline(rowSource, load);
+   */
+  this.bulkLoad = function (table, columns, options = {}) {
+    const frameRows = options.frameRows || 1000;
+    const window = options.window || 4;
+    const bulkId = this.bulkCount++;
+    let frame = [];
+    let outstanding = 0;
+    let pending = null; // The callback of the write waiting for an acknowledgement
+    let failure = null;
+    let closed = false;
+
+    const onAck = (err, result) => {
+      outstanding--;
+      if (err && !failure) failure = err;
+      if (result) stream.emit("progress", result);
+      if (pending && (failure || outstanding < window)) {
+        const callback = pending;
+        pending = null;
+        callback(failure);
+      }
+    };
+    const sendFrame = () => {
+      outstanding++;
+      const rows = frame;
+      frame = [];
+      sendControl({ type: "bulkRows", bulkId: bulkId, batchParams: rows }, onAck);
+    };
+
+    const stream = new Writable({
+      objectMode: true,
+      highWaterMark: frameRows,
+      write: (row, encoding, callback) => {
+        if (failure) {
+          callback(failure);
+          return;
+        }
+        const values = Array.isArray(row) ? row : columns.map((column) => row[column]);
+        frame.push(values.map(toParam));
+        if (frame.length >= frameRows) sendFrame();
+        if (outstanding >= window) pending = callback;
+        else callback();
+      },
+      final: (callback) => {
+        if (failure) {
+          callback(failure);
+          return;
+        }
+        if (frame.length > 0) sendFrame();
+        closed = true;
+        sendControl({ type: "bulkClose", bulkId: bulkId }, (err, result) => {
+          if (err) {
+            callback(failure || err);
+            return;
+          }
+          stream.result = result;
+          callback();
+        });
+      },
+      destroy: (err, callback) => {
+        if (!closed && this.isConnected()) {
+          closed = true;
+          sendControl({ type: "bulkClose", bulkId: bulkId, abort: true }, () => {});
+        }
+        callback(err);
+      },
+    });
+
+    outstanding++;
+    const opened = sendControl({
+      type: "bulkOpen",
+      bulkId: bulkId,
+      table: table,
+      columns: columns,
+      batchSize: options.batchSize || this.batchSize,
+      checkpointRows: options.checkpointRows || this.checkpointRows,
+    }, onAck);
+    if (!opened) {
+      closed = true;
+      process.nextTick(() => stream.destroy(failure));
+    }
+    return stream;
+  };
+
+  /**
+   * Opens a server-side cursor on a query: the bridge executes it on a connection it keeps for the cursor
+   * and holds its result set, then every fetch reads the next page of rows. Unlike queryStream the bridge
+   * only reads a page when it is asked for one, so the consumer sets the pace, and the cursor may stay open
+   * between pages (up to cursorIdleTimeoutMs without a fetch). Each open cursor holds a connection of the
+   * main pool, at most maxCursors are open at once per bridge, so close the cursors that are not read to the end.
+   *
+   * @param {string} sql - The SQL query, its first result set is read.
+   * @param {Object} [options] - Options for the cursor.
+   * @param {number} [options.pageRows] - Rows per page of fetch() and of the iterator, defaults to 1000.
+   * @param {number} [options.fetchSize] - Rows the driver reads from the server at a time, defaults to pageRows.
+   * @param {Array} [options.params] - Values of the ? parameters of the sql.
+   * @param {string} [options.resultFormat] - The format the pages are sent in, "compact" and "columnar" send the column names once per page. fetch() always returns row objects.
+   * @param {number} [options.timeoutMs] - Time the query and every fetch may take in the bridge, defaults to the instance queryTimeoutMs.
+   * @returns {Object} The cursor, with fetch(rows) resolving with the next rows (an empty array once they are
+   * all read), close() and an async iterator over the rows that closes the cursor when it ends or breaks.
+   *
+   * @example
+   * const sybase = new Sybase(...);
+   * const cursor = sybase.openCursor('SELECT * FROM big_table', { pageRows: 500 });
+   * for await (const row of cursor) {
+   *   console.log(row);
+   * }
+   */
+  this.openCursor = function (sql, options = {}) {
+    const cursorId = this.cursorCount++;
+    const pageRows = options.pageRows || 1000;
+    const timeoutMs = options.timeoutMs !== undefined ? options.timeoutMs : this.queryTimeoutMs;
+    let done = false;
+    let closed = false;
+
+    const send = (fields) => new Promise((resolve, reject) => {
+      const request = Object.assign({ cursorId: cursorId }, fields);
+      if (timeoutMs > 0 && fields.type !== "closeCursor") request.timeoutMs = timeoutMs;
+      sendControl(request, (err, result) => {
+        if (err) reject(err);
+        else resolve(result);
+      });
+    });
+
+    const open = { type: "openCursor", sql: sql, fetchSize: options.fetchSize || pageRows };
+    if (Array.isArray(options.params)) open.params = options.params.map(toParam);
+    const resultFormat = options.resultFormat || this.resultFormat;
+    if (resultFormat !== "objects") open.resultFormat = resultFormat;
+    const opening = send(open);
+    opening.catch(() => {
+      // Reported by the first fetch, the bridge has no cursor to close
+      closed = true;
+      this.cursorBridges.delete(cursorId);
+    });
+
+    const cursor = {
+      cursorId: cursorId,
+      fetch: async (rows = pageRows) => {
+        await opening;
+        if (done || closed) return [];
+        const result = await send({ type: "fetch", rows: rows });
+        done = result.done;
+        return pageToRows(result.page);
+      },
+      close: async () => {
+        if (closed) return;
+        closed = true;
+        try {
+          await opening;
+        } catch (err) {
+          return;
+        }
+        await send({ type: "closeCursor" });
+      },
+      [Symbol.asyncIterator]: async function* () {
+        try {
+          while (!done) {
+            const rows = await cursor.fetch();
+            if (rows.length === 0 && closed) return;
+            yield* rows;
+          }
+        } finally {
+          await cursor.close();
+        }
+      },
+    };
+    return cursor;
+  };
+
+  /**
+   * Gets the stats of the bridge: the latency percentiles of every stage a query goes through (parse,
+   * queueWait, poolAcquire, execute, fetch, serialize and write, in microseconds), the gauges of the
+   * connection pools, the admission queue and the response writer, and the counters of the statement
+   * cache, the result cache, the bulk loads and the cursors.
+   *
+   * @param {number} [bridge] - The index of the bridge when there are several, defaults to 0.
+   * @returns {Promise<Object>} The stats.
+   *
+   * @example
+   * const sybase = new Sybase(...);
+   * const { stages, pools } = await sybase.getStats();
+   * console.log(stages.poolAcquire.p99, pools.main.pending);
+   */
+  this.getStats = function (bridge = 0) {
+    return new Promise((resolve, reject) => {
+      if (this.bridges[bridge] === undefined) {
+        reject(new Error(this.isConnected() ? `There is no bridge ${bridge}.` : "Database isn't connected."));
+        return;
+      }
+      sendControl({ type: "stats" }, (err, stats) => {
+        if (err) reject(err);
+        else resolve(stats);
+      }, this.bridges[bridge]);
+    });
+  };
+
+  /**
+   * Gets the health of the bridges: whether each one is connected or being restarted, its requests
+   * waiting for a response, the times it was restarted and why it last stopped.
+   *
+   * @returns {Object[]} The index, pid (unless attached with bridgeAddress), connected, outstanding,
+   * respawns, lastExit and startupMs (from starting the bridge until it was connected) of every bridge.
+   *
+   * @example
+   * const sybase = new Sybase({ ...settings, bridges: 4 });
+   * console.log(sybase.getBridges().map((bridge) => bridge.outstanding));
+   */
+  this.getBridges = function () {
+    return this.bridges.map((bridge) => ({
+      index: bridge.index,
+      pid: bridge.process ? bridge.process.pid : undefined,
+      connected: bridge.alive,
+      outstanding: bridge.outstanding,
+      respawns: bridge.respawns,
+      lastExit: bridge.lastExit,
+      startupMs: bridge.startupMs,
+    }));
+  };
+
+  /**
+   * Gets the statement cache hits and misses of the parameterized queries run so far.
+   *
+   * @returns {Object} The hits, misses and hitRate (between 0 and 1).
+   *
+   * @example
+   * const sybase = new Sybase(...);
+   * const { hitRate } = sybase.getStatementCacheStats();
+   */
+  this.getStatementCacheStats = function () {
+    const { hits, misses } = this.statementCacheStats;
+    const total = hits + misses;
+    return { hits, misses, hitRate: total === 0 ? 0 : hits / total };
+  };
+
   /**
    * Logs a message to the console if logs is enabled.
    *
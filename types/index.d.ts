@@ -12,6 +12,414 @@ declare module "sybjet" {
     pathToJavaBridge?: string;
     encoding?: string;
     logs?: boolean;
+    streamRows?: number;
+    resultFormat?: ResultFormat;
+    /** "platform" (fixed thread pool, default) or "virtual" (a virtual thread per request, Java 21+). */
+    executionMode?: "platform" | "virtual";
+    /** Number of threads of the platform execution mode, defaults to 10. */
+    threads?: number;
+    /** Requests waiting to run before the bridge refuses new ones with an OVERLOADED error, defaults to 10000. */
+    maxQueued?: number;
+    /** Default priority of the queries. */
+    priority?: Priority;
+    /** Prepared statements kept open per connection for parameterized queries, defaults to 50, 0 disables the cache. */
+    statementCacheSize?: number;
+    /** Byte budget of the bridge result cache, defaults to 64MB, 0 disables it. */
+    resultCacheBytes?: number;
+    /** Rows sent to the server per executeBatch, defaults to 1000. */
+    batchSize?: number;
+    /** Bulk-load sessions loading at once, defaults to 2. */
+    bulkSessions?: number;
+    /** ENABLE_BULK_LOAD mode of the bulk-load connections, defaults to "BCP". */
+    bulkLoadMode?: "BCP" | "LOG_BCP" | "ARRAYINSERT" | "ARRAYINSERT_WITH_MINIMAL_LOG";
+    /** Rows per commit of a bulk load, defaults to 100000. */
+    checkpointRows?: number;
+    /** DataSource class the pools open connections with, defaults to "com.sybase.jdbc4.jdbc.SybDataSource". */
+    dataSourceClass?: string;
+    /** Extra classpath entries of the Java bridge, such as the classes of dataSourceClass. */
+    classPath?: string | string[];
+    /** Default timeoutMs of the queries, unset for no limit. */
+    queryTimeoutMs?: number;
+    /** Idle time after which the bridge rolls back a transaction that was not finished, defaults to 600000, 0 disables it. */
+    transactionIdleTimeoutMs?: number;
+    /** Also serve other processes on "unix:/path/to/socket" (Java 16+), "tcp:port" (loopback) or "tcp:host:port". */
+    listen?: string;
+    /** Attach to a bridge started with listen at this address instead of starting one. */
+    bridgeAddress?: string;
+    /** Bridge processes (or connections to the bridge at bridgeAddress) the queries are spread over, defaults to 1. */
+    bridges?: number;
+    /** A replicated server the reads are sent to, with its own read-only pool. */
+    replica?: ReplicaOptions;
+    /** "auto" (default) sends the queries marked readOnly and the plain SELECTs outside transactions to the replica, "marked" only the queries marked readOnly. */
+    readRouting?: "auto" | "marked";
+    /** Size the pools and the threads at runtime from the observed waits and latencies, between minConnections and the maximums, defaults to false. */
+    adaptiveSizing?: boolean;
+    /** Time between two samples of the adaptive sizing, defaults to 1000. */
+    sizingIntervalMs?: number;
+    /** File the decisions of the adaptive sizing are appended to, one json line each. */
+    sizingLog?: string;
+    /** "fast" builds the main and replica pools in parallel, creates the transaction pool on the first transaction and warms up before connecting, defaults to "standard". */
+    startupMode?: "standard" | "fast";
+    /** Probe queries run before connecting, defaults to 10 in the "fast" startup mode and 0 otherwise. */
+    warmupQueries?: number;
+    /** Sql of the probe queries, defaults to "SELECT 1". */
+    warmupSql?: string;
+    /** AppCDS archive of the bridge jar, built with ant cds (JDK 11+). */
+    cdsArchive?: string;
+    /** Run identical reads in flight at the same time once and answer each with the shared result, defaults to false. */
+    coalesceReads?: boolean;
+    /** Size a response may grow to in the bridge heap before it is written to a temporary file, 0 to keep every response in memory, defaults to 32 MB (at most a sixteenth of the heap). */
+    spillThresholdBytes?: number;
+    /** Directory of the temporary files of the large responses, defaults to the temporary directory of the JVM. */
+    spillDir?: string;
+    /** Cursors open at once per bridge, each one holds a connection of the main pool, defaults to half of maxConnections (at least 1). */
+    maxCursors?: number;
+    /** Time without a fetch after which the bridge closes a cursor, defaults to 60000, 0 keeps idle cursors open. */
+    cursorIdleTimeoutMs?: number;
+    /** Size of the responses waiting to be written before the queries producing more wait for the reader, defaults to 64 MB (at most an eighth of the heap). */
+    writerQueueBytes?: number;
+  }
+
+  /**
+   * Interface for the replica option, the database and credentials are the ones of the primary.
+   */
+  interface ReplicaOptions {
+    host: string;
+    /** Defaults to the port of the primary. */
+    port?: number;
+    /** Defaults to minConnections. */
+    minConnections?: number;
+    /** Defaults to maxConnections. */
+    maxConnections?: number;
+    /** Time to wait for a replica connection before the query runs on the primary, defaults to 5000 (or connectionTimeout if lower). */
+    connectionTimeout?: number;
+    /** Time a replica that failed stays down before a query tries it again, defaults to 5000. */
+    retryMs?: number;
+  }
+
+  /**
+   * Interface for the options of bulkLoad.
+   */
+  interface BulkLoadOptions {
+    /** Rows per frame sent to the bridge, defaults to 1000. */
+    frameRows?: number;
+    /** Frames sent and not yet acknowledged, defaults to 4. */
+    window?: number;
+    /** Rows per executeBatch, defaults to 10000. */
+    batchSize?: number;
+    checkpointRows?: number;
+  }
+
+  /**
+   * Interface for the progress of a bulk load, emitted with every acknowledgement.
+   */
+  interface BulkLoadProgress {
+    bulkId: number;
+    /** Rows received by the bridge. */
+    rows: number;
+    /** Rows committed. */
+    committed: number;
+    /** Indicates if the frame committed a checkpoint. */
+    checkpoint: boolean;
+    rowsPerSecond: number;
+  }
+
+  /**
+   * Interface for the options of openCursor.
+   */
+  interface CursorOptions {
+    /** Rows per page of fetch() and of the iterator, defaults to 1000. */
+    pageRows?: number;
+    /** Rows the driver reads from the server at a time, defaults to pageRows. */
+    fetchSize?: number;
+    params?: QueryParam[];
+    /** The format the pages are sent in, fetch() always returns row objects. */
+    resultFormat?: ResultFormat;
+    /** Time the query and every fetch may take in the bridge, defaults to queryTimeoutMs. */
+    timeoutMs?: number;
+  }
+
+  /**
+   * A server-side cursor returned by openCursor, iterating it reads every row and closes it.
+   */
+  interface Cursor extends AsyncIterable<any> {
+    cursorId: number;
+    /** Reads the next rows, an empty array once they are all read. */
+    fetch(rows?: number): Promise<any[]>;
+    /** Closes the cursor and gives its connection back to the pool. */
+    close(): Promise<void>;
+  }
+
+  /**
+   * Interface for the options of executeBatch.
+   */
+  interface BatchOptions {
+    batchSize?: number;
+    transactionId?: number;
+    finishTransaction?: boolean;
+    priority?: Priority;
+    /** Time the batch may take in the bridge, the chunk running then is cancelled. */
+    timeoutMs?: number;
+    /** Cancels the batch when aborted, the promise rejects with an AbortError. */
+    signal?: AbortSignal;
+  }
+
+  /**
+   * Interface for the result of executeBatch.
+   */
+  interface BatchResult {
+    /** The update count of every row, -3 for the rows that failed or did not run. */
+    updateCounts: number[];
+    failures: { index: number; error: string }[];
+  }
+
+  /**
+   * A query parameter with an explicit sql type, the value is sent as a string or number.
+   */
+  interface TypedParam {
+    type:
+      | "varchar" | "char" | "int" | "smallint" | "tinyint" | "bigint" | "decimal" | "numeric" | "money"
+      | "float" | "double" | "real" | "bit" | "date" | "time" | "datetime" | "timestamp" | "binary" | "varbinary";
+    value: string | number | boolean | null;
+  }
+
+  /**
+   * A value of a ? parameter. Dates are sent as timestamps, Buffers as binary and BigInts as bigint.
+   */
+  type QueryParam = string | number | boolean | null | undefined | Date | Buffer | bigint | TypedParam;
+
+  /**
+   * Statement cache counters of the parameterized queries.
+   */
+  interface StatementCacheStats {
+    hits: number;
+    misses: number;
+    hitRate: number;
+  }
+
+  /**
+   * Latency percentiles of a stage of the bridge, in microseconds.
+   */
+  interface StageStats {
+    count: number;
+    mean: number;
+    p50: number;
+    p90: number;
+    p99: number;
+    p999: number;
+    max: number;
+  }
+
+  /**
+   * Gauges of a connection pool of the bridge.
+   */
+  interface PoolStats {
+    active: number;
+    idle: number;
+    /** Threads waiting for a connection. */
+    pending: number;
+    total: number;
+    max: number;
+  }
+
+  /**
+   * Counters of the statement cache of a pool.
+   */
+  interface StatementCacheCounters {
+    hits: number;
+    misses: number;
+    evictions: number;
+    hitRate: number;
+  }
+
+  /**
+   * Stats of the bridge returned by getStats.
+   */
+  interface BridgeStats {
+    uptimeMs: number;
+    executionMode: "platform" | "virtual";
+    stages: Record<"parse" | "queueWait" | "poolAcquire" | "execute" | "fetch" | "serialize" | "write", StageStats>;
+    pools: { main: PoolStats; transaction: PoolStats; replica?: PoolStats };
+    admission: { inFlight: number; queued: number; admitted: number; rejected: number; transactionLanes: number };
+    /** The responses waiting to be written and their size, and the times a query waited for the writer because writerQueueBytes were queued. */
+    writer: { queueDepth: number; queuedBytes: number; parks: number; bytesWritten: number; bytesPerSecond: number };
+    statementCache: Record<"main" | "transaction", StatementCacheCounters> & { replica?: StatementCacheCounters };
+    resultCache: { entries: number; bytes: number; hits: number; misses: number; evictions: number; expirations: number; invalidations: number };
+    bulkLoad: { sessions: number; rows: number };
+    /** Open cursors and their maximum, the cursors opened and rows fetched so far, and the cursors closed because they were idle. */
+    cursors: { open: number; max: number; opened: number; rows: number; expired: number; idleTimeoutMs: number };
+    /** Requests received and not answered yet, and the requests cancelled and timed out so far. */
+    requests: { inFlight: number; cancelled: number; timedOut: number };
+    /** Open transactions by age since their first statement, and the idle transactions rolled back so far. */
+    transactions: {
+      open: number;
+      reaped: number;
+      idleTimeoutMs: number;
+      ages: { lt1s: number; lt10s: number; lt1m: number; lt10m: number; ge10m: number };
+    };
+    /** The listen address and the clients connected and accepted, when the bridge was started with listen. */
+    server?: { address: string; clients: number; accepted: number };
+    /** The health of the replica, the reads sent to it and the reads that fell back to the primary, when there is a replica. */
+    replica?: {
+      address: string;
+      healthy: boolean;
+      routed: number;
+      fallbacks: number;
+      failures: number;
+      lastError?: string;
+      /** Latencies of the queries outside transactions on each route. */
+      latency: { replica: StageStats; primary: StageStats };
+    };
+    /** The limits of the pools and the last decisions, when the bridge sizes them with adaptiveSizing. */
+    sizing?: {
+      intervalMs: number;
+      pools: Record<"main" | "transaction", { limit: number; lower: number; upper: number; fixed?: boolean }>;
+      concurrency: number;
+      baselineExecuteMs: number;
+      decisions: number;
+      backoffs: number;
+      recent: SizingDecision[];
+      log?: string;
+    };
+    /** The counters of the coalescing of identical reads, when coalesceReads is true. */
+    coalescing?: {
+      /** Reads being executed that others may still join. */
+      inFlight: number;
+      /** Reads executed as the leader of a flight. */
+      flights: number;
+      /** Reads answered with the result of an identical one instead of executing. */
+      coalesced: number;
+      /** Coalesced reads cancelled or timed out before the result came. */
+      left: number;
+      /** Coalesced reads that ran on their own because their leader was cancelled. */
+      rerun: number;
+    };
+    /** The responses written from temporary files, unless spillThresholdBytes is 0. */
+    spill?: {
+      dir: string;
+      thresholdBytes: number;
+      /** Responses that went to a temporary file. */
+      spilled: number;
+      /** Bytes of the spilled responses written so far. */
+      bytes: number;
+      /** Temporary files whose response is not written yet. */
+      open: number;
+      /** Directories left by bridges that died, deleted at startup. */
+      swept: number;
+    };
+    /** Times of the startup in milliseconds, from the start of the JVM. */
+    startup: {
+      mode: "standard" | "fast";
+      poolsMs: number;
+      warmupMs: number;
+      warmupQueries: number;
+      warmupFailed: number;
+      connectedMs: number;
+      /** Unset until the first query was answered. */
+      firstResultMs?: number;
+      /** Time the first transaction waited for the transaction pool, in the "fast" startup mode. */
+      transactionPoolMs?: number;
+    };
+  }
+
+  /**
+   * A decision of the adaptive sizing, also written to sizingLog.
+   */
+  interface SizingDecision {
+    time: string;
+    pool: "main" | "transaction";
+    from: number;
+    to: number;
+    reason: string;
+    active: number;
+    waiting: number;
+    acquireP90Ms?: number;
+    executeP90Ms?: number;
+    baselineExecuteMs?: number;
+    /** The requests the bridge runs at once after the decision. */
+    concurrency: number;
+  }
+
+  /**
+   * Health of a bridge returned by getBridges.
+   */
+  interface BridgeHealth {
+    index: number;
+    /** The pid of the bridge process, unset when attached with bridgeAddress. */
+    pid?: number;
+    /** False while the bridge is being restarted. */
+    connected: boolean;
+    /** Requests sent to the bridge and waiting for their response. */
+    outstanding: number;
+    /** Times the bridge was restarted after it exited. */
+    respawns: number;
+    /** Why the bridge last exited. */
+    lastExit?: string;
+    /** Time from starting the bridge (or connecting to it) until it was connected. */
+    startupMs?: number;
+  }
+
+  /**
+   * Admission priority of a query, "batch" queries wait behind "interactive" ones when the bridge is busy.
+   */
+  type Priority = "interactive" | "batch";
+
+  /**
+   * Result set encodings of the bridge protocol.
+   * "objects" sends one object per row, "compact" sends the columns once and
+   * positional rows that are turned back into objects lazily, "columnar" sends
+   * per column arrays that are returned as-is.
+   */
+  type ResultFormat = "objects" | "compact" | "columnar";
+
+  /**
+   * Interface for a result set in the "columnar" format.
+   */
+  interface ColumnarResult {
+    columns: string[];
+    types: number[];
+    data: any[][];
+  }
+
+  /**
+   * Interface for the options of a single query.
+   */
+  interface QueryOptions {
+    /** Rows per frame to stream the response in, 0 to receive it whole. */
+    streamRows?: number;
+    resultFormat?: ResultFormat;
+    priority?: Priority;
+    /** Values of the ? parameters, the query runs as a cached prepared statement. */
+    params?: QueryParam[];
+    /** Keep the result in the bridge result cache for this long, only outside transactions and without streamRows. */
+    cacheTtlMs?: number;
+    /** Tags of the cached result (e.g. the tables read), see invalidateCache. */
+    cacheTags?: string[];
+    /** Time the query may take in the bridge, queue time included, it fails with errorCode "TIMEOUT" after it. */
+    timeoutMs?: number;
+    /** Cancels the query when aborted, it fails at once with an AbortError. */
+    signal?: AbortSignal;
+    /** true to run the query on the replica, false to keep it on the primary, by default plain SELECTs go to the replica. */
+    readOnly?: boolean;
+  }
+
+  /**
+   * Interface for the options of a streamed query.
+   */
+  interface QueryStreamOptions {
+    streamRows?: number;
+    transactionId?: number;
+    finishTransaction?: boolean;
+    resultFormat?: ResultFormat;
+    priority?: Priority;
+    /** Values of the ? parameters, the query runs as a cached prepared statement. */
+    params?: QueryParam[];
+    /** Time the query may take in the bridge, the stream is destroyed with an error after it. */
+    timeoutMs?: number;
+    /** Cancels the query when aborted, like destroying the stream. */
+    signal?: AbortSignal;
+    /** Whether the query runs on the replica, see QueryOptions. */
+    readOnly?: boolean;
   }
 
   /**
@@ -54,21 +462,45 @@ declare module "sybjet" {
       sql: string,
       callback: (error: Error | null, result: QueryResult[]) => void
     ): void;
+    query(
+      sql: string,
+      options: QueryOptions,
+      callback: (error: Error | null, result: QueryResult[]) => void
+    ): void;
 
     /**
      * Executes a SQL query synchronously.
      * @param sql - The SQL query string.
+     * @param transactionId - The transaction ID to use, defaults to -1 (no transaction).
+     * @param finishTransaction - Whether to finish the transaction after the query is done.
+     * @param options - Options for the query.
      * @returns A promise that resolves with the result of the query.
      */
-    querySync(sql: string): Promise<QueryResult[]>;
+    querySync(
+      sql: string,
+      transactionId?: number,
+      finishTransaction?: boolean,
+      options?: QueryOptions
+    ): Promise<QueryResult[]>;
+
+    /**
+     * Executes a SQL query and returns its rows as an object mode stream.
+     * @param sql - The SQL query string.
+     * @param options - Options for the streamed query.
+     * @returns A readable stream of rows.
+     */
+    queryStream(
+      sql: string,
+      options?: QueryStreamOptions
+    ): import("stream").Readable;
 
     /**
      * Executes a series of queries within a transaction.
-     * @param queriesFunction - A function that takes the Sybase connection as an argument and returns a Promise.
+     * @param queriesFunction - A function that takes the Sybase connection and the transaction ID as arguments and returns a Promise.
      * @returns A promise that resolves with the result of the queries or rejects with an error.
      */
     transaction(
-      queriesFunction: (connection: this) => Promise<any>
+      queriesFunction: (connection: this, transactionId: number) => Promise<any>
     ): Promise<any>;
 
     /**
@@ -94,6 +526,49 @@ declare module "sybjet" {
      */
     isConnected(): boolean;
 
+    /**
+     * Gets the statement cache hits and misses of the parameterized queries run so far.
+     */
+    getStatementCacheStats(): StatementCacheStats;
+
+    /**
+     * Gets the stage latencies, pool gauges and counters of the bridge.
+     * @param bridge - The index of the bridge when there are several, defaults to 0.
+     */
+    getStats(bridge?: number): Promise<BridgeStats>;
+
+    /**
+     * Gets whether each bridge is connected, its outstanding requests and its restarts.
+     */
+    getBridges(): BridgeHealth[];
+
+    /**
+     * Executes many parameter rows of one statement as JDBC batches on a single connection.
+     */
+    executeBatch(sql: string, rows: QueryParam[][], options?: BatchOptions): Promise<BatchResult>;
+
+    /**
+     * Executes a list of statements as JDBC batches on a single connection.
+     */
+    executeBatch(statements: string[], options?: BatchOptions): Promise<BatchResult>;
+
+    /**
+     * Removes the cached results with any of the tags, or every cached result if no tags are given.
+     * @returns The number of results removed.
+     */
+    invalidateCache(tags?: string[]): Promise<number>;
+
+    /**
+     * Loads rows (arrays in column order or objects keyed by column) into a table through a bulk-load session.
+     * The stream emits "progress" with a BulkLoadProgress and has the totals in stream.result once it finishes.
+     */
+    bulkLoad(table: string, columns: string[], options?: BulkLoadOptions): import("stream").Writable & { result?: BulkLoadProgress };
+
+    /**
+     * Opens a server-side cursor on a query, its rows are read a page at a time with fetch or by iterating it.
+     */
+    openCursor(sql: string, options?: CursorOptions): Cursor;
+
     /**
      * Logs a message to the console if logs are enabled.
      * @param msg - The message to log.